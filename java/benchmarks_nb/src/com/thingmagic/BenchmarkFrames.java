@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+/**
+ * Reader traffic replayed by the benchmarks, as hex strings of whole
+ * frames. Serial frames include the SOH, length, opcode, status and CRC;
+ * the LLRP report is a complete message including its header.
+ *
+ * All frames carry 96-bit Gen2 EPCs with their PC and CRC. To
+ * benchmark against traffic from a particular reader, replace these with
+ * frames recorded by a TransportListener on that reader.
+ */
+final class BenchmarkFrames
+{
+  private BenchmarkFrames()
+  {
+  }
+
+  /**
+   * Streaming (0x22) tag responses with READCOUNT, RSSI, ANTENNAID,
+   * FREQUENCY, TIMESTAMP, PHASE and PROTOCOL metadata, one tag each.
+   */
+  static final String[] STREAM_TAG_RESPONSES = {
+    "ff2522000010001b007f0101cc110dc65e0000000c00000500803000e2006806" +
+    "00000000000100009918ba5e",
+    "ff2522000010001b007f0102cb120dcd340000003100170500803000e2006806" +
+    "00000000000100015a39ddc0",
+    "ff2522000010001b007f0103ca130dd40a00000056002e0500803000e2006806" +
+    "0000000000010002095d132b",
+    "ff2522000010001b007f0101c9140ddae00000007b00450500803000e2006806" +
+    "000000000001000341923fce"
+  };
+
+  /**
+   * Get Tag Buffer (0x29) response holding 7 tags with the same metadata
+   * as STREAM_TAG_RESPONSES.
+   */
+  static final String TAG_BUFFER_METADATA_RESPONSE =
+    "ffdd290000007f000701cc110dc65e0000000c00000500803000e20068060000" +
+    "000000010000055d02cb120dcd340000003100170500803000e2006806000000" +
+    "000001000100a103ca130dd40a00000056002e0500803000e200680600000000" +
+    "00010002e9df01c9140ddae00000007b00450500803000e20068060000000000" +
+    "010003bffc02c8110de1b6000000a0005c0500803000e2006806000000000001" +
+    "000402e503c7120de88c000000c500730500803000e200680600000000000100" +
+    "0516ce01c6130def62000000ea008a0500803000e20068060000000000010006" +
+    "65e9e841";
+
+  /**
+   * Get Tag Buffer (0x29) response in the older fixed record format,
+   * holding 13 records of 96-bit EPCs.
+   */
+  static final String TAG_BUFFER_RECORD_RESPONSE =
+    "ffea29000000103000e2006806000000000001000007b700103000e200680600" +
+    "00000000010001fc6900103000e200680600000000000100022ef100103000e2" +
+    "0068060000000000010003e1a600103000e2006806000000000001000436b300" +
+    "103000e20068060000000000010005eea700103000e200680600000000000100" +
+    "068fd900103000e20068060000000000010007948400103000e2006806000000" +
+    "00000100085dc400103000e20068060000000000010009ebe000103000e20068" +
+    "06000000000001000ab37e00103000e2006806000000000001000b0bb6001030" +
+    "00e2006806000000000001000c0022416a";
+
+  /**
+   * RO_ACCESS_REPORT holding 16 TagReportData parameters, with antenna,
+   * RSSI, channel, seen count, timestamp, Gen2 PC and CRC, and the
+   * ThingMagic phase and protocol custom parameters.
+   */
+  static final String RO_ACCESS_REPORT =
+    "043d0000050a0000002a00f0005000f100120060e20068060000000000010000" +
+    "890000000181000186c98700018400060a24181e40008800018c30008b123403" +
+    "ff000e000067ba0000008f000003ff000d000067ba000000af0100f0005000f1" +
+    "00120060e20068060000000000010001890000000181000286c8870002840006" +
+    "0a24181e43e88800018c30008b123503ff000e000067ba0000008f001703ff00" +
+    "0d000067ba000000af0100f0005000f100120060e20068060000000000010002" +
+    "890000000181000386c78700038400060a24181e47d08800018c30008b123603" +
+    "ff000e000067ba0000008f002e03ff000d000067ba000000af0100f0005000f1" +
+    "00120060e20068060000000000010003890000000181000486c6870004840006" +
+    "0a24181e4bb88800018c30008b123703ff000e000067ba0000008f004503ff00" +
+    "0d000067ba000000af0100f0005000f100120060e20068060000000000010004" +
+    "890000000181000186c58700058400060a24181e4fa08800018c30008b123803" +
+    "ff000e000067ba0000008f005c03ff000d000067ba000000af0100f0005000f1" +
+    "00120060e20068060000000000010005890000000181000286c4870006840006" +
+    "0a24181e53888800018c30008b123903ff000e000067ba0000008f007303ff00" +
+    "0d000067ba000000af0100f0005000f100120060e20068060000000000010006" +
+    "890000000181000386c38700078400060a24181e57708800018c30008b123a03" +
+    "ff000e000067ba0000008f008a03ff000d000067ba000000af0100f0005000f1" +
+    "00120060e20068060000000000010007890000000181000486c2870008840006" +
+    "0a24181e5b588800018c30008b123b03ff000e000067ba0000008f00a103ff00" +
+    "0d000067ba000000af0100f0005000f100120060e20068060000000000010008" +
+    "890000000181000186c18700098400060a24181e5f408800018c30008b123c03" +
+    "ff000e000067ba0000008f000403ff000d000067ba000000af0100f0005000f1" +
+    "00120060e20068060000000000010009890000000181000286c087000a840006" +
+    "0a24181e63288800018c30008b123d03ff000e000067ba0000008f001b03ff00" +
+    "0d000067ba000000af0100f0005000f100120060e2006806000000000001000a" +
+    "890000000181000386c987000b8400060a24181e67108800018c30008b123e03" +
+    "ff000e000067ba0000008f003203ff000d000067ba000000af0100f0005000f1" +
+    "00120060e2006806000000000001000b890000000181000486c887000c840006" +
+    "0a24181e6af88800018c30008b123f03ff000e000067ba0000008f004903ff00" +
+    "0d000067ba000000af0100f0005000f100120060e2006806000000000001000c" +
+    "890000000181000186c787000d8400060a24181e6ee08800018c30008b124003" +
+    "ff000e000067ba0000008f006003ff000d000067ba000000af0100f0005000f1" +
+    "00120060e2006806000000000001000d890000000181000286c687000e840006" +
+    "0a24181e72c88800018c30008b124103ff000e000067ba0000008f007703ff00" +
+    "0d000067ba000000af0100f0005000f100120060e2006806000000000001000e" +
+    "890000000181000386c587000f8400060a24181e76b08800018c30008b124203" +
+    "ff000e000067ba0000008f008e03ff000d000067ba000000af0100f0005000f1" +
+    "00120060e2006806000000000001000f890000000181000486c4870010840006" +
+    "0a24181e7a988800018c30008b124303ff000e000067ba0000008f00a503ff00" +
+    "0d000067ba000000af01";
+
+  /**
+   * Tag rows of an RQL "SELECT ... FROM tag_id" response from an Astra,
+   * in the order of the Astra read field names.
+   */
+  static final String[] RQL_TAG_ROWS = {
+    "1|1|0x300833B2DDD9014000000000A0D7|915250|12001|12|-61",
+    "2|3|0x300833B2DDD9014000000001E1C6|902750|12847|12|-58",
+    "3|2|0x300833B2DDD90140000000023315|927250|13602|12|-70",
+    "4|1|0x300833B2DDD9014000000003A2F4|910250|14488|12|-64",
+  };
+
+  static byte[] bytes(String hex)
+  {
+    return ReaderUtil.hexStringToByteArray(hex);
+  }
+
+  /**
+   * Place a serial response in a message the way SerialReader.send()
+   * leaves it: data from index 0, read index at the first data byte and
+   * write index at the end of the data.
+   */
+  static void load(SerialReader.Message m, byte[] frame)
+  {
+    System.arraycopy(frame, 0, m.data, 0, frame.length);
+    m.readIndex = 5;
+    m.writeIndex = frame.length - 2;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merging the reads of one read() call, as readInternal() does, with
+ * every tag seen 8 times over 4 antennas.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeduplicateBenchmark
+{
+  @Param({"64", "1024"})
+  public int reads;
+
+  @Param({"false", "true"})
+  public boolean uniqueByAntenna;
+
+  private TagReadDeduplicator deduplicator;
+  private TagReadData[] source;
+  private List<TagReadData> tagvec;
+
+  @Setup
+  public void setup()
+  {
+    deduplicator = new TagReadDeduplicator(uniqueByAntenna, false, false, true);
+    int unique = reads / 8;
+    source = new TagReadData[reads];
+    for (int i = 0; i < reads; i++)
+    {
+      int n = i % unique;
+      byte[] epc = { (byte)0xe2, 0x00, 0x68, 0x06, 0, 0, 0, 0, 0, 0x01,
+                     (byte)(n >> 8), (byte)n };
+      TagReadData t = new TagReadData();
+      t.tag = new Gen2.TagData(epc, new byte[] { 0x12, 0x34 }, new byte[] { 0x30, 0x00 });
+      t.readProtocol = TagProtocol.GEN2;
+      t.antenna = 1 + (i / unique) % 4;
+      t.rssi = -50 - (i % 13);
+      source[i] = t;
+    }
+    tagvec = new ArrayList<TagReadData>(reads);
+  }
+
+  @Benchmark
+  public List<TagReadData> removeDuplicates()
+  {
+    tagvec.clear();
+    for (TagReadData t : source)
+    {
+      t.readCount = 1;
+      tagvec.add(t);
+    }
+    deduplicator.removeDuplicates(tagvec);
+    return tagvec;
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.llrp.ltk.generated.LLRPMessageFactory;
+import org.llrp.ltk.generated.messages.RO_ACCESS_REPORT;
+import org.llrp.ltk.generated.parameters.FrequencyHopTable;
+import org.llrp.ltk.generated.parameters.TagReportData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * LLRP tag reports: decoding an RO_ACCESS_REPORT with LTK, and turning
+ * its TagReportData into TagReadData with TagProcessor.processData() as
+ * during continuous reading.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LlrpReportBenchmark
+{
+  private byte[] report;
+  private List<TagReportData> tags;
+  private LLRPReader.TagProcessor processor;
+  private TagReadData last;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    report = BenchmarkFrames.bytes(BenchmarkFrames.RO_ACCESS_REPORT);
+    tags = ((RO_ACCESS_REPORT) LLRPMessageFactory.createLLRPMessage(report))
+      .getTagReportDataList();
+
+    // The state connect() and startReading() leave behind on a reader
+    // that reports the protocol and phase of each tag
+    LLRPReader reader = new LLRPReader("127.0.0.1", 5084);
+    Field softwareVersion = LLRPReader.class.getDeclaredField("_softwareVersion");
+    softwareVersion.setAccessible(true);
+    softwareVersion.set(reader, "5.3.2.97");
+    reader.featuresFlag.add(Reader.ReaderFeaturesFlag.READER_FEATURES_FLAG_ANTENNA_READ_TIME);
+    reader.frequencyHopTableList = new ArrayList<FrequencyHopTable>();
+    reader.continuousReading = true;
+    reader.addReadListener(new ReadListener()
+    {
+      public void tagRead(Reader r, TagReadData t)
+      {
+        last = t;
+      }
+    });
+    processor = reader.new TagProcessor(reader);
+  }
+
+  @Benchmark
+  public Object decodeReport() throws Exception
+  {
+    return LLRPMessageFactory.createLLRPMessage(report);
+  }
+
+  @Benchmark
+  public void processData(Blackhole bh)
+  {
+    for (int i = 0; i < tags.size(); i++)
+    {
+      processor.processData(tags.get(i));
+      bh.consume(last);
+    }
+  }
+}
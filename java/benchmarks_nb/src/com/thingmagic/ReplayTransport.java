@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+/**
+ * Serial transport that answers every receive from a fixed list of
+ * frames, round and round, so a SerialReader can decode them without a
+ * module attached. Sent bytes are discarded.
+ */
+final class ReplayTransport implements StreamingSerialTransport
+{
+  private final byte[] stream;
+  private int position;
+
+  ReplayTransport(byte[][] frames)
+  {
+    int length = 0;
+    for (byte[] f : frames)
+    {
+      length += f.length;
+    }
+    stream = new byte[length];
+    int off = 0;
+    for (byte[] f : frames)
+    {
+      System.arraycopy(f, 0, stream, off, f.length);
+      off += f.length;
+    }
+  }
+
+  public void open()
+  {
+  }
+
+  public void sendBytes(int length, byte[] message, int offset, int timeoutMillis)
+  {
+  }
+
+  public byte[] receiveBytes(int length, byte[] messageSpace, int offset, int timeoutMillis)
+  {
+    if (messageSpace == null)
+    {
+      messageSpace = new byte[length + offset];
+    }
+    for (int i = 0; i < length; i++)
+    {
+      messageSpace[offset + i] = stream[position];
+      position = (position + 1) % stream.length;
+    }
+    return messageSpace;
+  }
+
+  public int receiveAvailable(byte[] messageSpace, int offset, int maxLength, int timeoutMillis)
+  {
+    // Stop at the end of the recording, which is also the end of a frame
+    int n = Math.min(maxLength, stream.length - position);
+    System.arraycopy(stream, position, messageSpace, offset, n);
+    position = (position + n) % stream.length;
+    return n;
+  }
+
+  public int getBaudRate()
+  {
+    return 115200;
+  }
+
+  public void setBaudRate(int rate)
+  {
+  }
+
+  public void flush()
+  {
+  }
+
+  public void shutdown()
+  {
+  }
+
+  public SerialReader createSerialReader(String uri)
+  {
+    return null;
+  }
+}
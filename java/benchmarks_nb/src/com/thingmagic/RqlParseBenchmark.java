@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing the tag rows of an RQL read response from an Astra.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RqlParseBenchmark
+{
+  private RqlReader reader;
+  private Method parseRqlResponse;
+  // One parseRqlResponse(row, baseTime) argument list per row
+  private Object[][] args;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    reader = new RqlReader("127.0.0.1", 8080);
+    // What connect() sets for an Astra
+    reader.model = "Astra";
+    Field astra = RqlReader.class.getDeclaredField("_astraReadFieldNames");
+    astra.setAccessible(true);
+    Field fieldNames = RqlReader.class.getDeclaredField("_readFieldNames");
+    fieldNames.setAccessible(true);
+    fieldNames.set(null, astra.get(null));
+
+    parseRqlResponse = RqlReader.class.getDeclaredMethod("parseRqlResponse",
+                                                         String.class, Date.class);
+    parseRqlResponse.setAccessible(true);
+    Date baseTime = new Date();
+    String[] rows = BenchmarkFrames.RQL_TAG_ROWS;
+    args = new Object[rows.length][];
+    for (int i = 0; i < rows.length; i++)
+    {
+      args[i] = new Object[] { rows[i], baseTime };
+    }
+  }
+
+  @Benchmark
+  public void parseRows(Blackhole bh) throws Exception
+  {
+    for (Object[] a : args)
+    {
+      bh.consume(parseRqlResponse.invoke(reader, a));
+    }
+  }
+}
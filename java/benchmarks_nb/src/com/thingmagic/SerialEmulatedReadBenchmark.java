@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One synchronous search cycle against SerialTransportEmulator: a 100 ms
+ * Read Tag Multiple, then the Get Tag Buffer round trips that drain it,
+ * through frame encoding, CRC and decoding. The emulator answers at once
+ * instead of after the search time, and reads 20000 tags a second over
+ * 2 antennas, so each cycle makes about 2000 reads, which the tag buffer
+ * merges by tag and antenna. (read() itself is no use here: it repeats the search
+ * until its timeout has passed, however fast the module answers.)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialEmulatedReadBenchmark
+{
+  @Param({"100", "1000"})
+  public int tags;
+
+  private SerialReader reader;
+
+  @Setup
+  public void setup() throws ReaderException
+  {
+    SerialTransportEmulator emulator = new SerialTransportEmulator();
+    emulator.setRealTime(false);
+    emulator.setTagPopulation(tags);
+    emulator.setReadRate(20000);
+    emulator.setAntennas(4, 1, 2);
+    emulator.setTagBufferCapacity(2 * tags);
+    reader = new SerialReader(emulator);
+    reader.connect();
+    reader.paramSet(TMConstants.TMR_PARAM_REGION_ID, Reader.Region.NA);
+    reader.paramSet(TMConstants.TMR_PARAM_READ_PLAN,
+      new SimpleReadPlan(new int[] {1, 2}, TagProtocol.GEN2, null, null, 1000));
+    // Sets up the module's antenna search list
+    reader.read(10);
+  }
+
+  @TearDown
+  public void tearDown()
+  {
+    reader.destroy();
+  }
+
+  @Benchmark
+  public List<TagReadData> searchCycle() throws ReaderException
+  {
+    reader.cmdReadTagMultiple(100, SerialReader.AntennaSelection.CONFIGURED_LIST,
+      TagProtocol.GEN2, null, false);
+    return reader.getAllTagReadsFromBuffer();
+  }
+}
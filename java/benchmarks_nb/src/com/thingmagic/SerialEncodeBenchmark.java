@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding search commands: a two plan multiprotocol search, and the
+ * embedded TID read that goes with a Select filter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialEncodeBenchmark
+{
+  private SerialReader reader;
+  private SerialReader.Message m;
+  private List<SimpleReadPlan> plans;
+  private Set<TagReadData.TagMetadataFlag> metadata;
+  private Method msgEmbedded;
+  // msgEmbedded(m, plan, readTimeout, searchFlags, filter, fastSearch)
+  private Object[] embeddedArgs;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    reader = new SerialReader("replay", new ReplayTransport(new byte[0][]));
+    m = new SerialReader.Message();
+    int[] antennas = { 1, 2 };
+    Gen2.Select select = new Gen2.Select(false, Gen2.Bank.EPC, 32, 16,
+                                         new byte[] { (byte)0xe2, 0x00 });
+    Gen2.ReadData readTid = new Gen2.ReadData(Gen2.Bank.TID, 0, (byte)6);
+    SimpleReadPlan inventory = new SimpleReadPlan(antennas, TagProtocol.GEN2, select, 100);
+    SimpleReadPlan embedded = new SimpleReadPlan(antennas, TagProtocol.GEN2, select, readTid, 100);
+    plans = new ArrayList<SimpleReadPlan>();
+    plans.add(inventory);
+    plans.add(embedded);
+    metadata = EnumSet.of(TagReadData.TagMetadataFlag.READCOUNT,
+                          TagReadData.TagMetadataFlag.RSSI,
+                          TagReadData.TagMetadataFlag.ANTENNAID,
+                          TagReadData.TagMetadataFlag.TIMESTAMP);
+    // Added by connect() once it knows the module
+    reader.addParam(TMConstants.TMR_PARAM_READER_METADATA, Set.class, metadata, true, null);
+
+    msgEmbedded = SerialReader.class.getDeclaredMethod("msgEmbedded",
+      SerialReader.Message.class, SimpleReadPlan.class, int.class, int.class,
+      TagFilter.class, boolean.class);
+    msgEmbedded.setAccessible(true);
+    embeddedArgs = new Object[] { m, embedded, 500,
+      EmbeddedReaderMessage.READ_MULTIPLE_SEARCH_FLAGS_SEARCH_LIST
+        | EmbeddedReaderMessage.READ_MULTIPLE_SEARCH_FLAGS_EMBEDDED_OP,
+      select, false };
+  }
+
+  @Benchmark
+  public int multiProtocolSearch() throws ReaderException
+  {
+    m.writeIndex = 2;
+    reader.msgSetupMultiProtocolSearch(EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE,
+                                       plans, metadata, 0, 1000, m);
+    return m.writeIndex;
+  }
+
+  @Benchmark
+  public int embeddedRead() throws Exception
+  {
+    m.writeIndex = 2;
+    msgEmbedded.invoke(reader, embeddedArgs);
+    return m.writeIndex;
+  }
+}
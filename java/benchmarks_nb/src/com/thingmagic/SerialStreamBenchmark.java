@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Receiving one streamed tag response during continuous reading: frame
+ * reception and CRC check through receiveResponseStream(), decoding, and
+ * delivery to a ReadListener, with no notifier thread in between.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialStreamBenchmark
+{
+  private SerialReader reader;
+  private SerialReader.Message m;
+  private Method receiveResponseStream;
+  // receiveResponseStream(readTimeout, m), reused so the call does not allocate
+  private Object[] args;
+  private TagReadData last;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    String[] hex = BenchmarkFrames.STREAM_TAG_RESPONSES;
+    byte[][] frames = new byte[hex.length][];
+    for (int i = 0; i < hex.length; i++)
+    {
+      frames[i] = BenchmarkFrames.bytes(hex[i]);
+    }
+    reader = new SerialReader("replay", new ReplayTransport(frames));
+    reader.addReadListener(new ReadListener()
+    {
+      public void tagRead(Reader r, TagReadData t)
+      {
+        last = t;
+      }
+    });
+    // The state cmdMultiProtocolSearch() sets up before streaming
+    reader.opCode = 0x22;
+    reader.useStreaming = true;
+    Field baseTimestamp = SerialReader.class.getDeclaredField("baseTimestamp");
+    baseTimestamp.setAccessible(true);
+    baseTimestamp.setLong(reader, System.currentTimeMillis());
+
+    receiveResponseStream = SerialReader.class.getDeclaredMethod(
+      "receiveResponseStream", int.class, SerialReader.Message.class);
+    receiveResponseStream.setAccessible(true);
+    m = new SerialReader.Message();
+    args = new Object[] { 100, m };
+  }
+
+  @Benchmark
+  public TagReadData tagResponse() throws Exception
+  {
+    receiveResponseStream.invoke(reader, args);
+    return last;
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Decoding the tags of Get Tag Buffer responses: the metadata records
+ * read by getAllTagReads() through metadataFromMessage() and parseTag(),
+ * and the older fixed records read by parseTagBuffer().
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialTagBufferBenchmark
+{
+  private SerialReader reader;
+  private SerialReader.Message metadataResponse;
+  private SerialReader.Message recordResponse;
+
+  @Setup
+  public void setup() throws ReaderException
+  {
+    reader = new SerialReader("replay", new ReplayTransport(new byte[0][]));
+    metadataResponse = new SerialReader.Message();
+    BenchmarkFrames.load(metadataResponse,
+      BenchmarkFrames.bytes(BenchmarkFrames.TAG_BUFFER_METADATA_RESPONSE));
+    recordResponse = new SerialReader.Message();
+    BenchmarkFrames.load(recordResponse,
+      BenchmarkFrames.bytes(BenchmarkFrames.TAG_BUFFER_RECORD_RESPONSE));
+  }
+
+  /**
+   * Decode all 7 tags of a response with metadata, as decodeTagBuffer()
+   * does.
+   */
+  @Benchmark
+  public void metadataRecords(Blackhole bh)
+  {
+    SerialReader.Message m = metadataResponse;
+    m.readIndex = 5;
+    int bits = m.getu16();
+    m.readIndex++; // read options
+    int numTags = m.getu8();
+    SerialReader.MetadataDecoder decoder = reader.metadataDecoder(bits);
+    for (int i = 0; i < numTags; i++)
+    {
+      TagReadData t = new TagReadData();
+      reader.metadataFromMessage(t, m, decoder);
+      t.tag = reader.parseTag(m, m.getu16() / 8, t.readProtocol);
+      bh.consume(t);
+    }
+  }
+
+  @Benchmark
+  public TagData[] fixedRecords()
+  {
+    recordResponse.readIndex = 5;
+    return reader.parseTagBuffer(recordResponse, false, TagProtocol.GEN2);
+  }
+}
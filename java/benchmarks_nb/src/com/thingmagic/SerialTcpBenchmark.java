@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The search cycle of SerialEmulatedReadBenchmark, with SerialTransportTCP
+ * in between: the reader talks to a loopback socket whose other end feeds
+ * SerialTransportEmulator, as a serial-to-Ethernet bridge would feed a
+ * module. The difference from SerialEmulatedReadBenchmark is the cost of
+ * the TCP transport. A transport that sleeps while it waits for data
+ * shows up here as milliseconds per cycle.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerialTcpBenchmark
+{
+  @Param({"100", "1000"})
+  public int tags;
+
+  private ServerSocket server;
+  private SerialReader reader;
+
+  @Setup
+  public void setup() throws Exception
+  {
+    final SerialTransportEmulator emulator = new SerialTransportEmulator();
+    emulator.setRealTime(false);
+    emulator.setTagPopulation(tags);
+    emulator.setReadRate(20000);
+    emulator.setAntennas(4, 1, 2);
+    emulator.setTagBufferCapacity(2 * tags);
+    emulator.open();
+    server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    Thread bridge = new Thread("emulator bridge")
+    {
+      public void run()
+      {
+        try
+        {
+          bridge(server.accept(), emulator);
+        }
+        catch (IOException ex)
+        {
+          // Server closed by tearDown
+        }
+      }
+    };
+    bridge.setDaemon(true);
+    bridge.start();
+
+    reader = new SerialReader("tmr://127.0.0.1",
+      new SerialTransportTCP("tcp://127.0.0.1:" + server.getLocalPort()));
+    reader.connect();
+    reader.paramSet(TMConstants.TMR_PARAM_REGION_ID, Reader.Region.NA);
+    reader.paramSet(TMConstants.TMR_PARAM_READ_PLAN,
+      new SimpleReadPlan(new int[] {1, 2}, TagProtocol.GEN2, null, null, 1000));
+    // Sets up the module's antenna search list
+    reader.read(10);
+  }
+
+  /**
+   * Pass commands from the socket to the emulator on this thread, and
+   * responses back on another, until the socket closes.
+   */
+  private static void bridge(final Socket socket, final SerialTransportEmulator emulator) throws IOException
+  {
+    socket.setTcpNoDelay(true);
+    final OutputStream out = socket.getOutputStream();
+    Thread responses = new Thread("emulator responses")
+    {
+      public void run()
+      {
+        byte[] buf = new byte[4096];
+        while (!socket.isClosed())
+        {
+          try
+          {
+            int n = emulator.receiveAvailable(buf, 0, buf.length, 100);
+            out.write(buf, 0, n);
+          }
+          catch (ReaderException ex)
+          {
+            // Timeout: nothing to send yet
+          }
+          catch (IOException ex)
+          {
+            return;
+          }
+        }
+      }
+    };
+    responses.setDaemon(true);
+    responses.start();
+    InputStream in = socket.getInputStream();
+    byte[] buf = new byte[4096];
+    int n;
+    try
+    {
+      while ((n = in.read(buf)) > 0)
+      {
+        emulator.sendBytes(n, buf, 0, 0);
+      }
+    }
+    catch (ReaderException ex)
+    {
+      // Emulator shut down
+    }
+    finally
+    {
+      socket.close();
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException
+  {
+    reader.destroy();
+    server.close();
+  }
+
+  @Benchmark
+  public List<TagReadData> searchCycle() throws ReaderException
+  {
+    reader.cmdReadTagMultiple(100, SerialReader.AntennaSelection.CONFIGURED_LIST,
+      TagProtocol.GEN2, null, false);
+    return reader.getAllTagReadsFromBuffer();
+  }
+}
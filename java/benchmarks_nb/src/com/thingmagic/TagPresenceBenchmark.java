@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * TagPresenceTracker with a large tag population: feeding reads of tags
+ * not yet present, re-reading half of the present tags, and one tick of
+ * the timing wheel when no tag is due.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagPresenceBenchmark
+{
+  // Long enough that no tag expires however far the ticks run
+  private static final long ABSENCE_TIMEOUT = Long.MAX_VALUE / 4;
+
+  static TagReadData[] reads(int tags)
+  {
+    TagReadData[] reads = new TagReadData[tags];
+    for (int i = 0; i < tags; i++)
+    {
+      byte[] epc = { (byte)0xe2, 0x00, 0x68, 0x06, 0, 0, 0, 0,
+                     (byte)(i >> 24), (byte)(i >> 16), (byte)(i >> 8), (byte)i };
+      TagReadData t = new TagReadData();
+      t.tag = new Gen2.TagData(epc, new byte[] { 0x12, 0x34 }, new byte[] { 0x30, 0x00 });
+      t.readProtocol = TagProtocol.GEN2;
+      t.antenna = 1 + i % 4;
+      t.rssi = -50 - (i % 13);
+      t.readCount = 1;
+      reads[i] = t;
+    }
+    return reads;
+  }
+
+  /** A new, empty tracker for every call */
+  @State(Scope.Thread)
+  public static class Empty
+  {
+    @Param({"10000", "100000"})
+    public int tags;
+
+    TagReadData[] reads;
+    TagPresenceTracker tracker;
+
+    @Setup(Level.Trial)
+    public void setupReads()
+    {
+      reads = reads(tags);
+    }
+
+    @Setup(Level.Invocation)
+    public void setupTracker()
+    {
+      tracker = new TagPresenceTracker(ABSENCE_TIMEOUT);
+    }
+  }
+
+  /** A tracker holding every tag, kept across calls */
+  @State(Scope.Thread)
+  public static class Present
+  {
+    @Param({"10000", "100000"})
+    public int tags;
+
+    TagReadData[] reads;
+    TagPresenceTracker tracker;
+    long now;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+      reads = reads(tags);
+      tracker = new TagPresenceTracker(ABSENCE_TIMEOUT);
+      for (TagReadData t : reads)
+      {
+        tracker.tagRead(null, t);
+      }
+      now = System.currentTimeMillis();
+    }
+  }
+
+  /** Every tag enters the field: one ENTER each, no listeners */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public int enterTags(Empty state)
+  {
+    TagPresenceTracker tracker = state.tracker;
+    for (TagReadData t : state.reads)
+    {
+      tracker.tagRead(null, t);
+    }
+    return tracker.size();
+  }
+
+  /** Every other present tag is read again */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public int rereadHalf(Present state)
+  {
+    TagPresenceTracker tracker = state.tracker;
+    TagReadData[] reads = state.reads;
+    for (int i = 0; i < reads.length; i += 2)
+    {
+      tracker.tagRead(null, reads[i]);
+    }
+    return tracker.size();
+  }
+
+  /**
+   * One tick with every tag present and none due. Each tick visits one
+   * of the 512 wheel slots and puts back the entries filed there, so a
+   * run of ticks averages tags / 512 entries per tick.
+   */
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int tick(Present state)
+  {
+    state.now += TagPresenceTracker.DEFAULT_TICK_MILLIS;
+    state.tracker.advance(state.now);
+    return state.tracker.size();
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of the commands a SerialReader exchanges with the module, kept
+ * per opcode in flat atomic arrays so that recording a command neither
+ * locks nor allocates. See SerialReader.getCommandStats().
+ */
+final class CommandRecorder
+{
+  static final int OPCODES = 256;
+  // Latency histogram buckets: bucket i counts latencies below 2^i us
+  static final int BUCKETS = 25;
+  // Status codes are sparse; a small open addressed table holds them
+  private static final int CODE_SLOTS = 64;
+
+  // Per opcode counters, FIELDS apart
+  private static final int SENT = 0;
+  private static final int RECEIVED = 1;
+  private static final int TIMEOUTS = 2;
+  private static final int CRC_FAILURES = 3;
+  private static final int CODE_ERRORS = 4;
+  private static final int ERRORS = 5;
+  private static final int BYTES_OUT = 6;
+  private static final int BYTES_IN = 7;
+  private static final int LATENCY_TOTAL = 8;
+  private static final int LATENCY_MAX = 9;
+  private static final int LATENCY_COUNT = 10;
+  private static final int FIELDS = 11;
+
+  private final AtomicLongArray counters = new AtomicLongArray(OPCODES * FIELDS);
+  private final AtomicLongArray histogram = new AtomicLongArray(OPCODES * BUCKETS);
+  private final AtomicIntegerArray codes = new AtomicIntegerArray(CODE_SLOTS);
+  private final AtomicLongArray codeCounts = new AtomicLongArray(CODE_SLOTS);
+  private final AtomicLong otherCodes = new AtomicLong();
+  // Cumulative frame decoder counters, and their values at the last reset
+  private final AtomicLong resyncs = new AtomicLong();
+  private final AtomicLong discardedBytes = new AtomicLong();
+  private volatile long resyncsBase;
+  private volatile long discardedBase;
+
+  void sent(int opcode, int bytes)
+  {
+    int base = (opcode & 0xff) * FIELDS;
+    counters.incrementAndGet(base + SENT);
+    counters.addAndGet(base + BYTES_OUT, bytes);
+  }
+
+  void received(int opcode, int bytes)
+  {
+    int base = (opcode & 0xff) * FIELDS;
+    counters.incrementAndGet(base + RECEIVED);
+    counters.addAndGet(base + BYTES_IN, bytes);
+  }
+
+  /**
+   * Record the time from sending a command to receiving its response.
+   */
+  void latency(int opcode, long nanos)
+  {
+    int op = opcode & 0xff;
+    int base = op * FIELDS;
+    counters.addAndGet(base + LATENCY_TOTAL, nanos);
+    counters.incrementAndGet(base + LATENCY_COUNT);
+    long max;
+    do
+    {
+      max = counters.get(base + LATENCY_MAX);
+    } while (nanos > max && !counters.compareAndSet(base + LATENCY_MAX, max, nanos));
+    long micros = nanos / 1000;
+    int bucket = (micros <= 0) ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    histogram.incrementAndGet(op * BUCKETS + bucket);
+  }
+
+  void timeout(int opcode)
+  {
+    counters.incrementAndGet((opcode & 0xff) * FIELDS + TIMEOUTS);
+  }
+
+  void crcFailure(int opcode)
+  {
+    counters.incrementAndGet((opcode & 0xff) * FIELDS + CRC_FAILURES);
+  }
+
+  void error(int opcode)
+  {
+    counters.incrementAndGet((opcode & 0xff) * FIELDS + ERRORS);
+  }
+
+  /**
+   * Record a non-zero status returned by the module.
+   */
+  void codeError(int opcode, int code)
+  {
+    counters.incrementAndGet((opcode & 0xff) * FIELDS + CODE_ERRORS);
+    // Codes are non-zero, so zero marks a free slot
+    int slot = (code * 0x9E3779B1) >>> 26;
+    for (int i = 0; i < CODE_SLOTS; i++)
+    {
+      int s = (slot + i) & (CODE_SLOTS - 1);
+      int k = codes.get(s);
+      if (k == 0 && codes.compareAndSet(s, 0, code))
+      {
+        k = code;
+      }
+      if (k == code)
+      {
+        codeCounts.incrementAndGet(s);
+        return;
+      }
+    }
+    otherCodes.incrementAndGet();
+  }
+
+  /**
+   * Take the frame decoder's cumulative resynchronization counters.
+   */
+  void decoderCounters(long sohResyncs, long discarded)
+  {
+    resyncs.lazySet(sohResyncs);
+    discardedBytes.lazySet(discarded);
+  }
+
+  void reset()
+  {
+    for (int i = 0; i < counters.length(); i++)
+    {
+      counters.set(i, 0);
+    }
+    for (int i = 0; i < histogram.length(); i++)
+    {
+      histogram.set(i, 0);
+    }
+    for (int i = 0; i < CODE_SLOTS; i++)
+    {
+      codeCounts.set(i, 0);
+    }
+    otherCodes.set(0);
+    resyncsBase = resyncs.get();
+    discardedBase = discardedBytes.get();
+  }
+
+  SerialReader.CommandStats snapshot()
+  {
+    List<SerialReader.OpcodeStats> opcodes = new ArrayList<SerialReader.OpcodeStats>();
+    for (int op = 0; op < OPCODES; op++)
+    {
+      int base = op * FIELDS;
+      long sent = counters.get(base + SENT);
+      long received = counters.get(base + RECEIVED);
+      long timeouts = counters.get(base + TIMEOUTS);
+      long crc = counters.get(base + CRC_FAILURES);
+      long codeErrors = counters.get(base + CODE_ERRORS);
+      long errors = counters.get(base + ERRORS);
+      if ((sent | received | timeouts | crc | codeErrors | errors) == 0)
+      {
+        continue;
+      }
+      long[] buckets = new long[BUCKETS];
+      for (int b = 0; b < BUCKETS; b++)
+      {
+        buckets[b] = histogram.get(op * BUCKETS + b);
+      }
+      opcodes.add(new SerialReader.OpcodeStats(op, sent, received, timeouts, crc,
+        codeErrors, errors, counters.get(base + BYTES_OUT), counters.get(base + BYTES_IN),
+        counters.get(base + LATENCY_COUNT), counters.get(base + LATENCY_TOTAL),
+        counters.get(base + LATENCY_MAX), buckets));
+    }
+    Map<Integer, Long> statusCodes = new LinkedHashMap<Integer, Long>();
+    for (int s = 0; s < CODE_SLOTS; s++)
+    {
+      int code = codes.get(s);
+      long n = codeCounts.get(s);
+      if (code != 0 && n != 0)
+      {
+        statusCodes.put(code, n);
+      }
+    }
+    return new SerialReader.CommandStats(opcodes, statusCodes, otherCodes.get(),
+                                         resyncs.get() - resyncsBase,
+                                         discardedBytes.get() - discardedBase);
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.Arrays;
+
+/**
+ * Compact, immutable key for an EPC, intended for maps and sets keyed by
+ * tag. EPCs of up to 128 bits are packed into two longs, so equality and
+ * hashing need no byte-array or string work; longer EPCs keep a copy of
+ * their bytes. Two keys are equal when their EPC bytes are equal.
+ */
+public final class EpcKey
+{
+  private static final int PACKED_BYTES = 16;
+
+  private final long hi;
+  private final long lo;
+  private final int length;
+  // Only used for EPCs longer than PACKED_BYTES
+  private final byte[] bytes;
+  private final int hash;
+
+  private EpcKey(byte[] epc, int offset, int length)
+  {
+    this.length = length;
+    if (length <= PACKED_BYTES)
+    {
+      long h = 0;
+      long l = 0;
+      for (int i = 0; i < length; i++)
+      {
+        long b = epc[offset + i] & 0xff;
+        if (i < 8)
+        {
+          h |= b << (56 - 8 * i);
+        }
+        else
+        {
+          l |= b << (56 - 8 * (i - 8));
+        }
+      }
+      hi = h;
+      lo = l;
+      bytes = null;
+      hash = mix(h, l, length);
+    }
+    else
+    {
+      hi = 0;
+      lo = 0;
+      bytes = new byte[length];
+      System.arraycopy(epc, offset, bytes, 0, length);
+      hash = Arrays.hashCode(bytes);
+    }
+  }
+
+  private static int mix(long hi, long lo, int length)
+  {
+    long h = hi * 0x9E3779B97F4A7C15L + lo;
+    h ^= h >>> 32;
+    return (int) h * 31 + length;
+  }
+
+  /**
+   * Create a key for an EPC.
+   *
+   * @param epc the bytes of the EPC
+   * @return the key
+   */
+  public static EpcKey of(byte[] epc)
+  {
+    return new EpcKey(epc, 0, epc.length);
+  }
+
+  /**
+   * Create a key for an EPC held in part of an array.
+   *
+   * @param epc array holding the EPC
+   * @param offset position of the first EPC byte
+   * @param length number of EPC bytes
+   * @return the key
+   */
+  public static EpcKey of(byte[] epc, int offset, int length)
+  {
+    if (offset < 0 || length < 0 || offset + length > epc.length)
+    {
+      throw new IllegalArgumentException("EPC range out of bounds");
+    }
+    return new EpcKey(epc, offset, length);
+  }
+
+  /**
+   * Create a key from a hexadecimal EPC string, with or without a
+   * leading "0x".
+   *
+   * @param hex the EPC as hexadecimal
+   * @return the key
+   */
+  public static EpcKey fromHex(String hex)
+  {
+    return of(TagData.hexStringToBytes(hex.regionMatches(true, 0, "0x", 0, 2)
+                                       ? hex.substring(2) : hex));
+  }
+
+  /**
+   * Returns the length of the EPC in bytes.
+   *
+   * @return the EPC length
+   */
+  public int length()
+  {
+    return length;
+  }
+
+  /**
+   * Returns the bytes of the EPC.
+   *
+   * @return a new array containing the EPC
+   */
+  public byte[] toBytes()
+  {
+    if (bytes != null)
+    {
+      return bytes.clone();
+    }
+    byte[] out = new byte[length];
+    for (int i = 0; i < length; i++)
+    {
+      long word = (i < 8) ? hi : lo;
+      out[i] = (byte) (word >>> (56 - 8 * (i & 7)));
+    }
+    return out;
+  }
+
+  /**
+   * Returns the EPC as an upper-case hexadecimal string, the same form
+   * as TagData.epcString().
+   */
+  @Override
+  public String toString()
+  {
+    if (bytes != null)
+    {
+      return ReaderUtil.toHex(bytes, 0, length);
+    }
+    char[] out = new char[length * 2];
+    for (int i = 0; i < length; i++)
+    {
+      long word = (i < 8) ? hi : lo;
+      ReaderUtil.putHex(out, i * 2, (int) (word >>> (56 - 8 * (i & 7))));
+    }
+    return new String(out);
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    if (obj == this)
+    {
+      return true;
+    }
+    if (!(obj instanceof EpcKey))
+    {
+      return false;
+    }
+    EpcKey k = (EpcKey) obj;
+    return hash == k.hash && length == k.length && hi == k.hi && lo == k.lo
+      && (bytes == null || Arrays.equals(bytes, k.bytes));
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return hash;
+  }
+}
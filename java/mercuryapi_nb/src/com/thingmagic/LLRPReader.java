@@ -23,7 +23,7 @@ package com.thingmagic;
 
 import com.thingmagic.Gen2.NXP.G2I.ConfigWord;
 import java.io.BufferedReader;
-import java.math.BigInteger;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.ArrayList;
 import java.util.List;
@@ -54,6 +54,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Properties;
@@ -67,6 +68,20 @@ import java.util.TreeMap;
 import java.util.Vector;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import org.llrp.ltk.generated.custom.parameters.*;
 import org.llrp.ltk.generated.custom.enumerations.*;
 import org.llrp.ltk.generated.custom.messages.THINGMAGIC_CONTROL_REQUEST_POWER_CYCLE_READER;
@@ -89,10 +104,35 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     int _port;
     LLRPConnection readerConn;
     List<TagReadData> readData;
-    final BlockingQueue<TagReportData> tagReportQueue;
+    final BlockingQueue<ReportWork> tagReportQueue;
+    // Decodes report chunks ahead of the TagProcessor; null decodes on it
+    private volatile ExecutorService decodePool = null;
+    private int decodeThreads = 0;
+    // Tags received and not yet delivered, and how long the last and the
+    // slowest chunk took from receipt to delivery
+    private final AtomicInteger pendingTags = new AtomicInteger();
+    private volatile long decodeLagNanos = 0;
+    private final AtomicLong maxDecodeLagNanos = new AtomicLong();
+    // Reads of the RO_ACCESS_REPORT being processed, for ReadBatchListeners
+    private final List<TagReadData> reportBatch = new ArrayList<TagReadData>();
     final BlockingQueue<RFSurveyReportData> rfReportQueue;
+    // Thread running paramSetAll or paramGetAll. The batch state below is
+    // only used on that thread; other threads' commands go out as usual.
+    private volatile Thread batchOwner = null;
+    // paramSetAll state: settings waiting to go out in one SET_READER_CONFIG,
+    // the parameters that contributed them with their values from before
+    // the batch, and the parameter being set
+    private SET_READER_CONFIG pendingSetReaderConfig = null;
+    private Map<String, Object> pendingSetKeys = null;
+    private String batchSetKey = null;
+    private ParamBatchResult batchResult = null;
+    // paramGetAll state: GET_READER_CONFIG responses shared by the parameters
+    private Map<String, GET_READER_CONFIG_RESPONSE> configResponseMemo = null;
     protected List<TransportListener> _llrpListeners;
     protected boolean hasLLRPListeners;
+    // TransportTraces take the binary encoding, see notifyTransportListeners
+    private final List<TransportTrace> _llrpTraces = new ArrayList<TransportTrace>();
+    private boolean hasLLRPTraces;
     protected long readDuration;
     boolean continuousReading = false;
     int numberOfTagsToRead = 0;
@@ -121,9 +161,12 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     private int[] gpiList;
     private int[] gpoList;
     private Map<Integer,RFMode> capabilitiesCache = null;
-    boolean endOfAISpec = false;
-    boolean endOfROSpec = false;
-    boolean reportReceived = false;
+    volatile boolean endOfAISpec = false;
+    volatile boolean endOfROSpec = false;
+    volatile boolean reportReceived = false;
+    // Notified when endOfROSpec, reportReceived or isMsgRespReceived is
+    // set, for the threads waiting on them
+    private final Object llrpEvents = new Object();
     boolean standalone = false;
     boolean processData = false;
     private int TM_MANUFACTURER_ID = 26554;
@@ -138,19 +181,38 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     int[] freqHopTable;
     Map<Integer,TagProtocol> mapRoSpecIdToProtocol ;
     private int invSpecId = 0;
+    // ROSpecs a sync read left on the reader for the next read of the
+    // same plan, and whether reads leave them there
+    private InstalledROSpecs installedROSpecs = null;
+    private boolean reuseROSpecs = true;
+    // Guards installedROSpecs, which settings changes clear from other
+    // threads, and counts the clears, so that a read that built its
+    // ROSpecs before one does not keep them
+    private final Object installedLock = new Object();
+    private int installedGeneration = 0;
+    // LLRP messages sent, and how many the last read sent before its
+    // ROSpecs started
+    private final AtomicLong llrpMessagesSent = new AtomicLong();
+    private volatile int readSetupMessages = 0;
+    // When the reader sends RO_ACCESS_REPORTs; null for the defaults
+    private volatile ReportPolicy reportPolicy = null;
+    private ReportPoller reportPoller = null;
     private int maxSubPlanCount = 5; /*For TMreader build <5.3.2.93*/ 
-    static Set<TagReadData.TagMetadataFlag> metaDataFlags = EnumSet.of(TagReadData.TagMetadataFlag.ALL);
+    Set<TagReadData.TagMetadataFlag> metaDataFlags = EnumSet.of(TagReadData.TagMetadataFlag.ALL);
     boolean gen2LFFlag = false; 
     boolean gen2QFlag = false; 
     boolean gen2TargetFlag = false;
+    // The metadata the current ROSpecs report, resolved by buildROSpec.
+    // Read-only, so the report decoders can share it.
+    volatile Set<TagReadData.TagMetadataFlag> reportMetadataFlags = Collections.unmodifiableSet(EnumSet.of(TagReadData.TagMetadataFlag.ALL));
     int statsFlags = 0x00;
     int allStatsFlags = 4033;
     //Indicates start time of any operation. Any time an LLRP message is sent or received, msgStartTime is updated.
-    long msgStartTime = 0;
+    volatile long msgStartTime = 0;
     // capture the type of message sent here
     public LLRPMessage msgSent = null;
     // Flag to indicate RESPONSE is received
-    boolean isMsgRespReceived = false;
+    volatile boolean isMsgRespReceived = false;
     private SerialReader.ReaderStatsFlag[] statsEnabledFlags = {SerialReader.ReaderStatsFlag.NONE};
     
     LLRPReader(String hostname, int port)
@@ -158,7 +220,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         _hostname = hostname;
         _port = port;
         _llrpListeners = new ArrayList<TransportListener>();
-        tagReportQueue = new LinkedBlockingQueue<TagReportData>();
+        tagReportQueue = new LinkedBlockingQueue<ReportWork>();
         rfReportQueue = new LinkedBlockingQueue<RFSurveyReportData>();
         configureLogging();
     }
@@ -1216,6 +1278,22 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                 return getCustomReaderConfiguration(ReaderConfigParams.ASYNC_OFF);
             }
         });
+
+        addParam(TMR_PARAM_LLRP_REPORTPOLICY,
+               ReportPolicy.class, null, true,
+               new SettingAction() {
+
+            public Object set(Object value)
+            {
+                setReportPolicy((ReportPolicy) value);
+                return value;
+            }
+
+            public Object get(Object value)
+            {
+                return reportPolicy;
+            }
+        });
         
 
         if(featuresFlag.contains(ReaderFeaturesFlag.READER_FEATURES_FLAG_ANTENNA_READ_TIME))
@@ -1273,6 +1351,31 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         {
             featuresFlag.add(ReaderFeaturesFlag.READER_FEATURES_FLAG_STATE_AWARE);
         }
+        if(isTMReaderTagMetadataSupported())
+        {
+            featuresFlag.add(ReaderFeaturesFlag.READER_FEATURES_FLAG_TAG_METADATA);
+        }
+    }
+
+    /**
+     * This method will check whether tag reports carry phase, GPIO and Gen2
+     * metadata as custom parameters. Spruce release firmware (before 4.17)
+     * doesn't.
+     */
+    private boolean isTMReaderTagMetadataSupported()
+    {
+        try
+        {
+            StringTokenizer versionSplit = new StringTokenizer(_softwareVersion, ".");
+            int productVersion = Integer.parseInt(versionSplit.nextToken());
+            int buildVersion = Integer.parseInt(versionSplit.nextToken());
+            return (productVersion == 4 && buildVersion >= 17) || productVersion > 4;
+        }
+        catch (Exception ex)
+        {
+            System.out.println(ex.getMessage());
+        }
+        return false;
     }
 
     /**
@@ -1505,6 +1608,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     @Override
     public void connect() throws ReaderException
     {
+        invalidateParamCache();
         if(!_isConnected)
         {
             llrpConnect();            
@@ -1515,6 +1619,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     @Override
     public void reboot() throws ReaderException
     {
+        invalidateParamCache();
         try
         {
             if(readerConn != null)
@@ -2093,13 +2198,8 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
 
     private ActiveModeIndex getActiveMode() throws ReaderException
     {
-        TM_GET_READER_CONFIG readerConfig = new TM_GET_READER_CONFIG();
-        GetReaderConfigRequestedData reqData = new GetReaderConfigRequestedData();
         // Reader configuration is available as part of antenna Configuration
-        reqData.set(GetReaderConfigRequestedData.AntennaConfiguration);
-        readerConfig.setRequestedData(reqData);
-        // Now the message is fully framed, Send the message
-        GET_READER_CONFIG_RESPONSE readerConfigResp = (GET_READER_CONFIG_RESPONSE) LLRP_SendReceive(readerConfig);
+        GET_READER_CONFIG_RESPONSE readerConfigResp = getReaderConfigResponse(GetReaderConfigRequestedData.AntennaConfiguration);
         // get active mode index
         // Fetch the antenna configurationList from the response
         List<AntennaConfiguration> antConfigList = ((GET_READER_CONFIG_RESPONSE)readerConfigResp).getAntennaConfigurationList();
@@ -2126,7 +2226,6 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     {   
         // Create Set reader configuration message
         SET_READER_CONFIG setReaderConfig = new SET_READER_CONFIG();
-        SET_READER_CONFIG_RESPONSE setReaderConfigResp;
         // ResetToFactoryDefault should be zero to disable resetting the members
         setReaderConfig.setResetToFactoryDefault(new Bit(0));
         switch (configParam)
@@ -2221,16 +2320,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                 break;
         }//end of switch case
         //Now the message is fully framed, Send the message
-        setReaderConfigResp = (SET_READER_CONFIG_RESPONSE) LLRP_SendReceive(setReaderConfig);
-        if(setReaderConfigResp != null)
-        {
-            LLRPStatus status = setReaderConfigResp.getLLRPStatus();
-            String statusCode = status.getStatusCode().toString();
-            if(!(statusCode.equals("M_Success")))
-            {
-                throw  new ReaderException(status.getErrorDescription().toString());
-            }
-        }
+        sendSetReaderConfig(setReaderConfig);
     }
 
     private List makeSetSession(Object configValue) throws ReaderException
@@ -2261,7 +2351,6 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     {
         // Create Set reader configuration message
         SET_READER_CONFIG setReaderConfig = new SET_READER_CONFIG();
-        SET_READER_CONFIG_RESPONSE setReaderConfigResp;
         // ResetToFactoryDefault should be zero to disable resetting the members
         setReaderConfig.setResetToFactoryDefault(new Bit(0));
         switch (configParam)
@@ -2410,16 +2499,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                 break;
         }
             //now the message is fully framed,send the message
-            setReaderConfigResp = (SET_READER_CONFIG_RESPONSE) LLRP_SendReceive(setReaderConfig);
-            if(setReaderConfigResp != null)
-            {
-                LLRPStatus status = setReaderConfigResp.getLLRPStatus();
-                String statusCode = status.getStatusCode().toString();
-                if(!(statusCode.equals("M_Success")))
-                {
-                    throw  new ReaderException(status.getErrorDescription().toString());
-                }
-            }
+            sendSetReaderConfig(setReaderConfig);
         }
 
      // Method to set Custom Hoptable param value
@@ -3063,16 +3143,41 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     
     private GET_READER_CONFIG_RESPONSE getReaderConfigResponse(int requestData) throws ReaderException
     {
+        if (inBatch() && configResponseMemo != null)
+        {
+            // paramGetAll: answer from the prefetched full configuration
+            GET_READER_CONFIG_RESPONSE memo = configResponseMemo.get("all");
+            if (memo == null)
+            {
+                memo = configResponseMemo.get("std" + requestData);
+            }
+            if (memo != null)
+            {
+                return memo;
+            }
+        }
         TM_GET_READER_CONFIG readerConfig = new TM_GET_READER_CONFIG();
         GetReaderConfigRequestedData reqData = new GetReaderConfigRequestedData();
         reqData.set(requestData);
         readerConfig.setRequestedData(reqData);
         GET_READER_CONFIG_RESPONSE readerConfigResp = (GET_READER_CONFIG_RESPONSE) LLRP_SendReceive(readerConfig);
+        if (inBatch() && configResponseMemo != null && readerConfigResp != null)
+        {
+            configResponseMemo.put("std" + requestData, readerConfigResp);
+        }
         return readerConfigResp;
     }
 
     private GET_READER_CONFIG_RESPONSE getCustomReaderConfigResponse(int requestData) throws ReaderException
     {
+        if (inBatch() && configResponseMemo != null)
+        {
+            GET_READER_CONFIG_RESPONSE memo = configResponseMemo.get("custom" + requestData);
+            if (memo != null)
+            {
+                return memo;
+            }
+        }
         // Create Get reader config message
         TM_GET_READER_CONFIG readerConfig = new TM_GET_READER_CONFIG();
         GetReaderConfigRequestedData reqData = new GetReaderConfigRequestedData();
@@ -3093,9 +3198,234 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         readerConfig.addToCustomList(deviceConfiguration);
         //now the message is fully framed send the message
         GET_READER_CONFIG_RESPONSE readerConfigResp = (GET_READER_CONFIG_RESPONSE) LLRP_SendReceive(readerConfig);
+        if (inBatch() && configResponseMemo != null && readerConfigResp != null)
+        {
+            configResponseMemo.put("custom" + requestData, readerConfigResp);
+        }
         return readerConfigResp;
     }
 
+    /**
+     * Set the parameters in order, combining consecutive settings into one
+     * SET_READER_CONFIG. A setting is sent on its own, and any combined
+     * settings are flushed first, when it would overwrite part of the
+     * pending message. Pending settings are also flushed before any other
+     * message, so a parameter that reads the configuration to modify it
+     * sees the earlier settings. If a combined message fails, every
+     * parameter in it is reported with the error and goes back to the
+     * value it had before the batch. Only settings made by the calling
+     * thread are combined; commands from other threads are sent as usual
+     * and may reach the reader before the pending settings.
+     */
+    @Override
+    public synchronized ParamBatchResult paramSetAll(Map<String, Object> values)
+    {
+        ParamBatchResult result = new ParamBatchResult();
+        Thread previousOwner = batchOwner;
+        batchOwner = Thread.currentThread();
+        batchResult = result;
+        pendingSetKeys = new LinkedHashMap<String, Object>();
+        try
+        {
+            for (Map.Entry<String, Object> entry : values.entrySet())
+            {
+                batchSetKey = entry.getKey();
+                if (!batchParamSet(result, entry.getKey(), entry.getValue()))
+                {
+                    break;
+                }
+            }
+            batchSetKey = null;
+            flushPendingSetReaderConfig();
+        }
+        catch (ReaderCommException ex)
+        {
+            // Already recorded against the parameters of the pending message
+        }
+        finally
+        {
+            batchSetKey = null;
+            pendingSetReaderConfig = null;
+            pendingSetKeys = null;
+            batchResult = null;
+            batchOwner = previousOwner;
+        }
+        return result;
+    }
+
+    /**
+     * Get the parameters, fetching the standard reader configuration once
+     * with a single GET_READER_CONFIG and each ThingMagic custom
+     * configuration block at most once. Only the calling thread is
+     * answered from the fetched configuration.
+     */
+    @Override
+    public synchronized ParamBatchResult paramGetAll(Collection<String> keys)
+    {
+        Thread previousOwner = batchOwner;
+        batchOwner = Thread.currentThread();
+        configResponseMemo = new HashMap<String, GET_READER_CONFIG_RESPONSE>();
+        try
+        {
+            try
+            {
+                GET_READER_CONFIG_RESPONSE all = getReaderConfigResponse(GetReaderConfigRequestedData.All);
+                if (all != null)
+                {
+                    configResponseMemo.put("all", all);
+                }
+            }
+            catch (ReaderException ex)
+            {
+                // Fall back to fetching each part when it is first needed
+            }
+            return super.paramGetAll(keys);
+        }
+        finally
+        {
+            configResponseMemo = null;
+            batchOwner = previousOwner;
+        }
+    }
+
+    // True on the thread running paramSetAll or paramGetAll
+    private boolean inBatch()
+    {
+        return batchOwner == Thread.currentThread();
+    }
+
+    private void sendSetReaderConfig(SET_READER_CONFIG setReaderConfig) throws ReaderException
+    {
+        if (inBatch() && pendingSetKeys != null && batchSetKey != null && isCoalescable(setReaderConfig))
+        {
+            if (pendingSetReaderConfig != null && overlaps(pendingSetReaderConfig, setReaderConfig))
+            {
+                flushPendingSetReaderConfig();
+            }
+            if (pendingSetReaderConfig == null)
+            {
+                pendingSetReaderConfig = setReaderConfig;
+            }
+            else
+            {
+                for (AntennaConfiguration antConfig : setReaderConfig.getAntennaConfigurationList())
+                {
+                    pendingSetReaderConfig.addToAntennaConfigurationList(antConfig);
+                }
+                for (Custom custom : setReaderConfig.getCustomList())
+                {
+                    pendingSetReaderConfig.addToCustomList(custom);
+                }
+            }
+            // paramSet stores the new value as soon as this returns; keep
+            // the old one until the reader has accepted the setting
+            if (!pendingSetKeys.containsKey(batchSetKey))
+            {
+                pendingSetKeys.put(batchSetKey, params.get(batchSetKey.toLowerCase()).value);
+            }
+            return;
+        }
+        checkSetReaderConfigResponse((SET_READER_CONFIG_RESPONSE) LLRP_SendReceive(setReaderConfig));
+    }
+
+    private void checkSetReaderConfigResponse(SET_READER_CONFIG_RESPONSE setReaderConfigResp) throws ReaderException
+    {
+        if(setReaderConfigResp != null)
+        {
+            LLRPStatus status = setReaderConfigResp.getLLRPStatus();
+            String statusCode = status.getStatusCode().toString();
+            if(!(statusCode.equals("M_Success")))
+            {
+                throw  new ReaderException(status.getErrorDescription().toString());
+            }
+        }
+    }
+
+    /**
+     * Send the settings combined so far. A failure is recorded against
+     * each parameter that contributed, whose stored value is rolled back;
+     * only a communication failure is thrown, since it ends the batch.
+     */
+    private void flushPendingSetReaderConfig() throws ReaderCommException
+    {
+        SET_READER_CONFIG setReaderConfig = pendingSetReaderConfig;
+        if (setReaderConfig == null)
+        {
+            return;
+        }
+        Map<String, Object> previous = new LinkedHashMap<String, Object>(pendingSetKeys);
+        pendingSetReaderConfig = null;
+        pendingSetKeys.clear();
+        try
+        {
+            checkSetReaderConfigResponse((SET_READER_CONFIG_RESPONSE) LLRP_SendReceive(setReaderConfig));
+        }
+        catch (ReaderException ex)
+        {
+            for (Map.Entry<String, Object> entry : previous.entrySet())
+            {
+                params.get(entry.getKey().toLowerCase()).value = entry.getValue();
+            }
+            // Cached values and GET_READER_CONFIG responses fetched since
+            // the settings were stored may hold the rejected values
+            invalidateParamCache();
+            if (configResponseMemo != null)
+            {
+                configResponseMemo.clear();
+            }
+            for (String key : previous.keySet())
+            {
+                batchResult.fail(key, ex);
+            }
+            if (ex instanceof ReaderCommException)
+            {
+                throw (ReaderCommException) ex;
+            }
+        }
+    }
+
+    // Only antenna configuration and custom parameters are combined
+    private static boolean isCoalescable(SET_READER_CONFIG msg)
+    {
+        return msg.getReaderEventNotificationSpec() == null
+                && isEmpty(msg.getAntennaPropertiesList())
+                && msg.getROReportSpec() == null
+                && msg.getAccessReportSpec() == null
+                && msg.getKeepaliveSpec() == null
+                && isEmpty(msg.getGPOWriteDataList())
+                && isEmpty(msg.getGPIPortCurrentStateList())
+                && msg.getEventsAndReports() == null;
+    }
+
+    private static boolean isEmpty(List<?> list)
+    {
+        return list == null || list.isEmpty();
+    }
+
+    private static boolean overlaps(SET_READER_CONFIG pending, SET_READER_CONFIG next)
+    {
+        if (!isEmpty(pending.getAntennaConfigurationList())
+            && !isEmpty(next.getAntennaConfigurationList()))
+        {
+            return true;
+        }
+        if (isEmpty(pending.getCustomList()) || isEmpty(next.getCustomList()))
+        {
+            return false;
+        }
+        for (Custom custom : next.getCustomList())
+        {
+            for (Custom queued : pending.getCustomList())
+            {
+                if (queued.getClass() == custom.getClass())
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private GET_READER_CAPABILITIES_RESPONSE getCustomReaderCapabilitiesResponse(int requestData) throws ReaderException{
         //Initialize GET_READER_CAPABILITIES message
         GET_READER_CAPABILITIES readerCapabilities = new GET_READER_CAPABILITIES();
@@ -3176,6 +3506,11 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     @Override
     public void destroy()
     {        
+        invalidateParamCache();
+        listenerDispatcher.shutdown();
+        tagReadPublisher.complete();
+        setReportDecodeThreads(0);
+        stopReportPoller();
         CLOSE_CONNECTION close = new CLOSE_CONNECTION();
         CLOSE_CONNECTION_RESPONSE response = null;
         try
@@ -3330,24 +3665,78 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     public TagReadData[] read(long duration) throws ReaderException
     {
         readData = new Vector<TagReadData>();
+        long sent = llrpMessagesSent.get();
         enableEventsAndReports();
-        enableReaderNotification();
         ReadPlan rp = (ReadPlan)paramGet(TMR_PARAM_READ_PLAN);
-        readInternal(rp, duration);
+        readInternal(rp, duration, sent);
         // Reset num of readplans to 0 at the end of operation
         setNumPlans(0);
         return readData.toArray(new TagReadData[readData.size()]);
     }
 
-    private void readInternal(ReadPlan rp, long duration) throws ReaderException
+    private void readInternal(ReadPlan rp, long duration, long messagesSent) throws ReaderException
+    {
+        endOfROSpec = false;
+        endOfAISpec = false;
+        try
+        {
+            if (!restartInstalledROSpecs(rp, duration))
+            {
+                installROSpecs(rp, duration);
+            }
+            readSetupMessages = (int) (llrpMessagesSent.get() - messagesSent);
+            // verify for any failures during ROSPEC enable, add or start
+            verifyROSpecEndStatus();
+            msgStartTime = System.currentTimeMillis();
+            //wait for end of ROSpec event. Every message received moves
+            //msgStartTime on, so the deadline is worked out afresh each time.
+            synchronized (llrpEvents)
+            {
+                while (!endOfROSpec)
+                {
+                    long remaining = msgStartTime + duration + transportTimeout - System.currentTimeMillis();
+                    if(remaining < 0)
+                    {
+                        throw new ReaderException("Timeout");
+                    }
+                    try
+                    {
+                        llrpEvents.wait(remaining + 1);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        llrpLogger.error(ex.getMessage());
+                    }
+                }
+            }
+        }
+        catch (ReaderException re)
+        {
+            // The ROSpecs may still be running; install afresh next time
+            forgetInstalledROSpecs();
+            throw re;
+        }
+        stopBackgroundParser();
+    }
+
+    /**
+     * Delete whatever specs the reader has, then build, add, enable and
+     * start the ROSpecs (and AccessSpecs) for the read plan.
+     */
+    private void installROSpecs(ReadPlan rp, long duration) throws ReaderException
     {
+        enableReaderNotification();
         deleteROSpecs();
         deleteAccessSpecs();
+        // After the deletes, which forget the installed ROSpecs themselves
+        int generation;
+        synchronized (installedLock)
+        {
+            generation = installedGeneration;
+        }
         roSpecId = 0;
         accessSpecId = 0;
         opSpecId = 0;
-        endOfROSpec = false;
-        endOfAISpec = false;
         mapRoSpecIdToProtocol = new HashMap<Integer,TagProtocol>();
 
         startBackgroundParser();
@@ -3355,6 +3744,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         List<ROSpec> roSpecList = new ArrayList<ROSpec>();
         buildROSpec(rp, duration, roSpecList);        
         enableROSpecFlags(roSpecList.size());
+        boolean started = true;
         for(ROSpec roSpec : roSpecList)
         {            
             if (addROSpec(roSpec) && enableROSpec(roSpec.getROSpecID().intValue()))
@@ -3362,80 +3752,325 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                 if (!startROSpec(roSpec.getROSpecID().intValue()))
                 {
                     endOfROSpecFlags[roSpec.getROSpecID().intValue() - 1] = true;
+                    started = false;
                 }
             }
             else
             {
                 endOfROSpecFlags[roSpec.getROSpecID().intValue()-1] = true;
+                started = false;
             }
         }
-        // verify for any failures during ROSPEC enable, add or start
-        verifyROSpecEndStatus();
-        msgStartTime = System.currentTimeMillis();
-        while (!endOfROSpec)
+        if (reuseROSpecs && started)
         {
-            long currentTime = System.currentTimeMillis();
-            long diff = currentTime - msgStartTime;
-            if(diff > duration + transportTimeout)
+            synchronized (installedLock)
             {
-                throw new ReaderException("Timeout");
-            }
-            try{
-                //wait for end of ROSpec/AISpec event
-                // This sleep causes other threads waiting for CPU active.
-                Thread.sleep(10);
-            } catch (InterruptedException ex) {
-                llrpLogger.error(ex.getMessage());
+                if (generation == installedGeneration)
+                {
+                    installedROSpecs = new InstalledROSpecs(rp, duration, roSpecList.size(), this);
+                }
             }
         }
-        stopBackgroundParser();
     }
 
-    protected synchronized void startBackgroundParser()
+    /**
+     * Make the next read install its ROSpecs afresh.
+     */
+    private void forgetInstalledROSpecs()
     {
-        stopRequested = false;        
-        if (null == tagProcessor)
+        synchronized (installedLock)
         {
-            tagProcessor = new TagProcessor(this);
-            bkgThread = new Thread(tagProcessor);
-            bkgThread.setDaemon(true);
-            bkgThread.setPriority(Thread.MIN_PRIORITY);
-            bkgThread.start();
+            installedROSpecs = null;
+            installedGeneration++;
         }
-        
-        if (null == rfReportProcessor)
+    }
+
+    /**
+     * Start again the ROSpecs an earlier read of the same plan and
+     * duration left on the reader. A ROSpec with a null start trigger
+     * goes back to inactive when its AISpecs finish, so START_ROSPEC is
+     * all it needs.
+     *
+     * @return false if there are none to reuse or the reader no longer
+     * has them
+     */
+    private boolean restartInstalledROSpecs(ReadPlan rp, long duration) throws ReaderException
+    {
+        InstalledROSpecs installed;
+        synchronized (installedLock)
         {
-            rfReportProcessor = new RFReportProcessor(this);
-            rfThread = new Thread(rfReportProcessor);
-            rfThread.setDaemon(true);
-            rfThread.setPriority(Thread.MIN_PRIORITY);
-            rfThread.start();
+            installed = installedROSpecs;
+        }
+        if (null == installed || !installed.matches(rp, duration))
+        {
+            return false;
         }
+        log("Reusing the installed ROSpecs");
+        roSpecId = installed.count;
+        mapRoSpecIdToProtocol = installed.protocols;
+        setNumPlans(installed.numPlans);
+        isStopNTags = installed.stopNTags;
+        numberOfTagsToRead = installed.tagsToRead;
+
+        startBackgroundParser();
+        enableROSpecFlags(installed.count);
+        for (int id = 1; id <= installed.count; id++)
+        {
+            if (!restartROSpec(id))
+            {
+                // Another client or a reset removed them
+                forgetInstalledROSpecs();
+                return false;
+            }
+        }
+        return true;
     }
 
-    protected synchronized void stopBackgroundParser()
+    /**
+     * ROSpecs installed by a sync read, with the parser state that
+     * buildROSpec set up for them.
+     */
+    private static class InstalledROSpecs
     {
-        stopRequested = true;
-        if (null != tagProcessor)
+        final ReadPlan plan;
+        final long duration;
+        final int count;
+        final Map<Integer,TagProtocol> protocols;
+        final int numPlans;
+        final boolean stopNTags;
+        final int tagsToRead;
+
+        InstalledROSpecs(ReadPlan plan, long duration, int count, LLRPReader reader)
         {
-            tagProcessor.parseOff();
-            tagProcessor = null;
-            bkgThread.interrupt();
-            bkgThread = null;
+            this.plan = plan;
+            this.duration = duration;
+            this.count = count;
+            protocols = reader.mapRoSpecIdToProtocol;
+            numPlans = reader.getNumPlans();
+            stopNTags = reader.isStopNTags;
+            tagsToRead = reader.numberOfTagsToRead;
         }
-        if (null != rfReportProcessor)
+
+        boolean matches(ReadPlan plan, long duration)
         {
-            rfReportProcessor.parseOff();
-            rfReportProcessor = null;
-            rfThread.interrupt();
-            rfThread = null;
+            return this.plan == plan && this.duration == duration;
         }
     }
 
-    private void sendMessage(LLRPMessage message) throws ReaderException
+    /**
+     * Set whether read() leaves its ROSpecs and AccessSpecs on the reader,
+     * so that the next read of the same read plan and duration only sends
+     * START_ROSPEC. They are installed afresh after any paramSet, connect
+     * or startReading. Changes made to the read plan's fields in place
+     * take effect when the plan is set again with paramSet. On by default.
+     *
+     * @param reuse whether to reuse installed ROSpecs
+     */
+    public void setROSpecReuse(boolean reuse)
     {
-        log("Sending LLRP Messag ...." + message.getName());
+        reuseROSpecs = reuse;
+        if (!reuse)
+        {
+            forgetInstalledROSpecs();
+        }
+    }
+
+    /**
+     * Work out the metadata the tag reports will carry and publish it for
+     * the report decoders. Gen2 Q, LF and target come only when they were
+     * enabled through /reader/metadata.
+     */
+    private void resolveReportMetadataFlags()
+    {
+        Set<TagReadData.TagMetadataFlag> flags = EnumSet.noneOf(TagReadData.TagMetadataFlag.class);
+        flags.addAll(metaDataFlags);
+        if (!gen2QFlag)
+        {
+            flags.remove(TagReadData.TagMetadataFlag.GEN2_Q);
+        }
+        if (!gen2LFFlag)
+        {
+            flags.remove(TagReadData.TagMetadataFlag.GEN2_LF);
+        }
+        if (!gen2TargetFlag)
+        {
+            flags.remove(TagReadData.TagMetadataFlag.GEN2_TARGET);
+        }
+        metaDataFlags = flags;
+        reportMetadataFlags = Collections.unmodifiableSet(EnumSet.copyOf(flags));
+    }
+
+    /**
+     * When the reader sends RO_ACCESS_REPORTs and whether it folds repeated
+     * sightings of a tag into one report entry.
+     */
+    public static final class ReportPolicy
+    {
+        public enum Trigger
+        {
+            /** A report every N tags, and at the end of the ROSpec */
+            N_TAGS,
+            /** A report every so many milliseconds, and at the end of the ROSpec */
+            PERIODIC,
+            /** A report at the end of each AISpec, that is each read plan's search */
+            END_OF_AISPEC
+        }
+
+        public final Trigger trigger;
+        /** The N of N_TAGS or the period in milliseconds of PERIODIC */
+        public final int value;
+        /**
+         * Whether the reader reports each tag once per report, with its
+         * seen count, rather than once per sighting
+         */
+        public final boolean accumulate;
+
+        public ReportPolicy(Trigger trigger, int value, boolean accumulate)
+        {
+            if (null == trigger)
+            {
+                throw new IllegalArgumentException("Report trigger must not be null");
+            }
+            if (Trigger.N_TAGS == trigger && (value < 1 || value > 65535))
+            {
+                throw new IllegalArgumentException("Tags per report must be 1 to 65535: " + value);
+            }
+            if (Trigger.PERIODIC == trigger && value < 1)
+            {
+                throw new IllegalArgumentException("Report period must be positive: " + value);
+            }
+            this.trigger = trigger;
+            this.value = value;
+            this.accumulate = accumulate;
+        }
+
+        public static ReportPolicy everyNTags(int n, boolean accumulate)
+        {
+            return new ReportPolicy(Trigger.N_TAGS, n, accumulate);
+        }
+
+        public static ReportPolicy everyMillis(int period, boolean accumulate)
+        {
+            return new ReportPolicy(Trigger.PERIODIC, period, accumulate);
+        }
+
+        public static ReportPolicy endOfAISpec(boolean accumulate)
+        {
+            return new ReportPolicy(Trigger.END_OF_AISPEC, 0, accumulate);
+        }
+
+        @Override
+        public String toString()
+        {
+            return trigger + (Trigger.END_OF_AISPEC == trigger ? "" : "(" + value + ")")
+                + (accumulate ? ", accumulated" : "");
+        }
+    }
+
+    /**
+     * Set when the reader sends tag reports. By default startReading()
+     * gets a report for every tag read and read() one at the end of the
+     * read. Fewer, larger reports cost a little latency but far fewer
+     * messages on the network and through the LTK decoder.
+     *
+     * LLRP 1.0.1 has no timed report trigger, so for PERIODIC the reader
+     * holds its reports and the API asks for them with GET_REPORT at the
+     * given period while startReading() is running. Takes effect from
+     * the next read or startReading.
+     *
+     * Also settable as /reader/llrp/reportPolicy, which configuration
+     * files write in the form of ReportPolicy.toString().
+     *
+     * @param policy the report policy, or null for the defaults
+     */
+    public void setReportPolicy(ReportPolicy policy)
+    {
+        reportPolicy = policy;
+        forgetInstalledROSpecs();
+    }
+
+    public ReportPolicy getReportPolicy()
+    {
+        return reportPolicy;
+    }
+
+    /**
+     * Returns the number of LLRP messages the last read() sent before its
+     * ROSpecs started running.
+     */
+    public int getReadSetupMessageCount()
+    {
+        return readSetupMessages;
+    }
+
+    @Override
+    void invalidateParamCache()
+    {
+        super.invalidateParamCache();
+        // A setting may change what buildROSpec would build
+        forgetInstalledROSpecs();
+    }
+
+    protected synchronized void startBackgroundParser()
+    {
+        stopRequested = false;        
+        // In a ReaderFleet the processors run on the fleet's executor
+        // when reports arrive, rather than on threads of their own
+        if (null == tagProcessor)
+        {
+            tagProcessor = new TagProcessor(this);
+            if (null == tagProcessor.pooled)
+            {
+                bkgThread = new Thread(tagProcessor);
+                bkgThread.setDaemon(true);
+                bkgThread.setPriority(Thread.MIN_PRIORITY);
+                bkgThread.start();
+            }
+        }
+        
+        if (null == rfReportProcessor)
+        {
+            rfReportProcessor = new RFReportProcessor(this);
+            if (null == rfReportProcessor.pooled)
+            {
+                rfThread = new Thread(rfReportProcessor);
+                rfThread.setDaemon(true);
+                rfThread.setPriority(Thread.MIN_PRIORITY);
+                rfThread.start();
+            }
+        }
+    }
+
+    protected synchronized void stopBackgroundParser()
+    {
+        stopRequested = true;
+        if (null != tagProcessor)
+        {
+            tagProcessor.parseOff();
+            tagProcessor = null;
+            if (null != bkgThread)
+            {
+                bkgThread.interrupt();
+                bkgThread = null;
+            }
+        }
+        if (null != rfReportProcessor)
+        {
+            rfReportProcessor.parseOff();
+            rfReportProcessor = null;
+            if (null != rfThread)
+            {
+                rfThread.interrupt();
+                rfThread = null;
+            }
+        }
+    }
+
+    private void sendMessage(LLRPMessage message) throws ReaderException
+    {
+        log("Sending LLRP Messag ....{}", message.getName());
         notifyTransportListeners(message, true, 0);
+        llrpMessagesSent.incrementAndGet();
         readerConn.send(message);
     }
     
@@ -3451,10 +4086,10 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         {
             response = (GET_ROSPECS_RESPONSE) LLRP_SendReceive(roSpecs);
             List<ROSpec> roSpecList = response.getROSpecList();
-            log("ORPHAN ROSpec List " + roSpecList.size());
+            log("ORPHAN ROSpec List {}", roSpecList.size());
             for(ROSpec rSpec : roSpecList)
             {
-                log("ORPHAN ROSpec : " + rSpec);
+                log("ORPHAN ROSpec : {}", rSpec);
                 if(rSpec.getCurrentState().intValue() ==  ROSpecState.Active)
                 {
                     rSpec.setCurrentState(new ROSpecState(ROSpecState.Disabled));
@@ -3481,6 +4116,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         DELETE_ROSPEC_RESPONSE response;
 
         log("Deleting all ROSpecs.");
+        forgetInstalledROSpecs();
         DELETE_ROSPEC del = new DELETE_ROSPEC();
         // Use zero as the ROSpec ID. This means delete all ROSpecs.
         del.setROSpecID(new UnsignedInteger(0));
@@ -3503,6 +4139,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         DELETE_ACCESSSPEC_RESPONSE response;
 
         log("Deleting all AccessSpecs.");
+        forgetInstalledROSpecs();
         DELETE_ACCESSSPEC delAcessSpec = new DELETE_ACCESSSPEC();
         // Use zero as the ROSpec ID, This means delete all AccessSpecs.
         delAcessSpec.setAccessSpecID(new UnsignedInteger(0));
@@ -3517,7 +4154,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     {
         ADD_ROSPEC_RESPONSE response;
         
-        log("Adding the ROSpec : " + roSpec.getROSpecID());
+        log("Adding the ROSpec : {}", roSpec.getROSpecID());
         try
         {
             ADD_ROSPEC roSpecMsg = new ADD_ROSPEC();
@@ -3588,7 +4225,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         roSpec.setROSpecID(new UnsignedInteger(++roSpecId));
         roSpec.setCurrentState(new ROSpecState(ROSpecState.Disabled));
 
-        log("Started building ROSpec : " + roSpecId);
+        log("Started building ROSpec : {}", roSpecId);
         // Set up the ROBoundarySpec
         // This defines the start and stop triggers.
         ROBoundarySpec roBoundarySpec = new ROBoundarySpec();
@@ -4494,8 +5131,22 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         // Specify what type of tag reports we want to receive and when we want to receive them.
         ROReportSpec roReportSpec = new ROReportSpec();
 
+        ReportPolicy policy = reportPolicy;
+        if (null != policy)
+        {
+            if (ReportPolicy.Trigger.END_OF_AISPEC == policy.trigger)
+            {
+                roReportSpec.setROReportTrigger(new ROReportTriggerType(ROReportTriggerType.Upon_N_Tags_Or_End_Of_AISpec));
+            }
+            else
+            {
+                roReportSpec.setROReportTrigger(new ROReportTriggerType(ROReportTriggerType.Upon_N_Tags_Or_End_Of_ROSpec));
+            }
+            // N = 0 holds the reports for the end of the spec or a GET_REPORT
+            roReportSpec.setN(new UnsignedShort(ReportPolicy.Trigger.N_TAGS == policy.trigger ? policy.value : 0));
+        }
         // Receive a report every time a tag is read.
-        if(continuousReading)
+        else if(continuousReading)
         {
             roReportSpec.setROReportTrigger(new ROReportTriggerType(ROReportTriggerType.Upon_N_Tags_Or_End_Of_ROSpec));
             roReportSpec.setN(new UnsignedShort(1));
@@ -4515,15 +5166,17 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         
         if(metaDataFlags.contains(TagReadData.TagMetadataFlag.ALL))
         {
-            metaDataFlags.clear();
+            // A new set rather than changing the one in use in place
+            Set<TagReadData.TagMetadataFlag> allFlags = EnumSet.noneOf(TagReadData.TagMetadataFlag.class);
             for(TagReadData.TagMetadataFlag f : TagReadData.TagMetadataFlag.values())
             {
                 if(!(f.equals(TagReadData.TagMetadataFlag.NONE) || f.equals(TagReadData.TagMetadataFlag.BRAND_IDENTIFIER) ||
                         f.equals(TagReadData.TagMetadataFlag.TAGTYPE)))
                 {
-                    metaDataFlags.add(f);
+                    allFlags.add(f);
                 }
             }
+            metaDataFlags = allFlags;
             reportContent.setEnableAntennaID(new Bit(1));
             reportContent.setEnableChannelIndex(new Bit(1));
             reportContent.setEnablePeakRSSI(new Bit(1));
@@ -4576,6 +5229,15 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                 reportContent.setEnableTagSeenCount(new Bit(0));
             }
         }
+        if (null != policy && policy.accumulate)
+        {
+            // The reader folds sightings together when every enabled
+            // field matches, so leave out the ones that differ between
+            // the inventories of a spec, and ask for the seen count
+            reportContent.setEnableSpecIndex(new Bit(0));
+            reportContent.setEnableInventoryParameterSpecID(new Bit(0));
+            reportContent.setEnableTagSeenCount(new Bit(1));
+        }
         // By default both PC and CRC bits are set, so sent from tmmpd
         C1G2EPCMemorySelector gen2MemSelector = new C1G2EPCMemorySelector();
         gen2MemSelector.setEnableCRC(new Bit(1));
@@ -4586,97 +5248,91 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
 
         // Since Spruce release firmware doesn't support phase, there won't be ThingMagicTagReportContentSelector
         // custom paramter in ROReportSpec
-        StringTokenizer versionSplit = new StringTokenizer(_softwareVersion, ".");
-        int length = versionSplit.countTokens();
-        if(length != 0)
+        if(featuresFlag.contains(ReaderFeaturesFlag.READER_FEATURES_FLAG_TAG_METADATA))
         {
-            int productVersion = Integer.parseInt(versionSplit.nextToken());
-            int buildVersion = Integer.parseInt(versionSplit.nextToken());
-            if ((productVersion == 4 && buildVersion >= 17) || productVersion > 4)
+            ThingMagicTagReportContentSelector reportContentSelector = new ThingMagicTagReportContentSelector();
+            if(metaDataFlags.contains(TagReadData.TagMetadataFlag.ALL))
+            {
+                ThingMagicPhaseMode phaseMode = new ThingMagicPhaseMode(ThingMagicPhaseMode.Enabled);
+                reportContentSelector.setPhaseMode(phaseMode);
+                //roReportSpec.addToCustomList(reportContentSelector);
+                
+                MetadataGPIOMode metadataGPIOMode = new MetadataGPIOMode();
+                ThingMagicMetadataFlagStatus tmFlagStatusGPIOMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
+                metadataGPIOMode.setMode(tmFlagStatusGPIOMode);
+                reportContentSelector.setMetadataGPIOMode(metadataGPIOMode);
+                
+                MetadataGen2QMode metadataGen2QMode = new MetadataGen2QMode();
+                ThingMagicMetadataFlagStatus tmFlagStatusGen2QMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
+                metadataGen2QMode.setMode(tmFlagStatusGen2QMode);
+                reportContentSelector.setMetadataGen2QMode(metadataGen2QMode);
+                
+                MetadataGen2LFMode metadataGen2LFMode = new MetadataGen2LFMode();
+                ThingMagicMetadataFlagStatus tmFlagStatusGen2LFMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
+                metadataGen2LFMode.setMode(tmFlagStatusGen2LFMode);
+                reportContentSelector.setMetadataGen2LFMode(metadataGen2LFMode);
+                    
+                MetadataGen2TargetMode metadataGen2TargetMode = new MetadataGen2TargetMode();
+                ThingMagicMetadataFlagStatus tmFlagStatusGen2TargetMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
+                metadataGen2TargetMode.setMode(tmFlagStatusGen2TargetMode);
+                reportContentSelector.setMetadataGen2TargetMode(metadataGen2TargetMode);
+                
+                MetadataDataMode metadataDataMode = new MetadataDataMode();
+                ThingMagicMetadataFlagStatus tmFlagStatusDataMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
+                metadataDataMode.setMode(tmFlagStatusDataMode);
+                reportContentSelector.setMetadataDataMode(metadataDataMode);
+            }
+            else
             {
-                ThingMagicTagReportContentSelector reportContentSelector = new ThingMagicTagReportContentSelector();
-                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.ALL))
+                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.PHASE))
                 {
                     ThingMagicPhaseMode phaseMode = new ThingMagicPhaseMode(ThingMagicPhaseMode.Enabled);
                     reportContentSelector.setPhaseMode(phaseMode);
-                    //roReportSpec.addToCustomList(reportContentSelector);
-                    
+                }
+                else
+                {
+                    ThingMagicPhaseMode phaseMode = new ThingMagicPhaseMode(ThingMagicPhaseMode.Disabled);
+                    reportContentSelector.setPhaseMode(phaseMode);
+                }
+                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GPIO_STATUS))
+                {
                     MetadataGPIOMode metadataGPIOMode = new MetadataGPIOMode();
                     ThingMagicMetadataFlagStatus tmFlagStatusGPIOMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
                     metadataGPIOMode.setMode(tmFlagStatusGPIOMode);
                     reportContentSelector.setMetadataGPIOMode(metadataGPIOMode);
-                    
+                }
+                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GEN2_Q))
+                {
                     MetadataGen2QMode metadataGen2QMode = new MetadataGen2QMode();
                     ThingMagicMetadataFlagStatus tmFlagStatusGen2QMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
                     metadataGen2QMode.setMode(tmFlagStatusGen2QMode);
                     reportContentSelector.setMetadataGen2QMode(metadataGen2QMode);
-                    
+                }
+                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GEN2_LF))
+                {
                     MetadataGen2LFMode metadataGen2LFMode = new MetadataGen2LFMode();
                     ThingMagicMetadataFlagStatus tmFlagStatusGen2LFMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
                     metadataGen2LFMode.setMode(tmFlagStatusGen2LFMode);
                     reportContentSelector.setMetadataGen2LFMode(metadataGen2LFMode);
-                        
+                }
+                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GEN2_TARGET))
+                {
                     MetadataGen2TargetMode metadataGen2TargetMode = new MetadataGen2TargetMode();
                     ThingMagicMetadataFlagStatus tmFlagStatusGen2TargetMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
                     metadataGen2TargetMode.setMode(tmFlagStatusGen2TargetMode);
                     reportContentSelector.setMetadataGen2TargetMode(metadataGen2TargetMode);
-                    
+                }
+                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.DATA))
+                {
                     MetadataDataMode metadataDataMode = new MetadataDataMode();
                     ThingMagicMetadataFlagStatus tmFlagStatusDataMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
                     metadataDataMode.setMode(tmFlagStatusDataMode);
                     reportContentSelector.setMetadataDataMode(metadataDataMode);
                 }
-                else
-                {
-                    if(metaDataFlags.contains(TagReadData.TagMetadataFlag.PHASE))
-                    {
-                        ThingMagicPhaseMode phaseMode = new ThingMagicPhaseMode(ThingMagicPhaseMode.Enabled);
-                        reportContentSelector.setPhaseMode(phaseMode);
-                    }
-                    else
-                    {
-                        ThingMagicPhaseMode phaseMode = new ThingMagicPhaseMode(ThingMagicPhaseMode.Disabled);
-                        reportContentSelector.setPhaseMode(phaseMode);
-                    }
-                    if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GPIO_STATUS))
-                    {
-                        MetadataGPIOMode metadataGPIOMode = new MetadataGPIOMode();
-                        ThingMagicMetadataFlagStatus tmFlagStatusGPIOMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
-                        metadataGPIOMode.setMode(tmFlagStatusGPIOMode);
-                        reportContentSelector.setMetadataGPIOMode(metadataGPIOMode);
-                    }
-                    if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GEN2_Q))
-                    {
-                        MetadataGen2QMode metadataGen2QMode = new MetadataGen2QMode();
-                        ThingMagicMetadataFlagStatus tmFlagStatusGen2QMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
-                        metadataGen2QMode.setMode(tmFlagStatusGen2QMode);
-                        reportContentSelector.setMetadataGen2QMode(metadataGen2QMode);
-                    }
-                    if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GEN2_LF))
-                    {
-                        MetadataGen2LFMode metadataGen2LFMode = new MetadataGen2LFMode();
-                        ThingMagicMetadataFlagStatus tmFlagStatusGen2LFMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
-                        metadataGen2LFMode.setMode(tmFlagStatusGen2LFMode);
-                        reportContentSelector.setMetadataGen2LFMode(metadataGen2LFMode);
-                    }
-                    if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GEN2_TARGET))
-                    {
-                        MetadataGen2TargetMode metadataGen2TargetMode = new MetadataGen2TargetMode();
-                        ThingMagicMetadataFlagStatus tmFlagStatusGen2TargetMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
-                        metadataGen2TargetMode.setMode(tmFlagStatusGen2TargetMode);
-                        reportContentSelector.setMetadataGen2TargetMode(metadataGen2TargetMode);
-                    }
-                    if(metaDataFlags.contains(TagReadData.TagMetadataFlag.DATA))
-                    {
-                        MetadataDataMode metadataDataMode = new MetadataDataMode();
-                        ThingMagicMetadataFlagStatus tmFlagStatusDataMode = new ThingMagicMetadataFlagStatus(ThingMagicMetadataFlagStatus.Enabled);
-                        metadataDataMode.setMode(tmFlagStatusDataMode);
-                        reportContentSelector.setMetadataDataMode(metadataDataMode);
-                    }
-                }
-                roReportSpec.addToCustomList(reportContentSelector);
             }
+            roReportSpec.addToCustomList(reportContentSelector);
         }
+        resolveReportMetadataFlags();
         roSpec.setROReportSpec(roReportSpec);
         roSpecList.add((roSpec));
     }
@@ -4801,7 +5457,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     {
         ENABLE_ROSPEC_RESPONSE response;
 
-        log("Enabling the ROSpec : " + ROSPEC_ID);
+        log("Enabling the ROSpec : {}", ROSPEC_ID);
         ENABLE_ROSPEC enable = new ENABLE_ROSPEC();
         enable.setROSpecID(new UnsignedInteger(ROSPEC_ID));
         try
@@ -4824,7 +5480,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     private boolean startROSpec(int ROSPEC_ID) throws ReaderException
     {
         START_ROSPEC_RESPONSE response;
-        log("Starting the ROSpec : " + ROSPEC_ID);
+        log("Starting the ROSpec : {}", ROSPEC_ID);
         START_ROSPEC start = new START_ROSPEC();
         start.setROSpecID(new UnsignedInteger(ROSPEC_ID));
         try
@@ -4837,6 +5493,20 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
             throw new ReaderException(rce.getMessage());
         }        
     }
+
+    /**
+     * Start an installed ROSpec again. Unlike startROSpec, a refusal is
+     * not reported to the exception listeners, as the caller recovers
+     * by installing the ROSpec afresh.
+     */
+    private boolean restartROSpec(int ROSPEC_ID) throws ReaderException
+    {
+        log("Restarting the ROSpec : {}", ROSPEC_ID);
+        START_ROSPEC start = new START_ROSPEC();
+        start.setROSpecID(new UnsignedInteger(ROSPEC_ID));
+        START_ROSPEC_RESPONSE response = (START_ROSPEC_RESPONSE) LLRP_SendReceive(start);
+        return null != response && response.getLLRPStatus().getStatusCode().intValue() == StatusCode.M_Success;
+    }
     
     private AccessCommandOpSpec buildOpSpec(SimpleReadPlan srp) throws ReaderException
     {
@@ -6543,15 +7213,24 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         }
         // Received END OF ROSPEC event for all ROSPECS initiated
         endOfROSpec = true;
+        signalLLRPEvent();
         return true;
     }
 
+    private void signalLLRPEvent()
+    {
+        synchronized (llrpEvents)
+        {
+            llrpEvents.notifyAll();
+        }
+    }
+
      // Disable the ROSpec.
     private boolean disableROSpec(int ROSPEC_ID) throws ReaderException
     {
         DISABLE_ROSPEC_RESPONSE response;
 
-        log("Disabling the ROSpec : " + ROSPEC_ID);
+        log("Disabling the ROSpec : {}", ROSPEC_ID);
         DISABLE_ROSPEC enable = new DISABLE_ROSPEC() ;
         enable.setROSpecID(new UnsignedInteger(ROSPEC_ID));
         try
@@ -6573,7 +7252,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     private void stopROSpec(UnsignedInteger ROSPEC_ID) throws ReaderException
     {
         STOP_ROSPEC_RESPONSE response;
-        log("Stopping the ROSpec : " + ROSPEC_ID);
+        log("Stopping the ROSpec : {}", ROSPEC_ID);
         STOP_ROSPEC stop = new STOP_ROSPEC();
         stop.setROSpecID(ROSPEC_ID);
         try
@@ -6581,12 +7260,12 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
             response = (STOP_ROSPEC_RESPONSE) LLRP_SendReceive(stop, STOP_TIMEOUT + commandTimeout + transportTimeout);
             if(null != response && response.getLLRPStatus().getStatusCode().intValue() == StatusCode.M_Success)
             {
-                log("Success " + response.toString());
+                log("Success {}", response);
             }
             else
             {
                 if(response!= null){
-            		 log("Failure " + response.toString());   
+            		 log("Failure {}", response);   
             	}                
             }
         }
@@ -6614,12 +7293,25 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
      */
     private LLRPMessage LLRP_SendReceive(LLRPMessage message, int timeout) throws ReaderCommException, ReaderException
     {
+        if (inBatch())
+        {
+            if (pendingSetReaderConfig != null)
+            {
+                // paramSetAll: settings held back must reach the reader first
+                flushPendingSetReaderConfig();
+            }
+            if (configResponseMemo != null && !(message instanceof GET_READER_CONFIG))
+            {
+                configResponseMemo.clear();
+            }
+        }
         if(readerConn!=null)
         {
             LLRPMessage response = null;
             try
             {
                 notifyTransportListeners(message, true, 1000);
+                llrpMessagesSent.incrementAndGet();
                 //Update msgStartTime before sending the message
                 msgStartTime = System.currentTimeMillis();
                 // Store the message sent here
@@ -6640,15 +7332,22 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                 //wait for RESPONSE event
                 /* LTK message timeout is too low-level.  Wrap it with
                  * our own sequence-aware timeout logic */
-                while(!isMsgRespReceived)
+                synchronized (llrpEvents)
                 {
-                    TimeoutExceptionLogicTimerTask(timeout, ex);
-                    try
+                    while(!isMsgRespReceived)
                     {
-                        //Give other threads a chance to run. (i.e., avoid taking 100% CPU)
-                        Thread.sleep(1);
-                    } catch (InterruptedException e) {
-                        llrpLogger.error(e.getMessage());
+                        // Worked out once, so the check and the wait agree
+                        long remaining = msgStartTime + timeout - System.currentTimeMillis();
+                        if(remaining <= 0)
+                        {
+                            throw new ReaderCommException(ex.getMessage());
+                        }
+                        try
+                        {
+                            llrpEvents.wait(remaining);
+                        } catch (InterruptedException e) {
+                            llrpLogger.error(e.getMessage());
+                        }
                     }
                 }
                 return null;
@@ -6709,6 +7408,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         if(readerConn!=null)
         {
             notifyTransportListeners(message, true, 1000);
+            llrpMessagesSent.incrementAndGet();
             readerConn.send(message);
         }
     }
@@ -6722,12 +7422,26 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
      */
     protected void notifyTransportListeners(LLRPMessage msg, boolean tx, int timeout) throws ReaderException
     {
+        if(hasLLRPTraces)
+        {
+            try
+            {
+                byte[] rawMsg = msg.encodeBinary();
+                for (TransportTrace t : _llrpTraces)
+                {
+                    t.message(tx, rawMsg, timeout);
+                }
+            }
+            catch (InvalidLLRPMessageException ex)
+            {
+                throw new ReaderException(ex.getMessage());
+            }
+        }
         if(hasLLRPListeners)
         {
             try
             {
                 byte[] byteMsg = msg.toXMLString().getBytes();
-                msg.toHexString().getBytes();
                 for (TransportListener l : _llrpListeners)
                 {
                     l.message(tx, byteMsg, timeout);
@@ -6936,6 +7650,11 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                     }//end of enableROSpec success validation
                 }//end of addROSpec success validation
             }//end of for loop - looping all ROSpecs
+            ReportPolicy policy = reportPolicy;
+            if (null != policy && ReportPolicy.Trigger.PERIODIC == policy.trigger)
+            {
+                startReportPoller(policy.value);
+            }
                     }
         catch(ReaderException e)
         {
@@ -6946,6 +7665,8 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     @Override
     public boolean stopReading()
     {
+        // The reports still held come with the end of the ROSpecs
+        stopReportPoller();
         try
         {
             if(null != _roSpecList && !_roSpecList.isEmpty())
@@ -7160,26 +7881,29 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
             verifyROSpecEndStatus();
             int timeOut = commandTimeout + transportTimeout;
             long startTime = System.currentTimeMillis();
-            while (!reportReceived)
+            //wait for the tag report
+            synchronized (llrpEvents)
             {
-                try
-                {
-                    Thread.sleep(10);
-                }
-                catch (InterruptedException ex)
-                {
-                    llrpLogger.error(ex.getMessage());
-                }
-                //wait for end of ROSpec/AISpec event
-                if(readerException != null)
+                while (!reportReceived && readerException == null)
                 {
-                    throw readerException;
-                }
-                long diffTime = System.currentTimeMillis()-startTime;
-                if(diffTime > timeOut){
-                    throw new ReaderCommException("Timeout");
+                    long remaining = startTime + timeOut - System.currentTimeMillis();
+                    if(remaining < 0){
+                        throw new ReaderCommException("Timeout");
+                    }
+                    try
+                    {
+                        llrpEvents.wait(remaining + 1);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        llrpLogger.error(ex.getMessage());
+                    }
                 }
             }
+            if(readerException != null)
+            {
+                throw readerException;
+            }
         }
         catch(ReaderException re)
         {
@@ -7196,12 +7920,14 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     @Override
     public void firmwareLoad(InputStream firmware) throws ReaderException, IOException
     {
+        invalidateParamCache();
         webRequest(firmware, null);
     }
 
     @Override
     public void firmwareLoad(InputStream firmware, FirmwareLoadOptions loadOptions) throws ReaderException, IOException
     {
+        invalidateParamCache();
         webRequest(firmware, loadOptions);
     }
 
@@ -7248,7 +7974,12 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     @Override
     public void addTransportListener(TransportListener listener)
     {
-        if(null != listener)
+        if(listener instanceof TransportTrace)
+        {
+            hasLLRPTraces = true;
+            _llrpTraces.add((TransportTrace) listener);
+        }
+        else if(null != listener)
         {
             hasLLRPListeners = true;
             _llrpListeners.add(listener);
@@ -7259,10 +7990,15 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     public void removeTransportListener(TransportListener listener)
     {
         _llrpListeners.remove(listener);
+        _llrpTraces.remove(listener);
         if(_llrpListeners.isEmpty())
         {
             hasLLRPListeners = false;
         }
+        if(_llrpTraces.isEmpty())
+        {
+            hasLLRPTraces = false;
+        }
     }
 
     @Override
@@ -7297,6 +8033,15 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         llrpLogger.debug(message);
     }
 
+    /**
+     * Log with SLF4J placeholders, so that the message is only put
+     * together when debug logging is on.
+     */
+    private void log(String format, Object... args)
+    {
+        llrpLogger.debug(format, args);
+    }
+
 
     static class SimpleTransportListener implements TransportListener
     {
@@ -7311,7 +8056,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         simpleTransportListener = new SimpleTransportListener();
     }
 
-    protected class RFReportProcessor implements Runnable
+    protected class RFReportProcessor implements Runnable, PooledDrain.Step
     {
         RFSurveyReportData rfReportData;
         Reader reader;        
@@ -7321,50 +8066,85 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
             this.reader = readerName;
         }
 
-        public void run()
+        final PooledDrain pooled = pooledDrain(this);
+
+        void signal()
         {
-            while(!stopRequested)
-            {                
-                try
+            if (pooled != null)
+            {
+                pooled.signal();
+            }
+        }
+
+        // Held while a report is taken and handled, so that drainBatch(),
+        // run() and parseOff() never handle reports out of order. The
+        // queue's own lock is only held to take the report: handling it
+        // calls the listeners, and messageReceived needs the queue lock.
+        private final Object processing = new Object();
+
+        /**
+         * Take the next report off the queue and handle it.
+         *
+         * @return false if the queue was empty
+         */
+        private boolean processNext()
+        {
+            synchronized (processing)
+            {
+                RFSurveyReportData report;
+                synchronized (rfReportQueue)
                 {
-                    synchronized (rfReportQueue)
-                    {                                            
-                        if (rfReportQueue.isEmpty())
-                        {
-                            rfReportQueue.wait();
-                        }                                   
-                    } //end of sync block
-                    // Needs analysis on this addition of sleep
-                    Thread.sleep(20);
-                    if(!rfReportQueue.isEmpty())
-                    {
-                        rfReportData = rfReportQueue.take();
-                        processRFData(rfReportData);
-                    }
-                } //end of infinite while loop
-                catch (InterruptedException ex)
+                    report = rfReportQueue.poll();
+                }
+                if (report == null)
                 {
-                    // do nothing
+                    return false;
+                }
+                rfReportData = report;
+                try
+                {
+                    processRFData(report);
                 }
                 catch (Exception ex)
                 {
                     llrpLogger.error(ex.getMessage());
-                }                
-            }//end of infinite while loop
-        }
+                }
+                return true;
+            }
+        }
 
-        public void parseOff()
+        public boolean drainBatch()
         {
-            synchronized(rfReportQueue)
+            for (int i = 0; i < NOTIFIER_BATCH; i++)
             {
-                try
+                if (!processNext())
                 {
-                    while(rfReportQueue.isEmpty() == false)
-                    {
-                        rfReportData = rfReportQueue.take();
-                        processRFData(rfReportData);
-                    }
+                    return false;
                 }
+            }
+            return true;
+        }
+
+        public boolean hasWork()
+        {
+            return !rfReportQueue.isEmpty();
+        }
+
+        public void run()
+        {
+            while(!stopRequested)
+            {                
+                try
+                {
+                    synchronized (rfReportQueue)
+                    {                                            
+                        if (rfReportQueue.isEmpty())
+                        {
+                            rfReportQueue.wait();
+                        }                                   
+                    } //end of sync block
+                    processNext();
+                } //end of infinite while loop
                 catch (InterruptedException ex)
                 {
                     // do nothing
@@ -7372,8 +8152,16 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                 catch (Exception ex)
                 {
                     llrpLogger.error(ex.getMessage());
-                }
-            }//end of sync block            
+                }                
+            }//end of infinite while loop
+        }
+
+        public void parseOff()
+        {
+            while (processNext())
+            {
+                // handle whatever is still queued
+            }
         }
         
         public void processRFData(RFSurveyReportData rfReportData)
@@ -7393,9 +8181,272 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         }
     }
     
-    protected class TagProcessor implements Runnable
+    // Most tags of an RO_ACCESS_REPORT queued in one chunk
+    static final int DECODE_CHUNK = 64;
+
+    /**
+     * An entry of the tag report queue, which is one of:
+     *
+     * CHUNK: up to DECODE_CHUNK consecutive tags of an RO_ACCESS_REPORT.
+     * With a decode pool the tags are decoded there, in parallel with
+     * other chunks, and the TagProcessor delivers the reads in the order
+     * the chunks were queued.
+     *
+     * BOUNDARY: queued after the tags of an RO_ACCESS_REPORT while
+     * ReadBatchListeners are registered, to mark where the report ends.
+     */
+    static final class ReportWork
+    {
+        enum Kind { CHUNK, BOUNDARY }
+
+        final Kind kind;
+        // The tags of a CHUNK; empty for a BOUNDARY
+        final List<TagReportData> tags;
+        // System.nanoTime() when a CHUNK's report was received
+        final long receivedAt;
+        // System.currentTimeMillis() when a BOUNDARY was queued
+        final long endTime;
+        private volatile FutureTask<TagReadData[]> decoded;
+
+        private ReportWork(Kind kind, List<TagReportData> tags, long receivedAt, long endTime)
+        {
+            this.kind = kind;
+            this.tags = tags;
+            this.receivedAt = receivedAt;
+            this.endTime = endTime;
+        }
+
+        static ReportWork chunk(List<TagReportData> tags, long receivedAt)
+        {
+            return new ReportWork(Kind.CHUNK, tags, receivedAt, 0);
+        }
+
+        static ReportWork boundary(long endTime)
+        {
+            return new ReportWork(Kind.BOUNDARY, Collections.<TagReportData>emptyList(), 0, endTime);
+        }
+
+        void decodeOn(Executor pool, final TagProcessor decoder)
+        {
+            FutureTask<TagReadData[]> task = new FutureTask<TagReadData[]>(new Callable<TagReadData[]>()
+            {
+                public TagReadData[] call()
+                {
+                    TagReadData[] reads = new TagReadData[tags.size()];
+                    for (int i = 0; i < reads.length; i++)
+                    {
+                        reads[i] = decoder.decode(tags.get(i));
+                    }
+                    return reads;
+                }
+            });
+            try
+            {
+                pool.execute(task);
+                decoded = task;
+            }
+            catch (RejectedExecutionException ree)
+            {
+                // Pool shut down; the TagProcessor decodes the chunk
+            }
+        }
+
+        /**
+         * Wait for the decode. Returns null if the chunk was not sent to
+         * a pool or its decode failed, leaving the TagProcessor to decode
+         * the tags one at a time.
+         */
+        TagReadData[] awaitDecoded()
+        {
+            FutureTask<TagReadData[]> task = decoded;
+            if (task == null)
+            {
+                return null;
+            }
+            try
+            {
+                return task.get();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException ee)
+            {
+                decoded = null;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Set how many threads decode RO_ACCESS_REPORTs. With 0, the default,
+     * the TagProcessor decodes each tag as it delivers it. Otherwise
+     * reports are decoded in chunks on a pool of this many threads, and
+     * the TagProcessor only delivers the reads, still in the order the
+     * reader sent them.
+     *
+     * @param threads the number of decode threads, or 0
+     */
+    public synchronized void setReportDecodeThreads(int threads)
+    {
+        if (threads < 0)
+        {
+            throw new IllegalArgumentException("Decode threads must not be negative: " + threads);
+        }
+        ExecutorService old = decodePool;
+        decodePool = (threads == 0) ? null : Executors.newFixedThreadPool(threads, daemonThreads("LLRP report decoder"));
+        decodeThreads = threads;
+        if (old != null)
+        {
+            old.shutdown();
+        }
+    }
+
+    public synchronized int getReportDecodeThreads()
+    {
+        return decodeThreads;
+    }
+
+    /**
+     * Returns the number of tags received from the reader and not yet
+     * delivered to the read listeners or the read() result.
+     */
+    public int getPendingTagCount()
+    {
+        return pendingTags.get();
+    }
+
+    /**
+     * Returns the time from receiving an RO_ACCESS_REPORT to delivering
+     * the reads of its most recently delivered chunk, in microseconds.
+     */
+    public long getReportDecodeLagMicros()
+    {
+        return decodeLagNanos / 1000;
+    }
+
+    /**
+     * Returns the longest time from receiving an RO_ACCESS_REPORT to
+     * delivering the reads of one of its chunks, in microseconds, since
+     * the reader was created or resetReportDecodeStats was called.
+     */
+    public long getMaxReportDecodeLagMicros()
+    {
+        return maxDecodeLagNanos.get() / 1000;
+    }
+
+    public void resetReportDecodeStats()
+    {
+        decodeLagNanos = 0;
+        maxDecodeLagNanos.set(0);
+    }
+
+    private void recordDecodeLag(long nanos)
+    {
+        decodeLagNanos = nanos;
+        long max;
+        do
+        {
+            max = maxDecodeLagNanos.get();
+        } while (nanos > max && !maxDecodeLagNanos.compareAndSet(max, nanos));
+    }
+
+    private static ThreadFactory daemonThreads(final String name)
+    {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory()
+        {
+            public Thread newThread(Runnable r)
+            {
+                Thread t = new Thread(r, name + " " + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+
+    /**
+     * Pass the reads of one RO_ACCESS_REPORT to the ReadBatchListeners.
+     */
+    private void flushReportBatch(long receivedAt)
+    {
+        List<TagReadData> reads;
+        synchronized (reportBatch)
+        {
+            if (reportBatch.isEmpty())
+            {
+                return;
+            }
+            reads = new ArrayList<TagReadData>(reportBatch);
+            reportBatch.clear();
+        }
+        try
+        {
+            dispatchReadBatch(reads, receivedAt, System.currentTimeMillis(), true);
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Where sortCustomParameters puts each kind of TagReportData custom
+    // parameter
+    private static final int CUSTOM_PROTOCOL_ID = 0;
+    private static final int CUSTOM_RF_PHASE = 1;
+    private static final int CUSTOM_GPIO = 2;
+    private static final int CUSTOM_GEN2 = 3;
+    private static final int CUSTOM_TAGOP_RESPONSE = 4;
+    private static final Map<Class<?>, Integer> customParameterSlots = new HashMap<Class<?>, Integer>();
+    static
+    {
+        customParameterSlots.put(ThingMagicCustomProtocolID.class, CUSTOM_PROTOCOL_ID);
+        customParameterSlots.put(ThingMagicRFPhase.class, CUSTOM_RF_PHASE);
+        customParameterSlots.put(ThingMagicMetadataGPIO.class, CUSTOM_GPIO);
+        customParameterSlots.put(ThingMagicMetadataGen2.class, CUSTOM_GEN2);
+        customParameterSlots.put(ThingMagicCustomTagopResponse.class, CUSTOM_TAGOP_RESPONSE);
+    }
+
+    /**
+     * Sort a tag report's custom parameters by kind, in one pass. Where a
+     * kind appears more than once the last one wins.
+     */
+    static Custom[] sortCustomParameters(List<Custom> customList)
+    {
+        Custom[] customs = new Custom[5];
+        for (Custom cVal : customList)
+        {
+            Integer slot = customParameterSlots.get(cVal.getClass());
+            if (slot != null)
+            {
+                customs[slot] = cVal;
+            }
+        }
+        return customs;
+    }
+
+    /**
+     * The bytes of an LTK bit array, right-aligned as in its hex string.
+     */
+    static byte[] bitsToBytes(BitArray bits)
+    {
+        int size = bits.size();
+        byte[] bytes = new byte[(size + 7) / 8];
+        int shift = bytes.length * 8 - size;
+        for (int i = 0; i < size; i++)
+        {
+            if (bits.get(i).toBoolean())
+            {
+                int bit = i + shift;
+                bytes[bit >> 3] |= 0x80 >>> (bit & 7);
+            }
+        }
+        return bytes;
+    }
+
+    protected class TagProcessor implements Runnable, PooledDrain.Step
     {
-        TagReportData ltkTagData;
         Reader reader;        
 
         public TagProcessor(LLRPReader readerName)
@@ -7403,6 +8454,69 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
             this.reader = readerName;
         }
 
+        final PooledDrain pooled = pooledDrain(this);
+
+        void signal()
+        {
+            if (pooled != null)
+            {
+                pooled.signal();
+            }
+        }
+
+        // Held while a report is taken and handled, so that drainBatch(),
+        // run() and parseOff() never handle reports out of order. The
+        // queue's own lock is only held to take the report: handling it
+        // calls the listeners, and messageReceived needs the queue lock.
+        private final Object processing = new Object();
+
+        /**
+         * Take the next report off the queue and handle it.
+         *
+         * @return false if the queue was empty
+         */
+        private boolean processNext()
+        {
+            synchronized (processing)
+            {
+                ReportWork work;
+                synchronized (tagReportQueue)
+                {
+                    work = tagReportQueue.poll();
+                }
+                if (work == null)
+                {
+                    return false;
+                }
+                try
+                {
+                    process(work);
+                }
+                catch (Exception ex)
+                {
+                    llrpLogger.error(ex.getMessage());
+                }
+                return true;
+            }
+        }
+
+        public boolean drainBatch()
+        {
+            for (int i = 0; i < NOTIFIER_BATCH; i++)
+            {
+                if (!processNext())
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean hasWork()
+        {
+            return !tagReportQueue.isEmpty();
+        }
+
         public void run()
         {
             while(!stopRequested)
@@ -7416,16 +8530,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                             tagReportQueue.wait();
                         }                                   
                     } //end of sync block
-                    // Needs analysis on this addition of sleep
-                    if(isStopNTags)
-                    {
-                        Thread.sleep(20);
-                    }
-                    if(!tagReportQueue.isEmpty())
-                    {
-                        ltkTagData = tagReportQueue.take();
-                        processData(ltkTagData);
-                    }
+                    processNext();
                 } //end of infinite while loop
                 catch (InterruptedException ex)
                 {
@@ -7440,75 +8545,81 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
 
         public void parseOff()
         {
-            synchronized(tagReportQueue)
+            while (processNext())
             {
+                // handle whatever is still queued
+            }
+        }
+
+        private void process(ReportWork work)
+        {
+            switch (work.kind)
+            {
+                case BOUNDARY:
+                    flushReportBatch(work.endTime);
+                    break;
+                case CHUNK:
+                    processChunk(work);
+                    break;
+            }
+        }
+
+        public void processData(TagReportData tag)
+        {
+            deliver(tag, decode(tag));
+        }
+
+        private void processChunk(ReportWork chunk)
+        {
+            TagReadData[] reads = chunk.awaitDecoded();
+            for (int i = 0; i < chunk.tags.size(); i++)
+            {
+                TagReportData tag = chunk.tags.get(i);
                 try
                 {
-                    while(tagReportQueue.isEmpty() == false)
-                    {
-                        ltkTagData = tagReportQueue.take();
-                        processData(ltkTagData);
-                    }
-                }
-                catch (InterruptedException ex)
-                {
-                    // do nothing
+                    deliver(tag, (reads != null) ? reads[i] : decode(tag));
                 }
                 catch (Exception ex)
                 {
                     llrpLogger.error(ex.getMessage());
                 }
-            }//end of sync block            
+                pendingTags.decrementAndGet();
+            }
+            recordDecodeLag(System.nanoTime() - chunk.receivedAt);
         }
 
-        BigInteger usPerMs = BigInteger.valueOf(1000);
-        public void processData(TagReportData tag)
+        /**
+         * Build the TagReadData for a tag report. Safe to call from the
+         * decode pool: it only reads the reader's state.
+         */
+        TagReadData decode(TagReportData tag)
         {
-            String epc = null;
+            byte[] epc;
             if (tag.getEPCParameter() instanceof EPCData)
             {
-                epc = ((EPCData)tag.getEPCParameter()).getEPC().toString();
+                epc = bitsToBytes(((EPCData)tag.getEPCParameter()).getEPC());
             }
             else
             {
-                //Temporary work around for LTK JAVA issue.
-                epc = ((EPC_96)tag.getEPCParameter()).getEPC().toString();
-
-                epc = String.format("%24s",epc).replace(' ', '0');
-
-                if(epc.equals("00"))
-                {
-                    epc = "000000000000000000000000";
-                }
-            }            
+                // Always 96 bits, so also right for an all-zero EPC, whose
+                // hex string LTK JAVA shortens to "00"
+                epc = ((EPC_96)tag.getEPCParameter()).getEPC().encodeBinary().toByteArray();
+            }
 
             TagReadData trData = new TagReadData();
 
             if(!standalone)
             {
-                //Currently protocol ID is available as 2nd custom parameter.
+                Custom[] customs = sortCustomParameters(tag.getCustomList());
                 TagProtocol protocol = TagProtocol.NONE;
                 if(!tag.getCustomList().isEmpty())
                 {
                     if(featuresFlag.contains(ReaderFeaturesFlag.READER_FEATURES_FLAG_ANTENNA_READ_TIME))
                     {
-                        /**
-                         * Currently protocol ID is available as 2nd custom parameter.
-                         **/
-                        Custom customValue = null;
-                        for(Custom cVal : tag.getCustomList())
-                        {
-                            if(cVal instanceof ThingMagicCustomProtocolID)
-                            {
-                                customValue = cVal;
-                            }
-                            
-                        }
-                        //Custom customValue = tag.getCustomList().get(3);
-                        if (customValue != null && customValue instanceof ThingMagicCustomProtocolID)
+                        ThingMagicCustomProtocolID customValue = (ThingMagicCustomProtocolID) customs[CUSTOM_PROTOCOL_ID];
+                        if (customValue != null)
                         {
-                            ThingMagicCustomProtocol protocolID = ((ThingMagicCustomProtocolID)customValue).getProtocolId();
-                            protocol = parseThingmagicCustomProtocol(protocolID.intValue());
+                            protocol = parseThingmagicCustomProtocol(customValue.getProtocolId().intValue());
                         }
                     }
                     else
@@ -7523,12 +8634,11 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                 boolean isTagDataEmpty = tag.getAirProtocolTagDataList().isEmpty();
                 if(!isTagDataEmpty && protocol == TagProtocol.GEN2)
                 {
-                    short pc = ((C1G2_PC)tag.getAirProtocolTagDataList().get(0)).getPC_Bits().toShort();
-                    short crc = ((C1G2_CRC)tag.getAirProtocolTagDataList().get(1)).getCRC().toShort();
-                    byte[] epc1 = ReaderUtil.hexStringToByteArray(epc);
-                    byte[] pc1 = ReaderUtil.shortToByteArray(pc);
-                    byte[] crc1 = ReaderUtil.shortToByteArray(crc);
-                    Gen2.TagData tagData = new Gen2.TagData(epc1, crc1, pc1);
+                    int pc = ((C1G2_PC)tag.getAirProtocolTagDataList().get(0)).getPC_Bits().intValue();
+                    int crc = ((C1G2_CRC)tag.getAirProtocolTagDataList().get(1)).getCRC().intValue();
+                    byte[] pc1 = new byte[]{(byte) (pc >> 8), (byte) pc};
+                    byte[] crc1 = new byte[]{(byte) (crc >> 8), (byte) crc};
+                    Gen2.TagData tagData = new Gen2.TagData(epc, crc1, pc1);
                     trData.tag = tagData;
                 }
                 else if(isTagDataEmpty && (protocol == TagProtocol.ISO180006B))
@@ -7556,8 +8666,16 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                     // NON Gen2 and ISO Tags
                     trData.tag = new TagData(epc);
                 }
-                trData = parseTagData(tag,trData);
+                trData = parseTagData(tag,trData,customs);
             }
+            return trData;
+        }
+
+        /**
+         * Hand a decoded tag read on, in the order the reader sent it.
+         */
+        private void deliver(TagReportData tag, TagReadData trData)
+        {
             List<AccessCommandOpSpecResult> opSpecResult = tag.getAccessCommandOpSpecResultList();
             if(!opSpecResult.isEmpty())
             {
@@ -7578,21 +8696,42 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                     }
                 }
             }
-            reportReceived = true;
+            if(!reportReceived)
+            {
+                reportReceived = true;
+                signalLLRPEvent();
+            }
             if(continuousReading)
             {
                notifyReadListeners(trData);
+               if (hasReadBatchListeners())
+               {
+                   synchronized (reportBatch)
+                   {
+                       reportBatch.add(trData);
+                   }
+               }
+            }
+            else if(!standalone)
+            {
+                //System.out.println("readata " + readData + " trData " + trData);
+                if (null != readData && trData != null)
+                {
+                    readData.add(trData);
+                }
             }
         }
 
-        private TagReadData parseTagData(TagReportData tag,TagReadData trData)
+        private TagReadData parseTagData(TagReportData tag,TagReadData trData,Custom[] customs)
         {
-            if(metaDataFlags.contains(TagReadData.TagMetadataFlag.ALL))
+            // Resolved by buildROSpec; never changed here, as this may run
+            // on the decode pool
+            Set<TagReadData.TagMetadataFlag> flags = reportMetadataFlags;
+            if(flags.contains(TagReadData.TagMetadataFlag.ALL))
             {
                 trData.antenna = tag.getAntennaID().getAntennaID().intValue();
                 trData.readCount = tag.getTagSeenCount().getTagCount().intValue();
-                BigInteger usSinceEpoch = tag.getLastSeenTimestampUTC().getMicroseconds().toBigInteger();
-                trData.readBase = usSinceEpoch.divide(usPerMs).longValue();
+                trData.readBase = tag.getLastSeenTimestampUTC().getMicroseconds().toLong() / 1000;
                 trData.readOffset = 0;
                 trData.rssi = tag.getPeakRSSI().getPeakRSSI().intValue();
                 trData.reader = reader;
@@ -7605,26 +8744,29 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
             }
             else
             {
-                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.ANTENNAID))
+                if(flags.contains(TagReadData.TagMetadataFlag.ANTENNAID))
                 {
                     trData.antenna = tag.getAntennaID().getAntennaID().intValue();
                 }
-                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.READCOUNT))
+                // An accumulating report policy turns the seen count on
+                // whatever metadata was asked for
+                ReportPolicy policy = reportPolicy;
+                if(flags.contains(TagReadData.TagMetadataFlag.READCOUNT)
+                   || (null != policy && policy.accumulate && null != tag.getTagSeenCount()))
                 {
                     trData.readCount = tag.getTagSeenCount().getTagCount().intValue();
                 }
-                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.TIMESTAMP))
+                if(flags.contains(TagReadData.TagMetadataFlag.TIMESTAMP))
                 {
-                    BigInteger usSinceEpoch = tag.getLastSeenTimestampUTC().getMicroseconds().toBigInteger();
-                    trData.readBase = usSinceEpoch.divide(usPerMs).longValue();
+                    trData.readBase = tag.getLastSeenTimestampUTC().getMicroseconds().toLong() / 1000;
                 }
 
-                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.RSSI))
+                if(flags.contains(TagReadData.TagMetadataFlag.RSSI))
                 {
                     trData.rssi = tag.getPeakRSSI().getPeakRSSI().intValue();
                 }
 
-                if(metaDataFlags.contains(TagReadData.TagMetadataFlag.FREQUENCY))
+                if(flags.contains(TagReadData.TagMetadataFlag.FREQUENCY))
                 {
                     int channelIndex = tag.getChannelIndex().getChannelIndex().intValue();
                     if(!frequencyHopTableList.isEmpty())
@@ -7634,163 +8776,105 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                     }
                 }
             }
-            trData.metadataFlags = metaDataFlags;
+            trData.metadataFlags = flags;
             trData.readOffset = 0;
             trData.reader = reader;
             // Since Spruce release firmware doesn't support phase, there won't be ThingMagicTagReportContentSelector
             // custom paramter in ROReportSpec
-            StringTokenizer versionSplit = new StringTokenizer(_softwareVersion, ".");
-            int length = versionSplit.countTokens();
-            if(length != 0)
+            if(featuresFlag.contains(ReaderFeaturesFlag.READER_FEATURES_FLAG_TAG_METADATA) && !tag.getCustomList().isEmpty())
             {
-                int productVersion = Integer.parseInt(versionSplit.nextToken());
-                int buildVersion = Integer.parseInt(versionSplit.nextToken());
-                if ((productVersion == 4 && buildVersion >= 17) || productVersion > 4)
+                ThingMagicRFPhase customRFValue = (ThingMagicRFPhase) customs[CUSTOM_RF_PHASE];
+                ThingMagicMetadataGPIO customGpioValue = (ThingMagicMetadataGPIO) customs[CUSTOM_GPIO];
+                ThingMagicMetadataGen2 customGen2Value = (ThingMagicMetadataGen2) customs[CUSTOM_GEN2];
+                ThingMagicCustomProtocolID customProtocolValue = (ThingMagicCustomProtocolID) customs[CUSTOM_PROTOCOL_ID];
+                ThingMagicCustomTagopResponse customDataValue = (ThingMagicCustomTagopResponse) customs[CUSTOM_TAGOP_RESPONSE];
+                if (customRFValue != null)
                 {
-                    if(!tag.getCustomList().isEmpty())
+                    trData.phase = customRFValue.getPhase().intValue();
+                }
+                if (customGpioValue != null)
+                {
+                     List<GPIOStatus> gpioStatus = customGpioValue.getGPIOStatusList();
+                     GpioPin[] gpioPins = new GpioPin[gpioStatus.size()];
+                     for(int i = 0; i < gpioPins.length; i++)
+                     {
+                         GPIOStatus gp = gpioStatus.get(i);
+                         gpioPins[i] = new GpioPin(gp.getid().toInteger(), gp.getStatus().toBoolean());
+                     }
+                     trData.gpio = gpioPins;
+                }
+                if (customGen2Value != null)
+                {
+                    int gen2LFResponse = 0;
+                    int gen2TargetResponse = 2;
+                    int gen2QResponse = 0;
+                    if(flags.contains(TagReadData.TagMetadataFlag.GEN2_Q))
                     {
-                        Custom customRFValue = null;
-                        Custom customGpioValue = null;
-                        Custom customGen2Value = null;
-                        Custom customProtocolValue = null;
-                        Custom customDataValue = null;
-                        for(Custom cVal : tag.getCustomList())
-                        {
-                            if(cVal instanceof ThingMagicRFPhase )
-                            {
-                                customRFValue = cVal;
-                            }
-                            if(cVal instanceof ThingMagicMetadataGPIO )
-                            {
-                                customGpioValue = cVal;
-                            }
-                            if(cVal instanceof ThingMagicMetadataGen2 )
-                            {
-                                customGen2Value = cVal;
-                            }
-                            if(cVal instanceof ThingMagicCustomProtocolID )
-                            {
-                                customProtocolValue = cVal;
-                            }
-                            if(cVal instanceof ThingMagicCustomTagopResponse)
-                            {
-                                customDataValue = cVal;
-                            }
-                        }
-                        if (customRFValue != null && customRFValue instanceof ThingMagicRFPhase)
-                        {
-                            trData.phase = ((ThingMagicRFPhase) customRFValue).getPhase().intValue();
-                        }
-                        if (customGpioValue != null && customGpioValue instanceof ThingMagicMetadataGPIO)
-                        {
-                             List<GPIOStatus> gpioStatus =  ((ThingMagicMetadataGPIO) customGpioValue).getGPIOStatusList();
-                             List<GpioPin> gpioPins = new ArrayList<GpioPin>();
-                             for(GPIOStatus gp : gpioStatus)
-                             {
-                                 int id = gp.getid().toInteger();
-                                 boolean status = gp.getStatus().toBoolean();
-                                 int direction = gp.getDirection().intValue();
-                                 GpioPin gpioPin = new GpioPin(id, status);
-                                 gpioPins.add(gpioPin);
-                             }
-                             trData.gpio = gpioPins.toArray(new GpioPin[0]);
-                        }
-                        if (customGen2Value != null && customGen2Value instanceof ThingMagicMetadataGen2)
-                        {
-                            int gen2LFResponse = 0;
-                            int gen2TargetResponse = 2;
-                            int gen2QResponse = 0;
-                            if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GEN2_Q) && gen2QFlag)
-                            {
-                                gen2QResponse = ((ThingMagicMetadataGen2) customGen2Value).getGen2QResponse().getQValue().intValue();
-                            }
-                            else
-                            {
-                                metaDataFlags.remove(TagReadData.TagMetadataFlag.GEN2_Q);
-                            }
-                            if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GEN2_LF) && gen2LFFlag)
-                            {
-                                gen2LFResponse = ((ThingMagicMetadataGen2) customGen2Value).getGen2LFResponse().getLFValue().intValue();
-                            }
-                            else
-                            {
-                                metaDataFlags.remove(TagReadData.TagMetadataFlag.GEN2_LF);
-                            }
-                            if(metaDataFlags.contains(TagReadData.TagMetadataFlag.GEN2_TARGET) && gen2TargetFlag)
-                            {
-                                gen2TargetResponse = ((ThingMagicMetadataGen2) customGen2Value).getGen2TargetResponse().getTargetValue().intValue();
-                            }
-                            else
-                            {
-                                metaDataFlags.remove(TagReadData.TagMetadataFlag.GEN2_TARGET);
-                            }
-                            
-                            switch(gen2LFResponse)
-                            {
-                                case 250:
-                                   gen2LFResponse = 0;
-                                   break;
-                                case 320:
-                                    gen2LFResponse = 2;
-                                    break;
-                                case 640:
-                                    gen2LFResponse = 4;
-                                    break;
-                                default:
-                                    break;
-                            }
-                            Gen2.TagReadData gen2 = new Gen2.TagReadData();
-                            trData.prd = gen2;
-                            gen2.q.initialQ = gen2QResponse;
-                            gen2.lf = Gen2.LinkFrequency.getFrequency(gen2LFResponse);
-                            switch (gen2TargetResponse) 
-                            {
-                                case 0:
-                                    gen2.target = Gen2.Target.A;
-                                    break;
-                                case 1:
-                                    gen2.target = Gen2.Target.B;
-                                    break;
-                                case 2:
-                                    break;
-                            }
-                        }
-                        if(featuresFlag.contains(ReaderFeaturesFlag.READER_FEATURES_FLAG_ANTENNA_READ_TIME))
-                        {
-                            /**
-                             * Currently protocol ID is coming as 2nd custom parameter
-                             **/
-                            if (customProtocolValue != null && customProtocolValue instanceof ThingMagicCustomProtocolID)
-                            {
-                                ThingMagicCustomProtocol protocolID = ((ThingMagicCustomProtocolID)customProtocolValue).getProtocolId();
-                                trData.readProtocol = parseThingmagicCustomProtocol(protocolID.intValue());
-                            }
-                        }
-                        else
-                        {
-                            //Get the protocol using tag rospecId - to handle backward compatibility case
-                            trData.readProtocol = mapRoSpecIdToProtocol.get(tag.getROSpecID().getROSpecID().intValue());
-                        }
-                        if(customDataValue != null && customDataValue instanceof ThingMagicCustomTagopResponse)
-                        {
-                            ThingMagicCustomTagopResponse customTagopResponse = (ThingMagicCustomTagopResponse) customDataValue;
-                            UnsignedByteArray tagOpBytes = customTagopResponse.getTagopByteStreamParam().getByteStream();
-                            byte[] customTagOpBytes = new byte[tagOpBytes.getByteLength()];
-                            for (int i=0; i < tagOpBytes.getByteLength(); i++)
-                            {
-                                customTagOpBytes[i] = tagOpBytes.get(i).toByte();
-                            }
-                            trData.data = customTagOpBytes;
-                        }
+                        gen2QResponse = customGen2Value.getGen2QResponse().getQValue().intValue();
+                    }
+                    if(flags.contains(TagReadData.TagMetadataFlag.GEN2_LF))
+                    {
+                        gen2LFResponse = customGen2Value.getGen2LFResponse().getLFValue().intValue();
+                    }
+                    if(flags.contains(TagReadData.TagMetadataFlag.GEN2_TARGET))
+                    {
+                        gen2TargetResponse = customGen2Value.getGen2TargetResponse().getTargetValue().intValue();
+                    }
+                    
+                    switch(gen2LFResponse)
+                    {
+                        case 250:
+                           gen2LFResponse = 0;
+                           break;
+                        case 320:
+                            gen2LFResponse = 2;
+                            break;
+                        case 640:
+                            gen2LFResponse = 4;
+                            break;
+                        default:
+                            break;
+                    }
+                    Gen2.TagReadData gen2 = new Gen2.TagReadData();
+                    trData.prd = gen2;
+                    gen2.q.initialQ = gen2QResponse;
+                    gen2.lf = Gen2.LinkFrequency.getFrequency(gen2LFResponse);
+                    switch (gen2TargetResponse) 
+                    {
+                        case 0:
+                            gen2.target = Gen2.Target.A;
+                            break;
+                        case 1:
+                            gen2.target = Gen2.Target.B;
+                            break;
+                        case 2:
+                            break;
                     }
                 }
-            }
-            if (!continuousReading)
-            {
-                //System.out.println("readata " + readData + " trData " + trData);
-                if (null != readData && trData != null)
+                if(featuresFlag.contains(ReaderFeaturesFlag.READER_FEATURES_FLAG_ANTENNA_READ_TIME))
                 {
-                    readData.add(trData);
+                    /**
+                     * Currently protocol ID is coming as 2nd custom parameter
+                     **/
+                    if (customProtocolValue != null)
+                    {
+                        trData.readProtocol = parseThingmagicCustomProtocol(customProtocolValue.getProtocolId().intValue());
+                    }
+                }
+                else
+                {
+                    //Get the protocol using tag rospecId - to handle backward compatibility case
+                    trData.readProtocol = mapRoSpecIdToProtocol.get(tag.getROSpecID().getROSpecID().intValue());
+                }
+                if(customDataValue != null)
+                {
+                    UnsignedByteArray tagOpBytes = customDataValue.getTagopByteStreamParam().getByteStream();
+                    byte[] customTagOpBytes = new byte[tagOpBytes.getByteLength()];
+                    for (int i=0; i < tagOpBytes.getByteLength(); i++)
+                    {
+                        customTagOpBytes[i] = tagOpBytes.get(i).toByte();
+                    }
+                    trData.data = customTagOpBytes;
                 }
             }
             return trData;
@@ -8587,7 +9671,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         {
             try
             {
-                log("Receiver Call Back ...." + "Name - " + message.getName() + ": ResponseType - " + message.getResponseType() + ": TypeNum - " + message.getTypeNum());
+                log("Receiver Call Back ....Name - {}: ResponseType - {}: TypeNum - {}", message.getName(), message.getResponseType(), message.getTypeNum());
                 
                 SignedShort msgTypeNum = message.getTypeNum();
                 notifyTransportListeners(message, false, 0);
@@ -8599,6 +9683,10 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                 if(!isMsgRespReceived)
                 {
                     isMsgRespReceived = sentReceiveMessageValidator(msgSent, message);
+                    if(isMsgRespReceived)
+                    {
+                        signalLLRPEvent();
+                    }
                 }
                 if (msgTypeNum == RO_ACCESS_REPORT.TYPENUM)
                 {
@@ -8611,9 +9699,25 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                     //System.out.println("outstanding tags in queue : " + tagReportQueue.size());
                     if(processData)
                     {
+                        long receivedAt = System.nanoTime();
+                        pendingTags.addAndGet(tags.size());
+                        ExecutorService pool = decodePool;
+                        TagProcessor decoder = tagProcessor;
                         synchronized (tagReportQueue) 
                         {
-                            tagReportQueue.addAll(tags);
+                            for (int i = 0; i < tags.size(); i += DECODE_CHUNK)
+                            {
+                                ReportWork chunk = ReportWork.chunk(tags.subList(i, Math.min(tags.size(), i + DECODE_CHUNK)), receivedAt);
+                                if (null != pool && null != decoder)
+                                {
+                                    chunk.decodeOn(pool, decoder);
+                                }
+                                tagReportQueue.add(chunk);
+                            }
+                            if (continuousReading && hasReadBatchListeners())
+                            {
+                                tagReportQueue.add(ReportWork.boundary(System.currentTimeMillis()));
+                            }
                             tagReportQueue.notifyAll();
                         }
                         synchronized (rfReportQueue)
@@ -8621,6 +9725,16 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                             rfReportQueue.addAll(rfReportData);
                             rfReportQueue.notifyAll();
                         }
+                        TagProcessor tp = tagProcessor;
+                        if (null != tp)
+                        {
+                            tp.signal();
+                        }
+                        RFReportProcessor rp = rfReportProcessor;
+                        if (null != rp)
+                        {
+                            rp.signal();
+                        }
                     }
                 }
                 else if(msgTypeNum == ERROR_MESSAGE.TYPENUM)
@@ -8639,7 +9753,7 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
                         // end of ROSpec
                         int roSpecID = roSpecEvent.getROSpecID().intValue();
                         endOfROSpecFlags[roSpecID-1] = true;
-                        log("enable rospecs $$$$$$$$$$ " + "length : " + endOfROSpecFlags.length + " - " + endOfROSpecFlags[roSpecID-1]);
+                        log("enable rospecs $$$$$$$$$$ length : {} - {}", endOfROSpecFlags.length, endOfROSpecFlags[roSpecID-1]);
                         verifyROSpecEndStatus();
                     }
                     if(aiSpecEvent != null && (aiSpecEvent.getEventType().intValue() == AISpecEventType.End_Of_AISpec))
@@ -8685,6 +9799,114 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
         }//end of errorOccured
     }//end of TagReadEndPoint class
 
+    private synchronized void startReportPoller(long period)
+    {
+        stopReportPoller();
+        reportPoller = new ReportPoller(period);
+        reportPoller.start();
+    }
+
+    private synchronized void stopReportPoller()
+    {
+        if (null != reportPoller)
+        {
+            reportPoller.stop();
+            reportPoller = null;
+        }
+    }
+
+    /**
+     * Asks the reader for its held tag reports with GET_REPORT, at the
+     * period of a PERIODIC ReportPolicy.
+     *
+     * In a ReaderFleet the shared scheduler only triggers the poll: the
+     * send runs on the poller's own thread, so a slow or stalled socket
+     * cannot hold up the keep-alive monitors and pollers of the other
+     * readers on the scheduler thread. A trigger that finds the previous
+     * GET_REPORT still being sent is skipped rather than queued.
+     */
+    private class ReportPoller
+    {
+        final long period;
+        Timer timer;
+        // Used instead of the timer by readers in a ReaderFleet
+        ScheduledFuture<?> scheduled;
+        ExecutorService sender;
+        final AtomicBoolean sending = new AtomicBoolean();
+        final TimerTask task = new TimerTask()
+        {
+            public void run()
+            {
+                try
+                {
+                    // The reports come back as RO_ACCESS_REPORTs
+                    LLRP_Send(new GET_REPORT());
+                }
+                catch (ReaderException re)
+                {
+                    log("GET_REPORT failed: {}", re.getMessage());
+                }
+                finally
+                {
+                    sending.set(false);
+                }
+            }
+        };
+        final Runnable trigger = new Runnable()
+        {
+            public void run()
+            {
+                if (!sending.compareAndSet(false, true))
+                {
+                    return;
+                }
+                try
+                {
+                    sender.execute(task);
+                }
+                catch (RejectedExecutionException ree)
+                {
+                    // Stopped between the trigger and the hand-off
+                    sending.set(false);
+                }
+            }
+        };
+
+        ReportPoller(long period)
+        {
+            this.period = period;
+        }
+
+        void start()
+        {
+            ScheduledExecutorService scheduler = sharedScheduler;
+            if (null != scheduler)
+            {
+                sender = Executors.newSingleThreadExecutor(daemonThreads("LLRP report poller"));
+                scheduled = scheduler.scheduleAtFixedRate(trigger, period, period, TimeUnit.MILLISECONDS);
+                return;
+            }
+            timer = new Timer("ReportPollerTask", true);
+            timer.scheduleAtFixedRate(task, period, period);
+        }
+
+        void stop()
+        {
+            if (null != timer)
+            {
+                timer.cancel();
+            }
+            if (null != scheduled)
+            {
+                scheduled.cancel(false);
+            }
+            if (null != sender)
+            {
+                sender.shutdown();
+            }
+        }
+    }
+
     /**
      * MonitorKeepAlives task monitors keep-alive messages received from tmmpd
      * Would throw connection lost exception if keep-alive is not received within 20 seconds.
@@ -8693,11 +9915,19 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
     {
         long delay = KEEPALIVE_TRIGGER; // 5s delay
         LoopTask task = new LoopTask();
-        Timer timer = new Timer("MonitorKeepAlivesTimer");
+        Timer timer;
+        // Used instead of the timer by readers in a ReaderFleet
+        ScheduledFuture<?> scheduled;
 
         public void start()
         {
-            timer.cancel();
+            stop();
+            ScheduledExecutorService scheduler = sharedScheduler;
+            if (null != scheduler)
+            {
+                scheduled = scheduler.scheduleAtFixedRate(task, 0, delay, TimeUnit.MILLISECONDS);
+                return;
+            }
             timer = new Timer("MonitorKeepAlivesTask");
             Date executionDate = new Date();
             // this timer is scheduled to start right away with the current time
@@ -8706,7 +9936,14 @@ public class LLRPReader extends Reader implements com.thingmagic.Logger
 
         public void stop()
         {
-            timer.cancel();
+            if (null != timer)
+            {
+                timer.cancel();
+            }
+            if (null != scheduled)
+            {
+                scheduled.cancel(false);
+            }
     }
 
         private class LoopTask extends TimerTask
@@ -122,6 +122,12 @@ public class LoadSaveConfiguration extends Properties
             }
             r.saveConfig(tempFilePath);
 
+            /* Parse the values first, then apply them as one batch so that
+            readers which can combine settings do so. Errors are handled
+            per parameter, in file order, once the batch has run.
+            */
+            Map<String, Object> toSet = new LinkedHashMap<String, Object>();
+            boolean rolledBack = false;
             Set<String> keys = map.keySet();
             for (Object key : keys) 
             {
@@ -150,87 +156,52 @@ public class LoadSaveConfiguration extends Properties
                             }
                             if(tempVal.length()> 0)
                             {
-                                r.paramSet(keyParam,  parseValue(keyParam, value)); 
+                                toSet.put(keyParam,  parseValue(keyParam, value)); 
                             }
                         }
                         else
                         {
-                            r.paramSet(keyParam,  parseValue(keyParam, value)); 
+                            toSet.put(keyParam,  parseValue(keyParam, value)); 
                         }
 
                     }
                 }
                 catch(Exception ex)
                 {
-                    if(ex instanceof IllegalArgumentException || ex instanceof ReaderCodeException)
+                    if (handleLoadException(r, keyParam, value, ex, tempFilePath, tempFile))
                     {
-                        String message = ex.getMessage();
-                        if( message.contains("No parameter named")
-                           || message.contains("Parameter '" + key + "' is read-only.") 
-                           || message.contains("Parameter is read only."))
-                        {                            
-                            r.notifyExceptionListeners(new ReaderException(keyParam + " is either read only or not supported by reader. Skipping this param"));
-                        }
-                        else if(message.contains("Wrong type"))
-                        {
-                           r.notifyExceptionListeners(new ReaderException("Wrong type  "+ value + " for "+ keyParam+". Skipping this param"));
-                        }
-                        else if (ex.getMessage().contains("Invalid antenna"))
-                        {
-                            r.notifyExceptionListeners(new ReaderException("Invalid value " + value + " for " + keyParam+". Skipping this param"));
-                        }
-                       else if(ex.getMessage().contains("Unimplemented feature"))
-                       {
-                          r.notifyExceptionListeners(new ReaderException("Feature not supported for "+ keyParam+". Skipping this param"));
-                       }
-                       else if(ex.getMessage().contains("Illegal set of GPI for trigger read"))
-                       {
-                          r.notifyExceptionListeners(new ReaderException("Invalid value " + value + " for " + keyParam +" "+ex.getMessage()+". Skipping this param"));
-                       }
-                       else if(ex.getMessage().contains("The reader received a valid command with an unsupported or invalid parameter"))
-                       {
-                          r.notifyExceptionListeners(new ReaderException("The reader received a valid command with an unsupported or "
-                                  + "invalid parameter value for " + keyParam +". Skipping this param"));
-                       }
-                       else
-                        {
-                            if (isRollback)
-                            {
-                                isRollback = false;
-                                r.notifyExceptionListeners(new ReaderException("Invalid value " + value
-                                        + " for " + keyParam + " " + ex.getMessage()));
-                                rollBackConfigData(r, tempFilePath);
-                                tempFile.delete();
-                                break;
-                            }
-                            r.notifyExceptionListeners(new ReaderException("Invalid value " + value + " for " + keyParam + " " + ex.getMessage()));
-                        }
+                        rolledBack = true;
+                        break;
                     }
-                    else if(ex instanceof UnsupportedOperationException)
-                    {
-                        r.notifyExceptionListeners(new ReaderException("Feature not supported for "+ keyParam+". Skipping this param"));
-                    }
-                    else if(ex instanceof ReaderCommException)
-                       {
-                           if (-1 != ex.getMessage().indexOf("Timeout"))
-                            {
-                                  throw new ReaderException(ex.getMessage());
-                            }
-                       }
-                    else
+                }
+            }
+            /* A batch stops at a communication failure. As when each
+            parameter was set on its own, a failure other than a timeout
+            only costs that parameter, so carry on with the rest in a new
+            batch.
+            */
+            while (!rolledBack && !toSet.isEmpty())
+            {
+                Reader.ParamBatchResult result = r.paramSetAll(toSet);
+                Map<String, Object> notAttempted = new LinkedHashMap<String, Object>();
+                for (Map.Entry<String, Object> entry : toSet.entrySet())
+                {
+                    String keyParam = entry.getKey();
+                    Exception ex = result.getErrors().get(keyParam);
+                    if (ex != null)
                     {
-                        if(isRollback)
+                        if (handleLoadException(r, keyParam, prop.getProperty(keyParam).trim(), ex, tempFilePath, tempFile))
                         {
-                            isRollback = false;
-                            r.notifyExceptionListeners(new ReaderException("Invalid value " + value +
-                                    " for " + keyParam + " " + ex.getMessage()));
-                            rollBackConfigData(r, tempFilePath);
-                            tempFile.delete();
+                            rolledBack = true;
                             break;
                         }
-                        r.notifyExceptionListeners(new ReaderException("Invalid value " + value +" for " + keyParam+ " " +ex.getMessage()));
+                    }
+                    else if (!result.getValues().containsKey(keyParam))
+                    {
+                        notAttempted.put(keyParam, entry.getValue());
                     }
                 }
+                toSet = notAttempted;
             }
             tempFile.delete();
         }
@@ -244,6 +215,85 @@ public class LoadSaveConfiguration extends Properties
         }
     }
    
+    /**
+     * Report a parameter that could not be loaded.
+     *
+     * @return true if the configuration was rolled back and loading must stop
+     */
+    private boolean handleLoadException(Reader r, String keyParam, String value, Exception ex,
+                                        String tempFilePath, File tempFile) throws ReaderException, IOException
+    {
+        if(ex instanceof IllegalArgumentException || ex instanceof ReaderCodeException)
+        {
+            String message = ex.getMessage();
+            if( message.contains("No parameter named")
+               || message.contains("Parameter '" + keyParam + "' is read-only.") 
+               || message.contains("Parameter is read only."))
+            {                            
+                r.notifyExceptionListeners(new ReaderException(keyParam + " is either read only or not supported by reader. Skipping this param"));
+            }
+            else if(message.contains("Wrong type"))
+            {
+               r.notifyExceptionListeners(new ReaderException("Wrong type  "+ value + " for "+ keyParam+". Skipping this param"));
+            }
+            else if (ex.getMessage().contains("Invalid antenna"))
+            {
+                r.notifyExceptionListeners(new ReaderException("Invalid value " + value + " for " + keyParam+". Skipping this param"));
+            }
+           else if(ex.getMessage().contains("Unimplemented feature"))
+           {
+              r.notifyExceptionListeners(new ReaderException("Feature not supported for "+ keyParam+". Skipping this param"));
+           }
+           else if(ex.getMessage().contains("Illegal set of GPI for trigger read"))
+           {
+              r.notifyExceptionListeners(new ReaderException("Invalid value " + value + " for " + keyParam +" "+ex.getMessage()+". Skipping this param"));
+           }
+           else if(ex.getMessage().contains("The reader received a valid command with an unsupported or invalid parameter"))
+           {
+              r.notifyExceptionListeners(new ReaderException("The reader received a valid command with an unsupported or "
+                      + "invalid parameter value for " + keyParam +". Skipping this param"));
+           }
+           else
+            {
+                if (isRollback)
+                {
+                    isRollback = false;
+                    r.notifyExceptionListeners(new ReaderException("Invalid value " + value
+                            + " for " + keyParam + " " + ex.getMessage()));
+                    rollBackConfigData(r, tempFilePath);
+                    tempFile.delete();
+                    return true;
+                }
+                r.notifyExceptionListeners(new ReaderException("Invalid value " + value + " for " + keyParam + " " + ex.getMessage()));
+            }
+        }
+        else if(ex instanceof UnsupportedOperationException)
+        {
+            r.notifyExceptionListeners(new ReaderException("Feature not supported for "+ keyParam+". Skipping this param"));
+        }
+        else if(ex instanceof ReaderCommException)
+           {
+               if (-1 != ex.getMessage().indexOf("Timeout"))
+                {
+                      throw new ReaderException(ex.getMessage());
+                }
+           }
+        else
+        {
+            if(isRollback)
+            {
+                isRollback = false;
+                r.notifyExceptionListeners(new ReaderException("Invalid value " + value +
+                        " for " + keyParam + " " + ex.getMessage()));
+                rollBackConfigData(r, tempFilePath);
+                tempFile.delete();
+                return true;
+            }
+            r.notifyExceptionListeners(new ReaderException("Invalid value " + value +" for " + keyParam+ " " +ex.getMessage()));
+        }
+        return false;
+    }
+
     public void rollBackConfigData(Reader r, String filePath) throws ReaderException, IOException
     {
         r.notifyExceptionListeners(new ReaderException("Rolling back the configuration data"));
@@ -270,6 +320,7 @@ public class LoadSaveConfiguration extends Properties
         booleanParameters.add("/reader/gen2/writeearlyexit");
         booleanParameters.add("/reader/extendedepc");
         booleanParameters.add("/reader/gen2/sendselect");
+        booleanParameters.add("/reader/commandstats/enable");
     }
     public void addEnumClasses()
     {
@@ -285,6 +336,8 @@ public class LoadSaveConfiguration extends Properties
        enumClass.put("/reader/gen2/protocolextension", Gen2.ProtocolExtension.class);
        enumClass.put("/reader/regulatory/mode", Reader.RegulatoryMode.class);
        enumClass.put("/reader/regulatory/modulation", Reader.RegulatoryModulation.class);
+       enumClass.put("/reader/read/dispatchoverflowpolicy", TagDispatchQueue.OverflowPolicy.class);
+       enumClass.put("/reader/read/listenerdispatch", ReadListenerDispatcher.Mode.class);
        
     }
     
@@ -653,6 +706,10 @@ public class LoadSaveConfiguration extends Properties
                 parsedValue = q;
             }
         }
+        else if(param.equalsIgnoreCase("/reader/llrp/reportPolicy"))
+        {
+            parsedValue = parseReportPolicy(value);
+        }
         else if(param.equalsIgnoreCase("/reader/protocollist"))
         {
             Set<TagProtocol> protocolList = EnumSet.noneOf(TagProtocol.class);
@@ -743,6 +800,45 @@ public class LoadSaveConfiguration extends Properties
         return parsedValue;
     }
     
+    /**
+     * Parses a report policy in the form written by ReportPolicy.toString(),
+     * e.g. "N_TAGS(10)", "PERIODIC(500), accumulated" or "END_OF_AISPEC".
+     * "null" stands for the reader's default reporting.
+     */
+    public LLRPReader.ReportPolicy parseReportPolicy(String value)
+    {
+        value = value.trim();
+        if (value.equalsIgnoreCase("null"))
+        {
+            return null;
+        }
+        boolean accumulate = false;
+        int comma = value.indexOf(',');
+        if (comma != -1)
+        {
+            String option = value.substring(comma + 1).trim();
+            if (!option.equalsIgnoreCase("accumulated"))
+            {
+                throw new IllegalArgumentException(option + " is not a valid option.");
+            }
+            accumulate = true;
+            value = value.substring(0, comma).trim();
+        }
+        int n = 0;
+        int open = value.indexOf('(');
+        if (open != -1)
+        {
+            if (!value.endsWith(")"))
+            {
+                throw new IllegalArgumentException(value + " is not a valid report policy.");
+            }
+            n = Integer.parseInt(value.substring(open + 1, value.length() - 1).trim());
+            value = value.substring(0, open).trim();
+        }
+        LLRPReader.ReportPolicy.Trigger trigger = LLRPReader.ReportPolicy.Trigger.valueOf(value.toUpperCase());
+        return new LLRPReader.ReportPolicy(trigger, n, accumulate);
+    }
+
     public Iso14443a.TagType ConvertToIso14443aTagType(String[] userType)
     {
         Iso14443a.TagType tagTypeFlag = null;
@@ -1278,58 +1374,76 @@ public class LoadSaveConfiguration extends Properties
             String[] params = r.paramList();
             String paramValue = "";
 
+            List<String> toGet = new ArrayList<String>();
             for (String param : params)
             {
                 if (!readOnlyParameters.contains(param))
                 {
-                    Object value = "";
-                    try
+                    if(param.equalsIgnoreCase("/reader/antenna/portswitchgpos")&&r instanceof LLRPReader)
                     {
-                        if(param.equalsIgnoreCase("/reader/antenna/portswitchgpos")&&r instanceof LLRPReader)
-                        {
-                           //For Network Readers "/reader/antenna/portswitchgpos" paramGet doesn't support so not adding to saveConfigData  
-                           continue; 
-                        }   
-                        value = r.paramGet(param);
+                       //For Network Readers "/reader/antenna/portswitchgpos" paramGet doesn't support so not adding to saveConfigData  
+                       continue; 
+                    }   
+                    toGet.add(param);
+                }
+            }
+            // Fetch as one batch so that readers which can combine requests do so
+            Reader.ParamBatchResult fetched = r.paramGetAll(toGet);
 
-                        if (param.equalsIgnoreCase("/reader/read/plan"))
-                        {
-                            paramValue = formatReadPlan(value);
-                        }
-                        else if (param.equalsIgnoreCase("/reader/gen2/accessPassword"))
-                        {
-                            paramValue = formatValue(((Gen2.Password)value).value);
-                        }
-                        else
-                        {
-                            paramValue = formatValue(value);
-                        }
-                        saveConfigData.put(param,paramValue);
+            for (String param : toGet)
+            {
+                Object value = "";
+                try
+                {
+                    Exception fetchError = fetched.getErrors().get(param);
+                    if (fetchError != null)
+                    {
+                        throw fetchError;
+                    }
+                    if (!fetched.getValues().containsKey(param))
+                    {
+                        // Batch stopped on a communication failure
+                        break;
+                    }
+                    value = fetched.getValues().get(param);
 
+                    if (param.equalsIgnoreCase("/reader/read/plan"))
+                    {
+                        paramValue = formatReadPlan(value);
                     }
-                    catch (ReaderException ex)
+                    else if (param.equalsIgnoreCase("/reader/gen2/accessPassword"))
                     {
-                       if(ex.getMessage().equals("Undefined Values"))
-                       {
-                           saveConfigData.remove(param);
-                           System.out.println("Unable to get global power when per port power is different for each port. "
-                                   + "Hence removing param '" + param + "' from save configuration file");
-                       }
-                       else if(ex.getMessage().equals("A Set Protocol command was received for a protocol value that is not supported"))
-                       {
-                           //skipping param and removing from saveConfigData
-                           saveConfigData.remove(param);
-                       }
-                       else if(ex.getMessage().equals("Unimplemented feature.") || (ex.getMessage().equals("The reader received a valid command with an unsupported or invalid parameter")))
-                       {
-                           //skipping param and removing from saveConfigData
-                           saveConfigData.remove(param);
-                       }
-                       else
-                       {
-                           throw ex;
-                       }
+                        paramValue = formatValue(((Gen2.Password)value).value);
                     }
+                    else
+                    {
+                        paramValue = formatValue(value);
+                    }
+                    saveConfigData.put(param,paramValue);
+
+                }
+                catch (ReaderException ex)
+                {
+                   if(ex.getMessage().equals("Undefined Values"))
+                   {
+                       saveConfigData.remove(param);
+                       System.out.println("Unable to get global power when per port power is different for each port. "
+                               + "Hence removing param '" + param + "' from save configuration file");
+                   }
+                   else if(ex.getMessage().equals("A Set Protocol command was received for a protocol value that is not supported"))
+                   {
+                       //skipping param and removing from saveConfigData
+                       saveConfigData.remove(param);
+                   }
+                   else if(ex.getMessage().equals("Unimplemented feature.") || (ex.getMessage().equals("The reader received a valid command with an unsupported or invalid parameter")))
+                   {
+                       //skipping param and removing from saveConfigData
+                       saveConfigData.remove(param);
+                   }
+                   else
+                   {
+                       throw ex;
+                   }
                 }
             }
         }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a queue consumer as tasks on a shared executor instead of on a
+ * thread of its own. The producer calls signal() after queueing work;
+ * at most one task runs at a time, so work is still handled in order.
+ * A task handles one batch and then gives its pool thread back, so a
+ * busy reader cannot keep a shared thread to itself. Nor may a task wait
+ * for a slow consumer: code that would otherwise block checks inTask()
+ * and drops what does not fit instead, counting it.
+ */
+final class PooledDrain implements Runnable
+{
+  /**
+   * The consumer side of a queue
+   */
+  interface Step
+  {
+    /**
+     * Handle up to one batch of queued work.
+     *
+     * @return whether work remains
+     */
+    boolean drainBatch() throws InterruptedException;
+
+    /**
+     * Whether there is queued work
+     */
+    boolean hasWork();
+  }
+
+  // Set while the current thread runs a drain task
+  private static final ThreadLocal<Boolean> running = new ThreadLocal<Boolean>();
+
+  private final Executor executor;
+  private final Step step;
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  PooledDrain(Executor executor, Step step)
+  {
+    this.executor = executor;
+    this.step = step;
+  }
+
+  /**
+   * Whether the current thread is running a drain task on the shared
+   * executor, where it must not wait for room in a queue or buffer.
+   */
+  static boolean inTask()
+  {
+    return running.get() != null;
+  }
+
+  /**
+   * Make sure a task will see the work queued so far.
+   */
+  void signal()
+  {
+    if (scheduled.compareAndSet(false, true) && !submit())
+    {
+      // The pool has been shut down, so finish on the signalling thread
+      run();
+    }
+  }
+
+  public void run()
+  {
+    // signal() runs a task inline once the pool is shut down, possibly
+    // from inside another task
+    boolean outer = (running.get() == null);
+    running.set(Boolean.TRUE);
+    try
+    {
+      drain();
+    }
+    finally
+    {
+      if (outer)
+      {
+        running.remove();
+      }
+    }
+  }
+
+  private void drain()
+  {
+    while (true)
+    {
+      boolean more = false;
+      try
+      {
+        more = step.drainBatch();
+      }
+      catch (InterruptedException ie)
+      {
+        // The pool is shutting down; the work stays queued
+        Thread.currentThread().interrupt();
+        scheduled.set(false);
+        return;
+      }
+      finally
+      {
+        if (!more)
+        {
+          scheduled.set(false);
+        }
+      }
+      if (more)
+      {
+        if (submit())
+        {
+          return;
+        }
+        continue;
+      }
+      // Work queued between the last poll and clearing the flag has not
+      // been signalled for
+      if (!step.hasWork() || !scheduled.compareAndSet(false, true))
+      {
+        return;
+      }
+    }
+  }
+
+  private boolean submit()
+  {
+    try
+    {
+      executor.execute(this);
+      return true;
+    }
+    catch (RejectedExecutionException ree)
+    {
+      return false;
+    }
+  }
+}
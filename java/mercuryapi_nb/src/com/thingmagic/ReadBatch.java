@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The tag reads collected by a reader in one search cycle, LLRP report or
+ * RQL response. Instances of this class are immutable.
+ */
+public final class ReadBatch
+{
+  private final long sequence;
+  private final List<TagReadData> reads;
+  private final long startTime;
+  private final long endTime;
+  private final boolean cycleComplete;
+
+  ReadBatch(long sequence, List<TagReadData> reads, long startTime,
+            long endTime, boolean cycleComplete)
+  {
+    this.sequence = sequence;
+    this.reads = Collections.unmodifiableList(reads);
+    this.startTime = startTime;
+    this.endTime = endTime;
+    this.cycleComplete = cycleComplete;
+  }
+
+  /**
+   * Returns the position of this batch among those delivered by the
+   * reader, starting at 1.
+   */
+  public long getSequence()
+  {
+    return sequence;
+  }
+
+  /**
+   * Returns the tag reads of the batch.
+   *
+   * @return an unmodifiable list, possibly empty
+   */
+  public List<TagReadData> getReads()
+  {
+    return reads;
+  }
+
+  /**
+   * Returns the number of tag reads in the batch.
+   */
+  public int size()
+  {
+    return reads.size();
+  }
+
+  /**
+   * Returns the time collection of this batch started, in milliseconds
+   * since the epoch.
+   */
+  public long getStartTime()
+  {
+    return startTime;
+  }
+
+  /**
+   * Returns the time collection of this batch ended, in milliseconds
+   * since the epoch.
+   */
+  public long getEndTime()
+  {
+    return endTime;
+  }
+
+  /**
+   * Returns whether the batch ends at a cycle boundary. A long streaming
+   * cycle is split into several batches, and only the last of them is
+   * complete.
+   */
+  public boolean isCycleComplete()
+  {
+    return cycleComplete;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("ReadBatch#%d reads:%d start:%d end:%d%s", sequence,
+                         reads.size(), startTime, endTime,
+                         cycleComplete ? "" : " (partial)");
+  }
+}
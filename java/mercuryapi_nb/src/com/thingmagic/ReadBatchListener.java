@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+/**
+ * The listener interface for receiving tag reads a batch at a time. A
+ * batch holds the reads of one search cycle, one LLRP report or one
+ * RQL response, so the listener can hand them on in a single operation.
+ * The object is registered with Reader.addReadBatchListener(), and
+ * its tagReadBatch method is invoked once per batch.
+ *
+ * Batches are delivered in order on their own, but independently of
+ * the calls made to ReadListeners for the same reads.
+ */
+public interface ReadBatchListener
+{
+  /**
+   * Invoked when a batch of tag reads is available
+   *
+   * @param r the Reader where the tags were read
+   * @param batch the reads and the time span they were collected in
+   */
+  void tagReadBatch(Reader r, ReadBatch batch);
+}
@@ -0,0 +1,543 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers tag reads to a reader's ReadListeners.
+ *
+ * In SERIAL mode every listener is called in turn on the thread that
+ * reported the read, as the reader always has. In the EXECUTOR and
+ * VIRTUAL_THREADS modes each listener has its own queue, drained in
+ * order by tasks on an executor, so a slow listener only holds up
+ * itself. Those queues hold at most the reader's dispatch capacity, and
+ * a full one is handled by the dispatch overflow policy, as the
+ * reader's own dispatch queue is. Per-listener queue depth and latency
+ * are kept in all modes.
+ */
+public final class ReadListenerDispatcher
+{
+  public enum Mode
+  {
+    /** Call every listener in turn on the notifying thread */
+    SERIAL,
+    /** Per-listener ordered queues drained on a shared executor */
+    EXECUTOR,
+    /**
+     * Per-listener ordered queues, each drained on its own virtual thread.
+     * Needs Java 21 or later; older runtimes use daemon platform threads.
+     */
+    VIRTUAL_THREADS
+  }
+
+  /**
+   * Delivery counters of one listener. Times are in nanoseconds; latency
+   * runs from the read being handed to the dispatcher until the listener
+   * returns.
+   */
+  public static class Stats
+  {
+    /** The listener these counters belong to */
+    public final ReadListener listener;
+    /** Reads delivered to a listener that returned normally */
+    public final long delivered;
+    /** Calls that threw an exception */
+    public final long failures;
+    /** Reads discarded because the listener's queue was full */
+    public final long dropped;
+    /** Reads waiting for this listener */
+    public final int depth;
+    /** Largest depth seen */
+    public final int highWaterMark;
+    /** Sum of delivery latencies */
+    public final long totalLatencyNanos;
+    /** Longest delivery latency */
+    public final long maxLatencyNanos;
+    /** Time spent inside the listener */
+    public final long callbackNanos;
+
+    Stats(ReadListener listener, long delivered, long failures, long dropped,
+          int depth, int highWaterMark, long totalLatencyNanos,
+          long maxLatencyNanos, long callbackNanos)
+    {
+      this.listener = listener;
+      this.delivered = delivered;
+      this.failures = failures;
+      this.dropped = dropped;
+      this.depth = depth;
+      this.highWaterMark = highWaterMark;
+      this.totalLatencyNanos = totalLatencyNanos;
+      this.maxLatencyNanos = maxLatencyNanos;
+      this.callbackNanos = callbackNanos;
+    }
+
+    @Override
+    public String toString()
+    {
+      return listener + ": delivered=" + delivered + " failures=" + failures
+        + " dropped=" + dropped + " depth=" + depth + " highWaterMark=" + highWaterMark
+        + " totalLatencyNanos=" + totalLatencyNanos
+        + " maxLatencyNanos=" + maxLatencyNanos
+        + " callbackNanos=" + callbackNanos;
+    }
+  }
+
+  // Reads a queued channel delivers before giving its thread back
+  private static final int BATCH = 64;
+
+  // Set while a channel task is calling its listener
+  private static final ThreadLocal<Boolean> delivering = new ThreadLocal<Boolean>();
+
+  private final Reader reader;
+  private volatile Channel[] channels = new Channel[0];
+  private volatile Mode mode = Mode.SERIAL;
+  private volatile Executor executor;
+  // Executor created here, shut down when the mode changes
+  private ExecutorService ownedExecutor;
+  private final AtomicInteger pending = new AtomicInteger();
+  private final Object idleLock = new Object();
+  // Bound on each listener's queue, and what to do when it is full
+  private volatile int capacity = Reader.DEFAULT_DISPATCH_CAPACITY;
+  private volatile TagDispatchQueue.OverflowPolicy policy = TagDispatchQueue.OverflowPolicy.BLOCK;
+
+  ReadListenerDispatcher(Reader reader)
+  {
+    this.reader = reader;
+  }
+
+  /**
+   * Switch the delivery mode. Reads already queued for a listener are
+   * still delivered on the executor they were queued for.
+   *
+   * @param mode the delivery mode
+   * @param executor executor for EXECUTOR mode, or null to use a pool of
+   * daemon threads; ignored by the other modes
+   */
+  synchronized void setMode(Mode mode, Executor executor)
+  {
+    ExecutorService old = ownedExecutor;
+    ownedExecutor = null;
+    switch (mode)
+    {
+      case EXECUTOR:
+        if (executor == null)
+        {
+          ownedExecutor = Executors.newCachedThreadPool(daemonThreads("read listener"));
+          executor = ownedExecutor;
+        }
+        break;
+      case VIRTUAL_THREADS:
+        ownedExecutor = newVirtualThreadExecutor();
+        executor = ownedExecutor;
+        break;
+      default:
+        executor = null;
+        break;
+    }
+    this.executor = executor;
+    this.mode = mode;
+    if (old != null)
+    {
+      old.shutdown();
+    }
+  }
+
+  Mode getMode()
+  {
+    return mode;
+  }
+
+  /**
+   * Set the most reads each listener's queue holds.
+   */
+  void setCapacity(int capacity)
+  {
+    this.capacity = capacity;
+    wakeBlocked();
+  }
+
+  /**
+   * Set what happens to a read for a listener whose queue is full.
+   * BLOCK waits for the listener, except on a ReaderFleet pool thread,
+   * which drops the incoming read as DROP_NEWEST does; COALESCE_BY_EPC,
+   * whose merging is done in the reader's dispatch queue, drops it too.
+   */
+  void setOverflowPolicy(TagDispatchQueue.OverflowPolicy policy)
+  {
+    this.policy = policy;
+    wakeBlocked();
+  }
+
+  // Let a producer waiting on a full queue look at the new bound
+  private void wakeBlocked()
+  {
+    for (Channel c : channels)
+    {
+      synchronized (c)
+      {
+        c.notifyAll();
+      }
+    }
+  }
+
+  synchronized void add(ReadListener listener)
+  {
+    Channel[] next = new Channel[channels.length + 1];
+    System.arraycopy(channels, 0, next, 0, channels.length);
+    next[channels.length] = new Channel(listener);
+    channels = next;
+  }
+
+  synchronized void remove(ReadListener listener)
+  {
+    Channel[] current = channels;
+    for (int i = 0; i < current.length; i++)
+    {
+      if (current[i].listener.equals(listener))
+      {
+        Channel[] next = new Channel[current.length - 1];
+        System.arraycopy(current, 0, next, 0, i);
+        System.arraycopy(current, i + 1, next, i, current.length - i - 1);
+        channels = next;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Deliver a read to every listener, or queue it for them.
+   */
+  void dispatch(TagReadData t)
+  {
+    Channel[] current = channels;
+    Executor exec = executor;
+    long now = System.nanoTime();
+    for (Channel c : current)
+    {
+      if (exec == null)
+      {
+        c.deliver(t, now, true);
+      }
+      else
+      {
+        c.offer(t, now, exec);
+      }
+    }
+  }
+
+  /**
+   * Wait until every queued read has been delivered. Returns at once
+   * when called from inside a listener, which would otherwise wait for
+   * itself.
+   */
+  void awaitIdle() throws InterruptedException
+  {
+    if (delivering.get() != null)
+    {
+      return;
+    }
+    synchronized (idleLock)
+    {
+      while (pending.get() > 0)
+      {
+        idleLock.wait();
+      }
+    }
+  }
+
+  List<Stats> getStats()
+  {
+    List<Stats> stats = new ArrayList<Stats>();
+    for (Channel c : channels)
+    {
+      stats.add(c.stats());
+    }
+    return Collections.unmodifiableList(stats);
+  }
+
+  void resetStats()
+  {
+    for (Channel c : channels)
+    {
+      c.resetStats();
+    }
+  }
+
+  /**
+   * Stop an executor created for EXECUTOR or VIRTUAL_THREADS mode.
+   */
+  synchronized void shutdown()
+  {
+    if (ownedExecutor != null)
+    {
+      ownedExecutor.shutdown();
+      ownedExecutor = null;
+    }
+    executor = null;
+    mode = Mode.SERIAL;
+  }
+
+  private void delivered()
+  {
+    if (pending.decrementAndGet() == 0)
+    {
+      synchronized (idleLock)
+      {
+        idleLock.notifyAll();
+      }
+    }
+  }
+
+  private static ThreadFactory daemonThreads(final String name)
+  {
+    return new ThreadFactory()
+    {
+      private final AtomicInteger count = new AtomicInteger();
+
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, name + " " + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+  }
+
+  // Executors.newVirtualThreadPerTaskExecutor() exists from Java 21; this
+  // library is built for older runtimes, so look it up by name.
+  private static ExecutorService newVirtualThreadExecutor()
+  {
+    try
+    {
+      Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) m.invoke(null);
+    }
+    catch (Exception ex)
+    {
+      return Executors.newCachedThreadPool(daemonThreads("read listener"));
+    }
+  }
+
+  private static final class Pending
+  {
+    final TagReadData read;
+    final long queuedAt;
+
+    Pending(TagReadData read, long queuedAt)
+    {
+      this.read = read;
+      this.queuedAt = queuedAt;
+    }
+  }
+
+  private final class Channel implements Runnable
+  {
+    final ReadListener listener;
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<Pending>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private Executor scheduledOn;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLong callbackTime = new AtomicLong();
+    private final AtomicInteger highWaterMark = new AtomicInteger();
+
+    Channel(ReadListener listener)
+    {
+      this.listener = listener;
+    }
+
+    void offer(TagReadData t, long now, Executor exec)
+    {
+      // The check, drop, add and depth update are made under the channel's
+      // lock so that concurrent producers cannot take the queue past its
+      // capacity
+      synchronized (this)
+      {
+        if (depth.get() >= capacity)
+        {
+          TagDispatchQueue.OverflowPolicy p = policy;
+          if (p == TagDispatchQueue.OverflowPolicy.BLOCK && delivering.get() == null
+              && !PooledDrain.inTask())
+          {
+            // Not from inside a listener, which could be the one we wait
+            // for, nor from a ReaderFleet pool thread that other members
+            // need
+            boolean interrupted = false;
+            while (depth.get() >= capacity && policy == TagDispatchQueue.OverflowPolicy.BLOCK)
+            {
+              try
+              {
+                wait();
+              }
+              catch (InterruptedException ex)
+              {
+                interrupted = true;
+              }
+            }
+            if (interrupted)
+            {
+              Thread.currentThread().interrupt();
+            }
+          }
+          else if (p == TagDispatchQueue.OverflowPolicy.DROP_OLDEST)
+          {
+            if (queue.poll() != null)
+            {
+              depth.decrementAndGet();
+              dropped.incrementAndGet();
+              delivered();
+            }
+          }
+          else if (p != TagDispatchQueue.OverflowPolicy.BLOCK || PooledDrain.inTask())
+          {
+            dropped.incrementAndGet();
+            return;
+          }
+        }
+        pending.incrementAndGet();
+        // Counted before it is queued, so run() never sees an uncounted read
+        int d = depth.incrementAndGet();
+        queue.add(new Pending(t, now));
+        int high = highWaterMark.get();
+        while (d > high && !highWaterMark.compareAndSet(high, d))
+        {
+          high = highWaterMark.get();
+        }
+      }
+      schedule(exec);
+    }
+
+    private void schedule(Executor exec)
+    {
+      if (scheduled.compareAndSet(false, true))
+      {
+        scheduledOn = exec;
+        try
+        {
+          exec.execute(this);
+        }
+        catch (RejectedExecutionException ex)
+        {
+          // Executor shut down under us; deliver on this thread instead
+          run();
+        }
+      }
+    }
+
+    public void run()
+    {
+      Executor exec = scheduledOn;
+      delivering.set(Boolean.TRUE);
+      try
+      {
+        Pending p;
+        for (int n = 0; n < BATCH && (p = queue.poll()) != null; n++)
+        {
+          if (depth.decrementAndGet() == capacity - 1)
+          {
+            synchronized (this)
+            {
+              notifyAll();
+            }
+          }
+          deliver(p.read, p.queuedAt, false);
+          delivered();
+        }
+      }
+      finally
+      {
+        delivering.remove();
+        scheduled.set(false);
+      }
+      if (!queue.isEmpty())
+      {
+        schedule(exec);
+      }
+    }
+
+    void deliver(TagReadData t, long queuedAt, boolean inline)
+    {
+      long start = System.nanoTime();
+      try
+      {
+        listener.tagRead(reader, t);
+        delivered.incrementAndGet();
+      }
+      catch (RuntimeException ex)
+      {
+        failures.incrementAndGet();
+        if (inline)
+        {
+          throw ex;
+        }
+      }
+      finally
+      {
+        long end = System.nanoTime();
+        long latency = end - queuedAt;
+        callbackTime.addAndGet(end - start);
+        totalLatency.addAndGet(latency);
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency))
+        {
+          max = maxLatency.get();
+        }
+      }
+    }
+
+    Stats stats()
+    {
+      return new Stats(listener, delivered.get(), failures.get(), dropped.get(),
+                       depth.get(), highWaterMark.get(), totalLatency.get(),
+                       maxLatency.get(), callbackTime.get());
+    }
+
+    void resetStats()
+    {
+      delivered.set(0);
+      failures.set(0);
+      dropped.set(0);
+      totalLatency.set(0);
+      maxLatency.set(0);
+      callbackTime.set(0);
+      highWaterMark.set(depth.get());
+    }
+  }
+}
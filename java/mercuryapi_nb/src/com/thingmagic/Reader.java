@@ -28,7 +28,13 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -62,18 +68,27 @@ abstract public class Reader
 {
 
   final protected List<ReadListener> readListeners;
+  final protected List<ReadBatchListener> readBatchListeners;
   final protected List<ReadExceptionListener> readExceptionListeners;
   final protected List<ReadAuthenticationListener> readAuthenticationListener;
   protected List<StatusListener> statusListeners;
   protected List<StatsListener> statsListeners;
   boolean connected;
-  Thread readerThread, notifierThread, exceptionNotifierThread;
+  Thread readerThread, notifierThread, exceptionNotifierThread, batchNotifierThread;
   BackgroundReader backgroundReader;
   ContinuousReader continuousReader;
   BackgroundNotifier backgroundNotifier;
   ExceptionNotifier exceptionNotifier;
-  final BlockingQueue<TagReadData> tagReadQueue;
+  volatile BatchNotifier batchNotifier;
+  private final Object batchNotifierLock = new Object();
+  final TagDispatchQueue tagReadQueue;
   final BlockingQueue<ReaderException> exceptionQueue;
+  final BlockingQueue<ReadBatch> batchQueue;
+  private final AtomicLong batchSequence = new AtomicLong();
+  // Host side merging of duplicate reads within a read cycle
+  final TagReadDeduplicator deduplicator = new TagReadDeduplicator();
+  final ReadListenerDispatcher listenerDispatcher = new ReadListenerDispatcher(this);
+  final TagReadPublisher tagReadPublisher = new TagReadPublisher();
   Map<String,Setting> params;
   Map<StatusListener,StatusReport> statusMap;
   URI uri;
@@ -89,6 +104,13 @@ abstract public class Reader
   List<String> readOnlyParameters;
   boolean sleepContRead;
   public boolean hasContinuousReadStarted = false;
+  static final int DEFAULT_DISPATCH_CAPACITY = 65536;
+  // Pools of the ReaderFleet this reader belongs to. With an executor the
+  // notifiers run as tasks on it rather than on threads of their own.
+  volatile Executor sharedExecutor;
+  volatile ScheduledExecutorService sharedScheduler;
+  // Reads, batches or exceptions handled per pooled notifier task
+  static final int NOTIFIER_BATCH = 64;
   public Set<ReaderFeaturesFlag> featuresFlag = EnumSet.noneOf(ReaderFeaturesFlag.class);
   public boolean isOffTimeAdded = false;
   public int subOffTime = 0;
@@ -241,6 +263,7 @@ abstract public class Reader
   Reader()
   {
     readListeners = new Vector<ReadListener>();
+    readBatchListeners = new CopyOnWriteArrayList<ReadBatchListener>();
     readExceptionListeners = new Vector<ReadExceptionListener>();
     readAuthenticationListener = new Vector<ReadAuthenticationListener>();
     statusListeners = new ArrayList<StatusListener>();
@@ -251,8 +274,10 @@ abstract public class Reader
     connected = false;
     sleepContRead = false;
     
-    tagReadQueue = new LinkedBlockingQueue<TagReadData>();
+    tagReadQueue = new TagDispatchQueue(DEFAULT_DISPATCH_CAPACITY,
+                                        TagDispatchQueue.OverflowPolicy.BLOCK);
     exceptionQueue = new LinkedBlockingQueue<ReaderException>();
+    batchQueue = new LinkedBlockingQueue<ReadBatch>();
 
     initparams();
   }
@@ -649,7 +674,11 @@ abstract public class Reader
    */
   public void addReadListener(ReadListener listener)
   {
-      readListeners.add(listener);
+      synchronized (readListeners)
+      {
+          readListeners.add(listener);
+          listenerDispatcher.add(listener);
+      }
   }
 
   /** 
@@ -660,7 +689,91 @@ abstract public class Reader
    */
   public void removeReadListener(ReadListener listener)
   {
-      readListeners.remove(listener);
+      synchronized (readListeners)
+      {
+          readListeners.remove(listener);
+          listenerDispatcher.remove(listener);
+      }
+  }
+
+  /**
+   * Get the publisher of this reader's asynchronous RFID reads, for
+   * subscribers that pull reads at their own pace.
+   *
+   * @return the tag read publisher
+   */
+  public TagReadPublisher getTagReadPublisher()
+  {
+      return tagReadPublisher;
+  }
+
+  /** 
+   * Register a listener to be notified of asynchronous RFID reads a
+   * batch at a time.
+   *
+   * @param listener the ReadBatchListener to add
+   */
+  public void addReadBatchListener(ReadBatchListener listener)
+  {
+      readBatchListeners.add(listener);
+      // Reading may have started without any batch listener
+      if (backgroundReader != null || continuousReader != null)
+      {
+          startBatchNotifier();
+      }
+  }
+
+  /** 
+   * Remove a listener from the list of listeners notified of batches of
+   * asynchronous RFID reads.
+   *
+   * @param listener the ReadBatchListener to remove
+   */
+  public void removeReadBatchListener(ReadBatchListener listener)
+  {
+      readBatchListeners.remove(listener);
+  }
+
+  /**
+   * Choose how tag reads are delivered to the ReadListeners.
+   *
+   * @param mode SERIAL to call the listeners in turn (the default),
+   * EXECUTOR or VIRTUAL_THREADS to give each listener its own ordered queue
+   * @param executor executor that runs the listener queues in EXECUTOR
+   * mode, or null for a pool of daemon threads. It is not shut down by
+   * the reader.
+   */
+  public void setReadListenerDispatch(ReadListenerDispatcher.Mode mode, Executor executor)
+  {
+      listenerDispatcher.setMode(mode, executor);
+  }
+
+  /**
+   * Get the current ReadListener delivery mode.
+   *
+   * @return the delivery mode
+   */
+  public ReadListenerDispatcher.Mode getReadListenerDispatch()
+  {
+      return listenerDispatcher.getMode();
+  }
+
+  /**
+   * Get the delivery counters of each registered ReadListener.
+   *
+   * @return one snapshot per listener, in registration order
+   */
+  public List<ReadListenerDispatcher.Stats> getReadListenerStats()
+  {
+      return listenerDispatcher.getStats();
+  }
+
+  /**
+   * Clear the counters returned by getReadListenerStats().
+   */
+  public void resetReadListenerStats()
+  {
+      listenerDispatcher.resetStats();
   }
 
 
@@ -753,16 +866,17 @@ abstract public class Reader
     if (backgroundNotifier == null)
     {
       backgroundNotifier = new BackgroundNotifier();
-      notifierThread = new Thread(backgroundNotifier, "background notifier");
-      notifierThread.setDaemon(true);
-      notifierThread.start();
+      notifierThread = startNotifier(backgroundNotifier, "background notifier");
     }
     if (exceptionNotifier == null)
     {
       exceptionNotifier = new ExceptionNotifier();
-      exceptionNotifierThread = new Thread(exceptionNotifier, "exception notifier");
-      exceptionNotifierThread.setDaemon(true);
-      exceptionNotifierThread.start();
+      exceptionNotifierThread = startNotifier(exceptionNotifier, "exception notifier");
+    }
+    tagReadPublisher.setHolding(true);
+    if (!readBatchListeners.isEmpty())
+    {
+      startBatchNotifier();
     }
     if(isContinuous)
     {
@@ -774,12 +888,76 @@ abstract public class Reader
     }
   }
 
+  /**
+   * Start the batch notifier, which only readers with ReadBatchListeners
+   * need.
+   */
+  private void startBatchNotifier()
+  {
+    synchronized (batchNotifierLock)
+    {
+      if (batchNotifier == null)
+      {
+        batchNotifier = new BatchNotifier();
+        batchNotifierThread = startNotifier(batchNotifier, "batch notifier");
+      }
+    }
+  }
+
+  /**
+   * Run a notifier on a thread of its own, unless the reader belongs to
+   * a ReaderFleet, whose shared executor runs it when there is work.
+   *
+   * @return the thread, or null if none was started
+   */
+  private Thread startNotifier(Runnable notifier, String name)
+  {
+    if (sharedExecutor != null)
+    {
+      return null;
+    }
+    Thread thread = new Thread(notifier, name);
+    thread.setDaemon(true);
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Run this reader's background work on the shared pools of a
+   * ReaderFleet. Takes effect from the next startReading() or connect().
+   */
+  void useSharedPools(Executor executor, ScheduledExecutorService scheduler)
+  {
+    sharedExecutor = executor;
+    sharedScheduler = scheduler;
+  }
+
+  /**
+   * A drain on the fleet's executor for a notifier, or null if the
+   * notifier gets a thread of its own.
+   */
+  PooledDrain pooledDrain(PooledDrain.Step step)
+  {
+    Executor executor = sharedExecutor;
+    return (executor == null) ? null : new PooledDrain(executor, step);
+  }
+
+  private static void interruptNotifier(Thread thread)
+  {
+    if (thread != null)
+    {
+      thread.interrupt();
+    }
+  }
+
   /**
    * Stop reading RFID tags in the background.
    */
   protected void stopReadingGivenRead()
     throws InterruptedException
   {
+      // Let reads still on their way pass a full subscriber buffer
+      tagReadPublisher.setHolding(false);
 
       if (continuousReader != null) {
           continuousReader.readOff();
@@ -795,12 +973,20 @@ abstract public class Reader
       if (backgroundNotifier != null) {
           backgroundNotifier.drainQueue();
           backgroundNotifier = null;
-          notifierThread.interrupt();
+          interruptNotifier(notifierThread);
       }
+      listenerDispatcher.awaitIdle();
       if (exceptionNotifier != null) {
           exceptionNotifier.drainQueue();
           exceptionNotifier = null;
-          exceptionNotifierThread.interrupt();
+          interruptNotifier(exceptionNotifierThread);
+      }
+      // Only started if there were ReadBatchListeners
+      BatchNotifier batches = batchNotifier;
+      if (batches != null) {
+          batches.drainQueue();
+          batchNotifier = null;
+          interruptNotifier(batchNotifierThread);
       }
   }
 
@@ -821,19 +1007,156 @@ abstract public class Reader
             continuousReader = null;
             backgroundNotifier = null;
             exceptionNotifier = null;
+            batchNotifier = null;
         }
         return finishedReading;
     }
 
-    void notifyReadListeners(TagReadData t) {
+    /**
+     * Hand a tag read received during background reading to the
+     * notifier thread, subject to the dispatch queue's overflow policy.
+     * Falls back to notifying the listeners directly if no notifier is
+     * running.
+     */
+    void dispatchTagRead(TagReadData t) throws InterruptedException
+    {
+        BackgroundNotifier notifier = backgroundNotifier;
+        if (notifier != null)
+        {
+            queueTagRead(t);
+            notifier.signal();
+        }
+        else
+        {
+            notifyReadListeners(t);
+        }
+    }
 
-        synchronized (readListeners) {
-            for (ReadListener rl : readListeners) {
-                rl.tagRead(this, t);
+    /**
+     * Queue a read for the notifier. A ReaderFleet pool thread does not
+     * wait for room under the BLOCK policy: other members need it.
+     */
+    private void queueTagRead(TagReadData t) throws InterruptedException
+    {
+        if (PooledDrain.inTask())
+        {
+            tagReadQueue.offerOrDrop(t);
+        }
+        else
+        {
+            tagReadQueue.put(t);
+        }
+    }
+
+    /**
+     * Get the counters of the queue that feeds tag reads to the
+     * ReadListeners during background reading.
+     *
+     * @return snapshot of the dispatch queue counters
+     */
+    public TagDispatchQueue.Stats getDispatchStats()
+    {
+        return tagReadQueue.getStats();
+    }
+
+    /**
+     * Clear the dispatch queue counters returned by getDispatchStats().
+     */
+    public void resetDispatchStats()
+    {
+        tagReadQueue.resetStats();
+    }
+
+    void notifyReadListeners(TagReadData t) {
+        listenerDispatcher.dispatch(t);
+        if (tagReadPublisher.hasSubscribers())
+        {
+            try
+            {
+                tagReadPublisher.publish(t);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
             }
         }
     }
 
+    /**
+     * Whether anyone is listening for batches, so that readers can skip
+     * collecting them.
+     */
+    boolean hasReadBatchListeners()
+    {
+        return !readBatchListeners.isEmpty();
+    }
+
+    /**
+     * Hand the reads of one cycle, report or response to the
+     * ReadBatchListeners, through the batch notifier thread if one is
+     * running.
+     */
+    void dispatchReadBatch(List<TagReadData> reads, long startTime, long endTime,
+                           boolean cycleComplete) throws InterruptedException
+    {
+        if (readBatchListeners.isEmpty())
+        {
+            return;
+        }
+        ReadBatch batch = new ReadBatch(batchSequence.incrementAndGet(), reads,
+                                        startTime, endTime, cycleComplete);
+        BatchNotifier notifier = batchNotifier;
+        if (notifier != null)
+        {
+            batchQueue.put(batch);
+            notifier.signal();
+        }
+        else
+        {
+            notifyReadBatchListeners(batch);
+        }
+    }
+
+    /**
+     * Queue the reads of a completed search cycle for the ReadListeners
+     * and pass them as one batch to the ReadBatchListeners.
+     */
+    void dispatchCycleReads(TagReadData[] tags, long startTime)
+        throws InterruptedException
+    {
+        for (TagReadData t : tags)
+        {
+            queueTagRead(t);
+        }
+        BackgroundNotifier notifier = backgroundNotifier;
+        if (notifier != null)
+        {
+            notifier.signal();
+        }
+        dispatchReadBatch(Arrays.asList(tags), startTime,
+                          System.currentTimeMillis(), true);
+    }
+
+    /**
+     * Hand an exception raised during background reading to the
+     * exception notifier.
+     */
+    void queueReadException(ReaderException re) throws InterruptedException
+    {
+        exceptionQueue.put(re);
+        ExceptionNotifier notifier = exceptionNotifier;
+        if (notifier != null)
+        {
+            notifier.signal();
+        }
+    }
+
+    void notifyReadBatchListeners(ReadBatch batch) {
+        for (ReadBatchListener rbl : readBatchListeners) {
+            rbl.tagReadBatch(this, batch);
+        }
+    }
+
     void notifyExceptionListeners(ReaderException re) {
         synchronized (readExceptionListeners) {
             for (ReadExceptionListener rel : readExceptionListeners) {
@@ -967,6 +1290,36 @@ abstract public class Reader
     }
   }
 
+  /**
+   * How paramGet treats the value of a parameter between reads from the
+   * device
+   */
+  public enum ParamCachePolicy
+  {
+    /** Ask the device on every paramGet (the default) */ LIVE,
+    /** Reuse the last value until the cache is invalidated */ CACHE_UNTIL_SET,
+    /** Reuse the last value for a limited time */ TTL
+  }
+
+  /**
+   * Immutable snapshot of a cached parameter value, published through a
+   * single volatile reference so readers never see a value paired with
+   * another fetch's generation or timestamp.
+   */
+  static final class CachedValue
+  {
+    final Object value;
+    final long generation;
+    final long fetchedAt;
+
+    CachedValue(Object value, long generation, long fetchedAt)
+    {
+      this.value = value;
+      this.generation = generation;
+      this.fetchedAt = fetchedAt;
+    }
+  }
+
   class Setting
   {
     String originalName;
@@ -975,6 +1328,10 @@ abstract public class Reader
     SettingAction action;
     boolean writable;
     boolean confirmed;
+    volatile ParamCachePolicy cachePolicy = ParamCachePolicy.LIVE;
+    volatile long cacheTtlMillis;
+    // Last cached value, null if never fetched or invalidated
+    volatile CachedValue cached;
 
     Setting(String name, Class t, Object def, boolean w, SettingAction act, boolean confirmed)
     {
@@ -1089,6 +1446,57 @@ abstract public class Reader
                       return commandTimeout;
                   }
               });
+      addParam(TMR_PARAM_READ_DISPATCH_CAPACITY,
+              Integer.class, DEFAULT_DISPATCH_CAPACITY, true,
+              new SettingAction()
+              {
+                  public Object set(Object value)
+                  {
+                      if ((Integer) value < 1)
+                      {
+                          throw new IllegalArgumentException("Value of " + value + " to the parameter /reader/read/dispatchCapacity is out of range.");
+                      }
+                      tagReadQueue.setCapacity((Integer) value);
+                      listenerDispatcher.setCapacity((Integer) value);
+                      return value;
+                  }
+
+                  public Object get(Object value)
+                  {
+                      return tagReadQueue.getCapacity();
+                  }
+              });
+      addParam(TMR_PARAM_READ_DISPATCH_OVERFLOWPOLICY,
+              TagDispatchQueue.OverflowPolicy.class, TagDispatchQueue.OverflowPolicy.BLOCK, true,
+              new SettingAction()
+              {
+                  public Object set(Object value)
+                  {
+                      tagReadQueue.setOverflowPolicy((TagDispatchQueue.OverflowPolicy) value);
+                      listenerDispatcher.setOverflowPolicy((TagDispatchQueue.OverflowPolicy) value);
+                      return value;
+                  }
+
+                  public Object get(Object value)
+                  {
+                      return tagReadQueue.getOverflowPolicy();
+                  }
+              });
+      addParam(TMR_PARAM_READ_LISTENER_DISPATCH,
+              ReadListenerDispatcher.Mode.class, ReadListenerDispatcher.Mode.SERIAL, true,
+              new SettingAction()
+              {
+                  public Object set(Object value)
+                  {
+                      listenerDispatcher.setMode((ReadListenerDispatcher.Mode) value, null);
+                      return value;
+                  }
+
+                  public Object get(Object value)
+                  {
+                      return listenerDispatcher.getMode();
+                  }
+              });
   }
 
   void addParam(String name, Class t, Object def, boolean w, SettingAction act)
@@ -1177,6 +1585,7 @@ abstract public class Reader
    * <li> /reader/lf134khz/tagType
    * <li> /reader/lf134khz/tagtype
    * <li> /reader/licenseKey
+   * <li> /reader/llrp/reportPolicy
    * <li> /reader/manageLicenseKey
    * <li> /reader/metadata
    * <li> /reader/metadata\
@@ -1198,6 +1607,9 @@ abstract public class Reader
    * <li> /reader/radio/writePower
    * <li> /reader/read/asyncOffTime
    * <li> /reader/read/asyncOnTime
+   * <li> /reader/read/dispatchCapacity
+   * <li> /reader/read/dispatchOverflowPolicy
+   * <li> /reader/read/listenerDispatch
    * <li> /reader/read/plan
    * <li> /reader/read/trigger/gpi
    * <li> /reader/region/dwellTime
@@ -1277,6 +1689,11 @@ abstract public class Reader
     return nameVec.toArray(new String[nameVec.size()]);
   }
 
+  // Bumped to invalidate every cached parameter value at once
+  private final AtomicLong paramCacheGeneration = new AtomicLong();
+  private final AtomicLong paramCacheHits = new AtomicLong();
+  private final AtomicLong paramCacheMisses = new AtomicLong();
+
   boolean probeSetting(Setting s)
   {
     try
@@ -1332,6 +1749,32 @@ abstract public class Reader
       throw new IllegalArgumentException("No parameter named '" + key + "'.");
     }
     
+    if (s.cachePolicy != ParamCachePolicy.LIVE)
+    {
+      // Read the generation before fetching: an invalidation that races
+      // with the fetch leaves the new entry stale instead of lost.
+      long generation = paramCacheGeneration.get();
+      CachedValue c = s.cached;
+      if (c != null && c.generation == generation
+          && (s.cachePolicy == ParamCachePolicy.CACHE_UNTIL_SET
+              || System.currentTimeMillis() - c.fetchedAt < s.cacheTtlMillis))
+      {
+        paramCacheHits.incrementAndGet();
+        sleepContRead = false;
+        return c.value;
+      }
+      paramCacheMisses.incrementAndGet();
+      Object value = s.value;
+      if (!probeSettingPassed && s.action != null)
+      {
+        value = s.action.get(value);
+        s.value = value;
+      }
+      s.cached = new CachedValue(value, generation, System.currentTimeMillis());
+      sleepContRead = false;
+      return value;
+    }
+
     if(probeSettingPassed & s.value != null)
     {
        return s.value; 
@@ -1347,6 +1790,130 @@ abstract public class Reader
     }
   }
 
+  /**
+   * Get the value of a Reader parameter from the device, bypassing and
+   * then updating any cached value.
+   *
+   * @param key the parameter name
+   * @return the value of the parameter, as an Object
+   * @throws IllegalArgumentException if the parameter does not exist
+   */
+  public Object paramRefresh(String key)
+    throws ReaderException
+  {
+    Setting s = params.get(key.toLowerCase());
+    if (s != null)
+    {
+      s.cached = null;
+    }
+    return paramGet(key);
+  }
+
+  /**
+   * Discard every cached parameter value, so that the next paramGet of
+   * each parameter goes to the device.
+   */
+  public void paramRefresh()
+  {
+    invalidateParamCache();
+  }
+
+  /**
+   * Set how paramGet caches a parameter. Caching is opt-in; parameters
+   * are LIVE unless set otherwise. Cached values are discarded whenever
+   * any parameter is set, since setting one parameter can change others
+   * (the region changes the hop table and power limits, for example),
+   * and on connect, reboot, firmware load and destroy.
+   *
+   * @param key the parameter name
+   * @param policy LIVE or CACHE_UNTIL_SET; use the three-argument form for TTL
+   * @throws IllegalArgumentException if the parameter does not exist
+   */
+  public void setParamCachePolicy(String key, ParamCachePolicy policy)
+  {
+    if (policy == ParamCachePolicy.TTL)
+    {
+      throw new IllegalArgumentException("TTL cache policy needs a time to live");
+    }
+    setParamCachePolicy(key, policy, 0);
+  }
+
+  /**
+   * Set how paramGet caches a parameter.
+   *
+   * @param key the parameter name
+   * @param policy cache policy
+   * @param ttlMillis how long a TTL cached value stays valid, in milliseconds
+   * @throws IllegalArgumentException if the parameter does not exist
+   */
+  public void setParamCachePolicy(String key, ParamCachePolicy policy, long ttlMillis)
+  {
+    Setting s = params.get(key.toLowerCase());
+    if (s == null)
+    {
+      throw new IllegalArgumentException("No parameter named '" + key + "'.");
+    }
+    if (policy == null)
+    {
+      throw new IllegalArgumentException("Cache policy must not be null");
+    }
+    if (policy == ParamCachePolicy.TTL && ttlMillis <= 0)
+    {
+      throw new IllegalArgumentException("Cache time to live must be positive: " + ttlMillis);
+    }
+    s.cacheTtlMillis = ttlMillis;
+    s.cachePolicy = policy;
+    s.cached = null;
+  }
+
+  /**
+   * Get the cache policy of a parameter.
+   *
+   * @param key the parameter name
+   * @return the cache policy
+   * @throws IllegalArgumentException if the parameter does not exist
+   */
+  public ParamCachePolicy getParamCachePolicy(String key)
+  {
+    Setting s = params.get(key.toLowerCase());
+    if (s == null)
+    {
+      throw new IllegalArgumentException("No parameter named '" + key + "'.");
+    }
+    return s.cachePolicy;
+  }
+
+  /**
+   * @return number of paramGet calls answered from the cache
+   */
+  public long getParamCacheHits()
+  {
+    return paramCacheHits.get();
+  }
+
+  /**
+   * @return number of paramGet calls on cached parameters that had to go
+   * to the device
+   */
+  public long getParamCacheMisses()
+  {
+    return paramCacheMisses.get();
+  }
+
+  /**
+   * Clear the parameter cache hit and miss counters.
+   */
+  public void resetParamCacheStats()
+  {
+    paramCacheHits.set(0);
+    paramCacheMisses.set(0);
+  }
+
+  void invalidateParamCache()
+  {
+    paramCacheGeneration.incrementAndGet();
+  }
+
   /**
    * Set the value of a Reader parameter.
    *
@@ -1385,14 +1952,173 @@ abstract public class Reader
       throw new IllegalArgumentException("Wrong type " + value.getClass().getName() + 
                                          " for parameter '" + key + "'.");
     }
-    if (s.action != null)
+    invalidateParamCache();
+    try
     {
-      value = s.action.set(value);
+      if (s.action != null)
+      {
+        value = s.action.set(value);
+      }
+      s.value = value;
+    }
+    finally
+    {
+      // A paramGet on another thread can fetch and cache the old device
+      // value while the set is in progress
+      invalidateParamCache();
     }
-    s.value = value;
     sleepContRead = false;
   }
 
+  /**
+   * Outcome of paramSetAll or paramGetAll. Each requested parameter ends
+   * up either in getValues() or in getErrors(). Parameters that appear in
+   * neither were not attempted, because communication with the reader
+   * failed on an earlier one.
+   */
+  public static class ParamBatchResult
+  {
+    private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+    private final Map<String, Exception> errors = new LinkedHashMap<String, Exception>();
+
+    /**
+     * @return the value set or read for each successful parameter, in
+     * request order
+     */
+    public Map<String, Object> getValues()
+    {
+      return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * @return the exception for each failed parameter, in request order
+     */
+    public Map<String, Exception> getErrors()
+    {
+      return Collections.unmodifiableMap(errors);
+    }
+
+    void succeed(String key, Object value)
+    {
+      values.put(key, value);
+    }
+
+    void fail(String key, Exception ex)
+    {
+      values.remove(key);
+      errors.put(key, ex);
+    }
+  }
+
+  /**
+   * Set several Reader parameters, in the iteration order of the map.
+   * A failure on one parameter does not stop the others, except that the
+   * batch ends at the first communication failure. Batches on the same
+   * Reader run one at a time, but other threads' reader commands may be
+   * sent between the commands of a batch. Readers that can combine
+   * settings into fewer device commands do so, for the calling thread's
+   * settings only.
+   *
+   * @param values parameter names and values; use a LinkedHashMap to
+   * control the order
+   * @return per-parameter results and errors
+   */
+  public ParamBatchResult paramSetAll(Map<String, Object> values)
+  {
+    ParamBatchResult result = new ParamBatchResult();
+    synchronized (this)
+    {
+      for (Map.Entry<String, Object> entry : values.entrySet())
+      {
+        if (!batchParamSet(result, entry.getKey(), entry.getValue()))
+        {
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Get several Reader parameters. A failure on one parameter does not
+   * stop the others, except that the batch ends at the first
+   * communication failure. Readers that can answer several parameters
+   * from one device command do so.
+   *
+   * @param keys parameter names
+   * @return per-parameter values and errors, in request order
+   */
+  public ParamBatchResult paramGetAll(Collection<String> keys)
+  {
+    ParamBatchResult result = new ParamBatchResult();
+    synchronized (this)
+    {
+      for (String key : keys)
+      {
+        if (!batchParamGet(result, key))
+        {
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * paramSet one batch entry, recording the outcome.
+   *
+   * @return false if the batch should stop
+   */
+  boolean batchParamSet(ParamBatchResult result, String key, Object value)
+  {
+    try
+    {
+      paramSet(key, value);
+      result.succeed(key, value);
+    }
+    catch (ReaderCommException ex)
+    {
+      result.fail(key, ex);
+      return false;
+    }
+    catch (ReaderException ex)
+    {
+      result.fail(key, ex);
+    }
+    catch (RuntimeException ex)
+    {
+      result.fail(key, ex);
+    }
+    return true;
+  }
+
+  /**
+   * paramGet one batch entry, recording the outcome.
+   *
+   * @return false if the batch should stop
+   */
+  boolean batchParamGet(ParamBatchResult result, String key)
+  {
+    try
+    {
+      result.succeed(key, paramGet(key));
+    }
+    catch (ReaderCommException ex)
+    {
+      result.fail(key, ex);
+      return false;
+    }
+    catch (ReaderException ex)
+    {
+      result.fail(key, ex);
+    }
+    catch (RuntimeException ex)
+    {
+      result.fail(key, ex);
+    }
+    return true;
+  }
+
   /**
    * Load a new firmware image into the device's nonvolatile memory.
    * This installs the given image data onto the device and restarts
@@ -1417,7 +2143,40 @@ abstract public class Reader
   public abstract void firmwareLoad(InputStream firmware,FirmwareLoadOptions loadOptions)
     throws ReaderException, IOException;
 
-    class BackgroundNotifier implements Runnable {
+  class BackgroundNotifier implements Runnable, PooledDrain.Step
+  {
+    final PooledDrain pooled = pooledDrain(this);
+
+    void signal()
+    {
+      if (pooled != null)
+      {
+        pooled.signal();
+      }
+    }
+
+    public boolean drainBatch()
+    {
+      for (int i = 0; i < NOTIFIER_BATCH; i++)
+      {
+        TagReadData t = tagReadQueue.poll();
+        if (t == null)
+        {
+          synchronized (tagReadQueue)
+          {
+            tagReadQueue.notifyAll();
+          }
+          return false;
+        }
+        notifyReadListeners(t);
+      }
+      return true;
+    }
+
+    public boolean hasWork()
+    {
+      return !tagReadQueue.isEmpty();
+    }
 
     public void run()
     {
@@ -1456,8 +2215,110 @@ abstract public class Reader
     }
   }
 
-  class ExceptionNotifier implements Runnable
+  class BatchNotifier implements Runnable, PooledDrain.Step
   {
+    final PooledDrain pooled = pooledDrain(this);
+
+    void signal()
+    {
+      if (pooled != null)
+      {
+        pooled.signal();
+      }
+    }
+
+    public boolean drainBatch()
+    {
+      for (int i = 0; i < NOTIFIER_BATCH; i++)
+      {
+        ReadBatch batch = batchQueue.poll();
+        if (batch == null)
+        {
+          synchronized (batchQueue)
+          {
+            batchQueue.notifyAll();
+          }
+          return false;
+        }
+        notifyReadBatchListeners(batch);
+      }
+      return true;
+    }
+
+    public boolean hasWork()
+    {
+      return !batchQueue.isEmpty();
+    }
+    public void run()
+    {
+      try
+      {
+        while (true) {
+          synchronized (batchQueue)
+          {
+            if (batchQueue.isEmpty())
+            {
+              batchQueue.notifyAll();
+            }
+          }
+          ReadBatch batch = batchQueue.take();
+          notifyReadBatchListeners(batch);
+        }
+      }
+      catch(InterruptedException ex)
+      {
+        // stopReading uses interrupt() to kill this thread;
+        // users should not see that exception
+      }
+    }
+
+    void drainQueue()
+      throws InterruptedException
+    {
+      synchronized (batchQueue)
+      {
+        while (batchQueue.isEmpty() == false)
+        {
+          batchQueue.wait();
+        }
+      }
+    }
+  }
+
+  class ExceptionNotifier implements Runnable, PooledDrain.Step
+  {
+    final PooledDrain pooled = pooledDrain(this);
+
+    void signal()
+    {
+      if (pooled != null)
+      {
+        pooled.signal();
+      }
+    }
+
+    public boolean drainBatch()
+    {
+      for (int i = 0; i < NOTIFIER_BATCH; i++)
+      {
+        ReaderException re = exceptionQueue.poll();
+        if (re == null)
+        {
+          synchronized (exceptionQueue)
+          {
+            exceptionQueue.notifyAll();
+          }
+          return false;
+        }
+        notifyExceptionListeners(re);
+      }
+      return true;
+    }
+
+    public boolean hasWork()
+    {
+      return !exceptionQueue.isEmpty();
+    }
     public void run()
     {
       try
@@ -1522,14 +2383,16 @@ abstract public class Reader
           {
             readTime = (Integer)paramGet(TMR_PARAM_READ_ASYNCONTIME);
             sleepTime = (Integer)paramGet(TMR_PARAM_READ_ASYNCOFFTIME);
+            if (!awaitSubscriberDemand())
+            {
+                continue;
+            }
             fetchTagReads = true;
+            long cycleStart = System.currentTimeMillis();
             tags = read(readTime);
             if(!isOffTimeAdded)
             {
-                for (TagReadData t : tags)
-                {
-                  tagReadQueue.put(t);
-                }
+                dispatchCycleReads(tags, cycleStart);
                 timeEnd = System.currentTimeMillis();
                 tagFetchTime = timeEnd - timeStart;
                 sleepTime = sleepTime - tagFetchTime;
@@ -1541,7 +2404,7 @@ abstract public class Reader
           } 
           catch (ReaderException re)
           {
-            exceptionQueue.put(re);
+            queueReadException(re);
             enabled = false;
             running = false;
           }
@@ -1555,6 +2418,27 @@ abstract public class Reader
       }
     }
 
+    /**
+     * Hold off the next search cycle while TagReadPublisher subscribers
+     * have not taken the reads of the previous ones.
+     *
+     * @return false if reading was turned off while waiting
+     */
+    private boolean awaitSubscriberDemand() throws InterruptedException
+    {
+      while (!tagReadPublisher.awaitDemand(100))
+      {
+        synchronized (this)
+        {
+          if (!enabled)
+          {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
     synchronized void readOn()
     {
       enabled = true;
@@ -1664,7 +2548,7 @@ abstract public class Reader
                     running = false;
                     enabled = false; 
                   }
-                  exceptionQueue.put(re);
+                  queueReadException(re);
               }
           }//end of while
       }
@@ -1792,7 +2676,8 @@ abstract public class Reader
         READER_FEATURES_FLAG_READER_METADATA(64), //LLRP Reader
         READER_FEATURES_FLAG_READER_STATS(128), // LLRP Reader
         READER_FEATURES_FLAG_STATE_AWARE(256), //LLRP Reader
-        READER_FEATURES_FLAG_ADDR_BYTE_EXTENSION(512); //Serial Reader (M3e)
+        READER_FEATURES_FLAG_ADDR_BYTE_EXTENSION(512), //Serial Reader (M3e)
+        READER_FEATURES_FLAG_TAG_METADATA(1024); //LLRP Reader
         int value;
 
         ReaderFeaturesFlag(int value)
@@ -0,0 +1,597 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A group of readers that share their background threads and report
+ * their reads as one stream.
+ *
+ * Readers created with add() deliver their reads and exceptions from a
+ * small shared pool instead of from notifier threads of their own, and
+ * LLRP readers process their reports on the same pool and check their
+ * keep-alives on one shared scheduler. The only thread a member has to
+ * itself is the one that talks to the reader while it reads. Connecting,
+ * configuring, starting and stopping is done for all members at once.
+ *
+ * A member never holds a pool thread waiting for room: where it would
+ * block on its own full dispatch queue, listener queue or subscriber
+ * buffer, the read is dropped and counted instead, so that one stalled
+ * member cannot hold up the others.
+ *
+ * Fleet ReadListeners see the reads of every member. Each member's reads
+ * arrive in the order the member reported them, but reads of different
+ * members can be delivered at the same time, so the listeners must be
+ * thread safe. TagReadData.getReader() tells which member read a tag.
+ */
+public final class ReaderFleet
+{
+  /**
+   * What the fleet last knew of a member
+   */
+  public enum Health
+  {
+    /** Added, not connected */ DISCONNECTED,
+    /** Connecting or being configured */ CONNECTING,
+    /** Connected and not reading */ CONNECTED,
+    /** Reading in the background */ READING,
+    /** Connecting, configuring, starting or stopping failed; see Status.lastError */ FAILED,
+    /** Removed from the fleet or the fleet was closed */ CLOSED
+  }
+
+  /**
+   * Settings applied to each member once it is connected
+   */
+  public interface Configurer
+  {
+    void configure(Reader reader) throws ReaderException;
+  }
+
+  /**
+   * Snapshot of a member's health and counters
+   */
+  public static class Status
+  {
+    /** The member */
+    public final Reader reader;
+    /** The URI it was created with */
+    public final String uri;
+    public final Health health;
+    /** The most recent failure or exception reported while reading, or null */
+    public final Exception lastError;
+    /** Reads delivered to the fleet */
+    public final long reads;
+    /** When the last read was delivered, in milliseconds since the epoch, or 0 */
+    public final long lastReadTime;
+    /** Exceptions reported while reading */
+    public final long readExceptions;
+
+    Status(Reader reader, String uri, Health health, Exception lastError,
+           long reads, long lastReadTime, long readExceptions)
+    {
+      this.reader = reader;
+      this.uri = uri;
+      this.health = health;
+      this.lastError = lastError;
+      this.reads = reads;
+      this.lastReadTime = lastReadTime;
+      this.readExceptions = readExceptions;
+    }
+
+    @Override
+    public String toString()
+    {
+      return uri + " " + health + " reads=" + reads
+        + " lastReadTime=" + lastReadTime + " readExceptions=" + readExceptions
+        + ((lastError == null) ? "" : " lastError=" + lastError.getMessage());
+    }
+  }
+
+  /** Default size of the pool that delivers reads and processes reports */
+  public static final int DEFAULT_NOTIFIER_THREADS =
+    Math.max(2, Runtime.getRuntime().availableProcessors());
+  /** Default number of members connected or configured at the same time */
+  public static final int DEFAULT_CONNECT_THREADS = 8;
+  // Idle pool threads exit after this long, so an idle fleet holds none
+  private static final long IDLE_THREAD_SECONDS = 30;
+
+  private final ThreadPoolExecutor notifierPool;
+  private final ThreadPoolExecutor connectPool;
+  private final ScheduledThreadPoolExecutor scheduler;
+  private final List<Member> members = new CopyOnWriteArrayList<Member>();
+  private final List<ReadListener> readListeners =
+    new CopyOnWriteArrayList<ReadListener>();
+  private final List<ReadExceptionListener> exceptionListeners =
+    new CopyOnWriteArrayList<ReadExceptionListener>();
+  private final TagReadPublisher publisher = new TagReadPublisher();
+  private volatile boolean closed;
+
+  public ReaderFleet()
+  {
+    this(DEFAULT_NOTIFIER_THREADS, DEFAULT_CONNECT_THREADS);
+  }
+
+  /**
+   * @param notifierThreads most threads used to deliver reads and process
+   * reports for all members together
+   * @param connectThreads most members connected, configured, started or
+   * stopped at the same time
+   */
+  public ReaderFleet(int notifierThreads, int connectThreads)
+  {
+    if (notifierThreads < 1 || connectThreads < 1)
+    {
+      throw new IllegalArgumentException("Thread counts must be positive: "
+                                         + notifierThreads + ", " + connectThreads);
+    }
+    notifierPool = newPool(notifierThreads, "reader fleet notifier");
+    connectPool = newPool(connectThreads, "reader fleet connect");
+    scheduler = new ScheduledThreadPoolExecutor(1, daemonThreads("reader fleet scheduler"));
+    scheduler.setKeepAliveTime(IDLE_THREAD_SECONDS, TimeUnit.SECONDS);
+    scheduler.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Create a reader with Reader.create() and make it a member. The reader
+   * is not connected; see connectAll().
+   *
+   * @param uri the reader's URI, as for Reader.create()
+   * @return the new member
+   */
+  public Reader add(String uri) throws ReaderException
+  {
+    if (closed)
+    {
+      throw new IllegalStateException("Reader fleet is closed");
+    }
+    return add(Reader.create(uri), uri);
+  }
+
+  /**
+   * Make a reader that is not yet connected a member.
+   */
+  Reader add(Reader reader, String uri)
+  {
+    reader.useSharedPools(notifierPool, scheduler);
+    Member m = new Member(reader, uri);
+    reader.addReadListener(m);
+    reader.addReadExceptionListener(m);
+    members.add(m);
+    return reader;
+  }
+
+  /**
+   * Remove a member, stopping and destroying it.
+   *
+   * @param reader the member to remove
+   * @return false if the reader was not a member
+   */
+  public boolean remove(Reader reader)
+  {
+    Member m = member(reader);
+    if (m == null)
+    {
+      return false;
+    }
+    members.remove(m);
+    runOnAll(Collections.singletonList(m), new Close(), 0);
+    reader.removeReadListener(m);
+    reader.removeReadExceptionListener(m);
+    return true;
+  }
+
+  /**
+   * Returns the members, in the order they were added.
+   */
+  public List<Reader> getReaders()
+  {
+    List<Reader> readers = new ArrayList<Reader>(members.size());
+    for (Member m : members)
+    {
+      readers.add(m.reader);
+    }
+    return readers;
+  }
+
+  /**
+   * Connect every member that is not connected and apply the
+   * configuration to it, several members at a time.
+   *
+   * @param configurer settings applied after connecting, or null
+   * @param timeoutMillis how long to wait for all members; members still
+   * connecting after that are reported as failed
+   * @return the members that failed and why; empty if all succeeded
+   */
+  public Map<Reader, Exception> connectAll(final Configurer configurer,
+                                           long timeoutMillis)
+  {
+    List<Member> pending = new ArrayList<Member>();
+    for (Member m : members)
+    {
+      Health h = m.health;
+      if (h == Health.DISCONNECTED || h == Health.FAILED)
+      {
+        pending.add(m);
+      }
+    }
+    return runOnAll(pending, new Action()
+    {
+      public void run(Member m) throws Exception
+      {
+        m.health = Health.CONNECTING;
+        m.reader.connect();
+        if (configurer != null)
+        {
+          configurer.configure(m.reader);
+        }
+        m.health = Health.CONNECTED;
+      }
+    }, timeoutMillis);
+  }
+
+  /**
+   * Start background reading on every connected member.
+   *
+   * @return the members that failed and why; empty if all succeeded
+   */
+  public Map<Reader, Exception> startReading(long timeoutMillis)
+  {
+    return runOnAll(inHealth(Health.CONNECTED), new Action()
+    {
+      public void run(Member m) throws Exception
+      {
+        m.reader.startReading();
+        m.health = Health.READING;
+      }
+    }, timeoutMillis);
+  }
+
+  /**
+   * Stop background reading on every member that is reading.
+   *
+   * @return the members that failed and why; empty if all succeeded
+   */
+  public Map<Reader, Exception> stopReading(long timeoutMillis)
+  {
+    return runOnAll(inHealth(Health.READING), new Action()
+    {
+      public void run(Member m) throws Exception
+      {
+        m.reader.stopReading();
+        m.health = Health.CONNECTED;
+      }
+    }, timeoutMillis);
+  }
+
+  /**
+   * Add a listener for the reads of all members.
+   */
+  public void addReadListener(ReadListener listener)
+  {
+    readListeners.add(listener);
+  }
+
+  public void removeReadListener(ReadListener listener)
+  {
+    readListeners.remove(listener);
+  }
+
+  /**
+   * Add a listener for the exceptions of all members.
+   */
+  public void addReadExceptionListener(ReadExceptionListener listener)
+  {
+    exceptionListeners.add(listener);
+  }
+
+  public void removeReadExceptionListener(ReadExceptionListener listener)
+  {
+    exceptionListeners.remove(listener);
+  }
+
+  /**
+   * Returns a publisher of the reads of all members. The members cannot
+   * all be held up for one subscriber, so a full subscription buffer
+   * drops its oldest read.
+   */
+  public TagReadPublisher getTagReadPublisher()
+  {
+    return publisher;
+  }
+
+  /**
+   * Returns the status of every member, in the order they were added.
+   */
+  public List<Status> getStatus()
+  {
+    List<Status> status = new ArrayList<Status>(members.size());
+    for (Member m : members)
+    {
+      status.add(m.status());
+    }
+    return status;
+  }
+
+  /**
+   * Returns the status of one member, or null if it is not a member.
+   */
+  public Status getStatus(Reader reader)
+  {
+    Member m = member(reader);
+    return (m == null) ? null : m.status();
+  }
+
+  /**
+   * Stop and destroy every member and release the shared threads.
+   */
+  public void close()
+  {
+    if (closed)
+    {
+      return;
+    }
+    closed = true;
+    List<Member> all = new ArrayList<Member>(members);
+    members.clear();
+    runOnAll(all, new Close(), 0);
+    publisher.complete();
+    connectPool.shutdown();
+    notifierPool.shutdown();
+    scheduler.shutdownNow();
+  }
+
+  private interface Action
+  {
+    void run(Member m) throws Exception;
+  }
+
+  private static class Close implements Action
+  {
+    public void run(Member m)
+    {
+      try
+      {
+        if (m.health == Health.READING)
+        {
+          m.reader.stopReading();
+        }
+        m.reader.destroy();
+      }
+      finally
+      {
+        m.health = Health.CLOSED;
+      }
+    }
+  }
+
+  /**
+   * Run an action for several members on the connect pool.
+   *
+   * @param timeoutMillis how long to wait, or 0 to wait until all are done
+   * @return the members whose action failed or did not finish in time
+   */
+  private Map<Reader, Exception> runOnAll(List<Member> targets, final Action action,
+                                          long timeoutMillis)
+  {
+    Map<Member, Future<Void>> futures = new LinkedHashMap<Member, Future<Void>>();
+    for (final Member m : targets)
+    {
+      futures.put(m, connectPool.submit(new Callable<Void>()
+      {
+        public Void call() throws Exception
+        {
+          try
+          {
+            action.run(m);
+          }
+          catch (Exception ex)
+          {
+            m.failed(ex);
+            throw ex;
+          }
+          return null;
+        }
+      }));
+    }
+
+    Map<Reader, Exception> failures = new LinkedHashMap<Reader, Exception>();
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    boolean interrupted = false;
+    for (Map.Entry<Member, Future<Void>> e : futures.entrySet())
+    {
+      Member m = e.getKey();
+      Future<Void> f = e.getValue();
+      try
+      {
+        if (timeoutMillis <= 0)
+        {
+          f.get();
+        }
+        else
+        {
+          f.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+      }
+      catch (ExecutionException ee)
+      {
+        Throwable cause = ee.getCause();
+        failures.put(m.reader, (cause instanceof Exception)
+                     ? (Exception) cause : new ReaderException(cause.toString()));
+      }
+      catch (TimeoutException te)
+      {
+        f.cancel(true);
+        ReaderException timeout = new ReaderCommException("Timeout");
+        m.failed(timeout);
+        failures.put(m.reader, timeout);
+      }
+      catch (InterruptedException ie)
+      {
+        interrupted = true;
+        f.cancel(true);
+        failures.put(m.reader, new ReaderException("Interrupted"));
+      }
+    }
+    if (interrupted)
+    {
+      Thread.currentThread().interrupt();
+    }
+    return failures;
+  }
+
+  private List<Member> inHealth(Health health)
+  {
+    List<Member> list = new ArrayList<Member>();
+    for (Member m : members)
+    {
+      if (m.health == health)
+      {
+        list.add(m);
+      }
+    }
+    return list;
+  }
+
+  private Member member(Reader reader)
+  {
+    for (Member m : members)
+    {
+      if (m.reader == reader)
+      {
+        return m;
+      }
+    }
+    return null;
+  }
+
+  private static ThreadPoolExecutor newPool(int threads, String name)
+  {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(
+      threads, threads, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+      new LinkedBlockingQueue<Runnable>(), daemonThreads(name));
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  private static ThreadFactory daemonThreads(final String name)
+  {
+    final AtomicInteger count = new AtomicInteger();
+    return new ThreadFactory()
+    {
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, name + " " + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    };
+  }
+
+  /**
+   * Forwards one member's reads and exceptions to the fleet
+   */
+  private final class Member implements ReadListener, ReadExceptionListener
+  {
+    final Reader reader;
+    final String uri;
+    volatile Health health = Health.DISCONNECTED;
+    volatile Exception lastError;
+    final AtomicLong reads = new AtomicLong();
+    volatile long lastReadTime;
+    final AtomicLong readExceptions = new AtomicLong();
+
+    Member(Reader reader, String uri)
+    {
+      this.reader = reader;
+      this.uri = uri;
+    }
+
+    void failed(Exception ex)
+    {
+      lastError = ex;
+      if (health != Health.CLOSED)
+      {
+        health = Health.FAILED;
+      }
+    }
+
+    Status status()
+    {
+      return new Status(reader, uri, health, lastError, reads.get(),
+                        lastReadTime, readExceptions.get());
+    }
+
+    public void tagRead(Reader r, TagReadData t)
+    {
+      reads.incrementAndGet();
+      lastReadTime = System.currentTimeMillis();
+      if (t.reader == null)
+      {
+        t.reader = r;
+      }
+      if (publisher.hasSubscribers())
+      {
+        try
+        {
+          publisher.publish(t);
+        }
+        catch (InterruptedException ie)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+      for (ReadListener l : readListeners)
+      {
+        l.tagRead(r, t);
+      }
+    }
+
+    public void tagReadException(Reader r, ReaderException re)
+    {
+      // Left to the listeners to judge; health only tracks the
+      // operations the fleet performs
+      readExceptions.incrementAndGet();
+      lastError = re;
+      for (ReadExceptionListener l : exceptionListeners)
+      {
+        l.tagReadException(r, re);
+      }
+    }
+  }
+}
@@ -11,6 +11,7 @@ import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
@@ -21,56 +22,73 @@ import java.util.List;
 public class ReaderUtil
 {
 
+    // One de-duplication table per calling thread, kept between calls so
+    // it is only resized when a larger list comes along
+    private static final ThreadLocal<TagReadDeduplicator> deduplicator =
+        new ThreadLocal<TagReadDeduplicator>()
+        {
+            @Override
+            protected TagReadDeduplicator initialValue()
+            {
+                return new TagReadDeduplicator();
+            }
+        };
+
     /**
      * De-duplication logic
      * @param tagvec
      * @throws ReaderException
      */
     public static void removeDuplicates(List<TagReadData> tagvec, Object uniqueByAntenna, Object uniqueByData, Object highestRSSI) throws ReaderException {
-        HashMap<String, TagReadData> map = new HashMap<String, TagReadData>();
-        //     List<TagReadData> tagReads = new Vector();
-        String key;
-        byte i = (byte) (((Boolean) uniqueByAntenna ? 0x10 : 0x00) + ((Boolean) uniqueByData ? 0x01 : 0x00));
+        deduplicator.get().removeDuplicates(tagvec, (Boolean) uniqueByAntenna, (Boolean) uniqueByData,
+                                            false, (Boolean) highestRSSI);
+    }
 
-        for (TagReadData tag : tagvec)
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    // Value of each ASCII character as a hex digit, -1 if it is not one
+    private static final byte[] HEX_VALUES = new byte[128];
+    static
+    {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++)
         {
-            switch (i)
-            {
-                case 0x00:
-                    key = tag.epcString();
-                    break;
-                case 0x01:
-                    key = tag.epcString() + ";" + byteArrayToHexString(tag.data);
-                    break;
-                case 0x10:
-                    key = tag.epcString() + ";" + tag.getAntenna();
-                    break;
-                default:
-                    key = tag.epcString() + ";" + tag.getAntenna() + ";" + byteArrayToHexString(tag.data);
-                    break;
-            }
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++)
+        {
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+        }
+    }
 
-            if (!map.containsKey(key))
-            {
-                map.put(key, tag);
+    /**
+     * Write the two upper-case hex digits of a byte into a char array.
+     */
+    static void putHex(char[] out, int pos, int b)
+    {
+        out[pos] = HEX_DIGITS[(b >> 4) & 0x0F];
+        out[pos + 1] = HEX_DIGITS[b & 0x0F];
+    }
 
-            }
-            else //see the tag again
-            {
-                map.get(key).readCount = map.get(key).getReadCount() + tag.getReadCount();
-                if ((Boolean) highestRSSI)
-                {
-                    if (tag.getRssi() > map.get(key).getRssi())
-                    {
-                        int tmp = map.get(key).getReadCount();
-                        map.put(key, tag);
-                        map.get(key).readCount = tmp;
-                    }
-                }
-            }
+    /**
+     * Upper-case hex string of part of a byte array.
+     */
+    static String toHex(byte[] in, int offset, int length)
+    {
+        char[] out = new char[length * 2];
+        for (int i = 0; i < length; i++)
+        {
+            putHex(out, i * 2, in[offset + i]);
         }
-        tagvec.clear();
-        tagvec.addAll(map.values());
+        return new String(out);
+    }
+
+    /**
+     * Value of a hex digit, or -1 if the character is not one.
+     */
+    static int hexDigit(char c)
+    {
+        return (c < HEX_VALUES.length) ? HEX_VALUES[c] : -1;
     }
 
     /**
@@ -80,36 +98,11 @@ public class ReaderUtil
      */
     public static String byteArrayToHexString(byte in[])
     {
-
-        byte ch = 0x00;
-        int i = 0;
-
         if (in == null || in.length <= 0)
         {
             return null;
         }
-
-        String pseudo[] = {"0", "1", "2",
-            "3", "4", "5", "6", "7", "8",
-            "9", "A", "B", "C", "D", "E",
-            "F"};
-
-        StringBuilder out = new StringBuilder(in.length * 2);
-
-        while (i < in.length)
-        {
-            ch = (byte) (in[i] & 0xF0); // Strip off high nibble
-            ch = (byte) (ch >>> 4);
-            // shift the bits down
-            ch = (byte) (ch & 0x0F);
-            // must do this is high order bit is on!
-            out.append(pseudo[(int) ch]); // convert the nibble to a String Character
-            ch = (byte) (in[i] & 0x0F); // Strip off low nibble
-            out.append(pseudo[(int) ch]); // convert the nibble to a String Character
-            i++;
-        }
-        return new String(out);
-
+        return toHex(in, 0, in.length);
     }
 
     /**
@@ -128,8 +121,8 @@ public class ReaderUtil
         byte[] data = new byte[len / 2];
         for (int i = 0; i < len; i += 2)
         {
-            data[i / 2] = (byte) ((Character.digit(hexStr.charAt(i), 16) << 4)
-                    + Character.digit(hexStr.charAt(i + 1), 16));
+            data[i / 2] = (byte) ((hexDigit(hexStr.charAt(i)) << 4)
+                    + hexDigit(hexStr.charAt(i + 1)));
         }
         return data;
     }
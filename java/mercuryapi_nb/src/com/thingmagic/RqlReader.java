@@ -162,6 +162,7 @@ public class RqlReader extends com.thingmagic.Reader
   public void connect()
     throws ReaderException
   {
+    invalidateParamCache();
     String version, serial;
     TagProtocol[] protocols=null;
     Setting s;
@@ -1591,6 +1592,8 @@ public class RqlReader extends com.thingmagic.Reader
      */
     private void notifyBatchListeners(String[] rows, Date baseTime) throws ReaderException
     {
+        List<TagReadData> batch = hasReadBatchListeners()
+            ? new ArrayList<TagReadData>(rows.length) : null;
         for (String row : rows)
         {
             if (0 < row.length())
@@ -1599,6 +1602,10 @@ public class RqlReader extends com.thingmagic.Reader
                 {
                     TagReadData trd = parseRqlResponse(row, baseTime);
                     notifyReadListeners(trd);
+                    if (batch != null)
+                    {
+                        batch.add(trd);
+                    }
                 }
                 catch (Exception ex)
                 {
@@ -1607,6 +1614,17 @@ public class RqlReader extends com.thingmagic.Reader
                 }
             }
         }
+        if (batch != null && !batch.isEmpty())
+        {
+            try
+            {
+                dispatchReadBatch(batch, baseTime.getTime(), System.currentTimeMillis(), true);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
 
@@ -1923,7 +1941,7 @@ public class RqlReader extends com.thingmagic.Reader
         rqlOut.write(query);
         rqlOut.write('\n');
         rqlOut.flush();
-        rqlLogger.info("rqlOut wrote \""+query+"\"");
+        rqlLogger.info("rqlOut wrote \"{}\"", query);
       }
       else
       {
@@ -2002,7 +2020,10 @@ public class RqlReader extends com.thingmagic.Reader
         {
             throw new ReaderCommException(ioe.getMessage(), ReaderUtil.convertListToBytes(response));
         }
-    notifyListeners(response, false, recvTimeout);
+    if (hasListeners)
+    {
+      notifyListeners(response, false, recvTimeout);
+    }
     cleanLeadingNewline(response);
     return response.toArray(new String[0]);
 }
@@ -2270,6 +2291,9 @@ public class RqlReader extends com.thingmagic.Reader
 
   public void destroy()
   {
+    invalidateParamCache();
+    listenerDispatcher.shutdown();
+    tagReadPublisher.complete();
     try
     {
       rqlSock.close();
@@ -2416,7 +2440,11 @@ public class RqlReader extends com.thingmagic.Reader
             }            
         }
         // DeDuplication Logic        
-        ReaderUtil.removeDuplicates(reads,paramGet(TMR_PARAM_TAGREADDATA_UNIQUEBYANTENNA),paramGet(TMR_PARAM_TAGREADDATA_UNIQUEBYDATA),paramGet(TMR_PARAM_TAGREADDATA_RECORDHIGHESTRSSI));
+        deduplicator.removeDuplicates(reads,
+                                      (Boolean)paramGet(TMR_PARAM_TAGREADDATA_UNIQUEBYANTENNA),
+                                      (Boolean)paramGet(TMR_PARAM_TAGREADDATA_UNIQUEBYDATA),
+                                      false,
+                                      (Boolean)paramGet(TMR_PARAM_TAGREADDATA_RECORDHIGHESTRSSI));
         resetRql();
     }
 
@@ -2861,6 +2889,7 @@ public class RqlReader extends com.thingmagic.Reader
     public void firmwareLoad(InputStream firmware, FirmwareLoadOptions loadOptions) 
             throws ReaderException, IOException
     {
+        invalidateParamCache();
         webRequest(firmware, loadOptions);
     }
 
@@ -2868,6 +2897,7 @@ public class RqlReader extends com.thingmagic.Reader
     public synchronized void firmwareLoad(InputStream firmware)
             throws IOException, ReaderException
     {
+        invalidateParamCache();
         webRequest(firmware, null);
     }
 
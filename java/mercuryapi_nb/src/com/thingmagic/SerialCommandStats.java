@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes a SerialReader's command counters as a JMX MBean named
+ * com.thingmagic:type=SerialReader,name=<i>name</i>. Each attribute read
+ * takes a fresh snapshot; see SerialReader.getCommandStats(). JMX is only
+ * touched by this class, so platforms without it can still use the
+ * counters directly.
+ */
+public class SerialCommandStats implements SerialCommandStatsMBean
+{
+  private final SerialReader reader;
+
+  public SerialCommandStats(SerialReader reader)
+  {
+    this.reader = reader;
+  }
+
+  /**
+   * Register the counters of a reader with the platform MBean server,
+   * enabling them.
+   *
+   * @param reader the reader to publish
+   * @param name distinguishes the reader from others, such as its URI
+   * @return the name the MBean was registered under
+   */
+  public static ObjectName register(SerialReader reader, String name)
+    throws JMException
+  {
+    ObjectName objectName = objectName(name);
+    reader.setCommandStatsEnabled(true);
+    ManagementFactory.getPlatformMBeanServer()
+      .registerMBean(new SerialCommandStats(reader), objectName);
+    return objectName;
+  }
+
+  /**
+   * Remove the MBean registered for the given name, if any.
+   */
+  public static void unregister(String name) throws JMException
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = objectName(name);
+    if (server.isRegistered(objectName))
+    {
+      server.unregisterMBean(objectName);
+    }
+  }
+
+  private static ObjectName objectName(String name) throws JMException
+  {
+    return new ObjectName("com.thingmagic:type=SerialReader,name=" + ObjectName.quote(name));
+  }
+
+  public boolean isEnabled()
+  {
+    return reader.isCommandStatsEnabled();
+  }
+
+  public void setEnabled(boolean enabled)
+  {
+    reader.setCommandStatsEnabled(enabled);
+  }
+
+  public long getCommandsSent()
+  {
+    return reader.getCommandStats().sent;
+  }
+
+  public long getResponsesReceived()
+  {
+    return reader.getCommandStats().received;
+  }
+
+  public long getTimeouts()
+  {
+    return reader.getCommandStats().timeouts;
+  }
+
+  public long getCrcFailures()
+  {
+    return reader.getCommandStats().crcFailures;
+  }
+
+  public long getStatusCodeErrors()
+  {
+    return reader.getCommandStats().codeErrors;
+  }
+
+  public long getOtherErrors()
+  {
+    return reader.getCommandStats().errors;
+  }
+
+  public long getSohResyncs()
+  {
+    return reader.getCommandStats().sohResyncs;
+  }
+
+  public long getBytesOut()
+  {
+    return reader.getCommandStats().bytesOut;
+  }
+
+  public long getBytesIn()
+  {
+    return reader.getCommandStats().bytesIn;
+  }
+
+  public String[] getOpcodeSummary()
+  {
+    SerialReader.CommandStats stats = reader.getCommandStats();
+    String[] lines = new String[stats.opcodes.size()];
+    for (int i = 0; i < lines.length; i++)
+    {
+      lines[i] = stats.opcodes.get(i).toString();
+    }
+    return lines;
+  }
+
+  public String[] getStatusCodeSummary()
+  {
+    SerialReader.CommandStats stats = reader.getCommandStats();
+    String[] lines = new String[stats.statusCodes.size()];
+    int i = 0;
+    for (Map.Entry<Integer, Long> e : stats.statusCodes.entrySet())
+    {
+      lines[i++] = String.format("0x%04x: %d", e.getKey(), e.getValue());
+    }
+    return lines;
+  }
+
+  public void reset()
+  {
+    reader.resetCommandStats();
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+/**
+ * Frame decoder for the embedded module serial protocol.
+ *
+ * For a StreamingSerialTransport, bytes are pulled in bulk into a
+ * reusable ring buffer, the decoder resynchronizes on SOH (0xFF) and
+ * frames are handed out one at a time; bytes following a frame stay
+ * buffered for the next call, so a burst of streamed tag reads costs a
+ * single transport read. Other transports are read header first and
+ * then payload, straight into the caller's buffer.
+ *
+ * <pre>
+ * [0] [1] [2] [3]      [4]      [5] ... [LEN+4] [LEN+5] [LEN+6]
+ * FF  LEN OP  STATUSHI STATUSLO xx  ... xx      CRCHI   CRCLO
+ * </pre>
+ */
+final class SerialFrameDecoder
+{
+  static final int SOH = 0xFF;
+  // Must be a power of two; comfortably holds a dozen maximum-size frames
+  static final int RING_SIZE = 4096;
+  // Number of header reads without finding SOH before giving up
+  static final int MAX_HEADER_READS = 20;
+
+  private final byte[] ring = new byte[RING_SIZE];
+  private final int mask = RING_SIZE - 1;
+  private int head;
+  private int count;
+
+  /** Result of the CRC check of the last frame returned */
+  boolean crcValid;
+  /** CRC computed over the last frame returned */
+  int computedCrc;
+  /** Number of times leading garbage had to be skipped to find SOH */
+  long sohResyncs;
+  /** Number of bytes discarded while resynchronizing */
+  long discardedBytes;
+
+  /**
+   * Discard any buffered bytes. Must be called whenever the transport
+   * is flushed, reopened or replaced.
+   */
+  void reset()
+  {
+    head = 0;
+    count = 0;
+  }
+
+  /**
+   * Number of bytes received from the transport but not yet returned
+   * as part of a frame.
+   */
+  int buffered()
+  {
+    return count;
+  }
+
+  /**
+   * Receive the next complete frame into dest, SOH at index 0.
+   *
+   * @param st the transport to read from
+   * @param dest buffer to receive the frame
+   * @param opCode opcode of the outstanding command; frames carrying it,
+   * or one of the streaming opcodes 0x22, 0x2F and 0x9D, are accepted
+   * @param crcEnabled whether frames carry a trailing CRC
+   * @param headerTimeout timeout for the first bytes of the frame
+   * @param bodyTimeout timeout for the remainder of the frame
+   * @return the LEN byte of the frame
+   */
+  int receiveFrame(SerialTransport st, byte[] dest, int opCode, boolean crcEnabled,
+                   int headerTimeout, int bodyTimeout)
+    throws ReaderException
+  {
+    int headerLength = crcEnabled ? 7 : 5;
+    int len;
+
+    if (st instanceof StreamingSerialTransport)
+    {
+      len = receiveBuffered((StreamingSerialTransport)st, dest, opCode, headerLength,
+                            headerTimeout, bodyTimeout);
+    }
+    else
+    {
+      len = receiveDirect(st, dest, opCode, headerLength, headerTimeout, bodyTimeout);
+    }
+
+    if (crcEnabled)
+    {
+      computedCrc = SerialReader.calcCrc(dest, 1, len + 4) & 0xffff;
+      crcValid = (dest[len + 5] == (byte)(computedCrc >> 8))
+        && (dest[len + 6] == (byte)computedCrc);
+    }
+    else
+    {
+      crcValid = true;
+    }
+    return len;
+  }
+
+  private static boolean isFrameOpcode(int b, int opCode)
+  {
+    b &= 0xff;
+    return (b == (opCode & 0xff)) || (b == 0x22) || (b == 0x2F) || (b == 0x9D);
+  }
+
+  private int receiveDirect(SerialTransport st, byte[] dest, int opCode, int headerLength,
+                            int headerTimeout, int bodyTimeout)
+    throws ReaderException
+  {
+    int sofPosition;
+    boolean sofFound = false;
+    int inLen = 0;
+    int retryCount = 0;
+
+    do
+    {
+      //pull at least headerLength bytes on first serial receive
+      st.receiveBytes(headerLength - inLen, dest, inLen, headerTimeout);
+
+      for (sofPosition = 0; sofPosition < (headerLength - 2); sofPosition++)
+      {
+        if ((dest[sofPosition] == (byte)SOH) && isFrameOpcode(dest[sofPosition + 2], opCode))
+        {
+          sofFound = (sofPosition == 0);
+          break;
+        }
+      }
+      if (sofFound)
+      {
+        break;
+      }
+      // Keep the bytes from the candidate SOH onwards and read the rest
+      inLen = headerLength - sofPosition;
+      System.arraycopy(dest, sofPosition, dest, 0, inLen);
+      sohResyncs++;
+      discardedBytes += sofPosition;
+    } while (++retryCount < MAX_HEADER_READS);
+
+    if (!sofFound)
+    {
+      throw new ReaderException("Timeout");
+    }
+
+    int len = dest[1] & 0xff;
+    if ((dest.length - headerLength) < len)
+    {
+      throw new ReaderCommException("Packet data size is too big.");
+    }
+    //Now pull in the rest of the data, if exists, + the CRC
+    if (len != 0)
+    {
+      st.receiveBytes(len, dest, headerLength, bodyTimeout);
+    }
+    return len;
+  }
+
+  private int receiveBuffered(StreamingSerialTransport st, byte[] dest, int opCode,
+                              int headerLength, int headerTimeout, int bodyTimeout)
+    throws ReaderException
+  {
+    int reads = 0;
+
+    while (true)
+    {
+      int skip = seekSoh(opCode);
+      if (skip > 0)
+      {
+        consume(skip);
+        sohResyncs++;
+        discardedBytes += skip;
+      }
+      if (count >= headerLength)
+      {
+        // seekSoh leaves at most two unverified bytes
+        break;
+      }
+      if (reads++ >= MAX_HEADER_READS)
+      {
+        throw new ReaderException("Timeout");
+      }
+      fill(st, headerLength - count, headerTimeout);
+    }
+
+    int len = byteAt(1);
+    if ((dest.length - headerLength) < len)
+    {
+      // Drop the SOH so the next frame search starts past this one
+      consume(1);
+      throw new ReaderCommException("Packet data size is too big.");
+    }
+    int frameLength = headerLength + len;
+    if (count < frameLength)
+    {
+      fill(st, frameLength - count, bodyTimeout);
+    }
+
+    int start = head;
+    int first = Math.min(frameLength, RING_SIZE - start);
+    System.arraycopy(ring, start, dest, 0, first);
+    if (first < frameLength)
+    {
+      System.arraycopy(ring, 0, dest, first, frameLength - first);
+    }
+    consume(frameLength);
+    return len;
+  }
+
+  /**
+   * Find the first buffered SOH followed by a plausible opcode.
+   *
+   * @return number of leading bytes to discard. Afterwards either a
+   * frame starts at the head, or fewer than three bytes remain
+   * and all of them may still be the start of a frame.
+   */
+  private int seekSoh(int opCode)
+  {
+    int i;
+    for (i = 0; i + 2 < count; i++)
+    {
+      if (byteAt(i) == SOH && isFrameOpcode(byteAt(i + 2), opCode))
+      {
+        return i;
+      }
+    }
+    // Fewer than three bytes left to look at: keep them only from an SOH on
+    while (i < count && byteAt(i) != SOH)
+    {
+      i++;
+    }
+    return i;
+  }
+
+  private int byteAt(int index)
+  {
+    return ring[(head + index) & mask] & 0xff;
+  }
+
+  private void consume(int length)
+  {
+    head = (head + length) & mask;
+    count -= length;
+    if (count == 0)
+    {
+      // Keep the next bulk read contiguous
+      head = 0;
+    }
+  }
+
+  /**
+   * Read from the transport until at least needed more bytes are
+   * buffered, taking whatever else is already available.
+   */
+  private void fill(StreamingSerialTransport st, int needed, int timeoutMs)
+    throws ReaderException
+  {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    int target = count + needed;
+
+    while (count < target)
+    {
+      int tail = (head + count) & mask;
+      int space = Math.min(RING_SIZE - count, RING_SIZE - tail);
+      int remaining = (int)(deadline - System.currentTimeMillis());
+      if (remaining <= 0)
+      {
+        throw new ReaderCommException("Timeout");
+      }
+      count += st.receiveAvailable(ring, tail, space, remaining);
+    }
+  }
+}
@@ -24,6 +24,7 @@ package com.thingmagic;
 import com.thingmagic.Gen2.Bank;
 import com.thingmagic.Gen2.ReadData;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Iterator;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -36,6 +37,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.io.InputStream;
 import java.io.IOException;
 
@@ -91,6 +94,10 @@ public class SerialReader extends Reader
   boolean uniqueByAntenna = false;
   boolean uniqueByData = false;
   boolean uniqueByProtocol = true;
+  boolean recordHighestRssi = false;
+  // Whether the unique-by and record-highest-RSSI values above reflect the
+  // module; they are then kept current by cmdSetReaderConfiguration
+  volatile boolean dedupConfigValid = false;
   int productGroupID = -1;
   int productID = -1;
   int statusFlags = 0x00;
@@ -98,7 +105,17 @@ public class SerialReader extends Reader
   int tagOpSuccessCount = 0;
   int tagOpFailuresCount = 0;
   boolean continuousReading = false;
-  static Set<TagMetadataFlag> metaDataFlags = EnumSet.of(TagReadData.TagMetadataFlag.ALL);
+  Set<TagMetadataFlag> metaDataFlags = EnumSet.of(TagReadData.TagMetadataFlag.ALL);
+  // Mask metaDataFlags was last synced to from a response, -1 after a set.
+  // Both are updated under the metadataDecoders lock.
+  private volatile int metaDataFlagsBits = -1;
+  // Metadata decoders built so far, see metadataDecoder()
+  private final Map<Integer, MetadataDecoder> metadataDecoders =
+          new HashMap<Integer, MetadataDecoder>();
+  private volatile MetadataDecoder lastMetadataDecoder;
+  // Module version that gpioCount was computed for
+  private VersionInfo gpioCountVersion;
+  private int gpioCount;
   static Set<Iso14443a.TagType> iso14443atagtypes;
   static Set<Iso14443b.TagType> iso14443btagtypes;
   static Set<Iso15693.TagType> iso15693tagtypes;
@@ -131,13 +148,48 @@ public class SerialReader extends Reader
   private ReaderStatsFlag[] resetStatsFlags = {ReaderStatsFlag.ALL};
   boolean  isStopNTags = false;
   boolean isTriggerReadEnable = false;
-  volatile boolean paramWait = false;
-  List<Byte> paramMessage = new ArrayList<Byte>();
+  // Commands sent during continuous reading, keyed by opcode, waiting for
+  // their wrapped response from the streaming thread
+  final ConcurrentMap<Integer, ParamResponse> pendingParamResponses =
+          new ConcurrentHashMap<Integer, ParamResponse>();
   boolean enableAutonomousRead = false;
   int numberOfTagsToRead = 0;
   boolean isTagNotFound = false;
   private static Logger logger;
   private SerialTransport st; 
+  // Reusable Message buffers for the command path, see acquireMessage()
+  private final ThreadLocal<MessagePool> messagePool = new ThreadLocal<MessagePool>()
+  {
+    @Override
+    protected MessagePool initialValue()
+    {
+      return new MessagePool();
+    }
+  };
+  // Streamed reads of the current search cycle, kept for ReadBatchListeners
+  private final List<TagReadData> streamBatch = new ArrayList<TagReadData>();
+  private long streamBatchStart;
+  // Size at which a streamed cycle is passed on as a partial batch
+  static final int MAX_STREAM_BATCH = 1024;
+  // Tag buffer drain counters, see getTagBufferDrainStats()
+  private final Object drainStatsLock = new Object();
+  private long drainCount;
+  private long drainTags;
+  private long drainChunks;
+  private long drainNanos;
+  private long drainWaitNanos;
+  private long drainDecodeNanos;
+  private long maxDrainNanos;
+  private TagBufferDrainStats lastDrain;
+  // Reassembles module frames from the bytes received on st
+  private final SerialFrameDecoder frameDecoder = new SerialFrameDecoder();
+  // Command counters, see getCommandStats(). The recorder is null while
+  // the counters are disabled; the counters are kept once created.
+  private volatile CommandRecorder commandRecorder;
+  private CommandRecorder commandCounters;
+  // Opcode and send time of the command whose response is awaited
+  private volatile int timedOpcode = -1;
+  private volatile long timedSendNanos;
   RegulatoryMode regulatoryMode = RegulatoryMode.TIMED;
   RegulatoryModulation regulatoryModulation = RegulatoryModulation.CW;
   int regOnTime = 500;
@@ -342,10 +394,10 @@ public class SerialReader extends Reader
 
     public void doBackgroundReceiveAutonomousReading()
     {
+        Message m = new Message();
         while(true)
         {
-            Message m = new Message();
-            m.readIndex = 0;
+            m.reset();
             try
             {
                 opCode = 0x22;
@@ -728,6 +780,52 @@ public class SerialReader extends Reader
         }while(isLoopBack);
         
         baseTimestamp = 0;
+        flushStreamBatch(true);
+    }
+
+    private void addStreamBatchRead(TagReadData t) throws InterruptedException
+    {
+        synchronized (streamBatch)
+        {
+            if (streamBatch.isEmpty())
+            {
+                streamBatchStart = System.currentTimeMillis();
+            }
+            streamBatch.add(t);
+            if (streamBatch.size() >= MAX_STREAM_BATCH)
+            {
+                dispatchReadBatch(new ArrayList<TagReadData>(streamBatch), streamBatchStart,
+                                  System.currentTimeMillis(), false);
+                streamBatch.clear();
+            }
+        }
+    }
+
+    /**
+     * Pass the streamed reads collected so far to the ReadBatchListeners.
+     * The module only marks the end of a search cycle when multiple
+     * select is enabled; otherwise batches end when reading stops or
+     * grow to MAX_STREAM_BATCH reads.
+     */
+    private void flushStreamBatch(boolean cycleComplete)
+    {
+        synchronized (streamBatch)
+        {
+            if (streamBatch.isEmpty())
+            {
+                return;
+            }
+            try
+            {
+                dispatchReadBatch(new ArrayList<TagReadData>(streamBatch), streamBatchStart,
+                                  System.currentTimeMillis(), cycleComplete);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            streamBatch.clear();
+        }
     }
 
     /** User level function to send stop read without 
@@ -759,34 +857,486 @@ public class SerialReader extends Reader
      */
     private List<TagReadData> getAllTagReads(long baseTime, int tagCount, TagProtocol tagProtocol) throws ReaderException
     {
-        int count = 0;
-        List<TagReadData> tagReads = new ArrayList<TagReadData>();
         timeStart = System.currentTimeMillis();
-        while (count < tagCount)
+        return drainTagBuffer(baseTime, tagCount, tagProtocol);
+    }
+
+    /**
+     * Counters of the tag buffer drains done after each synchronous read
+     * cycle, for tuning /reader/read/asyncOffTime. Times are in nanoseconds.
+     */
+    public static class TagBufferDrainStats
+    {
+        /** Number of drains */
+        public final long drains;
+        /** Tag reads fetched from the module */
+        public final long tags;
+        /** Get Tag Buffer responses received */
+        public final long chunks;
+        /** Time spent in drains, including the final Clear Tag Buffer */
+        public final long totalNanos;
+        /** Part of totalNanos spent waiting for module responses */
+        public final long waitNanos;
+        /** Part of totalNanos spent decoding responses */
+        public final long decodeNanos;
+        /** Longest single drain */
+        public final long maxNanos;
+
+        TagBufferDrainStats(long drains, long tags, long chunks, long totalNanos,
+                            long waitNanos, long decodeNanos, long maxNanos)
+        {
+            this.drains = drains;
+            this.tags = tags;
+            this.chunks = chunks;
+            this.totalNanos = totalNanos;
+            this.waitNanos = waitNanos;
+            this.decodeNanos = decodeNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        @Override
+        public String toString()
         {
-            TagReadData tr[];
-            Set <TagReadData.TagMetadataFlag> getMeta = (Set<TagMetadataFlag>)paramGet(TMR_PARAM_READER_METADATA);
-            tr = cmdGetTagBuffer(getMeta, false, tagProtocol);
-            for (TagReadData t : tr)
+            return "drains=" + drains + " tags=" + tags + " chunks=" + chunks
+              + " totalNanos=" + totalNanos + " waitNanos=" + waitNanos
+              + " decodeNanos=" + decodeNanos + " maxNanos=" + maxNanos;
+        }
+    }
+
+    /**
+     * Get the accumulated tag buffer drain counters.
+     *
+     * @return snapshot of the drain counters
+     */
+    public TagBufferDrainStats getTagBufferDrainStats()
+    {
+        synchronized (drainStatsLock)
+        {
+            return new TagBufferDrainStats(drainCount, drainTags, drainChunks,
+                    drainNanos, drainWaitNanos, drainDecodeNanos, maxDrainNanos);
+        }
+    }
+
+    /**
+     * Get the counters of the most recent tag buffer drain alone.
+     *
+     * @return counters of the last drain, or null if none has been done
+     */
+    public TagBufferDrainStats getLastTagBufferDrainStats()
+    {
+        synchronized (drainStatsLock)
+        {
+            return lastDrain;
+        }
+    }
+
+    /**
+     * Counters of the commands sent to the module and the responses
+     * received, with and without errors. See getCommandStats().
+     */
+    public static class CommandStats
+    {
+        /** Counters of each opcode seen, in opcode order */
+        public final List<OpcodeStats> opcodes;
+        /** Number of responses with each non-zero status code */
+        public final Map<Integer, Long> statusCodes;
+        /** Non-zero status responses whose code did not fit in statusCodes */
+        public final long otherStatusCodes;
+        /** Times leading garbage was skipped to find the start of a frame */
+        public final long sohResyncs;
+        /** Bytes skipped while resynchronizing */
+        public final long discardedBytes;
+        /** Totals of the opcode counters */
+        public final long sent, received, timeouts, crcFailures, codeErrors, errors;
+        public final long bytesOut, bytesIn;
+
+        CommandStats(List<OpcodeStats> opcodes, Map<Integer, Long> statusCodes,
+                     long otherStatusCodes, long sohResyncs, long discardedBytes)
+        {
+            this.opcodes = Collections.unmodifiableList(opcodes);
+            this.statusCodes = Collections.unmodifiableMap(statusCodes);
+            this.otherStatusCodes = otherStatusCodes;
+            this.sohResyncs = sohResyncs;
+            this.discardedBytes = discardedBytes;
+            long s = 0, r = 0, t = 0, c = 0, ce = 0, e = 0, out = 0, in = 0;
+            for (OpcodeStats o : opcodes)
+            {
+                s += o.sent;
+                r += o.received;
+                t += o.timeouts;
+                c += o.crcFailures;
+                ce += o.codeErrors;
+                e += o.errors;
+                out += o.bytesOut;
+                in += o.bytesIn;
+            }
+            sent = s;
+            received = r;
+            timeouts = t;
+            crcFailures = c;
+            codeErrors = ce;
+            errors = e;
+            bytesOut = out;
+            bytesIn = in;
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder sb = new StringBuilder();
+            sb.append("sent=").append(sent).append(" received=").append(received)
+              .append(" timeouts=").append(timeouts).append(" crcFailures=").append(crcFailures)
+              .append(" codeErrors=").append(codeErrors).append(" errors=").append(errors)
+              .append(" bytesOut=").append(bytesOut).append(" bytesIn=").append(bytesIn)
+              .append(" sohResyncs=").append(sohResyncs)
+              .append(" discardedBytes=").append(discardedBytes);
+            for (OpcodeStats o : opcodes)
             {
-                t.readBase = baseTime;
-                t.reader = this;
-                if (null != t && t.tag !=null)
+                sb.append("\n  ").append(o);
+            }
+            for (Map.Entry<Integer, Long> e : statusCodes.entrySet())
+            {
+                sb.append(String.format("\n  status 0x%04x: %d", e.getKey(), e.getValue()));
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Counters of one opcode. Latencies run from sending a command to
+     * receiving its response and are in nanoseconds.
+     */
+    public static class OpcodeStats
+    {
+        public final int opcode;
+        public final long sent;
+        public final long received;
+        public final long timeouts;
+        public final long crcFailures;
+        /** Responses with a non-zero status */
+        public final long codeErrors;
+        /** Other failures, such as a response to a different command */
+        public final long errors;
+        public final long bytesOut;
+        public final long bytesIn;
+        /** Responses whose latency was measured */
+        public final long latencyCount;
+        public final long totalLatencyNanos;
+        public final long maxLatencyNanos;
+        /**
+         * Latency histogram: element i counts latencies of less than 2^i
+         * microseconds that are not counted by element i - 1
+         */
+        public final long[] latencyHistogram;
+
+        OpcodeStats(int opcode, long sent, long received, long timeouts,
+                    long crcFailures, long codeErrors, long errors, long bytesOut,
+                    long bytesIn, long latencyCount, long totalLatencyNanos,
+                    long maxLatencyNanos, long[] latencyHistogram)
+        {
+            this.opcode = opcode;
+            this.sent = sent;
+            this.received = received;
+            this.timeouts = timeouts;
+            this.crcFailures = crcFailures;
+            this.codeErrors = codeErrors;
+            this.errors = errors;
+            this.bytesOut = bytesOut;
+            this.bytesIn = bytesIn;
+            this.latencyCount = latencyCount;
+            this.totalLatencyNanos = totalLatencyNanos;
+            this.maxLatencyNanos = maxLatencyNanos;
+            this.latencyHistogram = latencyHistogram;
+        }
+
+        public long meanLatencyNanos()
+        {
+            return (latencyCount == 0) ? 0 : totalLatencyNanos / latencyCount;
+        }
+
+        /**
+         * Returns an upper bound on the given fraction of latencies, from
+         * the histogram, in microseconds.
+         *
+         * @param fraction between 0 and 1, such as 0.99
+         */
+        public long latencyPercentileMicros(double fraction)
+        {
+            long target = (long) Math.ceil(fraction * latencyCount);
+            long seen = 0;
+            for (int i = 0; i < latencyHistogram.length; i++)
+            {
+                seen += latencyHistogram[i];
+                if (seen >= target && seen > 0)
                 {
-                tagReads.add(t);
-                }               
-                count++;
-            }//end of for
-        }//end of while
+                    return 1L << i;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("opcode 0x%02x: sent=%d received=%d timeouts=%d crcFailures=%d"
+              + " codeErrors=%d errors=%d bytesOut=%d bytesIn=%d meanUs=%d p99Us<%d maxUs=%d",
+              opcode, sent, received, timeouts, crcFailures, codeErrors, errors, bytesOut,
+              bytesIn, meanLatencyNanos() / 1000, latencyPercentileMicros(0.99),
+              maxLatencyNanos / 1000);
+        }
+    }
+
+    /**
+     * Turn the command counters on or off. While off, commands are not
+     * counted; the counters gathered so far are kept. Also available as
+     * /reader/commandStats/enable.
+     */
+    public void setCommandStatsEnabled(boolean enabled)
+    {
+        synchronized (drainStatsLock)
+        {
+            if (enabled && commandCounters == null)
+            {
+                commandCounters = new CommandRecorder();
+            }
+            commandRecorder = enabled ? commandCounters : null;
+        }
+    }
+
+    public boolean isCommandStatsEnabled()
+    {
+        return commandRecorder != null;
+    }
+
+    /**
+     * Get the command counters gathered while they were enabled.
+     *
+     * @return snapshot of the counters
+     */
+    public CommandStats getCommandStats()
+    {
+        CommandRecorder counters;
+        synchronized (drainStatsLock)
+        {
+            counters = commandCounters;
+        }
+        return (counters == null) ? new CommandStats(new ArrayList<OpcodeStats>(),
+                                                     new HashMap<Integer, Long>(), 0, 0, 0)
+                                  : counters.snapshot();
+    }
+
+    /**
+     * Clear the counters returned by getCommandStats().
+     */
+    public void resetCommandStats()
+    {
+        CommandRecorder counters;
+        synchronized (drainStatsLock)
+        {
+            counters = commandCounters;
+        }
+        if (counters != null)
+        {
+            counters.reset();
+        }
+    }
+
+    /**
+     * Count a failed exchange against the command it belongs to.
+     */
+    private void recordFailure(CommandRecorder rec, int opcode, ReaderException re)
+    {
+        if (re instanceof ReaderCodeException)
+        {
+            rec.codeError(opcode, ((ReaderCodeException) re).getCode());
+        }
+        else if ("Timeout".equals(re.getMessage()))
+        {
+            rec.timeout(opcode);
+        }
+        else
+        {
+            rec.error(opcode);
+        }
+    }
+
+    /**
+     * Clear the counters returned by getTagBufferDrainStats().
+     */
+    public void resetTagBufferDrainStats()
+    {
+        synchronized (drainStatsLock)
+        {
+            drainCount = 0;
+            drainTags = 0;
+            drainChunks = 0;
+            drainNanos = 0;
+            drainWaitNanos = 0;
+            drainDecodeNanos = 0;
+            maxDrainNanos = 0;
+            lastDrain = null;
+        }
+    }
+
+    /**
+     * Fetch tagCount reads from the module's tag buffer and clear it.
+     *
+     * The metadata selection is resolved once for the whole drain. Outside
+     * of continuous reading the request for the next response is sent
+     * before the current one is decoded, so the module assembles the next
+     * response while the host decodes.
+     */
+    private synchronized List<TagReadData> drainTagBuffer(long baseTime, int tagCount,
+            TagProtocol tagProtocol) throws ReaderException
+    {
+        long start = System.nanoTime();
+        long waitNanos = 0;
+        long decodeNanos = 0;
+        int chunks = 0;
+        List<TagReadData> tagReads = new ArrayList<TagReadData>(tagCount);
+
         //Clear the tag buffer only when tags are read. If no tags are read, api returns success with tagcount as 0
         //instead of throwing it as exception to user. In this case, no need to clear the tag buffer.
-        if(tagCount != 0)
-        {
+        if (tagCount != 0)
+        {
+            int metadataBits = tagMetadataSetValue(metaDataFlags);
+            // While streaming, replies come back through the streaming thread
+            // one command at a time, so there is nothing to overlap
+            boolean pipelined = !(continuousReading && hasContinuousReadStarted);
+            Message current = acquireMessage();
+            Message next = acquireMessage();
+            boolean outstanding = false;
+            try
+            {
+                long t = System.nanoTime();
+                requestTagBuffer(current, metadataBits, pipelined);
+                waitNanos += System.nanoTime() - t;
+
+                int received = 0;
+                while (true)
+                {
+                    chunks++;
+                    int responseBits = current.getu16();
+                    current.readIndex++; // we don't need the read options
+                    int numTags = current.getu8();
+                    received += numTags;
+                    boolean more = (received < tagCount) && (numTags != 0);
+
+                    if (more && pipelined)
+                    {
+                        prepareGetTagBuffer(next, metadataBits);
+                        sendMessage(commandTimeout, next);
+                        outstanding = true;
+                    }
+
+                    t = System.nanoTime();
+                    decodeTagBuffer(current, responseBits, numTags, baseTime, tagReads);
+                    decodeNanos += System.nanoTime() - t;
+
+                    if (!more)
+                    {
+                        break;
+                    }
+
+                    t = System.nanoTime();
+                    if (pipelined)
+                    {
+                        outstanding = false;
+                        receiveMessage(commandTimeout, next);
+                    }
+                    else
+                    {
+                        requestTagBuffer(next, metadataBits, false);
+                    }
+                    waitNanos += System.nanoTime() - t;
+
+                    Message swap = current;
+                    current = next;
+                    next = swap;
+                }
+            }
+            finally
+            {
+                if (outstanding)
+                {
+                    // Keep the link in step if decoding failed with a request in flight
+                    try
+                    {
+                        receiveMessage(commandTimeout, next);
+                    }
+                    catch (ReaderException re)
+                    {
+                    }
+                }
+                releaseMessage(current);
+                releaseMessage(next);
+            }
+
+            long t = System.nanoTime();
             cmdClearTagBuffer();
+            waitNanos += System.nanoTime() - t;
         }
 
+        long elapsed = System.nanoTime() - start;
+        synchronized (drainStatsLock)
+        {
+            drainCount++;
+            drainTags += tagReads.size();
+            drainChunks += chunks;
+            drainNanos += elapsed;
+            drainWaitNanos += waitNanos;
+            drainDecodeNanos += decodeNanos;
+            maxDrainNanos = Math.max(maxDrainNanos, elapsed);
+            lastDrain = new TagBufferDrainStats(1, tagReads.size(), chunks,
+                    elapsed, waitNanos, decodeNanos, elapsed);
+        }
         return tagReads;
+    }
 
+    private void prepareGetTagBuffer(Message m, int metadataBits)
+    {
+        m.reset();
+        m.setu8(MSG_OPCODE_GET_TAG_BUFFER);
+        m.setu16(metadataBits);
+        m.setu8(0); // no resend
+    }
+
+    private void requestTagBuffer(Message m, int metadataBits, boolean direct)
+      throws ReaderException
+    {
+        prepareGetTagBuffer(m, metadataBits);
+        if (direct)
+        {
+            sendMessage(commandTimeout, m);
+            receiveMessage(commandTimeout, m);
+        }
+        else if (send(m) == null)
+        {
+            throw new ReaderCommException("Timeout");
+        }
+    }
+
+    /**
+     * Decode the tag records of one Get Tag Buffer response, positioned
+     * just past the tag count.
+     */
+    private void decodeTagBuffer(Message m, int responseBits, int numTags, long baseTime,
+            List<TagReadData> tagReads)
+    {
+        // the module might not support all the bits we asked for
+        MetadataDecoder decoder = responseMetadataDecoder(responseBits);
+        for (int i = 0; i < numTags; i++)
+        {
+            TagReadData t = new TagReadData();
+            metadataFromMessage(t, m, decoder);
+            t.tag = parseTag(m, m.getu16() / 8, t.readProtocol);
+            t.readBase = baseTime;
+            t.reader = this;
+            if (t.tag != null)
+            {
+                tagReads.add(t);
+            }
+        }
     }
     /**
      * getAllTagReadsFromBuffer() - pulls all the tags from the buffer. When the module's tag id buffer is full, 
@@ -897,9 +1447,9 @@ public class SerialReader extends Reader
                 read.reader = this;
                 m.readIndex = enableMultipleSelect ? 9 : 8;
                 // update the metaDataFlags 
-                metaDataFlags = tagMetadataSet(m.getu16());
+                MetadataDecoder decoder = responseMetadataDecoder(m.getu16());
                 m.readIndex++;/* Skip tag count (always = 1) */
-                metadataFromMessage(read, m, metaDataFlags);
+                metadataFromMessage(read, m, decoder);
                 int epcLen = m.getu16() / 8;
                 read.tag = parseTag(m, epcLen, read.readProtocol);
                 Gen2.Password accessPassword = null;
@@ -970,18 +1520,15 @@ public class SerialReader extends Reader
              * basetimestamp, which is already done in receiveBufferedReads().
              */
             isTagNotFound = false;
+            flushStreamBatch(true);
             return;
         }
         if (m.data[2] == 0x2f && m.data[5] == 0x04)
         {
-            if (paramWait)
+            ParamResponse pending = pendingParamResponses.get(m.data[7] & 0xff);
+            if (pending != null)
             {
-                paramMessage.clear();
-                for(byte b : m.data)
-                {
-                    paramMessage.add(b);
-                }
-                paramWait = false;
+                pending.complete(m.data);
             }
             return;
         }
@@ -1067,18 +1614,31 @@ public class SerialReader extends Reader
             else  // no status response in the message
             {
                 TagReadData t = new TagReadData();
-                metaDataFlags = tagMetadataSet(m.getu16());
+                MetadataDecoder decoder = responseMetadataDecoder(m.getu16());
                 m.readIndex += 1; // skip response type
-                if(!metaDataFlags.isEmpty())
+                if(!decoder.flags.isEmpty())
                 {
-                    metadataFromMessage(t, m, metaDataFlags);
+                    metadataFromMessage(t, m, decoder);
                     int epcLen = m.getu16() / 8;
                     t.tag = parseTag(m, epcLen, t.readProtocol);
                     t.readBase = baseTimestamp;
                     t.reader = this;
                     if(null != t.tag)
                     {
-                        notifyReadListeners(t);
+                        // Queue for the notifier thread so that a slow
+                        // listener does not hold up reception
+                        try
+                        {
+                            dispatchTagRead(t);
+                            if (hasReadBatchListeners())
+                            {
+                                addStreamBatchRead(t);
+                            }
+                        }
+                        catch (InterruptedException ie)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
                     }
                 }
             }
@@ -2566,6 +3126,68 @@ public class SerialReader extends Reader
     }
     
 
+  /**
+   * Response slot for a command sent while continuous reading is active.
+   * The module wraps the reply in a 0x2F/0x04 message that arrives on the
+   * streaming thread, which completes the slot registered under the
+   * command's opcode and wakes the caller waiting in sendTimeout().
+   */
+  static final class ParamResponse
+  {
+    final int opcode;
+    final byte[] data = new byte[256];
+    private boolean done = false;
+    private boolean failed = false;
+
+    ParamResponse(int opcode)
+    {
+      this.opcode = opcode;
+    }
+
+    synchronized void complete(byte[] src)
+    {
+      if (done)
+      {
+        return;
+      }
+      System.arraycopy(src, 0, data, 0, Math.min(src.length, data.length));
+      done = true;
+      notifyAll();
+    }
+
+    synchronized void fail()
+    {
+      failed = true;
+      done = true;
+      notifyAll();
+    }
+
+    synchronized boolean isFailed()
+    {
+      return failed;
+    }
+
+    /**
+     * Wait for complete() or fail().
+     *
+     * @return false if the timeout expired first
+     */
+    synchronized boolean await(long timeoutMillis) throws InterruptedException
+    {
+      long deadline = System.currentTimeMillis() + timeoutMillis;
+      while (!done)
+      {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0)
+        {
+          return false;
+        }
+        wait(remaining);
+      }
+      return true;
+    }
+  }
+
   static class Message
   {
     byte[] data;
@@ -2585,6 +3207,22 @@ public class SerialReader extends Reader
       writeIndex = 2;
     }
 
+    /**
+     * Return the message to the state of a freshly constructed one so
+     * that it can be reused for another command or response.
+     */
+    void reset()
+    {
+      // Only what the last command or response wrote can be non-zero:
+      // up to the write index, or the end of the frame received into it
+      int used = Math.max(writeIndex, (data[1] & 0xff) + 7);
+      Arrays.fill(data, 0, Math.min(used, data.length), (byte)0);
+      writeIndex = 2;
+      readIndex = 0;
+      optIndex = 0;
+      isValidMsgReceived = false;
+    }
+
     void setu8(int val)
     {
         try
@@ -2757,9 +3395,9 @@ public class SerialReader extends Reader
         public void run()
         {
             TagReadData t = new TagReadData();
-            metaDataFlags = tagMetadataSet(msg.getu16());
+            MetadataDecoder decoder = responseMetadataDecoder(msg.getu16());
             msg.readIndex += 1; // skip response type
-            metadataFromMessage(t, msg, metaDataFlags);
+            metadataFromMessage(t, msg, decoder);
             int epcLen = msg.getu16() / 8;
             t.tag = parseTag(msg, epcLen, tagProtocol);
             t.readBase = baseTime;
@@ -2786,21 +3424,27 @@ public class SerialReader extends Reader
   public synchronized byte[] cmdRaw(int timeout, byte... message)
     throws ReaderException
   {
-    Message m = new Message();
-
     if (message.length < 1)
     {
       throw new IllegalArgumentException("Raw serial message can not be empty");
     }
 
-    System.arraycopy(message, 0, m.data, 2, message.length);
+    Message m = acquireMessage();
+    try
+    {
+      System.arraycopy(message, 0, m.data, 2, message.length);
 
-    sendTimeout(timeout, m);
+      sendTimeout(timeout, m);
 
-    int len = m.getu8at(1);
-    byte[] response = new byte[len];
-    System.arraycopy(m.data, 2, response, 0, len);
-    return response;
+      int len = m.getu8at(1);
+      byte[] response = new byte[len];
+      System.arraycopy(m.data, 2, response, 0, len);
+      return response;
+    }
+    finally
+    {
+      releaseMessage(m);
+    }
   }
 
   private void sendMessage(int timeout, Message m)
@@ -2846,31 +3490,28 @@ public class SerialReader extends Reader
     int i;
     m.data[0] = (byte)0xff;
     m.data[1] = (byte)(m.writeIndex - 3);
+    int cmdOpcode = m.data[2] & 0xff;
+    boolean wrapped = false;
 
     if(continuousReading && hasContinuousReadStarted)
     {
-        paramWait = true;
-        paramMessage.clear();
-        paramMessage.add((byte)0xff);
-        paramMessage.add((byte)(m.data[1] + 5));
-        paramMessage.add((byte)0x2f);
-        paramMessage.add((byte)0x00);
-        paramMessage.add((byte)0x00);
-        paramMessage.add((byte)0x04);
-        paramMessage.add((byte)(m.data[1]));
-        for( i = 2; i < (m.data[1] + 3) ; i++)
-        {
-            paramMessage.add((byte)m.data[i]);
-        }
-        
-        i = 0;
-        for(byte b : paramMessage)
+        // Wrap the command for the module while it is streaming:
+        // ff <len+5> 2f 00 00 04 <len> <opcode> <data...>
+        int innerLen = m.data[1] & 0xff;
+        if (innerLen + 8 > 255)
         {
-            m.data[i] = b;
-            i++;
+            throw new ReaderException("Command out of index range");
         }
+        System.arraycopy(m.data, 2, m.data, 7, innerLen + 1);
+        m.data[1] = (byte)(innerLen + 5);
+        m.data[2] = (byte)0x2f;
+        m.data[3] = (byte)0x00;
+        m.data[4] = (byte)0x00;
+        m.data[5] = (byte)0x04;
+        m.data[6] = (byte)innerLen;
         m.readIndex = 0;
-        m.writeIndex = i ;
+        m.writeIndex = innerLen + 8;
+        wrapped = true;
     }
     else
     {
@@ -2899,7 +3540,26 @@ public class SerialReader extends Reader
         onTheFlyCmdSntTime = System.currentTimeMillis();
         onTheFlyCmdOpcode = (byte)(m.data[2] & 0xff);
     }
-    st.sendBytes(len, m.data, 0, timeout + transportTimeout);
+    CommandRecorder rec = commandRecorder;
+    if (rec == null)
+    {
+      st.sendBytes(len, m.data, 0, timeout + transportTimeout);
+      return;
+    }
+    try
+    {
+      st.sendBytes(len, m.data, 0, timeout + transportTimeout);
+    }
+    catch (ReaderException re)
+    {
+      recordFailure(rec, cmdOpcode, re);
+      throw re;
+    }
+    rec.sent(cmdOpcode, len);
+    // A wrapped command's response comes through the streaming thread;
+    // sendTimeout() times it
+    timedOpcode = wrapped ? -1 : cmdOpcode;
+    timedSendNanos = System.nanoTime();
     }
   }
 
@@ -2912,29 +3572,62 @@ public class SerialReader extends Reader
   private void receiveMessage(int timeout, Message m,  boolean addTransportTimeout)
     throws ReaderException
   {
-    // Use the rcvMonitorObj for synchronization
-    synchronized(this.rcvMonitorObj)
+    CommandRecorder rec = commandRecorder;
+    if (rec == null)
     {
-        int sofPosition;
-        boolean sofFound=false;
-        int messageLength = 0;
-        int retryCount = 0;
-        int inLen = 0;
-        int timeoutMs = 0;
-
-        /**
-         * Initialize the messageLength based on
-         * isCRCEnabled flag
-         **/
-        if (isCRCEnabled)
+      receiveResponse(timeout, m, addTransportTimeout);
+      return;
+    }
+    int timed = timedOpcode;
+    timedOpcode = -1;
+    frameDecoder.crcValid = true;
+    try
+    {
+      receiveResponse(timeout, m, addTransportTimeout);
+    }
+    catch (ReaderException re)
+    {
+      int opcode = (timed >= 0) ? timed : opCode;
+      if ("Timeout".equals(re.getMessage()) && !(re instanceof ReaderCodeException))
+      {
+        rec.timeout(opcode);
+      }
+      else
+      {
+        // A frame came back, but it was bad or reported a failure
+        recordReceived(rec, m, timed);
+        if (!frameDecoder.crcValid)
         {
-            messageLength = 7;
+          rec.crcFailure(opcode);
         }
         else
         {
-            messageLength = 5;
+          recordFailure(rec, opcode, re);
         }
+      }
+      rec.decoderCounters(frameDecoder.sohResyncs, frameDecoder.discardedBytes);
+      throw re;
+    }
+    recordReceived(rec, m, timed);
+    rec.decoderCounters(frameDecoder.sohResyncs, frameDecoder.discardedBytes);
+  }
 
+  private void recordReceived(CommandRecorder rec, Message m, int timed)
+  {
+    int opcode = m.data[2] & 0xff;
+    rec.received(opcode, (m.data[1] & 0xff) + (isCRCEnabled ? 7 : 5));
+    if (timed == opcode)
+    {
+      rec.latency(opcode, System.nanoTime() - timedSendNanos);
+    }
+  }
+
+  private void receiveResponse(int timeout, Message m, boolean addTransportTimeout)
+    throws ReaderException
+  {
+    // Use the rcvMonitorObj for synchronization
+    synchronized(this.rcvMonitorObj)
+    {
         /**
          * To prevent timeout error while async read, asyncofftime should be added to the total timeout of 0x22 command.
          */
@@ -2942,68 +3635,15 @@ public class SerialReader extends Reader
         {
             timeout += (Integer)paramGet(TMR_PARAM_READ_ASYNCOFFTIME);
         }
+        int timeoutMs = timeout + ( addTransportTimeout ? transportTimeout : 0 );
 
-        do
-        {
-            timeoutMs = timeout + ( addTransportTimeout ? transportTimeout : 0 );
-
-            //pull at least messageLength bytes on first serial receive
-            st.receiveBytes((messageLength - inLen), m.data, inLen, timeoutMs);
-
-            // Search for SOH(0xFF)
-            for (sofPosition = 0; sofPosition < (messageLength - 2); sofPosition++) 
-            {
-                /* <Valid SOH(0xFF)> + <Valid length(Less than 0xF8)> + <Valid OPCODE> */
-                if ((m.data[sofPosition + 0] == (byte)0xFF) && (m.data[sofPosition + 1] <= 0xF8))
-                {
-                    if ((m.data[sofPosition + 2] == (byte)opCode)
-                            || ((m.data[sofPosition + 2] & 0xFF) == 0x22)
-                            || ((m.data[sofPosition + 2] & 0xFF) == 0x2F)
-                            || ((m.data[sofPosition + 2] & 0xFF) == 0x9D))
-                    {
-                        // If SOH is found at 0th index, exit the loop
-                        if (sofPosition == 0)
-                        {
-                            sofFound = true;
-                        }
-                        break; /* EXIT FOR */
-                    }
-                }
-            }
-            if (sofFound) 
-            {
-                break;
-            }
-            else
-            {
-                /* Update inLen with correct length after discarding invalid bytes. */
-                inLen = messageLength - sofPosition;
-                /* Now, copy the inlen number of bytes to data buffer at 0th index. */
-                System.arraycopy(m.data, sofPosition, m.data, 0, inLen);
-            }
-        } while (++retryCount < 20);
-
-        if (retryCount >= 20)
-        {
-            throw new ReaderException("Timeout");
-        }
-
-        if(sofFound==false)
-        {
-            throw new ReaderCommException(String.format("No soh Found"));
-        }
-
-        /* After this point, we have the the bare minimum (5 or 7)  of bytes in the buffer */
         /* Layout of response in m.data array: 
          * [0] [1] [2] [3]      [4]      [5] [6]  ... [LEN+4] [LEN+5] [LEN+6]
          * FF  LEN OP  STATUSHI STATUSLO xx  xx   ... xx      CRCHI   CRCLO
          */
-
-        int len = m.data[1] & 0xff;
-        if((m.data.length - messageLength) < len)
-        {
-            throw new ReaderCommException("Packet data size is too big.");
-        }
+        int len = frameDecoder.receiveFrame(st, m.data, opCode, isCRCEnabled,
+                                            timeoutMs, timeout + transportTimeout);
+        int messageLength = isCRCEnabled ? 7 : 5;
         if (opCode == 0x06)
         {
            if ((model != null) && (model.equalsIgnoreCase("M3e")))
@@ -3019,12 +3659,6 @@ public class SerialReader extends Reader
            }
         }
 
-        //Now pull in the rest of the data, if exists, + the CRC
-        if (len != 0) 
-        {
-            st.receiveBytes(len, m.data, messageLength, timeout + transportTimeout);
-        }
-
         /* Check command time difference only for async command. */
         if (isContReadActive && (onTheFlyCmdOpcode != 0))
         {
@@ -3038,8 +3672,8 @@ public class SerialReader extends Reader
                if (timeElapsed > (transportTimeout + timeout))
                {
                    m.isValidMsgReceived = false;
-                   paramWait = false;
                    isExceptionRaised = true;
+                   failPendingParamResponses();
                    throw new ReaderCommException("Timeout");
                }
             }
@@ -3065,11 +3699,9 @@ public class SerialReader extends Reader
         m.isValidMsgReceived = true;
         if(isCRCEnabled)
         {
-            //Calculate the crc for the data
-            int crc = calcCrc(m.data, 1, len + 4);
-            //Compare with message's crc
-            if ((m.data[len + 5] != (byte) ((crc >> 8) & 0xff))
-                    || (m.data[len + 6] != (byte) (crc & 0xff)))
+            //Compare the message's crc with the one computed by the frame decoder
+            int crc = frameDecoder.computedCrc;
+            if (!frameDecoder.crcValid)
             {
                 throw new ReaderCommException(
                         String.format("Reader failed crc check.  Message crc %x %x data crc %x %x", m.data[len + 5], m.data[len + 6], (crc >> 8 & 0xff), (crc & 0xff)));
@@ -3129,47 +3761,66 @@ public class SerialReader extends Reader
   private synchronized Message sendTimeout(int timeout, Message m)
     throws ReaderException
   {
-        int i = 0;
-        sendMessage(timeout, m);
         int status;
         if(continuousReading && hasContinuousReadStarted)
         {
-            paramMessage.clear();
-            while(paramWait)
+            // The response is received by the continuous reader thread;
+            // register for it before sending and wait without spinning.
+            ParamResponse pending = new ParamResponse(m.data[2] & 0xff);
+            pendingParamResponses.put(pending.opcode, pending);
+            CommandRecorder rec = commandRecorder;
+            long sentAt = System.nanoTime();
+            try
             {
-                // receive the response in the continuous Reader thread while loop only. 
-                // Just wait here for the flag to get changed to false.
+                sendMessage(timeout, m);
+                if (!pending.await(timeout + transportTimeout))
+                {
+                    if (rec != null)
+                    {
+                        rec.timeout(pending.opcode);
+                    }
+                    throw new ReaderCommException("Timeout");
+                }
+                if (rec != null)
+                {
+                    rec.latency(pending.opcode, System.nanoTime() - sentAt);
+                }
             }
-            paramWait = false;
-            if(isExceptionRaised)
+            catch (InterruptedException ie)
             {
-                return null;
+                Thread.currentThread().interrupt();
+                throw new ReaderCommException("Timeout");
             }
-            if(paramMessage.get(3) != 0x00 || paramMessage.get(4) != 0x00 )
+            finally
             {
-                i = 0;
-                for(byte b: paramMessage)
-                {
-                    m.data[i] = b;
-                    i++;
-                }
-                status = m.getu16at(3);
-                throw new ReaderCodeException(status);
+                pendingParamResponses.remove(pending.opcode, pending);
             }
-            i = 0;
-
-            for( byte b : paramMessage)
+            if(pending.isFailed() || isExceptionRaised)
+            {
+                return null;
+            }
+            byte[] response = pending.data;
+            if(response[3] != 0x00 || response[4] != 0x00 )
             {
-                if(i > 5 && i <= (paramMessage.get(6) + 9))
+                System.arraycopy(response, 0, m.data, 0, Math.min(response.length, m.data.length));
+                status = m.getu16at(3);
+                if (rec != null)
                 {
-                    m.data[i - 5] = b;
+                    rec.codeError(pending.opcode, status);
                 }
-                i++;
+                throw new ReaderCodeException(status);
             }
+            // Unwrap: the embedded response starts at index 6 (its length byte)
+            int end = Math.min((response[6] & 0xff) + 9, response.length - 1);
+            System.arraycopy(response, 6, m.data, 1, end - 5);
             m.data[0] = (byte)0xff;
             if(m.data[3] != 0x00 || m.data[4] != 0x00 )
             {
                 status = m.getu16at(3);
+                if (rec != null)
+                {
+                    rec.codeError(pending.opcode, status);
+                }
                 throw new ReaderCodeException(status);
             }
             m.writeIndex = 5 + (m.data[1] & 0xff);  //Set the write index to start of CRC
@@ -3177,11 +3828,24 @@ public class SerialReader extends Reader
         }
         else
         {
+            sendMessage(timeout, m);
             receiveMessage(timeout, m);
         }
         return m;
     }
 
+  /**
+   * Wake every caller waiting for a response to a command sent during
+   * continuous reading; used when the streaming thread gives up.
+   */
+  void failPendingParamResponses()
+  {
+    for (ParamResponse pending : pendingParamResponses.values())
+    {
+      pending.fail();
+    }
+  }
+
   private Message send(Message m)
     throws ReaderException
   {
@@ -3189,13 +3853,87 @@ public class SerialReader extends Reader
     return sendTimeout(commandTimeout, m);
   }
 
+  /**
+   * Take a default-sized Message from the reader's pool, or allocate one
+   * if the pool is empty. The message is reset before it is returned.
+   * Pass it to releaseMessage(), in a finally block, once its contents
+   * are no longer needed; a message that is never released is simply
+   * left to the garbage collector.
+   *
+   * Messages are only used by the thread that acquired them, and each
+   * thread has a pool of its own, so the pool needs no lock. (Not every
+   * caller holds the reader's lock: read() and the streaming thread hold
+   * their messages across many commands, while other threads send
+   * parameter commands.)
+   *
+   * Only the commands of every search cycle (Read Tag Multiple, Get Tag
+   * Buffer, Clear Tag Buffer, the streaming search) and raw commands use
+   * the pool. Tag operations and configuration commands are sent once
+   * per call, and the autonomous receive loop already reuses one Message
+   * for all its frames, so they allocate their own.
+   */
+  Message acquireMessage()
+  {
+    MessagePool pool = messagePool.get();
+    if (pool.count == 0)
+    {
+      return new Message();
+    }
+    Message m = pool.free[--pool.count];
+    pool.free[pool.count] = null;
+    m.reset();
+    return m;
+  }
+
+  /**
+   * Return a Message obtained from acquireMessage() to the pool of the
+   * thread that acquired it. The caller must not touch the message
+   * afterwards.
+   */
+  void releaseMessage(Message m)
+  {
+    if (m == null || m.data.length != 256)
+    {
+      return;
+    }
+    MessagePool pool = messagePool.get();
+    if (pool.count < pool.free.length)
+    {
+      pool.free[pool.count++] = m;
+    }
+  }
+
+  // Free Messages of one thread
+  private static final class MessagePool
+  {
+    final Message[] free = new Message[8];
+    int count;
+  }
+
+  /**
+   * Send a command with no arguments. The response comes back in a
+   * pooled Message, which the caller may pass to releaseMessage(); if the
+   * command fails, the message goes back to the pool here.
+   */
   private Message sendOpcode(int opcode)
     throws ReaderException
   {
-    Message m = new Message();
-
-    m.setu8(opcode);
-    return sendTimeout(commandTimeout, m);
+    Message m = acquireMessage();
+    boolean sent = false;
+    try
+    {
+      m.setu8(opcode);
+      Message response = sendTimeout(commandTimeout, m);
+      sent = true;
+      return response;
+    }
+    finally
+    {
+      if (!sent)
+      {
+        releaseMessage(m);
+      }
+    }
   }
 
   // ThingMagic-mutated CRC used for messages.
@@ -3209,7 +3947,7 @@ public class SerialReader extends Reader
   };
 
   // calculates ThingMagic's CRC-16
-  private static short calcCrc(byte[] message, int offset, int length)
+  static short calcCrc(byte[] message, int offset, int length)
   {
     int crc = 0xffff;
 
@@ -4320,29 +5058,35 @@ public class SerialReader extends Reader
       throw new IllegalArgumentException("illegal timeout " + timeout);
     }
 
-    Message m = new Message();
-    msgSetupReadTagMultiple(m, timeout, selection.value, filter,
-                            protocol, metaDataFlags, 0, fastSearch);
-
-    Message msg = sendTimeout(timeout, m);
-    int dat = msg.data[1];
-    switch(dat)
-    {
-        case 8:
-                // Later 4-byte count: Large-tag-population support and ISO18k select option included in reply.
-                return m.getu32at(9);
-        case 7:
-                // Plain 4-byte count: Reader with large-tag-population support
-                return m.getu32at(8);
-        case 5:
-                // Later 1-byte count: ISO18k select option included in reply
-                return m.getu8at(9);
-        case 4:
-                // Plain 1-byte count: Reader without large-tag-population support
-                return m.getu8at(8);
-        default:
-            throw new ReaderParseException("Unrecognized Read Tag Multiple response length: " + m.data.length);
+    Message m = acquireMessage();
+    try
+    {
+      msgSetupReadTagMultiple(m, timeout, selection.value, filter,
+                              protocol, metaDataFlags, 0, fastSearch);
 
+      Message msg = sendTimeout(timeout, m);
+      int dat = msg.data[1];
+      switch(dat)
+      {
+          case 8:
+                  // Later 4-byte count: Large-tag-population support and ISO18k select option included in reply.
+                  return m.getu32at(9);
+          case 7:
+                  // Plain 4-byte count: Reader with large-tag-population support
+                  return m.getu32at(8);
+          case 5:
+                  // Later 1-byte count: ISO18k select option included in reply
+                  return m.getu8at(9);
+          case 4:
+                  // Plain 1-byte count: Reader without large-tag-population support
+                  return m.getu8at(8);
+          default:
+              throw new ReaderParseException("Unrecognized Read Tag Multiple response length: " + m.data.length);
+      }
+    }
+    finally
+    {
+      releaseMessage(m);
     }
   }
 
@@ -5169,9 +5913,15 @@ public class SerialReader extends Reader
     int writeIndex, readIndex;
 
     Message m = sendOpcode(MSG_OPCODE_GET_TAG_BUFFER);
-
-    readIndex = m.getu16();
-    writeIndex = m.getu16();
+    try
+    {
+      readIndex = m.getu16();
+      writeIndex = m.getu16();
+    }
+    finally
+    {
+      releaseMessage(m);
+    }
     return new int[] {writeIndex - readIndex, readIndex, writeIndex};
   }
 
@@ -5457,24 +6207,31 @@ public class SerialReader extends Reader
     TagReadData[] trs;
     int  numTagsInMessage;
 
-    Message m = new Message();
-    m.setu8(MSG_OPCODE_GET_TAG_BUFFER);
-    m.setu16(metadataBits);
-    m.setu8(resend ? 1 : 0);
+    Message m = acquireMessage();
+    try
+    {
+      m.setu8(MSG_OPCODE_GET_TAG_BUFFER);
+      m.setu16(metadataBits);
+      m.setu8(resend ? 1 : 0);
 
-    send(m);
+      send(m);
 
-    // the module might not support all the bits we asked for
-    metaDataFlags = tagMetadataSet(m.getu16());
-    m.readIndex++; // we don't need the read options
-    numTagsInMessage = m.getu8();
-    trs = new TagReadData[numTagsInMessage];
-    for (int i = 0 ; i < numTagsInMessage; i++)
-    {
-      trs[i] = new TagReadData();
+      // the module might not support all the bits we asked for
+      MetadataDecoder decoder = responseMetadataDecoder(m.getu16());
+      m.readIndex++; // we don't need the read options
+      numTagsInMessage = m.getu8();
+      trs = new TagReadData[numTagsInMessage];
+      for (int i = 0 ; i < numTagsInMessage; i++)
+      {
+        trs[i] = new TagReadData();
 
-      metadataFromMessage(trs[i], m, metaDataFlags);
-      trs[i].tag = parseTag(m, m.getu16() / 8, trs[i].readProtocol);
+        metadataFromMessage(trs[i], m, decoder);
+        trs[i].tag = parseTag(m, m.getu16() / 8, trs[i].readProtocol);
+      }
+    }
+    finally
+    {
+      releaseMessage(m);
     }
 
     return trs;
@@ -5488,7 +6245,7 @@ public class SerialReader extends Reader
   private void cmdClearTagBuffer()
     throws ReaderException
   {
-    sendOpcode(MSG_OPCODE_CLEAR_TAG_ID_BUFFER);
+    releaseMessage(sendOpcode(MSG_OPCODE_CLEAR_TAG_ID_BUFFER));
   }
 
   /**
@@ -9590,15 +10347,28 @@ public class SerialReader extends Reader
 
   // Cache the most recent bits->set mapping - a connection
   // to one module will almost always return the same bits.
-  private int lastMetadataBits;
-  private EnumSet<TagMetadataFlag> lastMetadataFlags = EnumSet.noneOf(TagMetadataFlag.class);
+  // Both halves are published together, since responses are decoded on
+  // the streaming thread as well as the command thread.
+  private static final class MetadataFlagsCache
+  {
+    final int bits;
+    final EnumSet<TagMetadataFlag> flags;
+
+    MetadataFlagsCache(int bits, EnumSet<TagMetadataFlag> flags)
+    {
+      this.bits = bits;
+      this.flags = flags;
+    }
+  }
+  private volatile MetadataFlagsCache lastMetadataFlags =
+    new MetadataFlagsCache(0, EnumSet.noneOf(TagMetadataFlag.class));
 
   Set<TagMetadataFlag> tagMetadataSet(int bits)
   {
-
-    if (bits == lastMetadataBits)
+    MetadataFlagsCache last = lastMetadataFlags;
+    if (bits == last.bits)
     {
-      return lastMetadataFlags.clone();
+      return last.flags.clone();
     }
 
     EnumSet<TagMetadataFlag> metadataFlags = 
@@ -9613,10 +10383,10 @@ public class SerialReader extends Reader
       }
     }
 
-    lastMetadataBits = bits;
-    lastMetadataFlags = metadataFlags;
+    // Never modified after this, callers get clones
+    lastMetadataFlags = new MetadataFlagsCache(bits, metadataFlags);
 
-    return metadataFlags;
+    return metadataFlags.clone();
   }
   
   private static long lastTagTypeBits;
@@ -10204,6 +10974,12 @@ public class SerialReader extends Reader
       uniqueByProtocol = (Boolean)value;
       m.setu8(data);
     }
+    else if (key == Configuration.RECORD_HIGHEST_RSSI)
+    {
+      data = ((Boolean)value) ? 1 : 0;
+      recordHighestRssi = (Boolean)value;
+      m.setu8(data);
+    }
     else if (key == Configuration.TAG_BUFFER_ENTRY_TIMEOUT)
     {
         data = (Integer)value;
@@ -11007,6 +11783,21 @@ SerialReader(String serialDevice) throws ReaderException
                }
              });
     
+    addParam(TMR_PARAM_COMMAND_STATS_ENABLE,
+             Boolean.class, false, true,
+             new SettingAction()
+             {
+               public Object set(Object value)
+               {
+                 setCommandStatsEnabled((Boolean)value);
+                 return value;
+               }
+               public Object get(Object value)
+               {
+                 return isCommandStatsEnabled();
+               }
+             });
+
     addParam(TMR_PARAM_PROBE_BAUDRATE,
              int[].class, null, true,
              new SettingAction()
@@ -11074,7 +11865,9 @@ SerialReader(String serialDevice) throws ReaderException
 
     public void connect() throws ReaderException
     {
+        invalidateParamCache();
         openPort();
+        dedupConfigValid = false;
         try
         {
             boot(region);
@@ -11721,8 +12514,12 @@ SerialReader(String serialDevice) throws ReaderException
                             throws ReaderException
                     {
                         //set user requested metadata flags.
-                        metaDataFlags = (Set<TagReadData.TagMetadataFlag>)value;
-                        return metaDataFlags;
+                        synchronized (metadataDecoders)
+                        {
+                            metaDataFlags = (Set<TagReadData.TagMetadataFlag>)value;
+                            metaDataFlagsBits = -1;
+                            return metaDataFlags;
+                        }
                     }
                     
                     public Object get(Object value)
@@ -12656,6 +13453,8 @@ SerialReader(String serialDevice) throws ReaderException
 
    public void reboot() throws ReaderException
    {
+        invalidateParamCache();
+        dedupConfigValid = false;
         try
         {
             cmdBootBootloader();
@@ -13104,6 +13903,9 @@ SerialReader(String serialDevice) throws ReaderException
 
     public void destroy()
     {
+        invalidateParamCache();
+        listenerDispatcher.shutdown();
+        tagReadPublisher.complete();
         connected = false;
         hasContinuousReadStarted = false;
 
@@ -13143,6 +13945,7 @@ SerialReader(String serialDevice) throws ReaderException
         finally
         {
             st = null;
+            frameDecoder.reset();
         }
     }
 
@@ -13272,100 +14075,180 @@ SerialReader(String serialDevice) throws ReaderException
     void metadataFromMessage(TagReadData t, Message m,
             Set<TagMetadataFlag> meta)
     {
-        t.metadataFlags = meta;
+        metadataFromMessage(t, m, metadataDecoder(tagMetadataSetValue(meta)));
+    }
 
-        if (meta.contains(TagMetadataFlag.READCOUNT))
-        {
-            t.readCount = m.getu8();
-        }
-        if (meta.contains(TagMetadataFlag.RSSI))
-        {
-            t.rssi = (byte) m.getu8(); // keep the sign here
-        }
-        if (meta.contains(TagMetadataFlag.ANTENNAID))
-        {
-            t.antenna = m.getu8();
-        }
-        if (meta.contains(TagMetadataFlag.FREQUENCY))
-        {
-            t.frequency = m.getu24();
-        }
-        if (meta.contains(TagMetadataFlag.TIMESTAMP))
-        {
-            t.readOffset = m.getu32();
-        }
-        if (meta.contains(TagMetadataFlag.PHASE))
-        {
-            t.phase = m.getu16();
+    /**
+     * Layout of the tag read metadata for one metadata mask. Built once
+     * per mask, so decoding a read walks a flat list of the fields present
+     * instead of testing every flag.
+     */
+    static final class MetadataDecoder
+    {
+        // Order of the fields that precede the Gen2 fields on the wire
+        private static final TagMetadataFlag[] WIRE_ORDER = {
+            TagMetadataFlag.READCOUNT,
+            TagMetadataFlag.RSSI,
+            TagMetadataFlag.ANTENNAID,
+            TagMetadataFlag.FREQUENCY,
+            TagMetadataFlag.TIMESTAMP,
+            TagMetadataFlag.PHASE,
+            TagMetadataFlag.PROTOCOL,
+            TagMetadataFlag.DATA,
+            TagMetadataFlag.GPIO_STATUS,
+        };
+
+        final int bits;
+        final Set<TagMetadataFlag> flags;
+        final TagMetadataFlag[] fields;
+        final boolean gen2Q;
+        final boolean gen2Lf;
+        final boolean gen2Target;
+        final boolean brandIdentifier;
+        final boolean tagType;
+        final boolean antennaId;
+
+        MetadataDecoder(int bits, Set<TagMetadataFlag> flags)
+        {
+            this.bits = bits;
+            this.flags = Collections.unmodifiableSet(flags);
+            List<TagMetadataFlag> present = new ArrayList<TagMetadataFlag>();
+            for (TagMetadataFlag f : WIRE_ORDER)
+            {
+                if (flags.contains(f))
+                {
+                    present.add(f);
+                }
+            }
+            fields = present.toArray(new TagMetadataFlag[present.size()]);
+            gen2Q = flags.contains(TagMetadataFlag.GEN2_Q);
+            gen2Lf = flags.contains(TagMetadataFlag.GEN2_LF);
+            gen2Target = flags.contains(TagMetadataFlag.GEN2_TARGET);
+            brandIdentifier = flags.contains(TagMetadataFlag.BRAND_IDENTIFIER);
+            tagType = flags.contains(TagMetadataFlag.TAGTYPE);
+            antennaId = flags.contains(TagMetadataFlag.ANTENNAID)
+                || flags.contains(TagMetadataFlag.ALL);
         }
-        if (meta.contains(TagMetadataFlag.PROTOCOL))
+    }
+
+    /**
+     * Get the decoder for a metadata mask, building it on first use.
+     */
+    MetadataDecoder metadataDecoder(int bits)
+    {
+        MetadataDecoder decoder = lastMetadataDecoder;
+        if (decoder != null && decoder.bits == bits)
         {
-            t.readProtocol = codeToProtocolMap.get(m.getu8());
+            return decoder;
         }
-        if (meta.contains(TagMetadataFlag.DATA))
+        synchronized (metadataDecoders)
         {
-            //Store data length in bits only.
-            int dataBits = m.getu16();
-
-            if(useStreaming)
+            decoder = metadataDecoders.get(bits);
+            if (decoder == null)
             {
-              tagOpSuccessCount = 1;
-            }
-            // If MSB of data length field is set, then it indicates tag operation is failed
-            if ((dataBits & 0x8000) == 0x8000)
-            {
-                t.data = new byte[2];// always 2 bytes of error code.
-                t.isErrorData = true;
-                // Extract 2 bytes of error code and store in t._data variable to show to user.
-                m.getbytes(t.data, t.data.length);
-            }
-            else
-            {
-                //Convert data bit length into data byte length.
-                int dataLen = (dataBits + 7) / 8;
-                t.data = new byte[dataLen];
-                t.isErrorData = false;
-                // Data length is stored in bits for all modules.
-                t.dataLength = dataBits;
-                m.getbytes(t.data, t.data.length);
-                if (isGen2AllMemoryBankEnabled)
-                {
-                    parseTagMemBankdata(t, t.data, 0);
-                }
+                decoder = new MetadataDecoder(bits, tagMetadataSet(bits));
+                metadataDecoders.put(bits, decoder);
             }
         }
-        if (meta.contains(TagMetadataFlag.GPIO_STATUS))
+        lastMetadataDecoder = decoder;
+        return decoder;
+    }
+
+    /**
+     * Get the decoder for the metadata mask of a module response. The
+     * module might not support all the bits we asked for, so metaDataFlags
+     * follows what it actually sent.
+     */
+    private MetadataDecoder responseMetadataDecoder(int bits)
+    {
+        MetadataDecoder decoder = metadataDecoder(bits);
+        if (metaDataFlagsBits != bits)
         {
-            byte gpioByte = (byte) m.getu8();
-            if(!autonomousStreaming)
+            // Called from the streaming and command threads; keep the
+            // flags and their mask in step
+            synchronized (metadataDecoders)
             {
-                switch (versionInfo.hardware.part1)
+                if (metaDataFlagsBits != bits)
                 {
-                    case TMR_SR_MODEL_M6E:
-                        gpioNumber = 4;
-                        break;
-                    case TMR_SR_MODEL_M3E:
-                        gpioNumber = 4;
-                        break;
-                    case TMR_SR_MODEL_MICRO:
-                        gpioNumber = 2;
-                        break;
-                    default:
-                        gpioNumber = 4;
-                        break;
+                    metaDataFlags = tagMetadataSet(bits);
+                    metaDataFlagsBits = bits;
                 }
             }
-            else
+        }
+        return decoder;
+    }
+
+    /**
+     * Number of GPIO pins reported in the GPIO_STATUS metadata of this module.
+     */
+    private int gpioCount()
+    {
+        if (autonomousStreaming || versionInfo == null)
+        {
+            return 4;
+        }
+        if (gpioCountVersion != versionInfo)
+        {
+            switch (versionInfo.hardware.part1)
             {
-                gpioNumber = 4;
+                case TMR_SR_MODEL_MICRO:
+                    gpioCount = 2;
+                    break;
+                default:
+                    gpioCount = 4;
+                    break;
             }
+            gpioCountVersion = versionInfo;
+        }
+        return gpioCount;
+    }
+
+    void metadataFromMessage(TagReadData t, Message m, MetadataDecoder decoder)
+    {
+        t.metadataFlags = decoder.flags;
 
-            t.gpio = new GpioPin[gpioNumber];
-            for (int i = 0; i < gpioNumber; i++)
+        TagMetadataFlag[] fields = decoder.fields;
+        for (int i = 0; i < fields.length; i++)
+        {
+            switch (fields[i])
             {
-                 /*ID,  GPIO status in tag read metadata
-                 GPO status in Low nibble (Bits 0 to 3) and (GPI status in High nibble (Bits 4 to 7) */
-                (t.gpio)[i] = new GpioPin((i + 1), (((gpioByte >> i) & 0x1) == 1), ((gpioByte >> (i + 4)) & 0x1) == 1); 
+                case READCOUNT:
+                    t.readCount = m.getu8();
+                    break;
+                case RSSI:
+                    t.rssi = (byte) m.getu8(); // keep the sign here
+                    break;
+                case ANTENNAID:
+                    t.antenna = m.getu8();
+                    break;
+                case FREQUENCY:
+                    t.frequency = m.getu24();
+                    break;
+                case TIMESTAMP:
+                    t.readOffset = m.getu32();
+                    break;
+                case PHASE:
+                    t.phase = m.getu16();
+                    break;
+                case PROTOCOL:
+                    t.readProtocol = codeToProtocolMap.get(m.getu8());
+                    break;
+                case DATA:
+                    dataFromMessage(t, m);
+                    break;
+                case GPIO_STATUS:
+                    byte gpioByte = (byte) m.getu8();
+                    gpioNumber = gpioCount();
+                    t.gpio = new GpioPin[gpioNumber];
+                    for (int j = 0; j < gpioNumber; j++)
+                    {
+                         /*ID,  GPIO status in tag read metadata
+                         GPO status in Low nibble (Bits 0 to 3) and (GPI status in High nibble (Bits 4 to 7) */
+                        (t.gpio)[j] = new GpioPin((j + 1), (((gpioByte >> j) & 0x1) == 1), ((gpioByte >> (j + 4)) & 0x1) == 1); 
+                    }
+                    break;
+                default:
+                    break;
             }
         }
         if (t.readProtocol == TagProtocol.GEN2) 
@@ -13373,15 +14256,15 @@ SerialReader(String serialDevice) throws ReaderException
             Gen2.TagReadData gen2 = new Gen2.TagReadData();
             t.prd = gen2;
             
-            if (meta.contains(TagMetadataFlag.GEN2_Q)) 
+            if (decoder.gen2Q) 
             {
                 gen2.q.initialQ = m.getu8();
             }
-            if (meta.contains(TagMetadataFlag.GEN2_LF)) 
+            if (decoder.gen2Lf) 
             {
                 gen2.lf = Gen2.LinkFrequency.getFrequency(m.getu8());
             }
-            if (meta.contains(TagMetadataFlag.GEN2_TARGET)) 
+            if (decoder.gen2Target) 
             {
                 switch (m.getu8()) 
                 {
@@ -13395,13 +14278,13 @@ SerialReader(String serialDevice) throws ReaderException
             }
         }
         
-        if (meta.contains(TagMetadataFlag.BRAND_IDENTIFIER))
+        if (decoder.brandIdentifier)
         {
             byte[] brandID = new byte[2];
             m.getbytes(brandID, 2);
             t.brandIdentifier = ReaderUtil.byteArrayToHexString(brandID);
         }
-        if (meta.contains(TagMetadataFlag.TAGTYPE))
+        if (decoder.tagType)
         {
             byte[] tagType = parseEBVData(m);
             //Convert from EBV format to actual tag type.
@@ -13409,7 +14292,7 @@ SerialReader(String serialDevice) throws ReaderException
         }
 
         // Parsing the Correct Antenna ID based on GPO status
-        if (meta.contains(TagMetadataFlag.ANTENNAID) || meta.contains(TagMetadataFlag.ALL))
+        if (decoder.antennaId)
         {
             if(!autonomousStreaming)
             {
@@ -13423,6 +14306,39 @@ SerialReader(String serialDevice) throws ReaderException
         }
     }
 
+    private void dataFromMessage(TagReadData t, Message m)
+    {
+        //Store data length in bits only.
+        int dataBits = m.getu16();
+
+        if(useStreaming)
+        {
+          tagOpSuccessCount = 1;
+        }
+        // If MSB of data length field is set, then it indicates tag operation is failed
+        if ((dataBits & 0x8000) == 0x8000)
+        {
+            t.data = new byte[2];// always 2 bytes of error code.
+            t.isErrorData = true;
+            // Extract 2 bytes of error code and store in t._data variable to show to user.
+            m.getbytes(t.data, t.data.length);
+        }
+        else
+        {
+            //Convert data bit length into data byte length.
+            int dataLen = (dataBits + 7) / 8;
+            t.data = new byte[dataLen];
+            t.isErrorData = false;
+            // Data length is stored in bits for all modules.
+            t.dataLength = dataBits;
+            m.getbytes(t.data, t.data.length);
+            if (isGen2AllMemoryBankEnabled)
+            {
+                parseTagMemBankdata(t, t.data, 0);
+            }
+        }
+    }
+
     /** Function to decode the antenna id based on GPIOs.
      * 
      * @param t Tag Read data object
@@ -13479,7 +14395,6 @@ SerialReader(String serialDevice) throws ReaderException
             TagMetadataFlag.GEN2_Q,
             TagMetadataFlag.GEN2_LF,
             TagMetadataFlag.GEN2_TARGET);
-    static int selectedMetaBits = tagMetadataSetValue(metaDataFlags);
     static int iso14443aselectedtagtypes, iso14443bselectedtagtypes, iso15693selectedtagtypes, lf125selectedtagtypes, lf134selectedtagtypes;
 
     private void parseTagMemBankdata(TagReadData t, byte[] response, int readOffset)
@@ -13644,15 +14559,13 @@ SerialReader(String serialDevice) throws ReaderException
                         {
                             subOffTime = (int)(asyncOffTime * temp);
                         }
+                        long cycleStart = System.currentTimeMillis();
                         readInternal(subonTime, r, tagvec);
                         //Calculate tagFetchTime and sleep for sleepTime.
                         if(fetchTagReads)
                         {
                             TagReadData[] tags = tagvec.toArray(new TagReadData[tagvec.size()]);
-                            for (TagReadData t : tags)
-                            {
-                                tagReadQueue.put(t);
-                            }
+                            dispatchCycleReads(tags, cycleStart);
                             tagvec.clear();
                             timeEnd = System.currentTimeMillis();
                             tagFetchTime = timeEnd - timeStart;
@@ -13725,142 +14638,149 @@ SerialReader(String serialDevice) throws ReaderException
         {
             readTimeout = ((endTime - now) < 65535) ? (int) (endTime - now) : 65535;
             baseTime = System.currentTimeMillis();
-            Message m = new Message();
-            boolean isFastSearch = sp.useFastSearch;
-            int searchflag = AntennaSelection.CONFIGURED_LIST.value;
-
-            if (sp.Op == null) // stand alone tag operations
+            Message m = acquireMessage();
+            try
             {
-                if (useStreaming)
-                {
-                    if(planList.isEmpty())
-                    {
-                        planList.add((SimpleReadPlan)paramGet(TMR_PARAM_READ_PLAN));
-                    }
-                    cmdMultiProtocolSearch((int) MSG_OPCODE_READ_TAG_ID_MULTIPLE, planList, metaDataFlags,
-                        ((useStreaming ? READ_MULTIPLE_SEARCH_FLAGS_TAG_STREAMING : 0) | READ_MULTIPLE_SEARCH_FLAGS_SEARCH_LIST), (int) timeout, tagvec);
-                    return;
-                }
-                else // no streaming option
+                boolean isFastSearch = sp.useFastSearch;
+                int searchflag = AntennaSelection.CONFIGURED_LIST.value;
+
+                if (sp.Op == null) // stand alone tag operations
                 {
-                    try
-                    {
-                        int tagCount;
-                        tagCount = cmdReadTagMultiple(readTimeout, AntennaSelection.CONFIGURED_LIST, sp.protocol, readFilter, isFastSearch);
-                        List<TagReadData>  tagData = getAllTagReads(baseTime, tagCount, sp.protocol);
-                        tagvec.addAll(tagData);
-                    } 
-                    catch (ReaderException re)
+                    if (useStreaming)
                     {
-                        if (re instanceof ReaderCodeException && ((ReaderCodeException)re).getCode() == FAULT_NO_TAGS_FOUND)
-                        {
-                            // just ignore no tags found response
-                            timeStart = System.currentTimeMillis();
-                        }
-                        else if (re instanceof ReaderFatalException)
-                        {
-                            throw re;
-                        }
-                        else if (re instanceof ReaderCommException || (re instanceof ReaderCodeException &&(
-                                (((ReaderCodeException) re).getCode() == FAULT_SYSTEM_UNKNOWN_ERROR) ||
-                                (((ReaderCodeException) re).getCode() == FAULT_TM_ASSERT_FAILED) ||
-                                ((ReaderCodeException) re).getCode() == FAULT_MSG_WRONG_NUMBER_OF_DATA)))
+                        if(planList.isEmpty())
                         {
-                            // exception handled and come out of the thread                            
-                            throw re;
+                            planList.add((SimpleReadPlan)paramGet(TMR_PARAM_READ_PLAN));
                         }
-                        else if(re instanceof ReaderCodeException)
+                        cmdMultiProtocolSearch((int) MSG_OPCODE_READ_TAG_ID_MULTIPLE, planList, metaDataFlags,
+                            ((useStreaming ? READ_MULTIPLE_SEARCH_FLAGS_TAG_STREAMING : 0) | READ_MULTIPLE_SEARCH_FLAGS_SEARCH_LIST), (int) timeout, tagvec);
+                        return;
+                    }
+                    else // no streaming option
+                    {
+                        try
                         {
-                            throw re;
-                        }
-                        else
+                            int tagCount;
+                            tagCount = cmdReadTagMultiple(readTimeout, AntennaSelection.CONFIGURED_LIST, sp.protocol, readFilter, isFastSearch);
+                            List<TagReadData>  tagData = getAllTagReads(baseTime, tagCount, sp.protocol);
+                            tagvec.addAll(tagData);
+                        } 
+                        catch (ReaderException re)
                         {
-                            throw re;
-                        }
-                    }// end of catch
-                }//end of else
-            }
-            else //embedded operation
-            {
-                if (useStreaming) //using streaming
+                            if (re instanceof ReaderCodeException && ((ReaderCodeException)re).getCode() == FAULT_NO_TAGS_FOUND)
+                            {
+                                // just ignore no tags found response
+                                timeStart = System.currentTimeMillis();
+                            }
+                            else if (re instanceof ReaderFatalException)
+                            {
+                                throw re;
+                            }
+                            else if (re instanceof ReaderCommException || (re instanceof ReaderCodeException &&(
+                                    (((ReaderCodeException) re).getCode() == FAULT_SYSTEM_UNKNOWN_ERROR) ||
+                                    (((ReaderCodeException) re).getCode() == FAULT_TM_ASSERT_FAILED) ||
+                                    ((ReaderCodeException) re).getCode() == FAULT_MSG_WRONG_NUMBER_OF_DATA)))
+                            {
+                                // exception handled and come out of the thread                            
+                                throw re;
+                            }
+                            else if(re instanceof ReaderCodeException)
+                            {
+                                throw re;
+                            }
+                            else
+                            {
+                                throw re;
+                            }
+                        }// end of catch
+                    }//end of else
+                }
+                else //embedded operation
                 {
-                    if(planList.isEmpty())
+                    if (useStreaming) //using streaming
                     {
-                        planList.add((SimpleReadPlan)paramGet(TMR_PARAM_READ_PLAN));
-                    }
-                    cmdMultiProtocolSearch((int) MSG_OPCODE_READ_TAG_ID_MULTIPLE, planList, metaDataFlags,
-                        ((useStreaming ? READ_MULTIPLE_SEARCH_FLAGS_TAG_STREAMING : 0) | ((model.equalsIgnoreCase("M3e")) ? READ_MULTIPLE_SEARCH_FLAGS_ONE_ANT :READ_MULTIPLE_SEARCH_FLAGS_SEARCH_LIST) | 
-                          READ_MULTIPLE_SEARCH_FLAGS_EMBEDDED_OP), (int) timeout, tagvec);
+                        if(planList.isEmpty())
+                        {
+                            planList.add((SimpleReadPlan)paramGet(TMR_PARAM_READ_PLAN));
+                        }
+                        cmdMultiProtocolSearch((int) MSG_OPCODE_READ_TAG_ID_MULTIPLE, planList, metaDataFlags,
+                            ((useStreaming ? READ_MULTIPLE_SEARCH_FLAGS_TAG_STREAMING : 0) | ((model.equalsIgnoreCase("M3e")) ? READ_MULTIPLE_SEARCH_FLAGS_ONE_ANT :READ_MULTIPLE_SEARCH_FLAGS_SEARCH_LIST) | 
+                              READ_MULTIPLE_SEARCH_FLAGS_EMBEDDED_OP), (int) timeout, tagvec);
                 
-                    searchflag |= READ_MULTIPLE_SEARCH_FLAGS_EMBEDDED_OP;
-                    //tm = msgEmbedded(m, sp, readTimeout, searchflag, null);
+                        searchflag |= READ_MULTIPLE_SEARCH_FLAGS_EMBEDDED_OP;
+                        //tm = msgEmbedded(m, sp, readTimeout, searchflag, null);
     
-                    m.data[tm] = (byte) (m.writeIndex - tm - 2);
-                    return;
-
-                   // sendMessage(readTimeout, m);
-                    //receiveResponseStream(readTimeout, m);
-                }
-                else //without streaming (for M5e and M6e with asyncofftime non-zero)
-                {
-                    count = 0;
+                        m.data[tm] = (byte) (m.writeIndex - tm - 2);
+                        return;
 
-                    searchflag |= READ_MULTIPLE_SEARCH_FLAGS_EMBEDDED_OP;
-                    tm = msgEmbedded(m, sp, readTimeout, searchflag, sp.filter, isFastSearch);
-                    m.data[tm] = (byte) (m.writeIndex - tm - 2);
-                    List<TagReadData> tagData = null;
-                    try
-                    {
-                        sendTimeout(readTimeout, m);
+                       // sendMessage(readTimeout, m);
+                        //receiveResponseStream(readTimeout, m);
                     }
-                    catch (ReaderCodeException re)
+                    else //without streaming (for M5e and M6e with asyncofftime non-zero)
                     {
-                        enableMultipleSelect = false;
-                        if (re.getCode() == FAULT_NO_TAGS_FOUND)
-                        {
-                            return;
-                        }
-                        else if (re.getCode() == FAULT_MSG_INVALID_PARAMETER_VALUE ||
-                                 re.getCode() == FAULT_UNIMPLEMENTED_FEATURE)
+                        count = 0;
+
+                        searchflag |= READ_MULTIPLE_SEARCH_FLAGS_EMBEDDED_OP;
+                        tm = msgEmbedded(m, sp, readTimeout, searchflag, sp.filter, isFastSearch);
+                        m.data[tm] = (byte) (m.writeIndex - tm - 2);
+                        List<TagReadData> tagData = null;
+                        try
                         {
-                            throw re;
+                            sendTimeout(readTimeout, m);
                         }
-                        else if(re.getCode()==  FAULT_TAG_ID_BUFFER_FULL)
+                        catch (ReaderCodeException re)
                         {
-                            numTags = cmdGetTagsRemaining()[0];
-                            tagData = getAllTagReads(baseTime, numTags, sp.protocol);
-                            tagvec.addAll(tagData);
-                            return;
+                            enableMultipleSelect = false;
+                            if (re.getCode() == FAULT_NO_TAGS_FOUND)
+                            {
+                                return;
+                            }
+                            else if (re.getCode() == FAULT_MSG_INVALID_PARAMETER_VALUE ||
+                                     re.getCode() == FAULT_UNIMPLEMENTED_FEATURE)
+                            {
+                                throw re;
+                            }
+                            else if(re.getCode()==  FAULT_TAG_ID_BUFFER_FULL)
+                            {
+                                numTags = cmdGetTagsRemaining()[0];
+                                tagData = getAllTagReads(baseTime, numTags, sp.protocol);
+                                tagvec.addAll(tagData);
+                                return;
+                            }
                         }
-                    }
-                    int sflags = ((isreadAfterWriteEnabled) || (enableMultipleSelect)) ? m.getu16at(7) : m.getu16at(6);
-                    if ((sflags & AntennaSelection.LARGE_TAG_POPULATION_SUPPORT.value) != 0)
-                    {
-                        numTags = ((isreadAfterWriteEnabled) || (enableMultipleSelect)) ? m.getu32at(9) : m.getu32at(8);
-                        if(sp.filter instanceof Gen2.Select || sp.filter == null)
+                        int sflags = ((isreadAfterWriteEnabled) || (enableMultipleSelect)) ? m.getu16at(7) : m.getu16at(6);
+                        if ((sflags & AntennaSelection.LARGE_TAG_POPULATION_SUPPORT.value) != 0)
                         {
-                        tagOpSuccessCount += m.getu16at(15);
-                        tagOpFailuresCount += m.getu16at(17);    
-                        }
+                            numTags = ((isreadAfterWriteEnabled) || (enableMultipleSelect)) ? m.getu32at(9) : m.getu32at(8);
+                            if(sp.filter instanceof Gen2.Select || sp.filter == null)
+                            {
+                            tagOpSuccessCount += m.getu16at(15);
+                            tagOpFailuresCount += m.getu16at(17);    
+                            }
+                            else
+                            {
+                            tagOpSuccessCount += m.getu16at(14);
+                            tagOpFailuresCount += m.getu16at(16);
+                            }
+                        }    
                         else
                         {
-                        tagOpSuccessCount += m.getu16at(14);
-                        tagOpFailuresCount += m.getu16at(16);
+                            numTags = m.getu8at(8);
+                            tagOpSuccessCount += m.getu16at(11);
+                            tagOpFailuresCount += m.getu16at(13);
                         }
-                    }    
-                    else
-                    {
-                        numTags = m.getu8at(8);
-                        tagOpSuccessCount += m.getu16at(11);
-                        tagOpFailuresCount += m.getu16at(13);
-                    }
-                    tagData = getAllTagReads(baseTime, numTags, sp.protocol);
-                    tagvec.addAll(tagData);
+                        tagData = getAllTagReads(baseTime, numTags, sp.protocol);
+                        tagvec.addAll(tagData);
 
-                    // reset the flags here
-                    isreadAfterWriteEnabled = false;
-                    isGen2AllMemoryBankEnabled = false;
-                }//end of else (without streaming)
+                        // reset the flags here
+                        isreadAfterWriteEnabled = false;
+                        isGen2AllMemoryBankEnabled = false;
+                    }//end of else (without streaming)
+                }
+            }
+            finally
+            {
+                releaseMessage(m);
             }
             if (isStopNTags) 
             {
@@ -13872,68 +14792,11 @@ SerialReader(String serialDevice) throws ReaderException
         /*deduplication*/
         if(_enableFiltering)
         {
-            HashMap<String, TagReadData> map = new HashMap<String, TagReadData>();
-            String key = null;
-            boolean recordHighestRSSI = false;
-
-            try
+            if (!dedupConfigValid)
             {
-                recordHighestRSSI = (Boolean) paramGet(TMR_PARAM_TAGREADDATA_RECORDHIGHESTRSSI);
-            }catch(ReaderException re){
-                // Ignore the error message, if these params are not supported on the module.
-            }
-            catch(Exception ex){}
-            // Get UNIQUE_BY_DATA value from the reader
-            try{
-                uniqueByData = (Boolean)cmdGetReaderConfiguration(Configuration.UNIQUE_BY_DATA);
-            }catch(ReaderException rex){}
-            // Get UNIQUE_BY_ANTENNA value from the reader
-            try{
-                uniqueByAntenna = (Boolean)cmdGetReaderConfiguration(Configuration.UNIQUE_BY_ANTENNA);
-            }catch(ReaderException rex){}
-            // Get UNIQUE_BY_PROTOCOL value from the reader
-            try{
-                uniqueByProtocol = (Boolean)cmdGetReaderConfiguration(Configuration.UNIQUE_BY_PROTOCOL);
-            }catch(ReaderException rex){}
-
-            for (TagReadData tag : tagvec)
-            {
-                if (null == tag)
-                {
-                    continue;
-                }
-                key = tag.epcString();
-                if (uniqueByAntenna)
-                {
-                    key += tag.epcString() + ";" + tag.getAntenna();
-                }
-                if (uniqueByData)
-                {
-                    key += tag.epcString() + ";" + ReaderUtil.byteArrayToHexString(tag.data);
-                }
-                if (uniqueByProtocol)
-                {
-                    key += tag.epcString() + ";" + tag.getTag().getProtocol();
-                }                    
-
-                if (!map.containsKey(key))
-                {
-                    map.put(key, tag);
-                }
-                else //see the tag again
-                {
-                    map.get(key).readCount = map.get(key).getReadCount() + tag.getReadCount();
-                    if (recordHighestRSSI) {
-                        if (tag.getRssi() > map.get(key).getRssi()) {
-                            int tmp = map.get(key).getReadCount();
-                            map.put(key, tag);
-                            map.get(key).readCount = tmp;
-                        }
-                    }
-                }//end of else
-            }//end of for
-            tagvec.clear();
-            tagvec.addAll(map.values());
+                refreshDedupConfig();
+            }
+            deduplicator.removeDuplicates(tagvec, uniqueByAntenna, uniqueByData, uniqueByProtocol, recordHighestRssi);
         }//end of de-duplication
         // reset the enableMultipleSelect flag here
         if(!useStreaming)
@@ -13942,6 +14805,28 @@ SerialReader(String serialDevice) throws ReaderException
         }
     }
 
+    /**
+     * Read the de-duplication settings from the module once per connection.
+     * After that, paramSet keeps the cached values current.
+     */
+    private void refreshDedupConfig()
+    {
+        // Ignore the errors, if these params are not supported on the module.
+        try{
+            recordHighestRssi = (Boolean)cmdGetReaderConfiguration(Configuration.RECORD_HIGHEST_RSSI);
+        }catch(ReaderException rex){}
+        try{
+            uniqueByData = (Boolean)cmdGetReaderConfiguration(Configuration.UNIQUE_BY_DATA);
+        }catch(ReaderException rex){}
+        try{
+            uniqueByAntenna = (Boolean)cmdGetReaderConfiguration(Configuration.UNIQUE_BY_ANTENNA);
+        }catch(ReaderException rex){}
+        try{
+            uniqueByProtocol = (Boolean)cmdGetReaderConfiguration(Configuration.UNIQUE_BY_PROTOCOL);
+        }catch(ReaderException rex){}
+        dedupConfigValid = true;
+    }
+
     private int msgEmbedded(Message m, SimpleReadPlan sp, int readTimeout, int searchflag, TagFilter readFilter, boolean fastSearch) throws ReaderException
     {
         int tm = 0;
@@ -15147,6 +16032,9 @@ SerialReader(String serialDevice) throws ReaderException
     public synchronized void firmwareLoad(InputStream fwStr)
             throws ReaderException, IOException
     {
+        invalidateParamCache();
+        // The new firmware may not keep the de-duplication settings
+        dedupConfigValid = false;
         int header1, header2;
         int sector, len, address, ret;
         byte[] buf;
@@ -16250,123 +17138,130 @@ SerialReader(String serialDevice) throws ReaderException
     public void cmdMultiProtocolSearch(int opcode, List<SimpleReadPlan> plans, Set<TagMetadataFlag> metadataFlags, int antennas, int timeout, List<TagReadData> collectedTags)
             throws ReaderException
     {
-        Message m = new Message();
-        msgSetupMultiProtocolSearch(opcode, plans, metadataFlags, antennas, timeout, m);
-        TagProtocol tagProtocol = TagProtocol.NONE;
+        Message m = acquireMessage();
+        try
+        {
+            msgSetupMultiProtocolSearch(opcode, plans, metadataFlags, antennas, timeout, m);
+            TagProtocol tagProtocol = TagProtocol.NONE;
 
-        Message response;
-        int tagsFound;
+            Message response;
+            int tagsFound;
 
-        if (opcode == MSG_OPCODE_READ_TAG_ID_MULTIPLE)
-        {
-            if (useStreaming)
+            if (opcode == MSG_OPCODE_READ_TAG_ID_MULTIPLE)
             {
-                sendTimeout(timeout, m);
-                opCode = opcode;  // Change what receiveMessage expects to see
-                hasContinuousReadStarted = true;
-                isContReadActive = true;
-                int pollingIntervalTime = 100; // Poll for every 100 ms to receive the message
-                long timeOfLastResp = System.currentTimeMillis();
-                while(continuousReader!= null && continuousReader.enabled)
+                if (useStreaming)
                 {
-                    try
+                    sendTimeout(timeout, m);
+                    opCode = opcode;  // Change what receiveMessage expects to see
+                    hasContinuousReadStarted = true;
+                    isContReadActive = true;
+                    int pollingIntervalTime = 100; // Poll for every 100 ms to receive the message
+                    long timeOfLastResp = System.currentTimeMillis();
+                    while(continuousReader!= null && continuousReader.enabled)
                     {
-                        // create new object everytime, other wise it will use previous m.data for the current if data received is less.
-                        m = new Message();
-                        receiveResponseStream(pollingIntervalTime, m);
-                        
-                        if(m.isValidMsgReceived)
+                        try
                         {
-                            timeOfLastResp = System.currentTimeMillis();
-                        }
+                            // reset every time, other wise it will use previous m.data for the current if data received is less.
+                            m.reset();
+                            receiveResponseStream(pollingIntervalTime, m);
+                        
+                            if(m.isValidMsgReceived)
+                            {
+                                timeOfLastResp = System.currentTimeMillis();
+                            }
 
-                        // sleep for 1 ms to give chance to other threads
-                        if (sleepContRead) {
-                            Thread.sleep(1);
-                        }
-                    }
-                    catch (ReaderException re)
-                    {
-                        if (re instanceof ReaderCodeException && ((ReaderCodeException)re).getCode() == FAULT_NO_TAGS_FOUND)
-                        {
-                            // just ignore no tags found response
-                        }
-                        else if(re instanceof ReaderCommException && (re.getMessage().contains("Reader failed crc check.") || re.getMessage().contains("Packet data size is too big.")))
-                        {
-                          //Ignore crc error and big packet data size error i.e for > 256 length packet in case of streaming
+                            // sleep for 1 ms to give chance to other threads
+                            if (sleepContRead) {
+                                Thread.sleep(1);
+                            }
                         }
-                        else if(re.getMessage().contains("Timeout"))
+                        catch (ReaderException re)
                         {
-                            long now = System.currentTimeMillis();
-                            long elapsed = now - timeOfLastResp;
-                            if(!isExceptionRaised && elapsed <= (timeout + transportTimeout))
+                            if (re instanceof ReaderCodeException && ((ReaderCodeException)re).getCode() == FAULT_NO_TAGS_FOUND)
+                            {
+                                // just ignore no tags found response
+                            }
+                            else if(re instanceof ReaderCommException && (re.getMessage().contains("Reader failed crc check.") || re.getMessage().contains("Packet data size is too big.")))
+                            {
+                              //Ignore crc error and big packet data size error i.e for > 256 length packet in case of streaming
+                            }
+                            else if(re.getMessage().contains("Timeout"))
                             {
-                                // Ignore Timeout error if it is because of polling interval
+                                long now = System.currentTimeMillis();
+                                long elapsed = now - timeOfLastResp;
+                                if(!isExceptionRaised && elapsed <= (timeout + transportTimeout))
+                                {
+                                    // Ignore Timeout error if it is because of polling interval
+                                }
+                                else
+                                {
+                                    // Throw if it is actual timeout
+                                    isTrueAsyncStopped = true;
+                                    hasContinuousReadStarted = false;
+                                    readerThread.interrupt();
+                                    throw re;
+                                }
                             }
                             else
                             {
-                                // Throw if it is actual timeout
-                                isTrueAsyncStopped = true;
-                                hasContinuousReadStarted = false;
-                                readerThread.interrupt();
                                 throw re;
                             }
                         }
-                        else
-                        {
-                            throw re;
+                        catch (InterruptedException ie) {
+                            System.out.println(ie.getMessage());
                         }
                     }
-                    catch (InterruptedException ie) {
-                        System.out.println(ie.getMessage());
-                    }
-                }
-            }
-            else
-            {
-                int count = 0;
-                try
-                {
-                    response = sendTimeout(timeout + transportTimeout, m);
                 }
-                catch (ReaderCodeException re)
+                else
                 {
-                    if (re.getCode() == FAULT_NO_TAGS_FOUND)
-                    {
-                        return;
-                    }
-                    else if((re.getCode() == FAULT_MSG_INVALID_PARAMETER_VALUE) || (re.getCode() == FAULT_AFE_NOT_ON))
+                    int count = 0;
+                    try
                     {
-                        throw re;
+                        response = sendTimeout(timeout + transportTimeout, m);
                     }
-                    else if(re.getCode() == FAULT_TAG_ID_BUFFER_FULL)
+                    catch (ReaderCodeException re)
                     {
-                        notifyExceptionListeners(re);
-                        int tagCount = cmdGetTagsRemaining()[0];
-                        List<TagReadData> tagData = getAllTagReads(timeout, tagCount, tagProtocol);
-                        re.setTagReads(tagData);
-                        collectedTags.addAll(tagData);
-                        cmdClearTagBuffer();
-                        return;
+                        if (re.getCode() == FAULT_NO_TAGS_FOUND)
+                        {
+                            return;
+                        }
+                        else if((re.getCode() == FAULT_MSG_INVALID_PARAMETER_VALUE) || (re.getCode() == FAULT_AFE_NOT_ON))
+                        {
+                            throw re;
+                        }
+                        else if(re.getCode() == FAULT_TAG_ID_BUFFER_FULL)
+                        {
+                            notifyExceptionListeners(re);
+                            int tagCount = cmdGetTagsRemaining()[0];
+                            List<TagReadData> tagData = getAllTagReads(timeout, tagCount, tagProtocol);
+                            re.setTagReads(tagData);
+                            collectedTags.addAll(tagData);
+                            cmdClearTagBuffer();
+                            return;
+                        }
                     }
-                }
-                int numTags = m.getu32at(9);
-                while (count < numTags)
-                {
-                    TagReadData tr[];
-                    tr = cmdGetTagBuffer(metadataFlags, false, tagProtocol);
-                    for (TagReadData t : tr)
+                    int numTags = m.getu32at(9);
+                    while (count < numTags)
                     {
-                        t.readBase = System.currentTimeMillis();
-                        if (null != t)
+                        TagReadData tr[];
+                        tr = cmdGetTagBuffer(metadataFlags, false, tagProtocol);
+                        for (TagReadData t : tr)
                         {
-                            collectedTags.add(t);
+                            t.readBase = System.currentTimeMillis();
+                            if (null != t)
+                            {
+                                collectedTags.add(t);
+                            }
+                            count++;
                         }
-                        count++;
-                    }
-                }//end of while
-            }//end of else
-        }//end of if
+                    }//end of while
+                }//end of else
+            }//end of if
+        }
+        finally
+        {
+            releaseMessage(m);
+        }
     }
     
     private void openSerialPort() throws ReaderException
@@ -16415,6 +17310,7 @@ SerialReader(String serialDevice) throws ReaderException
         {
             // Reader, are you there?
             st.flush();
+            frameDecoder.reset();
             versionInfo = cmdVersion();
             protocolSet = EnumSet.noneOf(TagProtocol.class);
             protocolSet.addAll(Arrays.asList(versionInfo.protocols));
@@ -16595,6 +17491,7 @@ SerialReader(String serialDevice) throws ReaderException
             {
                 // Reader, are you there?
                 st.flush();
+                frameDecoder.reset();
                 isVersionError = true;
                 versionInfo = cmdVersion();
                 protocolSet = EnumSet.noneOf(TagProtocol.class);
@@ -16728,6 +17625,7 @@ SerialReader(String serialDevice) throws ReaderException
             {
                 // Reader, are you there?
                 st.flush();
+                frameDecoder.reset();
                 isVersionError = true;
                 versionInfo = cmdVersion();
                 //Set the transport Timeout to 5000ms(transTimeout)
@@ -16804,6 +17702,7 @@ SerialReader(String serialDevice) throws ReaderException
     {
         //Initialize some variables here
         st = srt;
+        frameDecoder.reset();
         opCode = 0x22;
         Message m = new Message();
         receiveMessage(1000, m);
@@ -16836,6 +17735,7 @@ SerialReader(String serialDevice) throws ReaderException
       try
       {
         st.flush();
+        frameDecoder.reset();
       }
       catch(ReaderException ex)
       {
@@ -16863,6 +17763,7 @@ SerialReader(String serialDevice) throws ReaderException
       try
       {
         st.flush();
+        frameDecoder.reset();
       }
       catch(ReaderException ex)
       {
@@ -0,0 +1,1507 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A SerialTransport that emulates an M6e-family embedded module in
+ * process, so that SerialReader can be exercised without hardware.
+ *
+ * The emulator answers the commands SerialReader needs to connect and
+ * read: version, Read Tag Multiple (0x22) into an emulated tag buffer,
+ * Get Tag Buffer (0x29), Clear Tag Buffer (0x2A), continuous streaming
+ * through the multi-protocol command (0x2F) with tag metadata, and the
+ * parameter get/set commands, which it stores and plays back. Frames
+ * carry a real CRC. Commands it does not know, including tag operations
+ * (read data, write, lock, ...), and gets of parameters that were never
+ * set and have no default, are answered with FAULT_INVALID_OPCODE
+ * (0x101), as a module answers a command it does not support.
+ *
+ * Reads are drawn from a fixed tag population at a configurable rate,
+ * with a Gaussian RSSI, spread evenly over the configured antennas. With
+ * real time pacing off, searches complete and streamed reads arrive as
+ * fast as the host asks for them, which gives the host's maximum
+ * throughput; with it on, they arrive when a module would send them.
+ * Everything random comes from one seed, so a run can be repeated.
+ *
+ * Faults can be injected either once, with injectFault(), or at random
+ * with setFaultProbability(). A fault applies to the next frame,
+ * command or search that can show it, as described for each Fault.
+ */
+public class SerialTransportEmulator implements StreamingSerialTransport
+{
+    /**
+     * Faults the emulator can inject.
+     */
+    public enum Fault
+    {
+        /** Corrupt the CRC of a response or streamed frame. */
+        CRC_ERROR,
+        /** Send no response to a command, so that the host times out. */
+        TIMEOUT,
+        /**
+         * End a search with FAULT_TAG_ID_BUFFER_FULL. A synchronous search
+         * keeps the reads it has buffered; a streaming search stops at the
+         * start of its next search cycle.
+         */
+        TAG_ID_BUFFER_FULL,
+    }
+
+    public static final int DEFAULT_TAG_BUFFER_CAPACITY = 1024;
+
+    // Metadata the emulated module reports; brand identifier and tag
+    // type are left out of the response mask, as by a module without them
+    private static final int SUPPORTED_METADATA = 0x0FFF;
+    private static final int META_READCOUNT = 0x0001;
+    private static final int META_RSSI = 0x0002;
+    private static final int META_ANTENNAID = 0x0004;
+    private static final int META_FREQUENCY = 0x0008;
+    private static final int META_TIMESTAMP = 0x0010;
+    private static final int META_PHASE = 0x0020;
+    private static final int META_PROTOCOL = 0x0040;
+    private static final int META_DATA = 0x0080;
+    private static final int META_GPIO_STATUS = 0x0100;
+    private static final int META_GEN2_Q = 0x0200;
+    private static final int META_GEN2_LF = 0x0400;
+    private static final int META_GEN2_TARGET = 0x0800;
+
+    // Largest data field of a response frame
+    private static final int MAX_DATA_LENGTH = 250;
+
+    // Search cycle used for a streaming search given no on-time
+    private static final int DEFAULT_ON_TIME = 250;
+
+    // Bootloader, hardware (M6e), firmware date and version, Gen2 protocol
+    private static final byte[] VERSION = {
+        0x12, 0x03, 0x01, 0x00,
+        0x18, 0x00, 0x00, 0x00,
+        0x20, 0x20, 0x01, 0x01,
+        0x01, 0x0b, 0x00, 0x01,
+        0x00, 0x00, 0x00, 0x10,
+    };
+
+    // North America, 50 channels of 500 kHz
+    private static final int BASE_FREQUENCY = 902750;
+    private static final int CHANNEL_SPACING = 500;
+    private static final int CHANNELS = 50;
+
+    private final Object lock = new Object();
+
+    private byte[][] tags;
+    private int[] antennas = {1};
+    private int portCount = 4;
+    private double readRate = 1000;
+    private double rssiMean = -60;
+    private double rssiSpread = 6;
+    private int tagBufferCapacity = DEFAULT_TAG_BUFFER_CAPACITY;
+    private boolean realTime = true;
+    private long seed;
+    private Random random;
+    private Random faultRandom;
+    private final EnumMap<Fault, Double> faultProbabilities =
+        new EnumMap<Fault, Double>(Fault.class);
+    private final EnumMap<Fault, Integer> pendingFaults =
+        new EnumMap<Fault, Integer>(Fault.class);
+
+    // Like a module that is powered up, the emulator needs no open()
+    // until it has been shut down
+    private boolean open = true;
+    private int baudRate = 115200;
+    private int readPower = 3000;
+    private int writePower = 3000;
+
+    // Command bytes received but not yet parsed
+    private final byte[] command = new byte[512];
+    private int commandLength;
+
+    // Response bytes not yet handed to the host, from outHead to outTail
+    private byte[] out = new byte[4096];
+    private int outHead;
+    private int outTail;
+    // When (on the emulator clock) the pending response is complete
+    private long readyAt;
+    // Emulator clock, in nanoseconds, when real time pacing is off
+    private long virtualNanos;
+
+    private final Map<Integer, List<byte[]>> params = new HashMap<Integer, List<byte[]>>();
+
+    private final List<BufferedRead> tagBuffer = new ArrayList<BufferedRead>();
+    private final Map<Long, BufferedRead> tagBufferIndex = new HashMap<Long, BufferedRead>();
+    private int tagBufferReadIndex;
+
+    private boolean streaming;
+    // Singulation option (-1 if none), option byte and search flags of the streaming search
+    private int streamSingulation;
+    private int streamOption;
+    private int streamFlags;
+    private int streamMetadata;
+    private long onNanos;
+    private long offNanos;
+    private long cycleStart;
+    private int cycleReads;
+    private long nextRead;
+    // Start of the period the streamed timestamps count from
+    private long timestampBase;
+    private long stopAfter;
+    private long streamedReads;
+
+    private long readsGenerated;
+
+    private final Buffer body = new Buffer();
+    private final Buffer record = new Buffer();
+
+    /**
+     * Create an emulator with 100 tags and a seed of 0.
+     */
+    public SerialTransportEmulator()
+    {
+        setSeed(0);
+        setTagPopulation(100);
+    }
+
+    /**
+     * Set the number of tags in the field. Their EPCs are 96 bits,
+     * numbered from E20000000000000000000001 upwards.
+     *
+     * @param count number of tags, zero or more
+     */
+    public void setTagPopulation(int count)
+    {
+        if (count < 0)
+        {
+            throw new IllegalArgumentException("Tag count must not be negative: " + count);
+        }
+        byte[][] epcs = new byte[count][];
+        for (int i = 0; i < count; i++)
+        {
+            byte[] epc = new byte[12];
+            epc[0] = (byte) 0xE2;
+            int n = i + 1;
+            epc[8] = (byte) (n >> 24);
+            epc[9] = (byte) (n >> 16);
+            epc[10] = (byte) (n >> 8);
+            epc[11] = (byte) n;
+            epcs[i] = epc;
+        }
+        setTags(epcs);
+    }
+
+    /**
+     * Set the EPCs of the tags in the field.
+     *
+     * @param epcs the EPCs, each a whole number of 16-bit words
+     */
+    public void setTags(byte[][] epcs)
+    {
+        byte[][] copy = new byte[epcs.length][];
+        for (int i = 0; i < epcs.length; i++)
+        {
+            if (epcs[i].length % 2 != 0 || epcs[i].length > 62)
+            {
+                throw new IllegalArgumentException("Invalid EPC length: " + epcs[i].length);
+            }
+            copy[i] = epcs[i].clone();
+        }
+        synchronized (lock)
+        {
+            tags = copy;
+            // Buffered reads refer to the old tags
+            clearTagBuffer();
+        }
+    }
+
+    /**
+     * Set the rate at which the module reads tags while its RF is on.
+     *
+     * @param readsPerSecond the read rate
+     */
+    public void setReadRate(double readsPerSecond)
+    {
+        if (readsPerSecond < 0)
+        {
+            throw new IllegalArgumentException("Read rate must not be negative: " + readsPerSecond);
+        }
+        synchronized (lock)
+        {
+            readRate = readsPerSecond;
+        }
+    }
+
+    /**
+     * Set the distribution of the RSSI of each read.
+     *
+     * @param mean mean RSSI, in dBm
+     * @param standardDeviation standard deviation, in dB
+     */
+    public void setRssi(double mean, double standardDeviation)
+    {
+        synchronized (lock)
+        {
+            rssiMean = mean;
+            rssiSpread = standardDeviation;
+        }
+    }
+
+    /**
+     * Set the number of antenna ports of the module and the ports that
+     * have an antenna connected and see tags.
+     *
+     * @param portCount number of ports, 1 to 15
+     * @param connected the ports reads are spread over
+     */
+    public void setAntennas(int portCount, int... connected)
+    {
+        if (portCount < 1 || portCount > 15)
+        {
+            throw new IllegalArgumentException("Invalid port count: " + portCount);
+        }
+        if (connected.length == 0)
+        {
+            throw new IllegalArgumentException("At least one antenna must be connected");
+        }
+        for (int port : connected)
+        {
+            if (port < 1 || port > portCount)
+            {
+                throw new IllegalArgumentException("Invalid port number " + port);
+            }
+        }
+        synchronized (lock)
+        {
+            this.portCount = portCount;
+            antennas = connected.clone();
+        }
+    }
+
+    /**
+     * Set the number of distinct tag and antenna pairs the tag buffer
+     * holds. A synchronous search that finds more ends with
+     * FAULT_TAG_ID_BUFFER_FULL.
+     *
+     * @param capacity the buffer capacity
+     */
+    public void setTagBufferCapacity(int capacity)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        synchronized (lock)
+        {
+            tagBufferCapacity = capacity;
+        }
+    }
+
+    /**
+     * Pace searches and streamed reads in real time (the default), or
+     * run them as fast as the host asks for them.
+     */
+    public void setRealTime(boolean realTime)
+    {
+        synchronized (lock)
+        {
+            this.realTime = realTime;
+        }
+    }
+
+    /**
+     * Restart the reads and faults drawn at random from a seed.
+     */
+    public void setSeed(long seed)
+    {
+        synchronized (lock)
+        {
+            this.seed = seed;
+            random = new Random(seed);
+            faultRandom = new Random(seed ^ 0x5DEECE66DL);
+        }
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Set the probability that a fault is injected wherever it can be.
+     *
+     * @param fault the fault
+     * @param probability between 0 (never, the default) and 1 (always)
+     */
+    public void setFaultProbability(Fault fault, double probability)
+    {
+        if (probability < 0 || probability > 1)
+        {
+            throw new IllegalArgumentException("Invalid probability: " + probability);
+        }
+        synchronized (lock)
+        {
+            faultProbabilities.put(fault, probability);
+        }
+    }
+
+    /**
+     * Inject a fault once, at the next place it can be.
+     */
+    public void injectFault(Fault fault)
+    {
+        synchronized (lock)
+        {
+            Integer n = pendingFaults.get(fault);
+            pendingFaults.put(fault, (n == null) ? 1 : n + 1);
+        }
+    }
+
+    /**
+     * Returns the number of reads the emulated module has made, whether
+     * buffered or streamed.
+     */
+    public long getReadsGenerated()
+    {
+        synchronized (lock)
+        {
+            return readsGenerated;
+        }
+    }
+
+    public void open() throws ReaderException
+    {
+        synchronized (lock)
+        {
+            open = true;
+        }
+    }
+
+    public void sendBytes(int length, byte[] message, int offset, int timeoutMs) throws ReaderException
+    {
+        synchronized (lock)
+        {
+            checkOpen();
+            if (commandLength + length > command.length)
+            {
+                // Not a command anyone sent on purpose
+                commandLength = 0;
+                length = Math.min(length, command.length);
+            }
+            System.arraycopy(message, offset, command, commandLength, length);
+            commandLength += length;
+            parseCommands();
+            lock.notifyAll();
+        }
+    }
+
+    public byte[] receiveBytes(int length, byte[] messageSpace, int offset, int timeoutMillis) throws ReaderException
+    {
+        if (messageSpace == null)
+        {
+            messageSpace = new byte[length + offset];
+        }
+        synchronized (lock)
+        {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            int received = 0;
+            while (received < length)
+            {
+                received += take(messageSpace, offset + received, length - received, deadline);
+            }
+        }
+        return messageSpace;
+    }
+
+    public int receiveAvailable(byte[] messageSpace, int offset, int maxLength, int timeoutMillis) throws ReaderException
+    {
+        synchronized (lock)
+        {
+            return take(messageSpace, offset, maxLength, System.currentTimeMillis() + timeoutMillis);
+        }
+    }
+
+    public int getBaudRate() throws ReaderException
+    {
+        return baudRate;
+    }
+
+    public void setBaudRate(int rate) throws ReaderException
+    {
+        baudRate = rate;
+    }
+
+    public void flush() throws ReaderException
+    {
+        // Responses are produced as commands arrive; there is nothing to flush
+    }
+
+    public void shutdown() throws ReaderException
+    {
+        synchronized (lock)
+        {
+            open = false;
+            streaming = false;
+            commandLength = 0;
+            outHead = 0;
+            outTail = 0;
+            lock.notifyAll();
+        }
+    }
+
+    private void checkOpen() throws ReaderException
+    {
+        if (!open)
+        {
+            throw new ReaderCommException("Emulator is not open");
+        }
+    }
+
+    /**
+     * Hand out up to maxLength response bytes, waiting until the deadline
+     * for at least one. Streamed reads are produced here, as they fall due.
+     */
+    private int take(byte[] dest, int offset, int maxLength, long deadline) throws ReaderException
+    {
+        while (true)
+        {
+            checkOpen();
+            long now = now();
+            if (outTail > outHead && (!realTime || now >= readyAt))
+            {
+                int n = Math.min(maxLength, outTail - outHead);
+                System.arraycopy(out, outHead, dest, offset, n);
+                outHead += n;
+                if (outHead == outTail)
+                {
+                    outHead = 0;
+                    outTail = 0;
+                }
+                return n;
+            }
+            long due = Long.MAX_VALUE;
+            if (outTail > outHead)
+            {
+                due = readyAt;
+            }
+            else if (streaming)
+            {
+                due = realTime ? nextStreamEvent() : virtualNanos;
+                if (due <= now)
+                {
+                    streamUntil(now);
+                    if (outTail == outHead && !realTime)
+                    {
+                        // A search that reports nothing, such as one without
+                        // tags or multiple select
+                        throw new ReaderCommException("Timeout");
+                    }
+                    continue;
+                }
+            }
+            else if (!realTime)
+            {
+                // Nothing will come without a command
+                throw new ReaderCommException("Timeout");
+            }
+            long waitMillis = deadline - System.currentTimeMillis();
+            if (waitMillis <= 0)
+            {
+                throw new ReaderCommException("Timeout");
+            }
+            if (due != Long.MAX_VALUE)
+            {
+                waitMillis = Math.min(waitMillis, Math.max(1, (due - now) / 1000000));
+            }
+            try
+            {
+                lock.wait(waitMillis);
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new ReaderCommException("Timeout");
+            }
+        }
+    }
+
+    private long now()
+    {
+        return realTime ? System.nanoTime() : virtualNanos;
+    }
+
+    private boolean fault(Fault f)
+    {
+        Integer n = pendingFaults.get(f);
+        if (n != null)
+        {
+            if (n > 1)
+            {
+                pendingFaults.put(f, n - 1);
+            }
+            else
+            {
+                pendingFaults.remove(f);
+            }
+            return true;
+        }
+        Double p = faultProbabilities.get(f);
+        return p != null && p > 0 && faultRandom.nextDouble() < p;
+    }
+
+    /**
+     * Execute every complete command frame received so far.
+     */
+    private void parseCommands() throws ReaderException
+    {
+        int start = 0;
+        while (true)
+        {
+            while (start < commandLength && command[start] != (byte) 0xFF)
+            {
+                start++;
+            }
+            if (commandLength - start < 5)
+            {
+                break;
+            }
+            int len = command[start + 1] & 0xff;
+            if (commandLength - start < len + 5)
+            {
+                break;
+            }
+            int crc = SerialReader.calcCrc(command, start + 1, len + 2) & 0xffff;
+            int sent = ((command[start + len + 3] & 0xff) << 8) | (command[start + len + 4] & 0xff);
+            if (crc == sent)
+            {
+                int opcode = command[start + 2] & 0xff;
+                byte[] args = Arrays.copyOfRange(command, start + 3, start + 3 + len);
+                execute(opcode, args);
+            }
+            // A module ignores a command that fails its CRC
+            start += len + 5;
+        }
+        System.arraycopy(command, start, command, 0, commandLength - start);
+        commandLength -= start;
+    }
+
+    private void execute(int opcode, byte[] args) throws ReaderException
+    {
+        if (opcode == EmbeddedReaderMessage.MSG_OPCODE_MULTI_PROTOCOL_TAG_OP
+            && args.length >= 3 && args[2] == 0x04)
+        {
+            // A command sent while streaming, wrapped as 2f 00 00 04 <len> <opcode> <data>
+            int innerLength = Math.min(args[3] & 0xff, args.length - 5);
+            int innerOpcode = args[4] & 0xff;
+            body.reset();
+            int status = dispatch(innerOpcode, Arrays.copyOfRange(args, 5, 5 + innerLength));
+            if (status < 0 || fault(Fault.TIMEOUT))
+            {
+                return;
+            }
+            byte[] inner = body.toArray();
+            body.reset();
+            body.u8(0x04);
+            body.u8(inner.length);
+            body.u8(innerOpcode);
+            body.u16(status);
+            body.bytes(inner, 0, inner.length);
+            emit(EmbeddedReaderMessage.MSG_OPCODE_MULTI_PROTOCOL_TAG_OP, 0, body);
+            return;
+        }
+        body.reset();
+        int status = dispatch(opcode, args);
+        if (status < 0 || fault(Fault.TIMEOUT))
+        {
+            return;
+        }
+        emit(opcode, status, body);
+    }
+
+    /**
+     * Execute one command, leaving its response data in body.
+     *
+     * @return the response status, or -1 for a command that has no response
+     */
+    private int dispatch(int opcode, byte[] args) throws ReaderException
+    {
+        switch (opcode)
+        {
+            case EmbeddedReaderMessage.MSG_OPCODE_VERSION:
+                body.bytes(VERSION, 0, VERSION.length);
+                return 0;
+            case EmbeddedReaderMessage.MSG_OPCODE_SET_BAUD_RATE:
+                if (args.length >= 4)
+                {
+                    baudRate = ((args[0] & 0xff) << 24) | ((args[1] & 0xff) << 16)
+                        | ((args[2] & 0xff) << 8) | (args[3] & 0xff);
+                }
+                return 0;
+            case EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE:
+                return readTagMultiple(args);
+            case EmbeddedReaderMessage.MSG_OPCODE_GET_TAG_BUFFER:
+                return getTagBuffer(args);
+            case EmbeddedReaderMessage.MSG_OPCODE_CLEAR_TAG_ID_BUFFER:
+                clearTagBuffer();
+                return 0;
+            case EmbeddedReaderMessage.MSG_OPCODE_MULTI_PROTOCOL_TAG_OP:
+                return multiProtocolTagOp(args);
+            case EmbeddedReaderMessage.MSG_OPCODE_GET_ANTENNA_PORT:
+                return getAntennaPort(args);
+            case EmbeddedReaderMessage.MSG_OPCODE_GET_TX_READ_POWER:
+                getTxPower(args, readPower);
+                return 0;
+            case EmbeddedReaderMessage.MSG_OPCODE_GET_TX_WRITE_POWER:
+                getTxPower(args, writePower);
+                return 0;
+            case EmbeddedReaderMessage.MSG_OPCODE_SET_TX_READ_POWER:
+                if (args.length == 2)
+                {
+                    readPower = (short) u16(args, 0);
+                }
+                return 0;
+            case EmbeddedReaderMessage.MSG_OPCODE_SET_TX_WRITE_POWER:
+                if (args.length == 2)
+                {
+                    writePower = (short) u16(args, 0);
+                }
+                return 0;
+            default:
+                if (opcode >= 0x90 && opcode <= 0x9F)
+                {
+                    setParam(opcode - 0x30, args);
+                    return 0;
+                }
+                if (opcode >= 0x60 && opcode <= 0x72)
+                {
+                    return getParam(opcode, args);
+                }
+                return EmbeddedReaderMessage.FAULT_INVALID_OPCODE;
+        }
+    }
+
+    private void setParam(int getOpcode, byte[] value)
+    {
+        List<byte[]> values = params.get(getOpcode);
+        if (values == null)
+        {
+            values = new ArrayList<byte[]>();
+            params.put(getOpcode, values);
+        }
+        // Replace a value stored under the same key, taken to be its first byte
+        for (int i = 0; i < values.size(); i++)
+        {
+            byte[] v = values.get(i);
+            if (v.length == 0 || value.length == 0 || (v[0] == value[0] && startsWith(value, v, keyLength(getOpcode))))
+            {
+                values.remove(i);
+                break;
+            }
+        }
+        values.add(value);
+    }
+
+    // Protocol parameters are keyed by protocol and parameter, the rest by one option byte
+    private static int keyLength(int getOpcode)
+    {
+        return (getOpcode == EmbeddedReaderMessage.MSG_OPCODE_GET_PROTOCOL_PARAM) ? 2 : 1;
+    }
+
+    private static boolean startsWith(byte[] value, byte[] prefix, int length)
+    {
+        if (value.length < length || prefix.length < length)
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (value[i] != prefix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Answer a get with the value of the matching set, which for these
+     * commands has the same layout. A parameter that was never set, and
+     * has no default here, is answered as a module answers a command it
+     * does not support.
+     *
+     * @return the response status
+     */
+    private int getParam(int opcode, byte[] args)
+    {
+        List<byte[]> values = params.get(opcode);
+        if (values != null)
+        {
+            for (byte[] v : values)
+            {
+                if (args.length == 0 || startsWith(v, args, Math.min(args.length, keyLength(opcode))))
+                {
+                    body.bytes(v, 0, v.length);
+                    return 0;
+                }
+            }
+        }
+        switch (opcode)
+        {
+            case EmbeddedReaderMessage.MSG_OPCODE_GET_REGION:
+                body.u8(0x01); // NA
+                return 0;
+            case EmbeddedReaderMessage.MSG_OPCODE_GET_TAG_PROTOCOL:
+                body.u16(EmbeddedReaderMessage.PROT_GEN2);
+                return 0;
+            default:
+                return EmbeddedReaderMessage.FAULT_INVALID_OPCODE;
+        }
+    }
+
+    /**
+     * Option 0 gets the power, option 1 the power, maximum and minimum.
+     */
+    private void getTxPower(byte[] args, int power)
+    {
+        int option = (args.length > 0) ? args[0] : 0;
+        body.u8(option);
+        body.u16(power);
+        if (option == 1)
+        {
+            body.u16(3000);
+            body.u16(500);
+        }
+    }
+
+    private int getAntennaPort(byte[] args)
+    {
+        int option = (args.length > 0) ? args[0] & 0xff : -1;
+        switch (option)
+        {
+            case -1:
+                body.u8(antennas[0]);
+                body.u8(antennas[0]);
+                break;
+            case 0x01:
+                body.u8(antennas[0]);
+                body.u8(antennas[0]);
+                for (int port = 1; port <= portCount; port++)
+                {
+                    body.u8(isConnected(port) ? 1 : 0);
+                }
+                break;
+            case 0x02:
+                body.u8(option);
+                for (int port : antennas)
+                {
+                    body.u8(port);
+                    body.u8(port);
+                }
+                break;
+            case 0x05:
+                body.u8(option);
+                for (int port = 1; port <= portCount; port++)
+                {
+                    body.u8(port);
+                    body.u8(isConnected(port) ? 1 : 0);
+                }
+                break;
+            default:
+                return getParam(EmbeddedReaderMessage.MSG_OPCODE_GET_ANTENNA_PORT, args);
+        }
+        return 0;
+    }
+
+    private boolean isConnected(int port)
+    {
+        for (int a : antennas)
+        {
+            if (a == port)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Layout of a Read Tag Multiple command:
+     * [singulation option] option flags(2) timeout(2) [off time(2)] metadata(2) [N(4)] ...
+     * The singulation option byte is present when its top bit is set;
+     * the off time when streaming, N when stopping on N tags.
+     */
+    private static final class SearchCommand
+    {
+        int singulation = -1;
+        int option;
+        int flags;
+        int timeout;
+        int offTime;
+        int metadata;
+        long stopAfter;
+
+        SearchCommand(byte[] args, int offset)
+        {
+            int i = offset;
+            if ((args[i] & 0x80) != 0)
+            {
+                singulation = args[i++] & 0xff;
+            }
+            option = args[i++] & 0xff;
+            flags = u16(args, i);
+            i += 2;
+            timeout = u16(args, i);
+            i += 2;
+            if ((flags & EmbeddedReaderMessage.READ_MULTIPLE_SEARCH_FLAGS_TAG_STREAMING) != 0)
+            {
+                offTime = u16(args, i);
+                i += 2;
+            }
+            metadata = u16(args, i);
+            i += 2;
+            if ((flags & EmbeddedReaderMessage.READ_MULTIPLE_RETURN_ON_N_TAGS) != 0 && i + 4 <= args.length)
+            {
+                stopAfter = ((long) u16(args, i) << 16) | u16(args, i + 2);
+            }
+        }
+    }
+
+    private static int u16(byte[] b, int i)
+    {
+        return ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+    }
+
+    private int readTagMultiple(byte[] args)
+    {
+        SearchCommand search = new SearchCommand(args, 0);
+        if ((search.flags & EmbeddedReaderMessage.READ_MULTIPLE_SEARCH_FLAGS_TAG_STREAMING) != 0)
+        {
+            startStreaming(search);
+            body.u8(0x01);
+            body.u8(EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE);
+            body.u16(search.flags);
+            return 0;
+        }
+        int status = search(search.timeout, search.stopAfter);
+        if (status != 0)
+        {
+            return status;
+        }
+        if (search.singulation >= 0)
+        {
+            body.u8(search.singulation);
+        }
+        body.u8(search.option);
+        body.u16(search.flags);
+        if ((search.flags & EmbeddedReaderMessage.READ_MULTIPLE_SEARCH_FLAGS_LARGE_TAG_POPULATION_SUPPORT) != 0)
+        {
+            body.u32(tagBuffer.size());
+        }
+        else
+        {
+            body.u8(Math.min(tagBuffer.size(), 255));
+        }
+        if ((search.flags & EmbeddedReaderMessage.READ_MULTIPLE_SEARCH_FLAGS_EMBEDDED_OP) != 0)
+        {
+            // Embedded operations are not carried out: none succeeded, none failed
+            body.u16(0);
+            body.u16(0);
+            body.u16(0);
+        }
+        return 0;
+    }
+
+    /**
+     * Carry out a synchronous search of the given length into the tag
+     * buffer. In real time the response is held back until the search
+     * would have finished.
+     *
+     * @return the status of the search
+     */
+    private int search(int timeout, long stopAfter)
+    {
+        long start = now();
+        long length = timeout * 1000000L;
+        if (realTime)
+        {
+            readyAt = Math.max(readyAt, start + length);
+        }
+        else
+        {
+            virtualNanos += length;
+        }
+        boolean full = fault(Fault.TAG_ID_BUFFER_FULL);
+        int reads = (tags.length == 0) ? 0 : poisson(readRate * timeout / 1000.0);
+        for (int i = 0; i < reads && !full; i++)
+        {
+            int tag = random.nextInt(tags.length);
+            int antenna = antennas[random.nextInt(antennas.length)];
+            long key = ((long) tag << 8) | antenna;
+            BufferedRead r = tagBufferIndex.get(key);
+            if (r == null)
+            {
+                if (tagBuffer.size() >= tagBufferCapacity)
+                {
+                    full = true;
+                    break;
+                }
+                r = new BufferedRead(tag, antenna);
+                tagBuffer.add(r);
+                tagBufferIndex.put(key, r);
+                r.timestamp = (int) ((long) timeout * i / reads);
+            }
+            r.count = Math.min(r.count + 1, 255);
+            r.rssi = Math.max(r.rssi, rssi());
+            r.frequency = frequency();
+            r.phase = random.nextInt(180);
+            readsGenerated++;
+            if (stopAfter > 0 && tagBuffer.size() >= stopAfter)
+            {
+                break;
+            }
+        }
+        if (full)
+        {
+            return EmbeddedReaderMessage.FAULT_TAG_ID_BUFFER_FULL;
+        }
+        if (tagBuffer.isEmpty())
+        {
+            return EmbeddedReaderMessage.FAULT_NO_TAGS_FOUND;
+        }
+        return 0;
+    }
+
+    private int poisson(double mean)
+    {
+        if (mean <= 0)
+        {
+            return 0;
+        }
+        // Normal approximation; exact enough for a read count
+        long n = Math.round(mean + Math.sqrt(mean) * random.nextGaussian());
+        return (int) Math.max(0, Math.min(n, Integer.MAX_VALUE));
+    }
+
+    private int rssi()
+    {
+        long r = Math.round(rssiMean + rssiSpread * random.nextGaussian());
+        return (int) Math.max(-127, Math.min(r, -1));
+    }
+
+    private int frequency()
+    {
+        return BASE_FREQUENCY + CHANNEL_SPACING * random.nextInt(CHANNELS);
+    }
+
+    private static final class BufferedRead
+    {
+        final int tag;
+        final int antenna;
+        int count;
+        int rssi = -128;
+        int frequency;
+        int timestamp;
+        int phase;
+
+        BufferedRead(int tag, int antenna)
+        {
+            this.tag = tag;
+            this.antenna = antenna;
+        }
+    }
+
+    private int getTagBuffer(byte[] args)
+    {
+        if (args.length < 2)
+        {
+            // Tags remaining: read index and write index
+            body.u16(tagBufferReadIndex);
+            body.u16(tagBuffer.size());
+            return 0;
+        }
+        int metadata = u16(args, 0) & SUPPORTED_METADATA;
+        body.u16(metadata);
+        body.u8(0);
+        int countIndex = body.length;
+        body.u8(0);
+        int count = 0;
+        while (tagBufferReadIndex < tagBuffer.size())
+        {
+            BufferedRead r = tagBuffer.get(tagBufferReadIndex);
+            record.reset();
+            encodeRead(record, metadata, r.tag, r.count, r.rssi, r.antenna,
+                    r.frequency, r.timestamp, r.phase);
+            if (body.length + record.length > MAX_DATA_LENGTH || count == 255)
+            {
+                break;
+            }
+            body.bytes(record.data, 0, record.length);
+            tagBufferReadIndex++;
+            count++;
+        }
+        body.data[countIndex] = (byte) count;
+        return 0;
+    }
+
+    private void clearTagBuffer()
+    {
+        tagBuffer.clear();
+        tagBufferIndex.clear();
+        tagBufferReadIndex = 0;
+    }
+
+    /**
+     * Encode one read as the module does in the tag buffer and in
+     * streamed reads: the metadata fields, then the EPC length in bits
+     * and PC, EPC and CRC.
+     */
+    private void encodeRead(Buffer b, int metadata, int tag, int count, int rssi,
+            int antenna, int frequency, int timestamp, int phase)
+    {
+        if ((metadata & META_READCOUNT) != 0)
+        {
+            b.u8(count);
+        }
+        if ((metadata & META_RSSI) != 0)
+        {
+            b.u8(rssi);
+        }
+        if ((metadata & META_ANTENNAID) != 0)
+        {
+            // Monostatic: transmit port in the high nibble, receive port in the low
+            b.u8((antenna << 4) | antenna);
+        }
+        if ((metadata & META_FREQUENCY) != 0)
+        {
+            b.u8(frequency >> 16);
+            b.u16(frequency);
+        }
+        if ((metadata & META_TIMESTAMP) != 0)
+        {
+            b.u32(timestamp);
+        }
+        if ((metadata & META_PHASE) != 0)
+        {
+            b.u16(phase);
+        }
+        if ((metadata & META_PROTOCOL) != 0)
+        {
+            b.u8(EmbeddedReaderMessage.PROT_GEN2);
+        }
+        if ((metadata & META_DATA) != 0)
+        {
+            b.u16(0);
+        }
+        if ((metadata & META_GPIO_STATUS) != 0)
+        {
+            b.u8(0);
+        }
+        if ((metadata & META_GEN2_Q) != 0)
+        {
+            b.u8(4);
+        }
+        if ((metadata & META_GEN2_LF) != 0)
+        {
+            b.u8(0x02);
+        }
+        if ((metadata & META_GEN2_TARGET) != 0)
+        {
+            b.u8(0x00);
+        }
+        byte[] epc = tags[tag];
+        int pc = epc.length << 10; // EPC length in words
+        b.u16((epc.length + 4) * 8);
+        b.u16(pc);
+        b.bytes(epc, 0, epc.length);
+        b.u16(tagCrc(pc, epc));
+    }
+
+    // The CRC a Gen2 tag backscatters over its PC and EPC, CRC-16/CCITT complemented
+    private static int tagCrc(int pc, byte[] epc)
+    {
+        int crc = 0xFFFF;
+        for (int i = -2; i < epc.length; i++)
+        {
+            int e = (i == -2) ? pc >> 8 : (i == -1) ? pc : epc[i];
+            crc ^= (e & 0xff) << 8;
+            for (int bit = 0; bit < 8; bit++)
+            {
+                crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+        }
+        return ~crc & 0xFFFF;
+    }
+
+    /**
+     * The multi-protocol command: start (option 1) or stop (option 2)
+     * continuous reading, or search with several read plans.
+     * Layout: timeout(2) option [metadata(2)] opcode flags(2) [N(4)]
+     * then per plan: protocol length command.
+     */
+    private int multiProtocolTagOp(byte[] args)
+    {
+        if (args.length < 3)
+        {
+            return 0;
+        }
+        int timeout = u16(args, 0);
+        int option = args[2] & 0xff;
+        if (option == 0x02)
+        {
+            streaming = false;
+            body.u8(0x02);
+            body.u8(EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE);
+            body.u16(0);
+            return 0;
+        }
+        int i = 3;
+        int metadata = 0;
+        if ((option & 0x10) != 0)
+        {
+            metadata = u16(args, i);
+            i += 2;
+        }
+        int subOpcode = args[i++] & 0xff;
+        int flags = u16(args, i);
+        i += 2;
+        if ((flags & EmbeddedReaderMessage.READ_MULTIPLE_RETURN_ON_N_TAGS) != 0)
+        {
+            i += 4;
+        }
+        if (option == 0x01)
+        {
+            // The first plan's search sets up the stream
+            if (i + 2 < args.length && (args[i + 2] & 0xff) == EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE)
+            {
+                startStreaming(new SearchCommand(args, i + 3));
+            }
+            body.u8(0x01);
+            body.u8(subOpcode);
+            body.u16(flags);
+            return 0;
+        }
+        int status = search(timeout, 0);
+        if (status != 0)
+        {
+            return status;
+        }
+        body.u8(option);
+        body.u16(metadata & SUPPORTED_METADATA);
+        body.u8(subOpcode);
+        body.u32(tagBuffer.size());
+        return 0;
+    }
+
+    private void startStreaming(SearchCommand search)
+    {
+        streaming = true;
+        streamSingulation = search.singulation;
+        streamOption = search.option | EmbeddedReaderMessage.SINGULATION_OPTION_FLAG_METADATA;
+        streamFlags = search.flags;
+        streamMetadata = search.metadata & SUPPORTED_METADATA;
+        onNanos = ((search.timeout != 0) ? search.timeout : DEFAULT_ON_TIME) * 1000000L;
+        offNanos = search.offTime * 1000000L;
+        stopAfter = search.stopAfter;
+        long now = now();
+        cycleStart = now;
+        cycleReads = 0;
+        nextRead = now;
+        timestampBase = now;
+        streamedReads = 0;
+    }
+
+    /**
+     * When the next streamed read or the end of the search cycle is due.
+     */
+    private long nextStreamEvent()
+    {
+        long cycleEnd = cycleStart + onNanos;
+        if (readRate > 0 && tags.length > 0 && nextRead < cycleEnd)
+        {
+            return nextRead;
+        }
+        return cycleEnd;
+    }
+
+    /**
+     * Produce the streamed frames due by the given time. Off real time,
+     * produce a batch of them and move the clock on.
+     */
+    private void streamUntil(long now)
+    {
+        int frames = 0;
+        while (streaming && frames < 64)
+        {
+            long t = nextStreamEvent();
+            if (realTime && t > now)
+            {
+                break;
+            }
+            if (!realTime)
+            {
+                virtualNanos = Math.max(virtualNanos, t);
+            }
+            long cycleEnd = cycleStart + onNanos;
+            if (t < cycleEnd)
+            {
+                streamRead(t);
+                nextRead += (long) (1e9 / readRate);
+            }
+            else
+            {
+                endCycle(cycleEnd);
+            }
+            frames++;
+        }
+        if (realTime)
+        {
+            readyAt = Math.min(readyAt, now);
+        }
+    }
+
+    private void streamRead(long t)
+    {
+        int tag = random.nextInt(tags.length);
+        int antenna = antennas[random.nextInt(antennas.length)];
+        body.reset();
+        streamHeader(streamMetadata);
+        body.u8(0x01); // tag read
+        encodeRead(body, streamMetadata, tag, 1, rssi(), antenna, frequency(),
+                (int) ((t - timestampBase) / 1000000), random.nextInt(180));
+        emit(EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE, 0, body);
+        cycleReads++;
+        streamedReads++;
+        readsGenerated++;
+        if (stopAfter > 0 && streamedReads == stopAfter)
+        {
+            // Stop on N tags: report the count; the host stops the stream
+            body.reset();
+            body.u8(0x01);
+            body.u16(streamFlags);
+            body.u32(streamedReads);
+            emit(EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE, 0, body);
+            nextRead = Long.MAX_VALUE / 2;
+        }
+    }
+
+    private void endCycle(long cycleEnd)
+    {
+        if (cycleReads == 0 && streamSingulation >= 0)
+        {
+            // No tags this cycle: report the time elapsed
+            body.reset();
+            streamHeader(META_TIMESTAMP);
+            body.u8(0x01);
+            body.u32((int) ((cycleEnd - timestampBase) / 1000000));
+            emit(EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE,
+                    EmbeddedReaderMessage.FAULT_NO_TAGS_FOUND, body);
+            timestampBase = cycleEnd;
+        }
+        cycleStart = cycleEnd + offNanos;
+        cycleReads = 0;
+        if (nextRead < cycleStart)
+        {
+            nextRead = cycleStart;
+        }
+        if (fault(Fault.TAG_ID_BUFFER_FULL))
+        {
+            // The module stops reading; the host restarts the stream
+            body.reset();
+            emit(EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE,
+                    EmbeddedReaderMessage.FAULT_TAG_ID_BUFFER_FULL, body);
+            body.reset();
+            body.u8(0x02);
+            body.u8(EmbeddedReaderMessage.MSG_OPCODE_READ_TAG_ID_MULTIPLE);
+            body.u16(0);
+            emit(EmbeddedReaderMessage.MSG_OPCODE_MULTI_PROTOCOL_TAG_OP, 0, body);
+            streaming = false;
+        }
+    }
+
+    private void streamHeader(int metadata)
+    {
+        if (streamSingulation >= 0)
+        {
+            body.u8(streamSingulation);
+        }
+        body.u8(streamOption);
+        body.u16(streamFlags);
+        body.u16(metadata);
+    }
+
+    /**
+     * Queue a response frame for the host.
+     */
+    private void emit(int opcode, int status, Buffer data)
+    {
+        int frameLength = data.length + 7;
+        if (outTail + frameLength > out.length)
+        {
+            System.arraycopy(out, outHead, out, 0, outTail - outHead);
+            outTail -= outHead;
+            outHead = 0;
+            if (outTail + frameLength > out.length)
+            {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, outTail + frameLength));
+            }
+        }
+        int f = outTail;
+        out[f] = (byte) 0xFF;
+        out[f + 1] = (byte) data.length;
+        out[f + 2] = (byte) opcode;
+        out[f + 3] = (byte) (status >> 8);
+        out[f + 4] = (byte) status;
+        System.arraycopy(data.data, 0, out, f + 5, data.length);
+        int crc = SerialReader.calcCrc(out, f + 1, data.length + 4);
+        if (fault(Fault.CRC_ERROR))
+        {
+            crc = ~crc;
+        }
+        out[f + data.length + 5] = (byte) (crc >> 8);
+        out[f + data.length + 6] = (byte) crc;
+        outTail += frameLength;
+    }
+
+    /**
+     * Growable byte array for building response data.
+     */
+    private static final class Buffer
+    {
+        byte[] data = new byte[256];
+        int length;
+
+        void reset()
+        {
+            length = 0;
+        }
+
+        void u8(int v)
+        {
+            if (length == data.length)
+            {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[length++] = (byte) v;
+        }
+
+        void u16(int v)
+        {
+            u8(v >> 8);
+            u8(v);
+        }
+
+        void u32(long v)
+        {
+            u16((int) (v >> 16));
+            u16((int) v);
+        }
+
+        void bytes(byte[] b, int offset, int count)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                u8(b[offset + i]);
+            }
+        }
+
+        byte[] toArray()
+        {
+            return Arrays.copyOf(data, length);
+        }
+    }
+
+    /**
+     * Creates readers on an emulated module for URIs of the form
+     * emu://name?tags=100&amp;rate=5000&amp;antennas=1,2&amp;seed=1&amp;realtime=false,
+     * all of the query parameters being optional. Register it with
+     * Reader.setSerialTransport("emu", new SerialTransportEmulator.Factory()).
+     */
+    static public class Factory implements ReaderFactory
+    {
+        public SerialReader createReader(String uri) throws ReaderException
+        {
+            SerialTransportEmulator emulator = new SerialTransportEmulator();
+            String query;
+            try
+            {
+                query = new URI(uri).getQuery();
+            }
+            catch (Exception ex)
+            {
+                throw new ReaderException("Invalid emulator URI " + uri);
+            }
+            try
+            {
+                if (query != null)
+                {
+                    for (String pair : query.split("&"))
+                    {
+                        int eq = pair.indexOf('=');
+                        String name = (eq < 0) ? pair : pair.substring(0, eq);
+                        String value = (eq < 0) ? "" : pair.substring(eq + 1);
+                        if (name.equals("tags"))
+                        {
+                            emulator.setTagPopulation(Integer.parseInt(value));
+                        }
+                        else if (name.equals("rate"))
+                        {
+                            emulator.setReadRate(Double.parseDouble(value));
+                        }
+                        else if (name.equals("antennas"))
+                        {
+                            String[] ports = value.split(",");
+                            int[] connected = new int[ports.length];
+                            int max = 4;
+                            for (int i = 0; i < ports.length; i++)
+                            {
+                                connected[i] = Integer.parseInt(ports[i].trim());
+                                max = Math.max(max, connected[i]);
+                            }
+                            emulator.setAntennas(max, connected);
+                        }
+                        else if (name.equals("seed"))
+                        {
+                            emulator.setSeed(Long.parseLong(value));
+                        }
+                        else if (name.equals("realtime"))
+                        {
+                            emulator.setRealTime(Boolean.parseBoolean(value));
+                        }
+                        else
+                        {
+                            throw new IllegalArgumentException("Unknown emulator parameter " + name);
+                        }
+                    }
+                }
+            }
+            catch (IllegalArgumentException ex)
+            {
+                // Also a NumberFormatException from a bad number
+                throw new ReaderException("Invalid emulator URI " + uri + ": " + ex.getMessage());
+            }
+            return new SerialReader(uri, emulator);
+        }
+    }
+}
@@ -24,85 +24,249 @@ package com.thingmagic;
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 /**
- *
- * 
+ * Serial transport for modules reachable through a serial-to-Ethernet
+ * bridge. The socket is a non-blocking SocketChannel; reads and writes
+ * wait on a Selector so that timeouts are honoured without polling.
+ * Received data is read in bulk into a direct buffer and handed out to
+ * the caller from there.
  */
-public class SerialTransportTCP implements SerialTransport
+public class SerialTransportTCP implements StreamingSerialTransport
 {
 
-   Socket tcpSocket = null;
-   OutputStream outputStream = null;
-   InputStream inputStream = null;
-   static String tcpURI;
-   
+   private static final int READ_BUFFER_SIZE = 4096;
+
+   private String tcpURI;
+   private boolean tcpNoDelay = true;
+   // Set to null by shutdown(), which may run on another thread
+   private volatile SocketChannel channel = null;
+   // The URI last given to Factory.createReader, for instances made with
+   // the default constructor, which used to share one static URI
+   private static volatile String factoryURI;
+   private Selector readSelector = null;
+   private Selector writeSelector = null;
+   // Kept in "get" mode: position..limit holds bytes not yet handed out
+   private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+   private final Object readLock = new Object();
+   private final Object writeLock = new Object();
+
   public SerialTransportTCP()
    {
-      //default constructor  
+      //default constructor: the URI is the one last passed to
+      //Factory.createReader, unless setURI() is called before open()
+      readBuffer.limit(0);
    }
-    
-    public void open() throws ReaderException 
+
+  public SerialTransportTCP(String uri)
+   {
+      this();
+      tcpURI = uri;
+   }
+
+  public SerialTransportTCP(String uri, boolean tcpNoDelay)
+   {
+      this(uri);
+      this.tcpNoDelay = tcpNoDelay;
+   }
+
+    /**
+     * Set the tcp://host:port URI of the serial-to-Ethernet bridge.
+     * Takes effect on the next open().
+     */
+    public void setURI(String uri)
     {
-        try
+        tcpURI = uri;
+    }
+
+    public String getURI()
+    {
+        return tcpURI;
+    }
+
+    /**
+     * Enable or disable TCP_NODELAY (Nagle's algorithm off) on the socket.
+     * Enabled by default, since module commands are small request/response
+     * frames. Takes effect immediately if the socket is already open.
+     */
+    public void setTcpNoDelay(boolean enable) throws ReaderException
+    {
+        tcpNoDelay = enable;
+        if (channel != null)
         {
-            if(tcpSocket == null)
+            try
             {
-                URI uri = new URI(tcpURI);
-                tcpSocket = new Socket(uri.getHost(),uri.getPort());
-                outputStream = tcpSocket.getOutputStream();
-                inputStream = tcpSocket.getInputStream();
+                channel.socket().setTcpNoDelay(enable);
             }
+            catch (IOException ex)
+            {
+                throw new ReaderCommException(ex.getMessage());
+            }
+        }
+    }
+
+    public boolean getTcpNoDelay()
+    {
+        return tcpNoDelay;
+    }
+
+    public void open() throws ReaderException 
+    {
+        if (channel != null)
+        {
+            return;
+        }
+        if (tcpURI == null)
+        {
+            tcpURI = factoryURI;
+        }
+        if (tcpURI == null)
+        {
+            throw new ReaderCommException("TCP URI is not set");
+        }
+        SocketChannel sc = null;
+        try
+        {
+            URI uri = new URI(tcpURI);
+            sc = SocketChannel.open();
+            sc.socket().setTcpNoDelay(tcpNoDelay);
+            sc.connect(new InetSocketAddress(uri.getHost(), uri.getPort()));
+            sc.configureBlocking(false);
+            readSelector = Selector.open();
+            writeSelector = Selector.open();
+            sc.register(readSelector, SelectionKey.OP_READ);
+            sc.register(writeSelector, SelectionKey.OP_WRITE);
+            channel = sc;
+            readBuffer.clear();
+            readBuffer.limit(0);
         }
         catch(Exception ex)
         {
+            closeQuietly(sc);
             throw new ReaderCommException(ex.getMessage());
         }
     }
 
     public void sendBytes(int length, byte[] message, int offset, int timeoutMs) throws ReaderException {
-       try
+        synchronized (writeLock)
+        {
+            SocketChannel sc = channel;
+            if (sc == null)
+            {
+                throw new ReaderException("TCP Connection lost");
+            }
+            try
+            {
+                ByteBuffer out = ByteBuffer.wrap(message, offset, length);
+                long deadline = System.currentTimeMillis() + timeoutMs;
+                while (out.hasRemaining())
+                {
+                    if (sc.write(out) == 0)
+                    {
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0)
+                        {
+                            throw new ReaderCommException("Timeout");
+                        }
+                        writeSelector.select(remaining);
+                        writeSelector.selectedKeys().clear();
+                    }
+                }
+            }
+            catch (ReaderException ex)
+            {
+                throw ex;
+            }
+            catch(Exception ex)
+            {
+                throw new ReaderCommException(ex.getMessage());
+            }
+        }
+    }
+
+    public byte[] receiveBytes(int length, byte[] messageSpace, int offset, int timeoutMillis) throws ReaderException {
+        synchronized (readLock)
         {
-            if(outputStream == null)
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            int received = 0;
+            while (received < length)
             {
-               throw new ReaderException("TCP Connection lost");
+                if (!readBuffer.hasRemaining())
+                {
+                    fillReadBuffer(deadline);
+                }
+                int n = Math.min(length - received, readBuffer.remaining());
+                readBuffer.get(messageSpace, offset + received, n);
+                received += n;
             }
-            outputStream.write(message, offset, length);
         }
-        catch(Exception ex)
+        return messageSpace;
+    }
+
+    public int receiveAvailable(byte[] messageSpace, int offset, int maxLength, int timeoutMillis) throws ReaderException
+    {
+        synchronized (readLock)
         {
-          throw new ReaderCommException(ex.getMessage());
+            if (!readBuffer.hasRemaining())
+            {
+                fillReadBuffer(System.currentTimeMillis() + timeoutMillis);
+            }
+            int n = Math.min(maxLength, readBuffer.remaining());
+            readBuffer.get(messageSpace, offset, n);
+            return n;
         }
     }
 
-    public byte[] receiveBytes(int length, byte[] messageSpace, int offset, int timeoutMillis) throws ReaderException {
-       
+    /**
+     * Read whatever the socket has into the (empty) read buffer, waiting
+     * until the deadline for at least one byte to arrive.
+     */
+    private void fillReadBuffer(long deadline) throws ReaderException
+    {
+        SocketChannel sc = channel;
+        if (sc == null)
+        {
+            throw new ReaderCommException("TCP Connection lost");
+        }
         try
         {
-            if(inputStream == null)
+            readBuffer.clear();
+            int readLen = sc.read(readBuffer);
+            while (readLen == 0)
             {
-               throw new IOException("TCP Connection lost");
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0)
+                {
+                    break;
+                }
+                readSelector.select(remaining);
+                readSelector.selectedKeys().clear();
+                readLen = sc.read(readBuffer);
             }
-            int responseWaitTime = 0;
-            while (inputStream.available() < length && responseWaitTime <timeoutMillis)
+            readBuffer.flip();
+            if (readLen < 0)
             {
-                Thread.sleep(10);
-                // Repeat the loop for every 10 milli sec untill we receive required
-                // data
-                responseWaitTime+=10;
+                throw new ReaderCommException("TCP Connection lost");
             }
-            if (inputStream.available() <= 0)
+            if (readLen == 0)
             {
-                throw new IOException("Timeout");
+                throw new ReaderCommException("Timeout");
             }
-            inputStream.read(messageSpace, offset, length);
+        }
+        catch (ReaderException ex)
+        {
+            throw ex;
         }
         catch(Exception ex)
         {
-          throw new ReaderCommException(ex.getMessage());
+            readBuffer.limit(0);
+            throw new ReaderCommException(ex.getMessage());
         }
-        return messageSpace;
     }
 
     public int getBaudRate() throws ReaderException
@@ -115,35 +279,59 @@ public class SerialTransportTCP implements SerialTransport
        //TCP socket does not support baudrates, ignore setBaudRate.
     }
 
+    /**
+     * Writes go straight to the socket, so there is no output to flush.
+     * Any input already read ahead into the read buffer is discarded:
+     * SerialReader flushes before it probes or resynchronizes the module,
+     * when it also resets its frame decoder, and stale bytes would be
+     * taken for the start of the answer.
+     */
     public void flush() throws ReaderException
     {
-        try
-        {
-            outputStream.flush();
-        }
-        catch(Exception ex)
+        synchronized (readLock)
         {
-           throw new ReaderCommException(ex.getMessage());
+            readBuffer.clear();
+            readBuffer.limit(0);
         }
     }
 
     public void shutdown() throws ReaderException {
+        SocketChannel sc = channel;
+        channel = null;
+        closeQuietly(sc);
+    }
+
+    private void closeQuietly(SocketChannel sc)
+    {
         try
         {
-            tcpSocket.close();
+            if (readSelector != null)
+            {
+                readSelector.close();
+            }
+            if (writeSelector != null)
+            {
+                writeSelector.close();
+            }
+            if (sc != null)
+            {
+                sc.close();
+            }
         }
         catch (IOException ex) 
         {
 	  LoggerFactory.getLogger(SerialTransportTCP.class).error(null, ex);
         }
+        readSelector = null;
+        writeSelector = null;
     }
 
     static public class Factory implements ReaderFactory
     {
         public SerialReader createReader(String uri) throws ReaderException 
         {
-            tcpURI = uri;
-            return new SerialReader(uri, new SerialTransportTCP());
+            factoryURI = uri;
+            return new SerialReader(uri, new SerialTransportTCP(uri));
         }        
     }
 }
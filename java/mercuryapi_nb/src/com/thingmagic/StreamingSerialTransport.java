@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+/**
+ * A SerialTransport that can hand back whatever bytes are already
+ * available instead of blocking for an exact count. SerialReader uses
+ * this to pull several embedded module frames in a single transport
+ * read; transports that do not implement it are read one header and
+ * one payload at a time, as before.
+ */
+public interface StreamingSerialTransport extends SerialTransport
+{
+  /**
+   * Receive up to maxLength bytes from the serial transport, blocking
+   * only until at least one byte is available.
+   *
+   * @param messageSpace byte array to store the bytes in
+   * @param offset location in messageSpace to store bytes
+   * @param maxLength maximum number of bytes to receive
+   * @param timeoutMillis maximum duration to wait for the first byte
+   * @return the number of bytes stored, always at least one
+   * @throws ReaderCommException if timeoutMillis pass without any byte being received
+   */
+  int receiveAvailable(byte[] messageSpace, int offset, int maxLength, int timeoutMillis)
+    throws ReaderException;
+}
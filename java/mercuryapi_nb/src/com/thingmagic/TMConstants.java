@@ -17,6 +17,7 @@ public final class TMConstants {
     public final static String TMR_PARAM_PROBE_BAUDRATE ="/reader/probeBaudRates";
     public final static String TMR_PARAM_COMMANDTIMEOUT = "/reader/commandTimeout";
     public final static String TMR_PARAM_TRANSPORTTIMEOUT = "/reader/transportTimeout";
+    public final static String TMR_PARAM_COMMAND_STATS_ENABLE = "/reader/commandStats/enable";
     public final static String TMR_PARAM_POWERMODE = "/reader/powerMode";
     public final static String TMR_PARAM_USERMODE = "/reader/userMode";
     public final static String TMR_PARAM_ANTENNA_CHECKPORT = "/reader/antenna/checkPort";
@@ -41,6 +42,10 @@ public final class TMConstants {
     public final static String TMR_PARAM_READ_ASYNCOFFTIME = "/reader/read/asyncOffTime";
     public final static String TMR_PARAM_READ_ASYNCONTIME = "/reader/read/asyncOnTime";
     public final static String TMR_PARAM_READ_PLAN = "/reader/read/plan";
+    public final static String TMR_PARAM_READ_DISPATCH_CAPACITY = "/reader/read/dispatchCapacity";
+    public final static String TMR_PARAM_READ_DISPATCH_OVERFLOWPOLICY = "/reader/read/dispatchOverflowPolicy";
+    public final static String TMR_PARAM_READ_LISTENER_DISPATCH = "/reader/read/listenerDispatch";
+    public final static String TMR_PARAM_LLRP_REPORTPOLICY = "/reader/llrp/reportPolicy";
     public final static String TMR_PARAM_RADIO_POWERMAX = "/reader/radio/powerMax";
     public final static String TMR_PARAM_RADIO_POWERMIN = "/reader/radio/powerMin";
     public final static String TMR_PARAM_RADIO_PORTREADPOWERLIST = "/reader/radio/portReadPowerList";
@@ -31,6 +31,9 @@ public class TagData implements TagFilter
   final byte epc[];
   final byte crc[];
   final int hash;
+  // Computed on first use; racy publication is harmless as both are immutable
+  private String epcHex;
+  private EpcKey epcKey;
 
   // Non-public empty constructor
   TagData()
@@ -143,7 +146,13 @@ public class TagData implements TagFilter
     ret = new byte[len / 2];
     for (int i = 0; i < len; i+=2)
     {
-      ret[i/2] = (byte)Integer.parseInt(s.substring(i, i + 2), 16);
+      int high = ReaderUtil.hexDigit(s.charAt(i));
+      int low = ReaderUtil.hexDigit(s.charAt(i + 1));
+      if (high < 0 || low < 0)
+      {
+        throw new NumberFormatException("For input string: \"" + s.substring(i, i + 2) + "\"");
+      }
+      ret[i/2] = (byte)((high << 4) | low);
     }
 
     return ret;
@@ -156,13 +165,29 @@ public class TagData implements TagFilter
    */
   public String epcString()
   {
-    StringBuilder sb = new StringBuilder(epc.length * 2);
+    String hex = epcHex;
+    if (hex == null)
+    {
+      hex = ReaderUtil.toHex(epc, 0, epc.length);
+      epcHex = hex;
+    }
+    return hex;
+  }
 
-    for (int i = 0; i < epc.length; i++)
+  /**
+   * Returns a compact key for this tag's EPC, for use in maps and sets.
+   *
+   * @return the EPC key
+   */
+  public EpcKey epcKey()
+  {
+    EpcKey key = epcKey;
+    if (key == null)
     {
-      sb.append(String.format("%02X", (epc[i] & 0xff)));
+      key = EpcKey.of(epc);
+      epcKey = key;
     }
-    return new String(sb);
+    return key;
   }
 
   /**
@@ -0,0 +1,502 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded queue between the thread that receives tag reads from the reader
+ * and the thread that delivers them to the ReadListeners. When the queue is
+ * full, the configured OverflowPolicy decides whether the producer waits or
+ * which read is given up, so that a slow listener cannot hold up reception.
+ */
+public class TagDispatchQueue extends AbstractQueue<TagReadData>
+  implements BlockingQueue<TagReadData>
+{
+  /**
+   * What to do with a tag read that arrives while the queue is full
+   */
+  public enum OverflowPolicy
+  {
+    /** Wait for the listeners to catch up */ BLOCK,
+    /** Discard the oldest queued read to make room */ DROP_OLDEST,
+    /** Discard the incoming read */ DROP_NEWEST,
+    /**
+     * Replace a queued read of the same EPC with the incoming one, adding
+     * up the read counts. This applies whether or not the queue is full;
+     * an incoming read of a new EPC is discarded when the queue is full.
+     */
+    COALESCE_BY_EPC
+  }
+
+  /**
+   * Snapshot of the queue counters
+   */
+  public static class Stats
+  {
+    /** Reads accepted into the queue */
+    public final long enqueued;
+    /**
+     * Reads discarded by DROP_OLDEST, DROP_NEWEST or COALESCE_BY_EPC, or
+     * under BLOCK by a ReaderFleet pool thread that could not wait
+     */
+    public final long dropped;
+    /** Reads merged into a queued read of the same EPC */
+    public final long coalesced;
+    /** Reads currently waiting for delivery */
+    public final int depth;
+    /** Largest depth seen */
+    public final int highWaterMark;
+    /** Configured capacity */
+    public final int capacity;
+
+    Stats(long enqueued, long dropped, long coalesced, int depth,
+          int highWaterMark, int capacity)
+    {
+      this.enqueued = enqueued;
+      this.dropped = dropped;
+      this.coalesced = coalesced;
+      this.depth = depth;
+      this.highWaterMark = highWaterMark;
+      this.capacity = capacity;
+    }
+
+    @Override
+    public String toString()
+    {
+      return "enqueued=" + enqueued + " dropped=" + dropped
+        + " coalesced=" + coalesced + " depth=" + depth
+        + " highWaterMark=" + highWaterMark + " capacity=" + capacity;
+    }
+  }
+
+  private static final int INITIAL_SLOTS = 64;
+
+  // Private monitor: Reader synchronizes on the queue object itself to
+  // wait for the notifier to go idle, and must not be woken by us.
+  private final Object lock = new Object();
+  private TagReadData[] items;
+  private int head;
+  private int count;
+  // Sequence number of the read at head, used to find coalesced reads
+  private long headSeq;
+  private final Map<EpcKey, Long> queuedEpcs = new HashMap<EpcKey, Long>();
+  private int capacity;
+  private OverflowPolicy policy;
+
+  private long enqueued;
+  private long dropped;
+  private long coalesced;
+  private int highWaterMark;
+
+  public TagDispatchQueue(int capacity, OverflowPolicy policy)
+  {
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("Dispatch queue capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.policy = policy;
+    items = new TagReadData[Math.min(capacity, INITIAL_SLOTS)];
+  }
+
+  public int getCapacity()
+  {
+    synchronized (lock)
+    {
+      return capacity;
+    }
+  }
+
+  /**
+   * Change the capacity. Reads already queued beyond a reduced capacity
+   * are kept and delivered.
+   */
+  public void setCapacity(int capacity)
+  {
+    if (capacity < 1)
+    {
+      throw new IllegalArgumentException("Dispatch queue capacity must be positive: " + capacity);
+    }
+    synchronized (lock)
+    {
+      this.capacity = capacity;
+      lock.notifyAll();
+    }
+  }
+
+  public OverflowPolicy getOverflowPolicy()
+  {
+    synchronized (lock)
+    {
+      return policy;
+    }
+  }
+
+  public void setOverflowPolicy(OverflowPolicy policy)
+  {
+    if (policy == null)
+    {
+      throw new IllegalArgumentException("Overflow policy must not be null");
+    }
+    synchronized (lock)
+    {
+      this.policy = policy;
+      if (policy != OverflowPolicy.COALESCE_BY_EPC)
+      {
+        queuedEpcs.clear();
+      }
+      lock.notifyAll();
+    }
+  }
+
+  public Stats getStats()
+  {
+    synchronized (lock)
+    {
+      return new Stats(enqueued, dropped, coalesced, count, highWaterMark, capacity);
+    }
+  }
+
+  /**
+   * Clear the enqueued, dropped and coalesced counters and restart the
+   * high water mark from the current depth.
+   */
+  public void resetStats()
+  {
+    synchronized (lock)
+    {
+      enqueued = 0;
+      dropped = 0;
+      coalesced = 0;
+      highWaterMark = count;
+    }
+  }
+
+  /**
+   * Queue a tag read, waiting for room only under the BLOCK policy.
+   */
+  public void put(TagReadData t) throws InterruptedException
+  {
+    checkNotNull(t);
+    synchronized (lock)
+    {
+      while (count >= capacity && policy == OverflowPolicy.BLOCK)
+      {
+        lock.wait();
+      }
+      insert(t);
+    }
+  }
+
+  /**
+   * Queue a tag read without waiting. Under the BLOCK policy a full
+   * queue rejects the read; the other policies always accept it.
+   *
+   * @return false if the read was rejected
+   */
+  public boolean offer(TagReadData t)
+  {
+    checkNotNull(t);
+    synchronized (lock)
+    {
+      if (count >= capacity && policy == OverflowPolicy.BLOCK)
+      {
+        return false;
+      }
+      insert(t);
+      return true;
+    }
+  }
+
+  /**
+   * Queue a tag read without waiting, for a thread that must not be held
+   * up. Under the BLOCK policy a full queue discards the read and counts
+   * it as dropped.
+   *
+   * @return false if the read was discarded
+   */
+  boolean offerOrDrop(TagReadData t)
+  {
+    checkNotNull(t);
+    synchronized (lock)
+    {
+      if (count >= capacity && policy == OverflowPolicy.BLOCK)
+      {
+        dropped++;
+        return false;
+      }
+      insert(t);
+      return true;
+    }
+  }
+
+  public boolean offer(TagReadData t, long timeout, TimeUnit unit)
+    throws InterruptedException
+  {
+    checkNotNull(t);
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (lock)
+    {
+      while (count >= capacity && policy == OverflowPolicy.BLOCK)
+      {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+        {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+      }
+      insert(t);
+      return true;
+    }
+  }
+
+  public TagReadData take() throws InterruptedException
+  {
+    synchronized (lock)
+    {
+      while (count == 0)
+      {
+        lock.wait();
+      }
+      return removeHead();
+    }
+  }
+
+  public TagReadData poll()
+  {
+    synchronized (lock)
+    {
+      return (count == 0) ? null : removeHead();
+    }
+  }
+
+  public TagReadData poll(long timeout, TimeUnit unit) throws InterruptedException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    synchronized (lock)
+    {
+      while (count == 0)
+      {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0)
+        {
+          return null;
+        }
+        TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+      }
+      return removeHead();
+    }
+  }
+
+  public TagReadData peek()
+  {
+    synchronized (lock)
+    {
+      return (count == 0) ? null : items[head];
+    }
+  }
+
+  public int size()
+  {
+    synchronized (lock)
+    {
+      return count;
+    }
+  }
+
+  public int remainingCapacity()
+  {
+    synchronized (lock)
+    {
+      return Math.max(0, capacity - count);
+    }
+  }
+
+  public int drainTo(Collection<? super TagReadData> c)
+  {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  public int drainTo(Collection<? super TagReadData> c, int maxElements)
+  {
+    if (c == this)
+    {
+      throw new IllegalArgumentException();
+    }
+    synchronized (lock)
+    {
+      int n = 0;
+      while (count > 0 && n < maxElements)
+      {
+        c.add(removeHead());
+        n++;
+      }
+      return n;
+    }
+  }
+
+  /**
+   * Iterate over a snapshot of the queued reads. The iterator does not
+   * support removal.
+   */
+  public Iterator<TagReadData> iterator()
+  {
+    List<TagReadData> snapshot;
+    synchronized (lock)
+    {
+      snapshot = new ArrayList<TagReadData>(count);
+      for (int i = 0; i < count; i++)
+      {
+        snapshot.add(items[(head + i) % items.length]);
+      }
+    }
+    final Iterator<TagReadData> it = snapshot.iterator();
+    return new Iterator<TagReadData>()
+    {
+      public boolean hasNext()
+      {
+        return it.hasNext();
+      }
+
+      public TagReadData next()
+      {
+        return it.next();
+      }
+
+      public void remove()
+      {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  // Caller holds lock
+  private void insert(TagReadData t)
+  {
+    EpcKey epc = null;
+    if (policy == OverflowPolicy.COALESCE_BY_EPC && t.tag != null)
+    {
+      epc = t.epcKey();
+      Long seq = queuedEpcs.get(epc);
+      if (seq != null)
+      {
+        int slot = slotOf(seq);
+        TagReadData old = items[slot];
+        t.readCount += old.readCount;
+        items[slot] = t;
+        coalesced++;
+        return;
+      }
+    }
+    if (count >= capacity)
+    {
+      if (policy == OverflowPolicy.DROP_OLDEST)
+      {
+        removeHead();
+        dropped++;
+      }
+      else
+      {
+        // DROP_NEWEST, or COALESCE_BY_EPC with no queued read to merge into
+        dropped++;
+        return;
+      }
+    }
+    if (count == items.length)
+    {
+      grow();
+    }
+    long seq = headSeq + count;
+    items[(head + count) % items.length] = t;
+    count++;
+    enqueued++;
+    if (epc != null)
+    {
+      queuedEpcs.put(epc, seq);
+    }
+    if (count > highWaterMark)
+    {
+      highWaterMark = count;
+    }
+    if (count == 1)
+    {
+      lock.notifyAll();
+    }
+  }
+
+  // Caller holds lock and has checked count > 0
+  private TagReadData removeHead()
+  {
+    TagReadData t = items[head];
+    items[head] = null;
+    if (!queuedEpcs.isEmpty() && t.tag != null)
+    {
+      EpcKey epc = t.epcKey();
+      Long seq = queuedEpcs.get(epc);
+      if (seq != null && seq == headSeq)
+      {
+        queuedEpcs.remove(epc);
+      }
+    }
+    head = (head + 1) % items.length;
+    headSeq++;
+    count--;
+    // Wake producers waiting for room under BLOCK
+    lock.notifyAll();
+    return t;
+  }
+
+  private int slotOf(long seq)
+  {
+    return (head + (int)(seq - headSeq)) % items.length;
+  }
+
+  private void grow()
+  {
+    int size = (int)Math.min((long)items.length * 2, Math.max(capacity, items.length + 1));
+    TagReadData[] grown = new TagReadData[size];
+    for (int i = 0; i < count; i++)
+    {
+      grown[i] = items[(head + i) % items.length];
+    }
+    items = grown;
+    head = 0;
+  }
+
+  private static void checkNotNull(TagReadData t)
+  {
+    if (t == null)
+    {
+      throw new NullPointerException();
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a TagPresenceTracker knows of one tag: when it was first and last
+ * read, how often, and how strongly, overall and on each antenna. Times
+ * are host times in milliseconds since the epoch. Instances of this
+ * class are immutable snapshots.
+ */
+public final class TagPresence
+{
+  /**
+   * The presence of a tag on one antenna
+   */
+  public static final class Antenna
+  {
+    private final int antenna;
+    private final long firstSeen;
+    private final long lastSeen;
+    private final long readCount;
+    private final int bestRssi;
+    private final int lastRssi;
+
+    Antenna(int antenna, long firstSeen, long lastSeen, long readCount,
+            int bestRssi, int lastRssi)
+    {
+      this.antenna = antenna;
+      this.firstSeen = firstSeen;
+      this.lastSeen = lastSeen;
+      this.readCount = readCount;
+      this.bestRssi = bestRssi;
+      this.lastRssi = lastRssi;
+    }
+
+    public int getAntenna()
+    {
+      return antenna;
+    }
+
+    public long getFirstSeen()
+    {
+      return firstSeen;
+    }
+
+    public long getLastSeen()
+    {
+      return lastSeen;
+    }
+
+    public long getReadCount()
+    {
+      return readCount;
+    }
+
+    /**
+     * Returns the strongest RSSI the tag was read with on this antenna.
+     */
+    public int getBestRssi()
+    {
+      return bestRssi;
+    }
+
+    public int getLastRssi()
+    {
+      return lastRssi;
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format("ant:%d reads:%d rssi:%d/%d", antenna, readCount,
+                           lastRssi, bestRssi);
+    }
+  }
+
+  private final EpcKey epc;
+  private final TagData tag;
+  private final long firstSeen;
+  private final long lastSeen;
+  private final long readCount;
+  private final int bestRssi;
+  private final int lastRssi;
+  private final int lastAntenna;
+  private final List<Antenna> antennas;
+
+  TagPresence(EpcKey epc, TagData tag, long firstSeen, long lastSeen,
+              long readCount, int bestRssi, int lastRssi, int lastAntenna,
+              List<Antenna> antennas)
+  {
+    this.epc = epc;
+    this.tag = tag;
+    this.firstSeen = firstSeen;
+    this.lastSeen = lastSeen;
+    this.readCount = readCount;
+    this.bestRssi = bestRssi;
+    this.lastRssi = lastRssi;
+    this.lastAntenna = lastAntenna;
+    this.antennas = Collections.unmodifiableList(antennas);
+  }
+
+  public EpcKey getEpc()
+  {
+    return epc;
+  }
+
+  /**
+   * Returns the tag as it was last read.
+   */
+  public TagData getTag()
+  {
+    return tag;
+  }
+
+  public long getFirstSeen()
+  {
+    return firstSeen;
+  }
+
+  public long getLastSeen()
+  {
+    return lastSeen;
+  }
+
+  /**
+   * Returns how long the tag has been present, from its first read to
+   * its last.
+   */
+  public long getDwellTime()
+  {
+    return lastSeen - firstSeen;
+  }
+
+  public long getReadCount()
+  {
+    return readCount;
+  }
+
+  /**
+   * Returns the strongest RSSI the tag was read with on any antenna.
+   */
+  public int getBestRssi()
+  {
+    return bestRssi;
+  }
+
+  public int getLastRssi()
+  {
+    return lastRssi;
+  }
+
+  /**
+   * Returns the antenna of the most recent read.
+   */
+  public int getLastAntenna()
+  {
+    return lastAntenna;
+  }
+
+  /**
+   * Returns the tag's presence on each antenna that read it, in the order
+   * the antennas first read it.
+   */
+  public List<Antenna> getAntennas()
+  {
+    return antennas;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("EPC:%s reads:%d rssi:%d/%d dwell:%dms ant:%d",
+                         epc, readCount, lastRssi, bestRssi, getDwellTime(),
+                         lastAntenna);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+/**
+ * A change in a tag's presence, raised by a TagPresenceTracker.
+ * Instances of this class are immutable.
+ */
+public final class TagPresenceEvent
+{
+  public enum Type
+  {
+    /** The tag was read and was not being tracked */ ENTER,
+    /** The tag is still present after another dwell interval */ DWELL,
+    /** The tag has not been read for the absence timeout */ EXIT
+  }
+
+  private final Type type;
+  private final TagPresence presence;
+  private final long time;
+
+  TagPresenceEvent(Type type, TagPresence presence, long time)
+  {
+    this.type = type;
+    this.presence = presence;
+    this.time = time;
+  }
+
+  public Type getType()
+  {
+    return type;
+  }
+
+  /**
+   * Returns the tag's presence as of this event.
+   */
+  public TagPresence getPresence()
+  {
+    return presence;
+  }
+
+  /**
+   * Returns when the event was raised, in milliseconds since the epoch.
+   */
+  public long getTime()
+  {
+    return time;
+  }
+
+  @Override
+  public String toString()
+  {
+    return type + " " + presence;
+  }
+}
@@ -0,0 +1,455 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks which tags are in the field. Register the tracker as a
+ * ReadListener on one or more readers; it keeps, per EPC and per antenna,
+ * when the tag was first and last read, how often, and its best and last
+ * RSSI, and tells its TagPresenceListeners when a tag enters the field,
+ * keeps dwelling in it, and leaves it.
+ *
+ * A tag leaves when it has not been read for the absence timeout. The
+ * timeout must exceed the longest gap between reads of a present tag,
+ * such as the off time between background read cycles.
+ *
+ * Deadlines are kept on a timing wheel: each tick looks only at the tags
+ * whose deadline falls in that tick's slot, and a read just records the
+ * time, so the work does not grow with the number of tags in view. A tag
+ * that is read again before its deadline is moved to its new slot when
+ * the old one comes round, which happens at most once per absence
+ * timeout or dwell interval.
+ *
+ * ENTER events are raised on the thread that delivered the read, DWELL
+ * and EXIT events on the thread that runs the ticks. Listeners are called
+ * without the tracker's lock held.
+ */
+public final class TagPresenceTracker implements ReadListener
+{
+  public static final long DEFAULT_TICK_MILLIS = 100;
+  private static final int WHEEL_SLOTS = 512;
+  private static final int INITIAL_TAGS = 1024;
+
+  private final long absenceTimeout;
+  private final long dwellInterval;
+  private final long tickMillis;
+  private final List<TagPresenceListener> listeners =
+    new CopyOnWriteArrayList<TagPresenceListener>();
+
+  // Guarded by this
+  private final Map<EpcKey, Entry> tags = new HashMap<EpcKey, Entry>(INITIAL_TAGS);
+  private final Entry[] wheel = new Entry[WHEEL_SLOTS];
+  private long lastTick;
+
+  private Thread tickThread;
+  private ScheduledFuture<?> scheduledTicks;
+
+  /**
+   * Track tags with no DWELL events and the default tick.
+   *
+   * @param absenceTimeoutMillis how long a tag may go unread before it
+   * is considered gone
+   */
+  public TagPresenceTracker(long absenceTimeoutMillis)
+  {
+    this(absenceTimeoutMillis, 0, DEFAULT_TICK_MILLIS);
+  }
+
+  /**
+   * @param absenceTimeoutMillis how long a tag may go unread before it
+   * is considered gone
+   * @param dwellIntervalMillis how often a DWELL event is raised for a
+   * present tag, or 0 for never
+   * @param tickMillis resolution of the timeouts
+   */
+  public TagPresenceTracker(long absenceTimeoutMillis, long dwellIntervalMillis,
+                            long tickMillis)
+  {
+    if (absenceTimeoutMillis <= 0 || tickMillis <= 0 || dwellIntervalMillis < 0)
+    {
+      throw new IllegalArgumentException("Invalid presence timing: absence "
+        + absenceTimeoutMillis + " ms, dwell " + dwellIntervalMillis
+        + " ms, tick " + tickMillis + " ms");
+    }
+    this.absenceTimeout = absenceTimeoutMillis;
+    this.dwellInterval = dwellIntervalMillis;
+    this.tickMillis = tickMillis;
+    this.lastTick = System.currentTimeMillis() / tickMillis;
+  }
+
+  public void addPresenceListener(TagPresenceListener listener)
+  {
+    listeners.add(listener);
+  }
+
+  public void removePresenceListener(TagPresenceListener listener)
+  {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Start raising DWELL and EXIT events from a daemon thread of the
+   * tracker's own.
+   */
+  public synchronized void start()
+  {
+    if (tickThread != null || scheduledTicks != null)
+    {
+      return;
+    }
+    tickThread = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        try
+        {
+          while (true)
+          {
+            Thread.sleep(tickMillis);
+            advance(System.currentTimeMillis());
+          }
+        }
+        catch (InterruptedException ie)
+        {
+          // stop() uses interrupt() to end the thread
+        }
+      }
+    }, "presence tracker");
+    tickThread.setDaemon(true);
+    tickThread.start();
+  }
+
+  /**
+   * Start raising DWELL and EXIT events from tasks on a scheduler, such
+   * as one shared with other trackers.
+   */
+  public synchronized void start(ScheduledExecutorService scheduler)
+  {
+    if (tickThread != null || scheduledTicks != null)
+    {
+      return;
+    }
+    scheduledTicks = scheduler.scheduleAtFixedRate(new Runnable()
+    {
+      public void run()
+      {
+        advance(System.currentTimeMillis());
+      }
+    }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stop raising DWELL and EXIT events. The tags being tracked are kept.
+   */
+  public synchronized void stop()
+  {
+    if (tickThread != null)
+    {
+      tickThread.interrupt();
+      tickThread = null;
+    }
+    if (scheduledTicks != null)
+    {
+      scheduledTicks.cancel(false);
+      scheduledTicks = null;
+    }
+  }
+
+  public void tagRead(Reader r, TagReadData t)
+  {
+    if (t.tag == null)
+    {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    TagPresenceEvent enter = null;
+    synchronized (this)
+    {
+      EpcKey epc = t.epcKey();
+      Entry e = tags.get(epc);
+      if (e == null)
+      {
+        e = new Entry(epc, now);
+        tags.put(epc, e);
+        e.update(t, now);
+        schedule(e);
+        enter = new TagPresenceEvent(TagPresenceEvent.Type.ENTER, e.snapshot(), now);
+      }
+      else
+      {
+        e.update(t, now);
+      }
+    }
+    if (enter != null)
+    {
+      notifyListeners(enter);
+    }
+  }
+
+  /**
+   * Returns the number of tags present.
+   */
+  public synchronized int size()
+  {
+    return tags.size();
+  }
+
+  /**
+   * Returns the presence of a tag, or null if it is not present.
+   */
+  public synchronized TagPresence getPresence(EpcKey epc)
+  {
+    Entry e = tags.get(epc);
+    return (e == null) ? null : e.snapshot();
+  }
+
+  /**
+   * Returns the presence of every tag present.
+   */
+  public synchronized List<TagPresence> getPresent()
+  {
+    List<TagPresence> present = new ArrayList<TagPresence>(tags.size());
+    for (Entry e : tags.values())
+    {
+      present.add(e.snapshot());
+    }
+    return present;
+  }
+
+  /**
+   * Forget every tag without raising EXIT events.
+   */
+  public synchronized void clear()
+  {
+    tags.clear();
+    for (int i = 0; i < wheel.length; i++)
+    {
+      wheel[i] = null;
+    }
+  }
+
+  /**
+   * Process the wheel slots of every tick up to the given time, raising
+   * the DWELL and EXIT events that have come due.
+   */
+  void advance(long now)
+  {
+    List<TagPresenceEvent> events = null;
+    synchronized (this)
+    {
+      long tick = now / tickMillis;
+      // After a stall longer than the wheel, one turn visits every slot
+      long first = Math.max(lastTick + 1, tick - WHEEL_SLOTS + 1);
+      lastTick = tick;
+      for (long t = first; t <= tick; t++)
+      {
+        int slot = (int)(t & (WHEEL_SLOTS - 1));
+        Entry e = wheel[slot];
+        wheel[slot] = null;
+        while (e != null)
+        {
+          Entry next = e.next;
+          e.next = null;
+          events = expire(e, now, events);
+          e = next;
+        }
+      }
+    }
+    if (events != null)
+    {
+      for (TagPresenceEvent event : events)
+      {
+        notifyListeners(event);
+      }
+    }
+  }
+
+  // Caller holds the lock
+  private List<TagPresenceEvent> expire(Entry e, long now, List<TagPresenceEvent> events)
+  {
+    long exit = e.lastSeen + absenceTimeout;
+    if (exit <= now)
+    {
+      tags.remove(e.epc);
+      return add(events, new TagPresenceEvent(TagPresenceEvent.Type.EXIT, e.snapshot(), now));
+    }
+    if (dwellInterval > 0 && e.nextDwell <= now)
+    {
+      events = add(events, new TagPresenceEvent(TagPresenceEvent.Type.DWELL, e.snapshot(), now));
+      while (e.nextDwell <= now)
+      {
+        e.nextDwell += dwellInterval;
+      }
+    }
+    schedule(e);
+    return events;
+  }
+
+  private static List<TagPresenceEvent> add(List<TagPresenceEvent> events, TagPresenceEvent event)
+  {
+    if (events == null)
+    {
+      events = new ArrayList<TagPresenceEvent>();
+    }
+    events.add(event);
+    return events;
+  }
+
+  /**
+   * Put an entry in the slot of its next deadline. A deadline beyond one
+   * turn of the wheel lands in a slot that comes round early; the entry is
+   * then just put back.
+   */
+  // Caller holds the lock
+  private void schedule(Entry e)
+  {
+    long deadline = e.lastSeen + absenceTimeout;
+    if (dwellInterval > 0 && e.nextDwell < deadline)
+    {
+      deadline = e.nextDwell;
+    }
+    long tick = Math.max((deadline + tickMillis - 1) / tickMillis, lastTick + 1);
+    int slot = (int)(tick & (WHEEL_SLOTS - 1));
+    e.next = wheel[slot];
+    wheel[slot] = e;
+  }
+
+  private void notifyListeners(TagPresenceEvent event)
+  {
+    for (TagPresenceListener l : listeners)
+    {
+      l.presenceEvent(this, event);
+    }
+  }
+
+  /**
+   * The tracked state of one tag, linked into a wheel slot
+   */
+  private final class Entry
+  {
+    final EpcKey epc;
+    TagData tag;
+    final long firstSeen;
+    long lastSeen;
+    long readCount;
+    int bestRssi = Integer.MIN_VALUE;
+    int lastRssi;
+    int lastAntenna;
+    long nextDwell;
+    AntennaStats[] antennas = new AntennaStats[1];
+    int antennaCount;
+    Entry next;
+
+    Entry(EpcKey epc, long now)
+    {
+      this.epc = epc;
+      this.firstSeen = now;
+      this.nextDwell = now + dwellInterval;
+    }
+
+    void update(TagReadData t, long now)
+    {
+      int count = Math.max(1, t.getReadCount());
+      int rssi = t.getRssi();
+      int antenna = t.getAntenna();
+      tag = t.tag;
+      lastSeen = now;
+      readCount += count;
+      lastRssi = rssi;
+      lastAntenna = antenna;
+      if (rssi > bestRssi)
+      {
+        bestRssi = rssi;
+      }
+      antenna(antenna, now).update(count, rssi, now);
+    }
+
+    private AntennaStats antenna(int antenna, long now)
+    {
+      for (int i = 0; i < antennaCount; i++)
+      {
+        if (antennas[i].antenna == antenna)
+        {
+          return antennas[i];
+        }
+      }
+      if (antennaCount == antennas.length)
+      {
+        AntennaStats[] grown = new AntennaStats[antennas.length * 2];
+        System.arraycopy(antennas, 0, grown, 0, antennaCount);
+        antennas = grown;
+      }
+      AntennaStats a = new AntennaStats(antenna, now);
+      antennas[antennaCount++] = a;
+      return a;
+    }
+
+    TagPresence snapshot()
+    {
+      List<TagPresence.Antenna> perAntenna = new ArrayList<TagPresence.Antenna>(antennaCount);
+      for (int i = 0; i < antennaCount; i++)
+      {
+        AntennaStats a = antennas[i];
+        perAntenna.add(new TagPresence.Antenna(a.antenna, a.firstSeen, a.lastSeen,
+                                               a.readCount, a.bestRssi, a.lastRssi));
+      }
+      return new TagPresence(epc, tag, firstSeen, lastSeen, readCount, bestRssi,
+                             lastRssi, lastAntenna, perAntenna);
+    }
+  }
+
+  private static final class AntennaStats
+  {
+    final int antenna;
+    final long firstSeen;
+    long lastSeen;
+    long readCount;
+    int bestRssi = Integer.MIN_VALUE;
+    int lastRssi;
+
+    AntennaStats(int antenna, long now)
+    {
+      this.antenna = antenna;
+      this.firstSeen = now;
+    }
+
+    void update(int count, int rssi, long now)
+    {
+      lastSeen = now;
+      readCount += count;
+      lastRssi = rssi;
+      if (rssi > bestRssi)
+      {
+        bestRssi = rssi;
+      }
+    }
+  }
+}
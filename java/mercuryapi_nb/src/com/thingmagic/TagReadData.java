@@ -131,6 +131,16 @@ public class TagReadData
     return tag.epcString();
   }
 
+  /**
+   * Returns a compact key for the read tag's EPC, for use in maps and sets.
+   *
+   * @return the EPC key
+   */
+  public EpcKey epcKey()
+  {
+    return tag.epcKey();
+  }
+
   /**
    * Return the identity of the antenna on the reader that read the tag.
    *
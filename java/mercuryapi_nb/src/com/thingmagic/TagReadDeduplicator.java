@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges repeated reads of the same tag within one read cycle.
+ *
+ * Reads are identical when their EPC bytes match and, depending on the
+ * configuration, their antenna, tag data and protocol. EPCs are hashed
+ * with the hash TagData computes when it is built and compared as bytes,
+ * so de-duplication allocates nothing per read, and the hash table is an
+ * open-addressing table that is kept and reused between cycles.
+ * The first read of each tag keeps its position in the list; later reads
+ * add their read count to it, or replace it if recordHighestRssi is set and
+ * they have a higher RSSI.
+ *
+ * An instance is not meant to be shared by concurrent read cycles; calls
+ * are serialized. Readers whose settings can change during a read pass
+ * them with each cycle, so that one cycle is never split between two
+ * configurations.
+ */
+final class TagReadDeduplicator
+{
+  private boolean uniqueByAntenna;
+  private boolean uniqueByData;
+  private boolean uniqueByProtocol;
+  private boolean recordHighestRssi;
+
+  // Open-addressing table of (index into unique + 1), 0 marks an empty slot
+  private int[] slots = new int[256];
+  private int[] slotHashes = new int[256];
+  private final ArrayList<TagReadData> unique = new ArrayList<TagReadData>();
+
+  TagReadDeduplicator()
+  {
+  }
+
+  TagReadDeduplicator(boolean uniqueByAntenna, boolean uniqueByData,
+                      boolean uniqueByProtocol, boolean recordHighestRssi)
+  {
+    configure(uniqueByAntenna, uniqueByData, uniqueByProtocol, recordHighestRssi);
+  }
+
+  synchronized void configure(boolean uniqueByAntenna, boolean uniqueByData,
+                              boolean uniqueByProtocol, boolean recordHighestRssi)
+  {
+    this.uniqueByAntenna = uniqueByAntenna;
+    this.uniqueByData = uniqueByData;
+    this.uniqueByProtocol = uniqueByProtocol;
+    this.recordHighestRssi = recordHighestRssi;
+  }
+
+  /**
+   * Configure and de-duplicate as one step.
+   */
+  synchronized void removeDuplicates(List<TagReadData> tagvec,
+                                     boolean uniqueByAntenna, boolean uniqueByData,
+                                     boolean uniqueByProtocol, boolean recordHighestRssi)
+  {
+    configure(uniqueByAntenna, uniqueByData, uniqueByProtocol, recordHighestRssi);
+    removeDuplicates(tagvec);
+  }
+
+  /**
+   * Replace the contents of tagvec with one merged read per unique tag.
+   * Null entries are dropped.
+   */
+  synchronized void removeDuplicates(List<TagReadData> tagvec)
+  {
+    int n = tagvec.size();
+    if (n == 0)
+    {
+      return;
+    }
+    int capacity = slots.length;
+    while (capacity < n * 2)
+    {
+      capacity <<= 1;
+    }
+    if (capacity != slots.length)
+    {
+      slots = new int[capacity];
+      slotHashes = new int[capacity];
+    }
+    else
+    {
+      Arrays.fill(slots, 0);
+    }
+    int mask = capacity - 1;
+    unique.clear();
+
+    for (TagReadData tag : tagvec)
+    {
+      if (null == tag)
+      {
+        continue;
+      }
+      if (tag.tag == null || tag.tag.epc == null)
+      {
+        // Nothing to match on, keep the read as it is
+        unique.add(tag);
+        continue;
+      }
+      int h = hash(tag);
+      int i = h & mask;
+      while (true)
+      {
+        int entry = slots[i];
+        if (entry == 0)
+        {
+          unique.add(tag);
+          slots[i] = unique.size();
+          slotHashes[i] = h;
+          break;
+        }
+        if (slotHashes[i] == h)
+        {
+          TagReadData seen = unique.get(entry - 1);
+          if (sameTag(seen, tag))
+          {
+            int count = seen.readCount + tag.readCount;
+            if (recordHighestRssi && tag.rssi > seen.rssi)
+            {
+              unique.set(entry - 1, tag);
+              seen = tag;
+            }
+            seen.readCount = count;
+            break;
+          }
+        }
+        i = (i + 1) & mask;
+      }
+    }
+    tagvec.clear();
+    tagvec.addAll(unique);
+    unique.clear();
+  }
+
+  private int hash(TagReadData t)
+  {
+    int h = t.tag.hash;
+    if (uniqueByAntenna)
+    {
+      h = 31 * h + t.antenna;
+    }
+    if (uniqueByData)
+    {
+      h = 31 * h + Arrays.hashCode(t.data);
+    }
+    if (uniqueByProtocol)
+    {
+      h = 31 * h + t.tag.getProtocol().ordinal();
+    }
+    // Spread the bits, the table index uses the low ones
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h;
+  }
+
+  private boolean sameTag(TagReadData a, TagReadData b)
+  {
+    if (a.tag.hash != b.tag.hash || !Arrays.equals(a.tag.epc, b.tag.epc))
+    {
+      return false;
+    }
+    if (uniqueByAntenna && a.antenna != b.antenna)
+    {
+      return false;
+    }
+    if (uniqueByData && !Arrays.equals(a.data, b.data))
+    {
+      return false;
+    }
+    if (uniqueByProtocol && a.tag.getProtocol() != b.tag.getProtocol())
+    {
+      return false;
+    }
+    return true;
+  }
+}
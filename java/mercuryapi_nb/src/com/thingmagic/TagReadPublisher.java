@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes a reader's tag reads to subscribers that pull them with
+ * TagReadSubscription.request(), in the manner of
+ * java.util.concurrent.Flow.Publisher.
+ *
+ * Each subscription buffers at most its buffer size of reads. While a
+ * serial reader is reading in the background, a full buffer holds up
+ * the reader: no new search cycle starts until every subscription has
+ * drained below half its buffer, and during streaming the reads back up
+ * into the module. Readers that cannot be paused this way (LLRP and
+ * RQL) drop the oldest buffered read instead, and count it. A reader is
+ * held up for at most HOLD_TIMEOUT_MILLIS per read; a subscription that
+ * stops requesting for longer loses its oldest reads the same way.
+ */
+public final class TagReadPublisher
+{
+  public static final int DEFAULT_BUFFER_SIZE = 1024;
+  /**
+   * Longest time a full buffer holds up the publishing thread before the
+   * oldest buffered read is dropped.
+   */
+  public static final long HOLD_TIMEOUT_MILLIS = 1000;
+
+  private final CopyOnWriteArrayList<Subscription> subscriptions =
+    new CopyOnWriteArrayList<Subscription>();
+  // Whether a full buffer blocks the publishing thread
+  private volatile boolean holding;
+  private final Object space = new Object();
+
+  TagReadPublisher()
+  {
+  }
+
+  /**
+   * Subscribe with the default buffer size.
+   *
+   * @param subscriber the subscriber to add
+   */
+  public void subscribe(TagReadSubscriber subscriber)
+  {
+    subscribe(subscriber, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Subscribe to the reader's tag reads. The subscriber's onSubscribe is
+   * called before this method returns.
+   *
+   * @param subscriber the subscriber to add
+   * @param bufferSize number of reads held for the subscriber ahead of its
+   * demand
+   */
+  public void subscribe(TagReadSubscriber subscriber, int bufferSize)
+  {
+    if (subscriber == null)
+    {
+      throw new NullPointerException("subscriber");
+    }
+    if (bufferSize < 1)
+    {
+      throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+    }
+    Subscription s = new Subscription(subscriber, bufferSize);
+    subscriptions.add(s);
+    subscriber.onSubscribe(s);
+  }
+
+  /**
+   * Returns the number of active subscriptions.
+   */
+  public int getSubscriberCount()
+  {
+    return subscriptions.size();
+  }
+
+  /**
+   * Returns the number of reads discarded because a subscription's
+   * buffer was full and the reader could not be held up.
+   */
+  public long getDroppedCount()
+  {
+    long dropped = 0;
+    for (Subscription s : subscriptions)
+    {
+      dropped += s.dropped.get();
+    }
+    return dropped;
+  }
+
+  boolean hasSubscribers()
+  {
+    return !subscriptions.isEmpty();
+  }
+
+  /**
+   * Make full buffers block the publishing thread, for up to
+   * HOLD_TIMEOUT_MILLIS (true), or drop their oldest read (false).
+   */
+  void setHolding(boolean holding)
+  {
+    this.holding = holding;
+    if (!holding)
+    {
+      synchronized (space)
+      {
+        space.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Pass a read to every subscription.
+   */
+  void publish(TagReadData t) throws InterruptedException
+  {
+    for (Subscription s : subscriptions)
+    {
+      s.offer(t);
+    }
+  }
+
+  /**
+   * Wait until every subscription has room for a new search cycle, that
+   * is until its buffer is no more than half full.
+   *
+   * @param timeoutMillis the longest time to wait
+   * @return whether there is room
+   */
+  boolean awaitDemand(long timeoutMillis) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (space)
+    {
+      while (!hasRoom())
+      {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0)
+        {
+          return false;
+        }
+        space.wait(remaining);
+      }
+    }
+    return true;
+  }
+
+  private boolean hasRoom()
+  {
+    for (Subscription s : subscriptions)
+    {
+      if (s.size.get() > s.bufferSize / 2)
+      {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Complete every subscription once its buffered reads are delivered.
+   */
+  void complete()
+  {
+    for (Subscription s : subscriptions)
+    {
+      s.completed = true;
+      s.drain();
+    }
+  }
+
+  private final class Subscription implements TagReadSubscription
+  {
+    final TagReadSubscriber subscriber;
+    final int bufferSize;
+    private final ConcurrentLinkedQueue<TagReadData> buffer =
+      new ConcurrentLinkedQueue<TagReadData>();
+    final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    // Serializes calls to the subscriber, see drain()
+    private final AtomicInteger wip = new AtomicInteger();
+    // Serializes offer(): a fleet's members publish concurrently
+    private final Object offerLock = new Object();
+    final AtomicLong dropped = new AtomicLong();
+    private volatile boolean cancelled;
+    volatile boolean completed;
+    private volatile Throwable error;
+
+    Subscription(TagReadSubscriber subscriber, int bufferSize)
+    {
+      this.subscriber = subscriber;
+      this.bufferSize = bufferSize;
+    }
+
+    void offer(TagReadData t) throws InterruptedException
+    {
+      // The check, drop and add are one step, so that concurrent
+      // producers cannot overrun the buffer or drop reads needlessly
+      synchronized (offerLock)
+      {
+        if (cancelled)
+        {
+          return;
+        }
+        if (size.get() >= bufferSize)
+        {
+          long deadline = System.currentTimeMillis() + HOLD_TIMEOUT_MILLIS;
+          // A ReaderFleet's shared pool thread must not be held up
+          // for one member's subscriber
+          boolean hold = !PooledDrain.inTask();
+          synchronized (space)
+          {
+            while (hold && holding && !cancelled && size.get() >= bufferSize)
+            {
+              long remaining = deadline - System.currentTimeMillis();
+              if (remaining <= 0)
+              {
+                break;
+              }
+              space.wait(remaining);
+            }
+          }
+          if (size.get() >= bufferSize && buffer.poll() != null)
+          {
+            size.decrementAndGet();
+            dropped.incrementAndGet();
+          }
+        }
+        buffer.add(t);
+        size.incrementAndGet();
+      }
+      drain();
+    }
+
+    public void request(long n)
+    {
+      if (n <= 0)
+      {
+        error = new IllegalArgumentException("Requested " + n + " reads; the request must be positive");
+      }
+      else
+      {
+        long r;
+        long next;
+        do
+        {
+          r = requested.get();
+          next = r + n;
+          if (next < 0)
+          {
+            next = Long.MAX_VALUE;
+          }
+        } while (!requested.compareAndSet(r, next));
+      }
+      drain();
+    }
+
+    public void cancel()
+    {
+      cancelled = true;
+      subscriptions.remove(this);
+      buffer.clear();
+      size.set(0);
+      synchronized (space)
+      {
+        space.notifyAll();
+      }
+    }
+
+    /**
+     * Deliver buffered reads up to the demand. Whichever thread gets here
+     * first delivers, on behalf of any that arrive meanwhile, so the
+     * subscriber is never called concurrently.
+     */
+    void drain()
+    {
+      if (wip.getAndIncrement() != 0)
+      {
+        return;
+      }
+      int missed = 1;
+      while (true)
+      {
+        if (cancelled)
+        {
+          return;
+        }
+        if (error != null)
+        {
+          cancel();
+          subscriber.onError(error);
+          return;
+        }
+        long r = requested.get();
+        long delivered = 0;
+        while (delivered != r && !cancelled)
+        {
+          TagReadData t = buffer.poll();
+          if (t == null)
+          {
+            break;
+          }
+          size.decrementAndGet();
+          try
+          {
+            subscriber.onNext(t);
+          }
+          catch (RuntimeException ex)
+          {
+            // A subscriber that throws is treated as having cancelled
+            cancel();
+            return;
+          }
+          delivered++;
+        }
+        if (delivered != 0)
+        {
+          if (r != Long.MAX_VALUE)
+          {
+            requested.addAndGet(-delivered);
+          }
+          synchronized (space)
+          {
+            space.notifyAll();
+          }
+        }
+        if (completed && buffer.isEmpty() && !cancelled)
+        {
+          cancel();
+          subscriber.onComplete();
+          return;
+        }
+        missed = wip.addAndGet(-missed);
+        if (missed == 0)
+        {
+          return;
+        }
+      }
+    }
+  }
+}
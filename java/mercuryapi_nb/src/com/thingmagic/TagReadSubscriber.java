@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+/**
+ * Receives tag reads from a TagReadPublisher, at the rate it asks for
+ * them. The methods follow java.util.concurrent.Flow.Subscriber, so a
+ * Flow or Reactive Streams subscriber can be wrapped with a few lines
+ * of code.
+ */
+public interface TagReadSubscriber
+{
+  /**
+   * Invoked once, before any other method, with the subscription to use
+   * to request reads.
+   *
+   * @param subscription the new subscription
+   */
+  void onSubscribe(TagReadSubscription subscription);
+
+  /**
+   * Invoked with the next read, never more often than requested.
+   *
+   * @param t the tag data and metadata
+   */
+  void onNext(TagReadData t);
+
+  /**
+   * Invoked when the subscription fails; no further calls follow.
+   *
+   * @param error the cause of the failure
+   */
+  void onError(Throwable error);
+
+  /**
+   * Invoked when the reader is destroyed and every buffered read has
+   * been delivered; no further calls follow.
+   */
+  void onComplete();
+}
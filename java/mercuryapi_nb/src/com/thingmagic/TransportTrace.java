@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A transport listener that keeps the most recent frames exchanged with
+ * the device, as raw bytes, in a ring buffer allocated up front. It is
+ * meant to be left attached in production and dumped after a failure.
+ *
+ * Added to a SerialReader or an RqlReader it records the frames the
+ * other transport listeners see. An LLRPReader gives it each message in
+ * its binary LLRP encoding rather than as XML, and only builds the XML
+ * when some other transport listener is attached.
+ */
+public final class TransportTrace implements TransportListener
+{
+  // Each frame is stored as a header followed by its bytes
+  private static final int HEADER = 13;
+  private static final int FLAG_TX = 1;
+  private static final int FLAG_TRUNCATED = 2;
+
+  private final byte[] ring;
+  // Bytes ever written, and the position of the oldest frame kept, as
+  // offsets into an unbounded stream; the ring holds [tail, head)
+  private long head;
+  private long tail;
+  private long recorded;
+  private long overwritten;
+
+  /**
+   * @param capacity size of the buffer in bytes. Each frame takes 13
+   * bytes on top of its own; a frame that does not fit is truncated.
+   */
+  public TransportTrace(int capacity)
+  {
+    if (capacity < HEADER + 1)
+    {
+      throw new IllegalArgumentException("Trace capacity too small: " + capacity);
+    }
+    ring = new byte[capacity];
+  }
+
+  public void message(boolean tx, byte[] data, int timeout)
+  {
+    record(tx, data, 0, data.length);
+  }
+
+  /**
+   * Record a frame, overwriting the oldest frames to make room.
+   */
+  public synchronized void record(boolean tx, byte[] data, int offset, int length)
+  {
+    int flags = tx ? FLAG_TX : 0;
+    if (HEADER + length > ring.length)
+    {
+      length = ring.length - HEADER;
+      flags |= FLAG_TRUNCATED;
+    }
+    while (head + HEADER + length - tail > ring.length)
+    {
+      tail += HEADER + getInt(tail + 9);
+      overwritten++;
+    }
+    long time = System.currentTimeMillis();
+    put(head, (byte) flags);
+    for (int i = 0; i < 8; i++)
+    {
+      put(head + 1 + i, (byte) (time >>> (56 - 8 * i)));
+    }
+    for (int i = 0; i < 4; i++)
+    {
+      put(head + 9 + i, (byte) (length >>> (24 - 8 * i)));
+    }
+    int start = (int) ((head + HEADER) % ring.length);
+    int first = Math.min(length, ring.length - start);
+    System.arraycopy(data, offset, ring, start, first);
+    System.arraycopy(data, offset + first, ring, 0, length - first);
+    head += HEADER + length;
+    recorded++;
+  }
+
+  /**
+   * Returns the frames held, oldest first.
+   */
+  public synchronized List<Frame> getFrames()
+  {
+    List<Frame> frames = new ArrayList<Frame>();
+    for (long pos = tail; pos < head; )
+    {
+      int flags = get(pos);
+      long time = 0;
+      for (int i = 0; i < 8; i++)
+      {
+        time = (time << 8) | (get(pos + 1 + i) & 0xff);
+      }
+      int length = getInt(pos + 9);
+      byte[] data = new byte[length];
+      for (int i = 0; i < length; i++)
+      {
+        data[i] = get(pos + HEADER + i);
+      }
+      frames.add(new Frame((flags & FLAG_TX) != 0, time, data, (flags & FLAG_TRUNCATED) != 0));
+      pos += HEADER + length;
+    }
+    return frames;
+  }
+
+  /**
+   * Returns the number of frames recorded since the trace was created or
+   * cleared, including those since overwritten.
+   */
+  public synchronized long getRecordedCount()
+  {
+    return recorded;
+  }
+
+  /**
+   * Returns the number of frames overwritten to make room for newer ones.
+   */
+  public synchronized long getOverwrittenCount()
+  {
+    return overwritten;
+  }
+
+  public synchronized void clear()
+  {
+    head = 0;
+    tail = 0;
+    recorded = 0;
+    overwritten = 0;
+  }
+
+  /**
+   * Print the frames held, oldest first, one per line in hex.
+   */
+  public void dump(PrintStream out)
+  {
+    SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+    for (Frame f : getFrames())
+    {
+      out.println(format.format(new Date(f.timestamp)) + (f.tx ? " TX " : " RX ")
+                  + ReaderUtil.byteArrayToHexString(f.data) + (f.truncated ? " ..." : ""));
+    }
+  }
+
+  private void put(long pos, byte b)
+  {
+    ring[(int) (pos % ring.length)] = b;
+  }
+
+  private byte get(long pos)
+  {
+    return ring[(int) (pos % ring.length)];
+  }
+
+  private int getInt(long pos)
+  {
+    int value = 0;
+    for (int i = 0; i < 4; i++)
+    {
+      value = (value << 8) | (get(pos + i) & 0xff);
+    }
+    return value;
+  }
+
+  /**
+   * A frame held by the trace.
+   */
+  public static final class Frame
+  {
+    /** Whether the frame was sent to the device */
+    public final boolean tx;
+    /** When the frame was recorded, in milliseconds since the epoch */
+    public final long timestamp;
+    /** The frame's bytes, or its first bytes if truncated */
+    public final byte[] data;
+    /** Whether the frame was too long for the trace */
+    public final boolean truncated;
+
+    Frame(boolean tx, long timestamp, byte[] data, boolean truncated)
+    {
+      this.tx = tx;
+      this.timestamp = timestamp;
+      this.data = data;
+      this.truncated = truncated;
+    }
+  }
+}
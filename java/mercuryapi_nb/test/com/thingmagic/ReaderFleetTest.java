@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.assertTrue;
+
+public class ReaderFleetTest
+{
+  private ReaderFleet fleet;
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @After
+  public void tearDown()
+  {
+    release.countDown();
+    if (fleet != null)
+    {
+      fleet.close();
+    }
+  }
+
+  private static SerialReader emulated(long seed) throws ReaderException
+  {
+    SerialTransportEmulator emulator = new SerialTransportEmulator();
+    emulator.setRealTime(false);
+    emulator.setSeed(seed);
+    emulator.setTagPopulation(50);
+    emulator.setReadRate(2000);
+    return new SerialReader(emulator);
+  }
+
+  private static void configure(Reader r) throws ReaderException
+  {
+    r.paramSet(TMConstants.TMR_PARAM_REGION_ID, Reader.Region.NA);
+    r.paramSet(TMConstants.TMR_PARAM_READ_PLAN,
+      new SimpleReadPlan(new int[] {1}, TagProtocol.GEN2, null, null, 1000));
+  }
+
+  /**
+   * One member whose listener never returns and whose subscriber never
+   * requests must not take the only pool thread from the other member.
+   */
+  @Test(timeout = 30000)
+  public void stalledMemberDoesNotHoldUpOthers() throws Exception
+  {
+    fleet = new ReaderFleet(1, 2);
+    final Reader stalled = fleet.add(emulated(1), "eapi:///stalled");
+    final Reader healthy = fleet.add(emulated(2), "eapi:///healthy");
+
+    final CountDownLatch healthyReads = new CountDownLatch(200);
+    fleet.addReadListener(new ReadListener()
+    {
+      public void tagRead(Reader r, TagReadData t)
+      {
+        if (r == healthy)
+        {
+          healthyReads.countDown();
+        }
+      }
+    });
+
+    Map<Reader, Exception> failures = fleet.connectAll(new ReaderFleet.Configurer()
+    {
+      public void configure(Reader r) throws ReaderException
+      {
+        ReaderFleetTest.configure(r);
+        if (r == stalled)
+        {
+          // Each listener gets a queue of one, and a full queue waits
+          r.paramSet(TMConstants.TMR_PARAM_READ_LISTENER_DISPATCH,
+                     ReadListenerDispatcher.Mode.EXECUTOR);
+          r.paramSet(TMConstants.TMR_PARAM_READ_DISPATCH_CAPACITY, 1);
+          r.paramSet(TMConstants.TMR_PARAM_READ_DISPATCH_OVERFLOWPOLICY,
+                     TagDispatchQueue.OverflowPolicy.BLOCK);
+        }
+      }
+    }, 10000);
+    assertTrue(failures.toString(), failures.isEmpty());
+
+    stalled.addReadListener(new ReadListener()
+    {
+      public void tagRead(Reader r, TagReadData t)
+      {
+        try
+        {
+          release.await();
+        }
+        catch (InterruptedException ie)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    // Subscribes and never requests
+    stalled.getTagReadPublisher().subscribe(new TagReadSubscriber()
+    {
+      public void onSubscribe(TagReadSubscription s)
+      {
+      }
+
+      public void onNext(TagReadData t)
+      {
+      }
+
+      public void onError(Throwable t)
+      {
+      }
+
+      public void onComplete()
+      {
+      }
+    }, 1);
+
+    failures = fleet.startReading(10000);
+    assertTrue(failures.toString(), failures.isEmpty());
+
+    assertTrue("Healthy member's reads were held up by the stalled member",
+               healthyReads.await(10, TimeUnit.SECONDS));
+    assertTrue(fleet.getStatus(stalled).reads > 0);
+  }
+}
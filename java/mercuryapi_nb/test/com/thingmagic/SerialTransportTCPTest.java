@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2023 Novanta, Inc.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.thingmagic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Drives SerialTransportTCP against a loopback server that stands in for
+ * a serial-to-Ethernet bridge.
+ */
+public class SerialTransportTCPTest
+{
+  // A Read Tag Multiple request frame, as the module would see it
+  private static final byte[] FRAME = {
+    (byte) 0xFF, 0x05, 0x22, 0x00, 0x00, 0x00, 0x03, (byte) 0xE8, 0x12, 0x34, 0x56,
+  };
+
+  private ServerSocket server;
+  private Socket peer;
+  private SerialTransportTCP transport;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    server = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+    final BlockingQueue<Socket> accepted = new ArrayBlockingQueue<Socket>(1);
+    Thread acceptor = new Thread("loopback-accept")
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          accepted.put(server.accept());
+        }
+        catch (Exception ex)
+        {
+          // The test fails when no peer arrives
+        }
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+    transport = new SerialTransportTCP("tcp://127.0.0.1:" + server.getLocalPort());
+    transport.open();
+    peer = accepted.poll(5, TimeUnit.SECONDS);
+    assertNotNull("bridge side never connected", peer);
+    peer.setTcpNoDelay(true);
+  }
+
+  @After
+  public void tearDown() throws Exception
+  {
+    if (transport != null)
+    {
+      transport.shutdown();
+    }
+    if (peer != null)
+    {
+      peer.close();
+    }
+    if (server != null)
+    {
+      server.close();
+    }
+  }
+
+  private static void readFully(InputStream in, byte[] b) throws IOException
+  {
+    int n = 0;
+    while (n < b.length)
+    {
+      int r = in.read(b, n, b.length - n);
+      if (r < 0)
+      {
+        throw new IOException("peer closed");
+      }
+      n += r;
+    }
+  }
+
+  @Test
+  public void echoesFrameSentInPieces() throws Exception
+  {
+    transport.sendBytes(FRAME.length, FRAME, 0, 1000);
+    final byte[] echo = new byte[FRAME.length];
+    readFully(peer.getInputStream(), echo);
+    assertArrayEquals(FRAME, echo);
+
+    // Send the answer back split across TCP segments, the header alone
+    // and the body in two parts, so each piece lands in its own read
+    Thread bridge = new Thread("loopback-bridge")
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          OutputStream out = peer.getOutputStream();
+          int[] cuts = {0, 3, 7, echo.length};
+          for (int i = 0; i + 1 < cuts.length; i++)
+          {
+            out.write(echo, cuts[i], cuts[i + 1] - cuts[i]);
+            out.flush();
+            Thread.sleep(50);
+          }
+        }
+        catch (Exception ex)
+        {
+          // The reads below time out
+        }
+      }
+    };
+    bridge.start();
+
+    // Read the way SerialReader does: the header first, then the rest of
+    // the frame whose length the header gives
+    byte[] in = new byte[FRAME.length + 2];
+    transport.receiveBytes(3, in, 2, 2000);
+    int length = in[3] & 0xff;
+    transport.receiveBytes(length + 3, in, 5, 2000);
+    byte[] got = new byte[FRAME.length];
+    System.arraycopy(in, 2, got, 0, got.length);
+    assertArrayEquals(FRAME, got);
+    bridge.join();
+  }
+
+  @Test
+  public void receiveAvailableReturnsPartialData() throws Exception
+  {
+    OutputStream out = peer.getOutputStream();
+    out.write(FRAME, 0, 4);
+    out.flush();
+    byte[] in = new byte[64];
+    int n = transport.receiveAvailable(in, 0, in.length, 2000);
+    assertTrue("got " + n + " bytes", n > 0 && n <= 4);
+    while (n < 4)
+    {
+      n += transport.receiveAvailable(in, n, in.length - n, 2000);
+    }
+    assertEquals(4, n);
+    for (int i = 0; i < 4; i++)
+    {
+      assertEquals(FRAME[i], in[i]);
+    }
+  }
+
+  @Test
+  public void readTimesOutAndTransportStaysUsable() throws Exception
+  {
+    byte[] in = new byte[FRAME.length];
+    // Part of a frame arrives, the rest never does
+    OutputStream out = peer.getOutputStream();
+    out.write(FRAME, 0, 2);
+    out.flush();
+    long start = System.currentTimeMillis();
+    try
+    {
+      transport.receiveBytes(FRAME.length, in, 0, 200);
+      fail("read completed without data");
+    }
+    catch (ReaderCommException ex)
+    {
+      assertEquals("Timeout", ex.getMessage());
+    }
+    long elapsed = System.currentTimeMillis() - start;
+    assertTrue("timed out after " + elapsed + " ms", elapsed >= 150 && elapsed < 2000);
+
+    // The host flushes and resynchronizes after a timeout
+    transport.flush();
+    out.write(FRAME);
+    out.flush();
+    transport.receiveBytes(FRAME.length, in, 0, 2000);
+    assertArrayEquals(FRAME, in);
+  }
+
+  @Test
+  public void shutdownWakesBlockedRead() throws Exception
+  {
+    final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+    Thread reader = new Thread("loopback-read")
+    {
+      @Override
+      public void run()
+      {
+        try
+        {
+          transport.receiveBytes(FRAME.length, new byte[FRAME.length], 0, 10000);
+        }
+        catch (Exception ex)
+        {
+          failure.set(ex);
+        }
+      }
+    };
+    reader.start();
+    Thread.sleep(200);
+    long start = System.currentTimeMillis();
+    transport.shutdown();
+    reader.join(3000);
+    assertTrue("read still blocked after shutdown", !reader.isAlive());
+    assertTrue("read took " + (System.currentTimeMillis() - start) + " ms to end",
+      System.currentTimeMillis() - start < 3000);
+    assertTrue("read ended with " + failure.get(), failure.get() instanceof ReaderException);
+
+    try
+    {
+      transport.receiveBytes(1, new byte[1], 0, 100);
+      fail("read after shutdown succeeded");
+    }
+    catch (ReaderCommException ex)
+    {
+      assertEquals("TCP Connection lost", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void peerCloseIsReportedAsLostConnection() throws Exception
+  {
+    peer.close();
+    peer = null;
+    try
+    {
+      transport.receiveBytes(1, new byte[1], 0, 2000);
+      fail("read from a closed peer succeeded");
+    }
+    catch (ReaderCommException ex)
+    {
+      assertEquals("TCP Connection lost", ex.getMessage());
+    }
+  }
+}
@@ -505,7 +505,7 @@ public class MainController implements Initializable{
     private String elaraReadPowerValue;
     private String elaraWritePowerValue;
     //Read Tab
-    ConcurrentHashMap<String, TagReadData> tagData = new ConcurrentHashMap<String, TagReadData>();
+    ConcurrentHashMap<ReadKey, TagReadData> tagData = new ConcurrentHashMap<ReadKey, TagReadData>();
     ConcurrentHashMap<String, String> elaraTagData = new ConcurrentHashMap<String, String>();
     @FXML
     private TableView tableView;
@@ -8193,8 +8193,7 @@ public class MainController implements Initializable{
                     while (iterator.hasNext())
                     {
                         Map.Entry entry = (Map.Entry) iterator.next();
-                        String epc = (String) entry.getKey();
-                        TagReadData tr = (TagReadData) tagData.get(epc);
+                        TagReadData tr = (TagReadData) entry.getValue();
                         if(embeddedReadEnable.isSelected())
                         {
                             row.add(new TagResults(deviceName,tr.epcString(),ReaderUtil.byteArrayToHexString(tr.data),
@@ -9229,6 +9228,41 @@ public class MainController implements Initializable{
         r.addReadExceptionListener(exceptionListener);
     }
 
+    /**
+     * Key of a row in the read table: the tag's EPC and, when reads are
+     * unique by embedded data, the data read from it.
+     */
+    static final class ReadKey
+    {
+        final EpcKey epc;
+        final byte[] data;
+        private final int hash;
+
+        ReadKey(EpcKey epc, byte[] data)
+        {
+            this.epc = epc;
+            this.data = (data == null) ? null : data.clone();
+            hash = 31 * epc.hashCode() + Arrays.hashCode(this.data);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof ReadKey))
+            {
+                return false;
+            }
+            ReadKey k = (ReadKey) o;
+            return hash == k.hash && epc.equals(k.epc) && Arrays.equals(data, k.data);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
     class PrintListener implements ReadListener
     {
         @Override
@@ -9236,14 +9270,13 @@ public class MainController implements Initializable{
         {
             try
             {
-                String tagEpc = tr.tag.epcString();
-                String key = tagEpc;
+                ReadKey key = new ReadKey(tr.tag.epcKey(), null);
                 int count = tr.getReadCount();
                 if(embeddedReadUnique.isSelected())
                 {
                     if(tr.data.length > 0)
                     {
-                       key += ""+ReaderUtil.byteArrayToHexString(tr.data);
+                       key = new ReadKey(tr.tag.epcKey(), tr.data);
                     }
                     else
                     {